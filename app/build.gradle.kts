@@ -16,6 +16,7 @@ plugins {
     id("exclaim.error-prone")
     id("exclaim.junit")
     id("exclaim.sql-dialect-source-sets-include-main")
+    id("exclaim.sql-dialect-outgoing-variants") // for the benchmarks subproject
     id("exclaim.sql-dialect-spring-boot")
     id("exclaim.sql-dialect-test-source-sets-include-test")
     id("exclaim.end-to-end-tests")
@@ -68,6 +69,7 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springframework.boot:spring-boot-starter-websocket")
     implementation("org.springframework.security:spring-security-messaging")
+    implementation("io.projectreactor.netty:reactor-netty-core") // TCP client for the STOMP broker relay
     implementation("org.springframework.security:spring-security-saml2-service-provider")
     developmentOnly("org.springframework.boot:spring-boot-devtools")
     annotationProcessor("org.springframework.boot:spring-boot-configuration-processor")
@@ -82,6 +84,9 @@ dependencies {
     // Generated classes from jOOQ code generator
     implementation(project(":jooq"))
 
+    // PostgreSQL driver API for LISTEN/NOTIFY
+    "postgresqlImplementation"("org.postgresql:postgresql")
+
     // Further application dependencies
     implementation("info.picocli:picocli:4.7.5") // CLI Parser
     implementation("com.ibm.icu:icu4j:70.1") // ICU Internationalization
@@ -10,13 +10,17 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.boot.convert.DurationUnit;
 import org.springframework.lang.Nullable;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 import java.util.regex.Pattern;
 
 @ConfigurationProperties(prefix = "exclaim")
@@ -27,10 +31,17 @@ import java.util.regex.Pattern;
 public class ExclaimProperties {
     public ExclaimProperties(
         @DefaultValue BackgroundJobs backgroundJobs,
+        @DefaultValue FileView fileView,
         @DefaultValue I18n i18n,
         @DefaultValue Metrics metrics,
+        @DefaultValue Optimus optimus,
         @DefaultValue Rte rte,
+        @DefaultValue RolesCache rolesCache,
+        @DefaultValue SheetOverviewCache sheetOverviewCache,
+        @DefaultValue UserSnapshotCache userSnapshotCache,
+        @DefaultValue Uploads uploads,
         @DefaultValue Validation validation,
+        @DefaultValue WebSocket websocket,
         @DefaultValue("exclaim@cs.uni-kl.de") String adminContact,
         @DefaultValue("exclaim@cs.uni-kl.de") String emailSender,
         @DefaultValue("http://localhost:8080") String publicUrl,
@@ -40,10 +51,17 @@ public class ExclaimProperties {
         @DefaultValue("") String docsPassword
     ) {
         this.backgroundJobs = backgroundJobs;
+        this.fileView = fileView;
         this.i18n = i18n;
         this.metrics = metrics;
+        this.optimus = optimus;
         this.rte = rte;
+        this.rolesCache = rolesCache;
+        this.sheetOverviewCache = sheetOverviewCache;
+        this.userSnapshotCache = userSnapshotCache;
+        this.uploads = uploads;
         this.validation = validation;
+        this.websocket = websocket;
         this.adminContact = adminContact;
         this.emailSender = emailSender;
         this.publicUrl = publicUrl.replaceFirst("/$", "");
@@ -55,17 +73,31 @@ public class ExclaimProperties {
 
     private final BackgroundJobs backgroundJobs;
 
+    private final FileView fileView;
+
     private final I18n i18n;
 
     private final Metrics metrics;
 
+    private final Optimus optimus;
+
     @SpELAssert(
         value = "!enabled || (url?.trim() > '' && apiKey?.trim() > '')",
         message = "Setting .enabled to true also requires to set .url and .api-key")
     private final Rte rte;
 
+    private final RolesCache rolesCache;
+
+    private final SheetOverviewCache sheetOverviewCache;
+
+    private final UserSnapshotCache userSnapshotCache;
+
+    private final Uploads uploads;
+
     private final Validation validation;
 
+    private final WebSocket websocket;
+
     /**
      * Contact information of the system admin.
      */
@@ -108,10 +140,34 @@ public class ExclaimProperties {
     public static class BackgroundJobs {
         public BackgroundJobs(
             @DefaultValue("15s") Duration pollInterval,
-            @DefaultValue("10s") Duration shutdownTimeout
+            @DefaultValue("10s") Duration shutdownTimeout,
+            @DefaultValue("100") int batchSize,
+            @Nullable String nodeId,
+            @DefaultValue("5m") Duration leaseDuration,
+            @DefaultValue("4") int threadsPerType
         ) {
             this.pollInterval = pollInterval;
             this.shutdownTimeout = shutdownTimeout;
+            this.batchSize = batchSize;
+            this.nodeId = nodeId != null ? nodeId : defaultNodeId();
+            this.leaseDuration = leaseDuration;
+            this.threadsPerType = threadsPerType;
+        }
+
+        /**
+         * Host name, process id and a random suffix, such that instances on the same host (or containers sharing a
+         * host name) never share their node id.
+         */
+        private static String defaultNodeId() {
+            String hostName;
+            try {
+                hostName = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                hostName = "unknown";
+            }
+            // The lease owner column holds up to 255 characters
+            hostName = hostName.substring(0, Math.min(hostName.length(), 200));
+            return hostName + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
         }
 
         /**
@@ -125,6 +181,61 @@ public class ExclaimProperties {
          */
         @DurationUnit(ChronoUnit.SECONDS)
         private final Duration shutdownTimeout;
+
+        /**
+         * Maximum number of background jobs that are claimed from the database but not yet completed. The scheduler
+         * only fetches as many due jobs as there is free capacity, such that a large backlog does not slow down polling.
+         */
+        @Min(value = 1, message = "batch size must be >= 1")
+        private final int batchSize;
+
+        /**
+         * Identifier of this application instance, stored as owner of the claimed background jobs. Must be unique among
+         * all instances sharing the same database. Defaults to an identifier that is unique for each run (host name,
+         * process id and a random suffix). Set a stable value to release the leases of a previous run of this instance
+         * on startup, instead of waiting for them to expire.
+         */
+        private final String nodeId;
+
+        /**
+         * How long a claimed background job stays reserved for this instance. The lease is renewed periodically while
+         * the job is executing. Jobs of a crashed instance will be claimed by another instance after the lease expired.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration leaseDuration;
+
+        /**
+         * Number of threads of the executor dedicated to each background job type, such that jobs of one type never
+         * wait for threads occupied by jobs of another type.
+         */
+        @Min(value = 1, message = "threads per type must be >= 1")
+        private final int threadsPerType;
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class FileView {
+        public FileView(
+            @DefaultValue("5000") int maxLines,
+            @DefaultValue("1MB") DataSize maxBytes
+        ) {
+            this.maxLines = maxLines;
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Maximum number of lines of a text file that are shown on one page of the file viewer. Further lines are
+         * available on subsequent pages.
+         */
+        @Min(value = 1, message = "maxLines must be >= 1")
+        private final int maxLines;
+
+        /**
+         * Maximum number of bytes of a text file that are shown on one page of the file viewer. At least one line is
+         * shown on every page, even if it is longer.
+         */
+        private final DataSize maxBytes;
     }
 
     @Getter
@@ -208,10 +319,14 @@ public class ExclaimProperties {
     public static class Metrics {
         public Metrics(
             @DefaultValue("true") boolean enabled,
-            @DefaultValue("hasIpAddress('127.0.0.0/8') or hasIpAddress('::1')") String access
+            @DefaultValue("hasIpAddress('127.0.0.0/8') or hasIpAddress('::1')") String access,
+            @DefaultValue("500ms") Duration slowQueryThreshold,
+            @DefaultValue("10") int repeatedStatementThreshold
         ) {
             this.enabled = enabled;
             this.access = access;
+            this.slowQueryThreshold = slowQueryThreshold;
+            this.repeatedStatementThreshold = repeatedStatementThreshold;
         }
 
         /**
@@ -225,6 +340,69 @@ public class ExclaimProperties {
          */
         @ValidSpELExpression
         private final String access;
+
+        /**
+         * SQL statements taking at least this long are logged (without bind values)
+         */
+        private final Duration slowQueryThreshold;
+
+        /**
+         * A request executing the same statement shape at least this many times is logged as potential N+1 problem
+         */
+        @Min(value = 2, message = "repeated statement threshold must be >= 2")
+        private final int repeatedStatementThreshold;
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class Optimus {
+        public Optimus(
+            @DefaultValue("local-search") Solver solver,
+            @DefaultValue("10s") Duration timeLimit,
+            @DefaultValue("0") int threads,
+            @DefaultValue("lp_solve") String lpSolveExecutable
+        ) {
+            this.solver = solver;
+            this.timeLimit = timeLimit;
+            this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            this.lpSolveExecutable = lpSolveExecutable;
+        }
+
+        public enum Solver {
+            /**
+             * Heuristic search implemented in Java, no additional software required
+             */
+            LOCAL_SEARCH,
+
+            /**
+             * Exact solution using the external lp_solve executable
+             */
+            LP_SOLVE,
+        }
+
+        /**
+         * The solver used to calculate the group assignment
+         */
+        private final Solver solver;
+
+        /**
+         * How long the local search solver searches for a better assignment. If a duration suffix is not specified,
+         * seconds will be used.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration timeLimit;
+
+        /**
+         * Number of threads used by the local search solver. Defaults to the number of available processors.
+         */
+        @Min(value = 0, message = "threads must be >= 0")
+        private final int threads;
+
+        /**
+         * Path to the lp_solve executable (for solver lp-solve)
+         */
+        private final String lpSolveExecutable;
     }
 
     @Getter
@@ -235,12 +413,18 @@ public class ExclaimProperties {
             @DefaultValue("false") boolean enabled,
             @Nullable String url,
             @Nullable String apiKey,
-            @DefaultValue("5") short maxParallel
+            @DefaultValue("5") short maxParallel,
+            @DefaultValue("10") int batchSize,
+            @DefaultValue("10s") Duration connectTimeout,
+            @DefaultValue("10m") Duration readTimeout
         ) {
             this.enabled = enabled;
             this.url = url;
             this.apiKey = apiKey;
             this.maxParallel = maxParallel;
+            this.batchSize = batchSize;
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
         }
 
         /**
@@ -261,11 +445,129 @@ public class ExclaimProperties {
         private final String apiKey;
 
         /**
-         * The maximum number of test jobs running in parallel. Has no effect if greater than
-         * {@code spring.task.execution.pool.core-size}.
+         * The maximum number of tests sent to the RTE at the same time, further tests wait until a response has
+         * arrived. It also limits the number of test job batches (see {@link #batchSize}) executed in parallel. A
+         * waiting test does not occupy a thread, and neither does a test while the RTE is running it. This value can
+         * therefore be much greater than {@code spring.task.execution.pool.core-size}.
          */
         @Min(value = 1, message = "max parallel jobs must be >= 1")
         private final short maxParallel;
+
+        /**
+         * The maximum number of queued test jobs that are sent to the RTE together. Jobs of a batch share the
+         * connections to the RTE and are sent concurrently.
+         */
+        @Min(value = 1, message = "batch size must be >= 1")
+        private final int batchSize;
+
+        /**
+         * Timeout for establishing a connection to the RTE. If a duration suffix is not specified, seconds will be used.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration connectTimeout;
+
+        /**
+         * Timeout for the RTE to respond to a request, including the time to run the tests. If a duration suffix is
+         * not specified, seconds will be used.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration readTimeout;
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class RolesCache {
+        public RolesCache(
+            @DefaultValue("10000") int maxSize,
+            @DefaultValue("60s") Duration timeToLive
+        ) {
+            this.maxSize = maxSize;
+            this.timeToLive = timeToLive;
+        }
+
+        /**
+         * Maximum number of (user, exercise) pairs whose roles are cached.
+         */
+        @Min(value = 0, message = "maxSize must be >= 0")
+        private final int maxSize;
+
+        /**
+         * How long cached roles are used. Changes made through ExClaim take effect immediately, this only bounds
+         * how long changes made by other instances or directly in the database remain unnoticed.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration timeToLive;
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class SheetOverviewCache {
+        public SheetOverviewCache(
+            @DefaultValue("100") int maxSize,
+            @DefaultValue("10m") Duration timeToLive
+        ) {
+            this.maxSize = maxSize;
+            this.timeToLive = timeToLive;
+        }
+
+        /**
+         * Maximum number of sheets whose team overview (for tutors and assistants) is cached.
+         */
+        @Min(value = 0, message = "maxSize must be >= 0")
+        private final int maxSize;
+
+        /**
+         * How long a cached sheet overview is used. Changes made through ExClaim take effect immediately, this only
+         * bounds how long changes made by other instances or directly in the database remain unnoticed.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration timeToLive;
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class UserSnapshotCache {
+        public UserSnapshotCache(
+            @DefaultValue("10000") int maxSize,
+            @DefaultValue("5s") Duration timeToLive
+        ) {
+            this.maxSize = maxSize;
+            this.timeToLive = timeToLive;
+        }
+
+        /**
+         * Maximum number of sessions whose authenticated user is cached.
+         */
+        @Min(value = 0, message = "maxSize must be >= 0")
+        private final int maxSize;
+
+        /**
+         * How long the data of the authenticated user is reused for further requests in the same session, instead of
+         * loading it from the database again. Set to 0 to load it on every request.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration timeToLive;
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class Uploads {
+        public Uploads(
+            @DefaultValue("false") boolean deduplicate
+        ) {
+            this.deduplicate = deduplicate;
+        }
+
+        /**
+         * Whether new uploads are stored in a content-addressed blob store, with the upload path being a hard link to
+         * the blob. Identical files are then stored only once. Use the <code>uploads --deduplicate</code> CLI command
+         * to move existing uploads into the store.
+         */
+        private final boolean deduplicate;
     }
 
     @Getter
@@ -281,4 +583,63 @@ public class ExclaimProperties {
          */
         private final Pattern studentIdRegex;
     }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class WebSocket {
+        public WebSocket(
+            @Nullable String relayHost,
+            @DefaultValue("61613") int relayPort,
+            @Nullable String relayVirtualHost,
+            @DefaultValue("guest") String relayLogin,
+            @DefaultValue("guest") String relayPasscode,
+            @DefaultValue("250ms") Duration coalesceDelay
+        ) {
+            this.relayHost = relayHost;
+            this.relayPort = relayPort;
+            this.relayVirtualHost = relayVirtualHost;
+            this.relayLogin = relayLogin;
+            this.relayPasscode = relayPasscode;
+            this.coalesceDelay = coalesceDelay;
+        }
+
+        /**
+         * Host of an external STOMP message broker (e.g. ActiveMQ Artemis) that relays the test result notifications
+         * between all instances of ExClaim. If not set, an in-memory broker is used, which only reaches clients
+         * connected to the same instance.
+         */
+        @Nullable
+        private final String relayHost;
+
+        /**
+         * Port of the STOMP message broker
+         */
+        @Min(value = 1, message = "relayPort must be >= 1")
+        private final int relayPort;
+
+        /**
+         * Virtual host to use on the STOMP message broker
+         */
+        @Nullable
+        private final String relayVirtualHost;
+
+        /**
+         * Login for the STOMP message broker
+         */
+        private final String relayLogin;
+
+        /**
+         * Passcode for the STOMP message broker
+         */
+        @ToString.Exclude
+        private final String relayPasscode;
+
+        /**
+         * How long test result notifications are held back, such that rapid status changes of the same test are sent
+         * to the clients as a single message. Set to 0 to send every notification immediately.
+         */
+        @DurationUnit(ChronoUnit.MILLIS)
+        private final Duration coalesceDelay;
+    }
 }
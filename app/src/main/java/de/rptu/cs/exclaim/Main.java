@@ -2,6 +2,7 @@ package de.rptu.cs.exclaim;
 
 import de.rptu.cs.exclaim.Main.Admin;
 import de.rptu.cs.exclaim.Main.Generate;
+import de.rptu.cs.exclaim.Main.Uploads;
 import lombok.Getter;
 import lombok.ToString;
 import org.springframework.lang.Nullable;
@@ -35,7 +36,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * Use <code>./gradlew bootRun --args='...'</code> instead.
  */
 @Command(name = "exclaim.jar",
-    subcommands = {Admin.class, Generate.class, Main.Shutdown.class},
+    subcommands = {Admin.class, Generate.class, Uploads.class, Main.Shutdown.class},
     subcommandsRepeatable = true)
 public class Main implements Runnable {
     public static void main(String[] args) {
@@ -174,6 +175,31 @@ public class Main implements Runnable {
         }
     }
 
+    // -----------------------------------------------------------------------------------------------------------------
+    // Uploads
+
+    public static final List<Uploads> uploads = new ArrayList<>();
+
+    @Getter
+    @ToString
+    @Command(name = "uploads",
+        description = "Maintain the content-addressed upload store.")
+    public static class Uploads implements Runnable {
+        @Option(names = {"--deduplicate"}, description = "Move existing uploads into the store, replacing duplicates with hard links.")
+        private boolean deduplicate = false;
+
+        @Option(names = {"--verify"}, description = "Check the stored data against its hash, and report missing uploads and unreferenced data.")
+        private boolean verify = false;
+
+        @Option(names = {"--prune"}, description = "Together with --verify: delete data that is no longer referenced by any upload.")
+        private boolean prune = false;
+
+        @Override
+        public void run() {
+            uploads.add(this);
+        }
+    }
+
     // -----------------------------------------------------------------------------------------------------------------
     // Shutdown
 
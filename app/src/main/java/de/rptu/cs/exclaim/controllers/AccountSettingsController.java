@@ -3,7 +3,6 @@ package de.rptu.cs.exclaim.controllers;
 import de.rptu.cs.exclaim.data.records.UserRecord;
 import de.rptu.cs.exclaim.i18n.CookieLocalesResolver;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.security.ExclaimPasswordEncoder;
 import jakarta.servlet.http.HttpServletRequest;
@@ -38,7 +37,6 @@ import static de.rptu.cs.exclaim.controllers.ControllerUtils.redirectBindingResu
 @RequiredArgsConstructor
 public class AccountSettingsController {
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final ExclaimPasswordEncoder pe;
     private final CookieLocalesResolver cookieLocalesResolver;
@@ -52,8 +50,6 @@ public class AccountSettingsController {
 
     @GetMapping("/settings")
     public String getSettingsPage(Model model) {
-        metricsService.registerAccess();
-
         // Get the user's language. If there is none in the database, get it from the http request header.
         UserRecord userRecord = accessChecker.getUser();
         String language = userRecord.getLanguage();
@@ -73,7 +69,6 @@ public class AccountSettingsController {
 
     @PostMapping("/settings")
     public String changeLanguage(@RequestParam String language, RedirectAttributes redirectAttributes, HttpServletRequest request, HttpServletResponse response) {
-        metricsService.registerAccess();
         UserRecord userRecord = accessChecker.getUser();
         if (!msg.getSupportedLanguages().containsKey(language)) {
             addRedirectMessage(MessageType.ERROR, "Invalid language!", redirectAttributes);
@@ -81,6 +76,7 @@ public class AccountSettingsController {
             userRecord.setLanguageIfChanged(language);
             if (userRecord.changed()) {
                 userRecord.update();
+                accessChecker.invalidateUserSnapshots(userRecord.getUserId());
             }
             cookieLocalesResolver.setLocale(request, response, Locale.forLanguageTag(language));
             addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
@@ -90,8 +86,7 @@ public class AccountSettingsController {
 
     @PostMapping("/settings/password")
     public String changePassword(@Valid ChangePasswordForm changePasswordForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
-        UserRecord userRecord = accessChecker.getUser();
+        UserRecord userRecord = accessChecker.getUserForUpdate();
         if (!Objects.equals(changePasswordForm.password, changePasswordForm.password2)) {
             bindingResult.rejectValue("password2", "NotMatch");
         }
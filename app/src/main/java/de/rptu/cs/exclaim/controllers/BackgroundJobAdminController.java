@@ -0,0 +1,109 @@
+package de.rptu.cs.exclaim.controllers;
+
+import de.rptu.cs.exclaim.jobs.BackgroundJobExecutor;
+import de.rptu.cs.exclaim.jobs.BackgroundJobExecutor.JobTypeStatus;
+import de.rptu.cs.exclaim.schema.enums.BackgroundJobType;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.jooq.DSLContext;
+import org.jooq.Record5;
+import org.jooq.impl.DSL;
+import org.springframework.lang.Nullable;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static de.rptu.cs.exclaim.schema.tables.BackgroundJobs.BACKGROUND_JOBS;
+
+/**
+ * Allow admins to inspect the background job queue, e.g. to size {@code exclaim.rte.max-parallel} and the poll
+ * interval.
+ */
+@Controller
+@PreAuthorize("@accessChecker.isAdmin()")
+@RequiredArgsConstructor
+public class BackgroundJobAdminController {
+    /**
+     * Maximum number of jobs listed on the page
+     */
+    private static final int MAX_JOBS = 500;
+
+    private final BackgroundJobExecutor backgroundJobExecutor;
+    private final DSLContext ctx;
+
+    /**
+     * A job type, with the state on this node and the jobs in the database.
+     */
+    @Value
+    public static class JobTypeRow {
+        JobTypeStatus status;
+        int total;
+        int due;
+        int retrying;
+        @Nullable LocalDateTime oldestDue;
+    }
+
+    /**
+     * A job in the database.
+     */
+    @Value
+    public static class JobRow {
+        long id;
+        BackgroundJobType type;
+        short priority;
+        LocalDateTime created;
+        LocalDateTime nextAttempt;
+        short retryCount;
+        @Nullable String leaseOwner;
+        String payload;
+    }
+
+    @GetMapping("/jobs")
+    public String getJobsPage(Model model) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+
+        Map<BackgroundJobType, Record5<BackgroundJobType, Integer, Integer, Integer, LocalDateTime>> counts = ctx
+            .select(
+                BACKGROUND_JOBS.TYPE,
+                DSL.count(),
+                DSL.count().filterWhere(BACKGROUND_JOBS.NEXT_ATTEMPT.le(now)),
+                DSL.count().filterWhere(BACKGROUND_JOBS.RETRY_COUNT.gt((short) 0)),
+                DSL.min(BACKGROUND_JOBS.NEXT_ATTEMPT).filterWhere(BACKGROUND_JOBS.NEXT_ATTEMPT.le(now))
+            )
+            .from(BACKGROUND_JOBS)
+            .groupBy(BACKGROUND_JOBS.TYPE)
+            .fetchMap(BACKGROUND_JOBS.TYPE);
+        model.addAttribute("types", backgroundJobExecutor.getStatus().stream()
+            .map(status -> {
+                var record = counts.get(status.getType());
+                return record == null
+                    ? new JobTypeRow(status, 0, 0, 0, null)
+                    : new JobTypeRow(status, record.value2(), record.value3(), record.value4(), record.value5());
+            })
+            .toList());
+
+        List<JobRow> jobs = ctx
+            .selectFrom(BACKGROUND_JOBS)
+            .orderBy(BACKGROUND_JOBS.NEXT_ATTEMPT, BACKGROUND_JOBS.ID)
+            .limit(MAX_JOBS)
+            .fetch(jobRecord -> new JobRow(
+                jobRecord.getBackgroundJobId(),
+                jobRecord.getType(),
+                jobRecord.getPriority(),
+                jobRecord.getCreated(),
+                jobRecord.getNextAttempt(),
+                jobRecord.getRetryCount(),
+                jobRecord.getLeaseOwner(),
+                backgroundJobExecutor.describePayload(jobRecord)
+            ));
+        model.addAttribute("jobs", jobs);
+        model.addAttribute("maxJobs", MAX_JOBS);
+        return "jobs";
+    }
+}
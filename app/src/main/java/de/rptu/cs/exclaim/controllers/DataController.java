@@ -2,7 +2,6 @@ package de.rptu.cs.exclaim.controllers;
 
 import de.rptu.cs.exclaim.data.GroupAndTeam;
 import de.rptu.cs.exclaim.data.PreviewFileType;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.security.ExerciseRoles;
 import de.rptu.cs.exclaim.utils.UploadManager;
@@ -10,24 +9,38 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jooq.DSLContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 
 import static de.rptu.cs.exclaim.schema.tables.Studentresults.STUDENTRESULTS;
+import static de.rptu.cs.exclaim.schema.tables.Uploads.UPLOADS;
 
 @Controller
 @RequiredArgsConstructor
 @Slf4j
 public class DataController {
     private final UploadManager uploadManager;
-    private final MetricsService metrics;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
 
@@ -39,9 +52,9 @@ public class DataController {
         @PathVariable String teamId,
         @PathVariable String assignmentId,
         @PathVariable String internalFilename,
+        WebRequest webRequest,
         HttpServletResponse response
     ) throws IOException {
-        metrics.registerAccess();
         int userId = accessChecker.getUserId();
         ExerciseRoles exerciseRoles = accessChecker.getExerciseRoles(exerciseId);
         boolean canAssess = exerciseRoles.canAssess(groupId);
@@ -68,6 +81,26 @@ public class DataController {
         Path filePath = uploadManager.getUploadPath(exerciseId, sheetId, assignmentId, groupId, teamId, internalFilename);
         boolean isFeedback = assignmentId.equals(UploadManager.FEEDBACK_SUB);
 
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // Uploads never change, so the upload id and date identify the content. Feedback files can be replaced.
+        Integer uploadId = isFeedback ? null : getUploadId(exerciseId, sheetId, assignmentId, groupId, teamId, internalFilename);
+        String eTag = uploadId != null
+            ? "\"u" + uploadId + "-" + internalFilename.substring(0, 14) + "\""
+            : "\"f" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+        // Sets ETag and Last-Modified, and the status 304 if the client already has this file
+        if (webRequest.checkNotModified(eTag, attributes.lastModifiedTime().toMillis())) {
+            return;
+        }
+        // Let the browser cache the file, but revalidate on every use because access rights can change
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
         String headerFileName = isFeedback
             ? internalFilename
             : internalFilename.substring(15);
@@ -91,6 +124,78 @@ public class DataController {
         }
 
         response.setHeader("Content-Disposition", where + "; filename=\"" + headerFileName + "\"");
-        Files.copy(filePath, response.getOutputStream());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long length = attributes.size();
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = webRequest.getHeader(HttpHeaders.RANGE);
+        String ifRangeHeader = webRequest.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && (ifRangeHeader == null || ifRangeHeader.equals(eTag))) {
+            // Only a single range is supported, for multiple ranges we send the whole file
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(length);
+                    end = range.getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+             OutputStream outputStream = response.getOutputStream();
+             WritableByteChannel target = Channels.newChannel(outputStream)) {
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end - position + 1, target);
+                if (transferred <= 0) {
+                    // The file has been truncated after sending the headers, abort the response
+                    throw new IOException("Unexpected end of file " + filePath + " at position " + position);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    @Nullable
+    private Integer getUploadId(
+        String exerciseId, String sheetId, String assignmentId, String groupId, String teamId, String internalFilename
+    ) {
+        if (internalFilename.length() <= 15) {
+            return null;
+        }
+        LocalDateTime uploadDate;
+        try {
+            uploadDate = LocalDateTime.parse(internalFilename.substring(0, 14), UploadManager.INTERNAL_DTF);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        return ctx
+            .select(UPLOADS.ID)
+            .from(UPLOADS)
+            .where(
+                UPLOADS.EXERCISE.eq(exerciseId),
+                UPLOADS.SHEET.eq(sheetId),
+                UPLOADS.ASSIGNMENT.eq(assignmentId),
+                UPLOADS.GROUPID.eq(groupId),
+                UPLOADS.TEAMID.eq(teamId),
+                UPLOADS.UPLOAD_DATE.eq(uploadDate),
+                UPLOADS.FILENAME.eq(internalFilename.substring(15))
+            )
+            .fetchOne(UPLOADS.ID);
     }
 }
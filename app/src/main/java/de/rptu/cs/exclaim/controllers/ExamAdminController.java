@@ -8,7 +8,6 @@ import de.rptu.cs.exclaim.data.records.ExamGradeRecord;
 import de.rptu.cs.exclaim.data.records.ExamRecord;
 import de.rptu.cs.exclaim.data.records.ExamTaskRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.Keys;
 import de.rptu.cs.exclaim.schema.tables.Examparticipants;
 import de.rptu.cs.exclaim.schema.tables.Examresults;
@@ -70,7 +69,6 @@ import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
 @Slf4j
 public class ExamAdminController {
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
 
@@ -127,7 +125,6 @@ public class ExamAdminController {
 
     @GetMapping("/exams")
     public String getExams(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         List<? extends IExam> exams = ctx.fetch(EXAMS, EXAMS.EXERCISE.eq(exerciseId));
         model.addAttribute("exams", exams);
         return "exam/exams-admin";
@@ -135,14 +132,12 @@ public class ExamAdminController {
 
     @GetMapping("/exams/create")
     public String getCreateExamPage(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new CreateExamForm("", "", "", "", false));
         return "exam/create-exam";
     }
 
     @PostMapping("/exams/create")
     public String createExam(@PathVariable String exerciseId, @Valid CreateExamForm createExamForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         LocalDateTime date = null;
         try {
             date = LocalDateTime.parse(createExamForm.date);
@@ -172,7 +167,6 @@ public class ExamAdminController {
 
     @GetMapping("/exam/{examId}/edit")
     public String getEditExamPage(@PathVariable String exerciseId, @PathVariable String examId, Model model) {
-        metricsService.registerAccess();
         ExamRecord exam = ctx
             .fetchOptional(EXAMS, EXAMS.EXERCISE.eq(exerciseId), EXAMS.ID.eq(examId))
             .orElseThrow(NotFoundException::new);
@@ -183,7 +177,6 @@ public class ExamAdminController {
 
     @PostMapping("/exam/{examId}/edit")
     public String editExam(@PathVariable String exerciseId, @PathVariable String examId, @Valid EditExamForm editExamForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         ExamRecord examRecord = ctx
             .fetchOptional(EXAMS, EXAMS.EXERCISE.eq(exerciseId), EXAMS.ID.eq(examId))
             .orElseThrow(NotFoundException::new);
@@ -211,7 +204,6 @@ public class ExamAdminController {
 
     @PostMapping("/exam/{examId}/delete")
     public String deleteExam(@PathVariable String exerciseId, @PathVariable String examId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         try {
             if (ctx
                 .deleteFrom(EXAMS)
@@ -230,14 +222,12 @@ public class ExamAdminController {
 
     @GetMapping("/exam/{examId}/create-task")
     public String getCreateExamTaskPage(@PathVariable String exerciseId, @PathVariable String examId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new CreateExamTaskForm("", ""));
         return "exam/create-task";
     }
 
     @PostMapping("/exam/{examId}/create-task")
     public String createExamTask(@PathVariable String exerciseId, @PathVariable String examId, @Valid CreateExamTaskForm createExamTaskForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         BigDecimal maxPoints = BigDecimal.ZERO;
         try {
             maxPoints = parsePoints(createExamTaskForm.maxPoints);
@@ -264,7 +254,6 @@ public class ExamAdminController {
 
     @GetMapping("/exam/{examId}/task/{examTaskId}/edit")
     public String getEditExamTaskPage(@PathVariable String exerciseId, @PathVariable String examId, @PathVariable String examTaskId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(ctx
             .select(EXAMTASKS.MAX_POINTS)
             .from(EXAMTASKS)
@@ -281,7 +270,6 @@ public class ExamAdminController {
 
     @PostMapping("/exam/{examId}/task/{examTaskId}/edit")
     public String editExamTask(@PathVariable String exerciseId, @PathVariable String examId, @PathVariable String examTaskId, @Valid EditExamTaskForm editExamTaskForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         BigDecimal maxPoints = BigDecimal.ZERO;
         try {
             maxPoints = parsePoints(editExamTaskForm.maxPoints);
@@ -310,7 +298,6 @@ public class ExamAdminController {
 
     @PostMapping("/exam/{examId}/task/{examTaskId}/delete")
     public String deleteExamTask(@PathVariable String exerciseId, @PathVariable String examId, @PathVariable String examTaskId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         try {
             if (ctx
                 .deleteFrom(EXAMTASKS)
@@ -333,7 +320,6 @@ public class ExamAdminController {
 
     @GetMapping("/exam/{examId}/grades")
     public String getGradesPage(@PathVariable String exerciseId, @PathVariable String examId, Model model) {
-        metricsService.registerAccess();
         List<? extends IExamGrade> grades = ctx.fetch(EXAMGRADES, EXAMGRADES.EXERCISE.eq(exerciseId), EXAMGRADES.EXAMID.eq(examId));
         grades.sort(Comparator.comparing(IExamGrade::getMinPoints).reversed());
         model.addAttribute("grades", grades);
@@ -342,14 +328,12 @@ public class ExamAdminController {
 
     @GetMapping("/exam/{examId}/create-grade")
     public String getCreateExamGradePage(@PathVariable String exerciseId, @PathVariable String examId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new CreateExamGradeForm("", ""));
         return "exam/create-grade";
     }
 
     @PostMapping("/exam/{examId}/create-grade")
     public String createExamGrade(@PathVariable String exerciseId, @PathVariable String examId, @Valid CreateExamGradeForm createExamGradeForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         BigDecimal minPoints = BigDecimal.ZERO;
         try {
             minPoints = parsePoints(createExamGradeForm.minPoints);
@@ -376,7 +360,6 @@ public class ExamAdminController {
 
     @PostMapping("/exam/{examId}/grade/{grade}/delete")
     public String deleteExamGrade(@PathVariable String exerciseId, @PathVariable String examId, @PathVariable String grade, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (ctx
             .deleteFrom(EXAMGRADES)
             .where(
@@ -395,8 +378,6 @@ public class ExamAdminController {
 
     @GetMapping("/exam/{examId}/participants")
     public String getExamParticipants(@PathVariable String exerciseId, @PathVariable String examId, Model model) {
-        metricsService.registerAccess();
-
         Examparticipants p = EXAMPARTICIPANTS.as("p");
         Users u = USERS.as("u");
         Examtasks t = EXAMTASKS.as("t");
@@ -6,7 +6,6 @@ import de.rptu.cs.exclaim.data.interfaces.IExamGrade;
 import de.rptu.cs.exclaim.data.interfaces.IExamTask;
 import de.rptu.cs.exclaim.data.records.ExamParticipantRecord;
 import de.rptu.cs.exclaim.data.records.ExamRecord;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.Keys;
 import de.rptu.cs.exclaim.schema.tables.Examparticipants;
 import de.rptu.cs.exclaim.schema.tables.Examresults;
@@ -48,7 +47,6 @@ import static de.rptu.cs.exclaim.schema.tables.Examtasks.EXAMTASKS;
 @RequiredArgsConstructor
 @Slf4j
 public class ExamController {
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
 
@@ -67,8 +65,6 @@ public class ExamController {
         Model model,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
-
         // Get the exam, also make sure results are published and the student is registered
         Exams e = EXAMS.as("e");
         Examparticipants p = EXAMPARTICIPANTS.as("p");
@@ -145,8 +141,6 @@ public class ExamController {
         Model model,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
-
         // Get the exam, also make sure results are published when accessed by a tutor
         IExam exam = ctx
             .selectFrom(EXAMS)
@@ -180,8 +174,6 @@ public class ExamController {
         @PathVariable String examId,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
-
         // Assistants can always see the results, tutors and students only when published
         if (!exerciseRoles.getIsAssistant()) {
             Exams e = EXAMS.as("e");
@@ -242,7 +234,6 @@ public class ExamController {
         @PathVariable String examId,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
         int userId = accessChecker.getUserId();
         ExamRecord exam = ctx.fetchOptional(EXAMS, EXAMS.EXERCISE.eq(exerciseId), EXAMS.ID.eq(examId)).orElseThrow(NotFoundException::new);
         if (exam.getRegistrationOpen() && exerciseRoles.isStudent()) {
@@ -11,7 +11,7 @@ import de.rptu.cs.exclaim.data.records.SheetRecord;
 import de.rptu.cs.exclaim.data.records.StudentRecord;
 import de.rptu.cs.exclaim.data.records.TutorRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
+import de.rptu.cs.exclaim.jobs.CalculateGroupAssignment;
 import de.rptu.cs.exclaim.optimus.Optimus;
 import de.rptu.cs.exclaim.schema.Keys;
 import de.rptu.cs.exclaim.schema.enums.GroupJoin;
@@ -24,6 +24,7 @@ import de.rptu.cs.exclaim.schema.tables.Users;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.utils.Comparators;
 import de.rptu.cs.exclaim.utils.JsonUtils;
+import de.rptu.cs.exclaim.utils.SheetArchiveService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
@@ -100,10 +101,11 @@ import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
 @Slf4j
 public class ExerciseAdminController {
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final Optimus optimus;
+    private final CalculateGroupAssignment calculateGroupAssignment;
     private final DSLContext ctx;
+    private final SheetArchiveService sheetArchiveService;
 
     @Value
     public static class CreateGroupForm {
@@ -163,7 +165,6 @@ public class ExerciseAdminController {
 
     @GetMapping("/groups")
     public String getGroupsPage(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute("exercise", ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new));
 
         Groups g = GROUPS.as("g");
@@ -198,7 +199,6 @@ public class ExerciseAdminController {
 
     @PostMapping("")
     public String editExerciseSettings(@PathVariable String exerciseId, @RequestParam boolean registrationOpen, @RequestParam GroupJoin groupJoin, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         ExerciseRecord exerciseRecord = ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new);
         exerciseRecord.setRegistrationOpenIfChanged(registrationOpen);
         exerciseRecord.setGroupJoinIfChanged(groupJoin);
@@ -212,14 +212,12 @@ public class ExerciseAdminController {
 
     @GetMapping("/groups/create")
     public String getCreateGroupPage(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new CreateGroupForm("", null, "", "", ""));
         return "exercise/create-group";
     }
 
     @PostMapping("/groups/create")
     public String createGroup(@PathVariable String exerciseId, @Valid CreateGroupForm createGroupForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         Integer maxSize = null;
         try {
             maxSize = parseMaxSize(createGroupForm.maxSize);
@@ -248,7 +246,6 @@ public class ExerciseAdminController {
 
     @GetMapping("/groups/{groupId}/edit")
     public String getEditGroupPage(@PathVariable String exerciseId, @PathVariable String groupId, Model model) {
-        metricsService.registerAccess();
         GroupRecord groupRecord = ctx
             .fetchOptional(GROUPS, GROUPS.EXERCISEID.eq(exerciseId), GROUPS.GROUPID.eq(groupId))
             .orElseThrow(NotFoundException::new);
@@ -263,7 +260,6 @@ public class ExerciseAdminController {
 
     @PostMapping("/groups/{groupId}/edit")
     public String editGroup(@PathVariable String exerciseId, @PathVariable String groupId, @Valid EditGroupForm editGroupForm, BindingResult bindingResult, Model model, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         Integer maxSize = null;
         try {
             maxSize = parseMaxSize(editGroupForm.maxSize);
@@ -290,7 +286,6 @@ public class ExerciseAdminController {
 
     @PostMapping("/groups/{groupId}/delete")
     public String deleteGroup(@PathVariable String exerciseId, @PathVariable String groupId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         // TODO: Translations
         try {
             if (ctx
@@ -298,6 +293,7 @@ public class ExerciseAdminController {
                 .where(GROUPS.EXERCISEID.eq(exerciseId), GROUPS.GROUPID.eq(groupId))
                 .execute() == 1
             ) {
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 addRedirectMessage(MessageType.SUCCESS, "Gruppe " + groupId + " wurde gelöscht.", redirectAttributes);
             } else {
                 addRedirectMessage(MessageType.ERROR, "Gruppe " + groupId + " konnte nicht gelöscht werden.", redirectAttributes);
@@ -310,7 +306,6 @@ public class ExerciseAdminController {
 
     @GetMapping("/groups/{groupId}/tutors")
     public String getTutorsPage(@PathVariable String exerciseId, @PathVariable String groupId, Model model) {
-        metricsService.registerAccess();
         Tutors t = TUTORS.as("t");
         Users u = t.user().as("u");
         List<IUser> tutors = ctx
@@ -326,7 +321,6 @@ public class ExerciseAdminController {
     @PostMapping("/groups/{groupId}/tutors")
     @Transactional
     public String addTutor(@PathVariable String exerciseId, @PathVariable String groupId, @RequestParam String username, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         GroupRecord groupRecord = ctx
             .fetchOptional(GROUPS, GROUPS.EXERCISEID.eq(exerciseId), GROUPS.GROUPID.eq(groupId))
             .orElseThrow(NotFoundException::new);
@@ -342,6 +336,7 @@ public class ExerciseAdminController {
             tutor.setUserId(tutorUserId);
             try {
                 tutor.insert();
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 log.info("Tutor {} has been added by assistant {}", tutor, accessChecker.getUser());
                 addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
             } catch (DuplicateKeyException e) {
@@ -356,12 +351,12 @@ public class ExerciseAdminController {
     @PostMapping("/groups/{groupId}/tutors/{userId}/delete")
     @Transactional
     public String deleteTutor(@PathVariable String exerciseId, @PathVariable String groupId, @PathVariable int userId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (ctx
             .deleteFrom(TUTORS)
             .where(TUTORS.USERID.eq(userId), TUTORS.EXERCISEID.eq(exerciseId), TUTORS.GROUPID.eq(groupId))
             .execute() == 1
         ) {
+            accessChecker.invalidateExerciseRoles(exerciseId);
             log.info("Tutor user id {} for exercise {} group {} has been deleted by assistant {}", userId, exerciseId, groupId, accessChecker.getUser());
             addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
         }
@@ -370,14 +365,12 @@ public class ExerciseAdminController {
 
     @GetMapping("/sheets/create")
     public String getCreateSheetPage(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new CreateSheetForm("", ""));
         return "exercise/create-sheet";
     }
 
     @PostMapping("/sheets/create")
     public String createSheet(@PathVariable String exerciseId, @Valid CreateSheetForm createSheetForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (!bindingResult.hasErrors()) {
             SheetRecord sheetRecord = ctx.newRecord(SHEETS);
             sheetRecord.setExerciseId(exerciseId);
@@ -397,7 +390,6 @@ public class ExerciseAdminController {
 
     @GetMapping("/sheets/{sheetId}/edit")
     public String getEditSheetPage(@PathVariable String exerciseId, @PathVariable String sheetId, Model model) {
-        metricsService.registerAccess();
         String label = ctx
             .select(SHEETS.LABEL)
             .from(SHEETS)
@@ -411,7 +403,6 @@ public class ExerciseAdminController {
 
     @PostMapping("/sheets/{sheetId}/edit")
     public String editSheet(@PathVariable String exerciseId, @PathVariable String sheetId, @Valid EditSheetForm editSheetForm, BindingResult bindingResult, Model model, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (!bindingResult.hasErrors()) {
             SheetRecord sheetRecord = ctx
                 .fetchOptional(SHEETS, SHEETS.EXERCISE.eq(exerciseId), SHEETS.ID.eq(sheetId))
@@ -429,7 +420,6 @@ public class ExerciseAdminController {
 
     @PostMapping("/sheets/{sheetId}/delete")
     public String deleteSheet(@PathVariable String exerciseId, @PathVariable String sheetId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         // TODO: Translations
         try {
             if (ctx
@@ -437,6 +427,7 @@ public class ExerciseAdminController {
                 .where(SHEETS.EXERCISE.eq(exerciseId), SHEETS.ID.eq(sheetId))
                 .execute() == 1
             ) {
+                sheetArchiveService.removeSheetArchives(exerciseId, sheetId);
                 addRedirectMessage(MessageType.SUCCESS, "Übungsblatt " + sheetId + " wurde gelöscht.", redirectAttributes);
             } else {
                 addRedirectMessage(MessageType.ERROR, "Übungsblatt " + sheetId + " konnte nicht gelöscht werden.", redirectAttributes);
@@ -449,14 +440,12 @@ public class ExerciseAdminController {
 
     @GetMapping("/sheets/{sheetId}/assignments/create")
     public String getCreateAssignmentPage(@PathVariable String exerciseId, @PathVariable String sheetId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new CreateAssignmentForm("", "", "", false));
         return "exercise/create-assignment";
     }
 
     @PostMapping("/sheets/{sheetId}/assignments/create")
     public String createAssignment(@PathVariable String exerciseId, @PathVariable String sheetId, @Valid CreateAssignmentForm createAssignmentForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         BigDecimal maxPoints = BigDecimal.ZERO;
         try {
             maxPoints = parseMaxPoints(createAssignmentForm.maxPoints);
@@ -485,7 +474,6 @@ public class ExerciseAdminController {
 
     @GetMapping("/sheets/{sheetId}/assignments/{assignmentId}/edit")
     public String getEditAssignmentPage(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String assignmentId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute(ctx
             .select(
                 ASSIGNMENTS.LABEL,
@@ -506,7 +494,6 @@ public class ExerciseAdminController {
 
     @PostMapping("/sheets/{sheetId}/assignments/{assignmentId}/edit")
     public String editAssignment(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String assignmentId, @Valid EditAssignmentForm editAssignmentForm, BindingResult bindingResult, Model model, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         BigDecimal maxPoints = BigDecimal.ZERO;
         try {
             maxPoints = parseMaxPoints(editAssignmentForm.maxPoints);
@@ -532,7 +519,6 @@ public class ExerciseAdminController {
 
     @PostMapping("/sheets/{sheetId}/assignments/{assignmentId}/delete")
     public String deleteAssignment(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String assignmentId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         // TODO: Translations
         try {
             if (ctx
@@ -552,8 +538,6 @@ public class ExerciseAdminController {
 
     @GetMapping("/registrations")
     public String getRegistrationsPage(@PathVariable String exerciseId, Model model) throws IOException, InterruptedException {
-        metricsService.registerAccess();
-
         // Load groupIds
         List<String> groupIds = ctx
             .select(GROUPS.GROUPID)
@@ -621,57 +605,28 @@ public class ExerciseAdminController {
     }
 
     @GetMapping("/optimus")
-    public String getOptimusPage(@PathVariable String exerciseId, Model model, RedirectAttributes redirectAttributes) throws IOException, InterruptedException {
-        metricsService.registerAccess();
-
-        // Load groupIds
-        List<String> groupIds = ctx
-            .select(GROUPS.GROUPID)
-            .from(GROUPS)
-            .where(GROUPS.EXERCISEID.eq(exerciseId))
-            .fetch(Record1::value1);
+    public String getOptimusPage(@PathVariable String exerciseId, Model model, RedirectAttributes redirectAttributes) {
+        Optimus.Input input = optimus.loadInput(exerciseId);
+        List<String> groupIds = input.groupIds();
         if (groupIds.size() < 2) {
             addRedirectMessage(MessageType.ERROR, "Der Optimus-Zuteilungsalgorithmus benötigt mindestens zwei Übungsgruppen.", redirectAttributes);
             return "redirect:/exercise/{exerciseId}/admin/groups";
         }
-        groupIds.sort(Comparators.IDENTIFIER);
-        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = new TreeMap<>();
-        try (Cursor<Record3<Integer, String, GroupPreferenceOption>> cursor =
-                 ctx
-                     .select(GROUPPREFERENCES.USERID, GROUPPREFERENCES.GROUPID, GROUPPREFERENCES.PREFERENCE)
-                     .from(GROUPPREFERENCES)
-                     .where(GROUPPREFERENCES.EXERCISEID.eq(exerciseId))
-                     .fetchLazy()
-        ) {
-            for (Record3<Integer, String, GroupPreferenceOption> r : cursor) {
-                groupPreferences
-                    .computeIfAbsent(r.value1(), userId -> new HashMap<>())
-                    .put(r.value2(), r.value3());
-            }
-        }
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = input.groupPreferences();
         if (groupPreferences.isEmpty()) {
             addRedirectMessage(MessageType.ERROR, "Der Optimus-Zuteilungsalgorithmus benötigt mindestens einen Studenten mit angegebenen Gruppenpräferenzen.", redirectAttributes);
             return "redirect:/exercise/{exerciseId}/admin/groups";
         }
-        Map<Integer, List<Integer>> teamPreferences = new TreeMap<>();
-        try (Cursor<Record2<Integer, Integer>> cursor =
-                 ctx
-                     .select(TEAMPREFERENCES.USERID, TEAMPREFERENCES.FRIEND_USERID)
-                     .from(TEAMPREFERENCES)
-                     .where(TEAMPREFERENCES.EXERCISEID.eq(exerciseId))
-                     .fetchLazy()
-        ) {
-            for (Record2<Integer, Integer> r : cursor) {
-                int userId = r.value1();
-                int friendUserId = r.value2();
-                if (groupPreferences.keySet().containsAll(Set.of(userId, friendUserId))) {
-                    teamPreferences
-                        .computeIfAbsent(userId, ignored -> new ArrayList<>())
-                        .add(friendUserId);
-                }
-            }
+        Map<Integer, List<Integer>> teamPreferences = input.teamPreferences();
+
+        // The assignment is calculated by a background job and stored until the preferences change
+        Optional<Map<Integer, String>> storedAssignment = calculateGroupAssignment.getOrSubmit(exerciseId, input);
+        if (storedAssignment.isEmpty()) {
+            model.addAttribute("channel", CalculateGroupAssignment.channel(exerciseId));
+            return "exercise/optimus-pending";
         }
-        teamPreferences.forEach((userId, friendUserIds) -> friendUserIds.sort(null));
+        Map<Integer, String> assignment = storedAssignment.get();
+
         int maxFriends = teamPreferences.values().stream().mapToInt(List::size).max().orElse(0);
         Students s = STUDENTS.as("s");
         Users u = s.user().as("u");
@@ -681,10 +636,6 @@ public class ExerciseAdminController {
             .where(s.EXERCISEID.eq(exerciseId))
             .fetch();
 
-        // TODO: At this point, commit the transaction such that there is no deadlock while lp_solve computes the assignment
-
-        Map<Integer, String> assignment = optimus.calculateAssignment(groupIds, groupPreferences, teamPreferences);
-
         List<GroupPreferenceOption> missingGroupPreferences = Arrays.asList(new GroupPreferenceOption[groupIds.size()]);
         Object[] data = students.stream()
             .map(r -> new Object[]{
@@ -716,7 +667,6 @@ public class ExerciseAdminController {
 
     @GetMapping("/import")
     public String getImportStudentsPage(@PathVariable String exerciseId) {
-        metricsService.registerAccess();
         return "exercise/import-students";
     }
 
@@ -729,7 +679,6 @@ public class ExerciseAdminController {
         Model model,
         RedirectAttributes redirectAttributes
     ) {
-        metricsService.registerAccess();
         if (!Set.of("studentId", "username", "userId").contains(studentKey)) {
             throw new IllegalArgumentException("unknown studentKey");
         }
@@ -823,6 +772,7 @@ public class ExerciseAdminController {
                         }
                     });
                     ctx.batchStore(students.values()).execute();
+                    accessChecker.invalidateExerciseRoles(exerciseId);
                     addRedirectMessage(MessageType.SUCCESS, students.size() + " Studierende importiert!", redirectAttributes);
                     return "redirect:/exercise/{exerciseId}/admin/import";
                 }
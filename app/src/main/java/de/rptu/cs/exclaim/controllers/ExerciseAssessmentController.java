@@ -18,7 +18,6 @@ import de.rptu.cs.exclaim.data.records.TeamResultAssignmentRecord;
 import de.rptu.cs.exclaim.data.records.TeamResultRecord;
 import de.rptu.cs.exclaim.data.records.TestResultRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.Keys;
 import de.rptu.cs.exclaim.schema.enums.Attendance;
 import de.rptu.cs.exclaim.schema.tables.Annotations;
@@ -36,12 +35,14 @@ import de.rptu.cs.exclaim.security.ExerciseRoles;
 import de.rptu.cs.exclaim.utils.Comparators;
 import de.rptu.cs.exclaim.utils.JsonUtils;
 import de.rptu.cs.exclaim.utils.Markdown;
+import de.rptu.cs.exclaim.utils.ResultsExportService;
+import de.rptu.cs.exclaim.utils.SheetArchiveService;
+import de.rptu.cs.exclaim.utils.SheetOverviewService;
 import de.rptu.cs.exclaim.utils.UploadManager;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.pdfbox.io.IOUtils;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record1;
@@ -70,29 +71,22 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import static de.rptu.cs.exclaim.ExclaimValidationProperties.ID_REGEX;
 import static de.rptu.cs.exclaim.controllers.ControllerUtils.addRedirectMessage;
@@ -115,10 +109,12 @@ import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
 @Slf4j
 public class ExerciseAssessmentController {
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
     private final UploadManager uploadManager;
+    private final SheetArchiveService sheetArchiveService;
+    private final SheetOverviewService sheetOverviewService;
+    private final ResultsExportService resultsExportService;
 
     @ModelAttribute
     public ExerciseRoles exerciseRoles(@PathVariable String exerciseId) {
@@ -135,7 +131,6 @@ public class ExerciseAssessmentController {
 
     @GetMapping("/results")
     public String getResultsPage(@PathVariable String exerciseId, Model model, ExerciseRoles exerciseRoles) {
-        metricsService.registerAccess();
         Sheets s = SHEETS.as("s");
         Assignments a = ASSIGNMENTS.as("a");
         List<SheetWithMaxPoints> sheets = ctx
@@ -156,7 +151,6 @@ public class ExerciseAssessmentController {
         Users u = stud.user().as("u");
         Studentresults sr = STUDENTRESULTS.as("sr");
         Teamresults tr = TEAMRESULTS.as("tr");
-        TeamresultsAssignment tra = TEAMRESULTS_ASSIGNMENT.as("tra");
         List<StudentWithSheetResults> students = ctx
             .select(
                 stud,
@@ -166,11 +160,7 @@ public class ExerciseAssessmentController {
                         sr.GROUPID,
                         sr.TEAMID,
                         // teampoints
-                        DSL.field(DSL
-                            .select(DSL.sum(tra.POINTS))
-                            .from(tra)
-                            .where(tra.EXERCISE.eq(tr.EXERCISE), tra.SHEET.eq(tr.SHEET), tra.GROUPID.eq(tr.GROUPID), tra.TEAMID.eq(tr.TEAMID))
-                        ),
+                        tr.POINTS,
                         sr.DELTAPOINTS,
                         tr.HIDEPOINTS,
                         sr.ATTENDED
@@ -265,6 +255,16 @@ public class ExerciseAssessmentController {
         return "exercise/results";
     }
 
+    @GetMapping("/results/csv")
+    public void resultsCsv(@PathVariable String exerciseId, ExerciseRoles exerciseRoles, HttpServletResponse response) throws IOException {
+        resultsExportService.sendResults(exerciseId, exerciseRoles, ResultsExportService.Format.CSV, response);
+    }
+
+    @GetMapping("/results/xlsx")
+    public void resultsXlsx(@PathVariable String exerciseId, ExerciseRoles exerciseRoles, HttpServletResponse response) throws IOException {
+        resultsExportService.sendResults(exerciseId, exerciseRoles, ResultsExportService.Format.XLSX, response);
+    }
+
     @GetMapping("/students/{userId}")
     public String getDetailResultsPage(@PathVariable String exerciseId, @PathVariable int userId, Model model, ExerciseRoles exerciseRoles) {
         Students stud = STUDENTS.as("stud");
@@ -272,17 +272,12 @@ public class ExerciseAssessmentController {
         Sheets s = SHEETS.as("s");
         Studentresults sr = STUDENTRESULTS.as("sr");
         Teamresults tr = TEAMRESULTS.as("tr");
-        TeamresultsAssignment tra = TEAMRESULTS_ASSIGNMENT.as("tra");
         Field<Map<String, SheetResult>> sheetResults = DSL.multisetAgg(
                 s.ID,
                 sr.GROUPID,
                 sr.TEAMID,
                 // teampoints
-                DSL.field(DSL
-                    .select(DSL.sum(tra.POINTS))
-                    .from(tra)
-                    .where(tra.EXERCISE.eq(tr.EXERCISE), tra.SHEET.eq(tr.SHEET), tra.GROUPID.eq(tr.GROUPID), tra.TEAMID.eq(tr.TEAMID))
-                ),
+                tr.POINTS,
                 sr.DELTAPOINTS,
                 tr.HIDEPOINTS,
                 sr.ATTENDED
@@ -406,6 +401,7 @@ public class ExerciseAssessmentController {
         studentRecord.setTeamIdIfChanged(teamId);
         if (studentRecord.changed()) {
             studentRecord.update();
+            accessChecker.invalidateExerciseRoles(exerciseId);
 
             // Update existing studentresult entries that do not have a team (created by setting attendance)
             ctx
@@ -430,7 +426,6 @@ public class ExerciseAssessmentController {
     @PostMapping("/students/{userId}/remove")
     @PreAuthorize("#exerciseRoles.isAssistant")
     public String removeStudentFromExercise(@PathVariable String exerciseId, @PathVariable int userId, ExerciseRoles exerciseRoles, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         // TODO: Translations
         try {
             if (ctx
@@ -438,6 +433,7 @@ public class ExerciseAssessmentController {
                 .where(STUDENTS.USERID.eq(userId), STUDENTS.EXERCISEID.eq(exerciseId))
                 .execute() == 1
             ) {
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 addRedirectMessage(MessageType.SUCCESS, "Benutzer " + userId + " wurde aus der Vorlesung ausgetragen.", redirectAttributes);
             } else {
                 addRedirectMessage(MessageType.ERROR, "Benutzer " + userId + " konnte nicht aus der Vorlesung ausgetragen werden.", redirectAttributes);
@@ -454,7 +450,6 @@ public class ExerciseAssessmentController {
 
     @GetMapping("/sheet/{sheetId}/assessment")
     public String getAssessmentPage(@PathVariable String exerciseId, @PathVariable String sheetId, ExerciseRoles exerciseRoles, Model model) {
-        metricsService.registerAccess();
         List<AssignmentRecord> assignments = ctx.fetch(ASSIGNMENTS, ASSIGNMENTS.EXERCISE.eq(exerciseId), ASSIGNMENTS.SHEET.eq(sheetId));
         assignments.sort(Comparator.comparing(AssignmentRecord::getAssignmentId, Comparators.IDENTIFIER));
 
@@ -604,8 +599,6 @@ public class ExerciseAssessmentController {
     @GetMapping("/sheet/{sheetId}/assessment/{groupId}/{teamId}")
     @PreAuthorize("#exerciseRoles.canAssess(#groupId)")
     public String getAssessmentTeamPage(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String groupId, @PathVariable String teamId, ExerciseRoles exerciseRoles, Model model) throws IOException {
-        metricsService.registerAccess();
-
         // Existing studentresults entries
         Studentresults sr = STUDENTRESULTS.as("sr");
         Users u = USERS.as("u");
@@ -759,7 +752,6 @@ public class ExerciseAssessmentController {
     @PreAuthorize("#exerciseRoles.canAssess(#groupId)")
     @Transactional
     public String assessTeam(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String groupId, @PathVariable String teamId, ExerciseRoles exerciseRoles, @RequestBody MultiValueMap<String, String> formData, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         Studentresults sr = STUDENTRESULTS.as("sr");
         Students s = STUDENTS.as("s");
 
@@ -911,6 +903,18 @@ public class ExerciseAssessmentController {
         }
         ctx.batchStore(assignmentResults.values()).execute();
 
+        // Keep the precomputed sum of assignment points (used by the results pages) up to date
+        BigDecimal teamPoints = null;
+        for (TeamResultAssignmentRecord assignmentResult : assignmentResults.values()) {
+            BigDecimal points = assignmentResult.getPoints();
+            if (points != null) {
+                teamPoints = teamPoints == null ? points : teamPoints.add(points);
+            }
+        }
+        result.setPointsIfChanged(teamPoints);
+        result.store();
+        sheetOverviewService.invalidate(exerciseId, sheetId);
+
         if (errors.isEmpty()) {
             addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
             if (formData.containsKey("save-continue")) {
@@ -978,7 +982,6 @@ public class ExerciseAssessmentController {
         @RequestParam MultipartFile file,
         ExerciseRoles exerciseRoles
     ) throws IOException {
-        metricsService.registerAccess();
         String filename = file.getOriginalFilename();
         if (StringUtils.isEmpty(filename)) {
             throw new IllegalArgumentException("Keine Datei angegeben");
@@ -1001,7 +1004,6 @@ public class ExerciseAssessmentController {
         @PathVariable String filename,
         ExerciseRoles exerciseRoles
     ) throws IOException {
-        metricsService.registerAccess();
         Path feedbackFolder = uploadManager.getFeedbackUploadFolder(exerciseId, sheetId, groupId, teamId);
         try (Stream<Path> files = Files.walk(feedbackFolder, 1)) {
             for (Path path : files.filter(Files::isRegularFile).toArray(Path[]::new)) {
@@ -1015,7 +1017,6 @@ public class ExerciseAssessmentController {
 
     @PostMapping("/sheet/{sheetId}/publish-assessment")
     public String publishCommentsAndPoints(@PathVariable String exerciseId, @PathVariable String sheetId, ExerciseRoles exerciseRoles, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         ctx
             .update(TEAMRESULTS)
             .set(TEAMRESULTS.HIDECOMMENTS, false)
@@ -1026,6 +1027,7 @@ public class ExerciseAssessmentController {
                 exerciseRoles.applyGroupIdRestriction(TEAMRESULTS.GROUPID)
             )
             .execute();
+        sheetOverviewService.invalidate(exerciseId, sheetId);
         addRedirectMessage(MessageType.SUCCESS, "Bewertung wurden veröffentlicht.", redirectAttributes);
         return "redirect:/exercise/{exerciseId}/sheet/{sheetId}/assessment";
     }
@@ -1035,7 +1037,6 @@ public class ExerciseAssessmentController {
 
     @GetMapping("/sheet/{sheetId}/attendance")
     public String getAttendancePage(@PathVariable String exerciseId, @PathVariable String sheetId, ExerciseRoles exerciseRoles, Model model) {
-        metricsService.registerAccess();
         boolean isAssistant = exerciseRoles.getIsAssistant();
         Object[] data;
         Students stud = STUDENTS.as("stud");
@@ -1082,7 +1083,6 @@ public class ExerciseAssessmentController {
 
     @PostMapping("/sheet/{sheetId}/attendance")
     public String saveAttendance(@PathVariable String exerciseId, @PathVariable String sheetId, @RequestBody MultiValueMap<String, String> formData, ExerciseRoles exerciseRoles, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         Map<Integer, Attendance> attendance = new HashMap<>();
         Pattern pattern = Pattern.compile("user-(\\d+)");
         for (Map.Entry<String, List<String>> entry : formData.entrySet()) {
@@ -1166,7 +1166,6 @@ public class ExerciseAssessmentController {
         @PathVariable int fileId,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
         Annotations a = ANNOTATIONS.as("a");
         Uploads u = a.upload().as("u");
         return ctx.select(a.LINE, a.ANNOTATIONOBJ)
@@ -1205,7 +1204,6 @@ public class ExerciseAssessmentController {
         @RequestParam int lineNr,
         @RequestParam String text
     ) {
-        metricsService.registerAccess();
         boolean fileExists = ctx
             .selectOne()
             .from(UPLOADS)
@@ -1285,60 +1283,6 @@ public class ExerciseAssessmentController {
         ExerciseRoles exerciseRoles,
         HttpServletResponse response
     ) throws IOException {
-        metricsService.registerAccess();
-
-        response.setContentType("application/zip");
-        response.setStatus(HttpServletResponse.SC_OK);
-        String zipFilename = exerciseId + "_" + sheetId + ".zip";
-        response.addHeader("Content-Disposition", "attachment; filename=\"" + zipFilename + "\"");
-
-        // groupId -> teamId -> assignmentId -> [files]
-        Map<String, Map<String, Map<String, List<Tuple2<LocalDateTime, String>>>>> uploads = new HashMap<>();
-        ctx
-            .select(UPLOADS.GROUPID, UPLOADS.TEAMID, UPLOADS.ASSIGNMENT, UPLOADS.UPLOAD_DATE, UPLOADS.FILENAME)
-            .from(UPLOADS)
-            .where(
-                UPLOADS.EXERCISE.eq(exerciseId),
-                UPLOADS.SHEET.eq(sheetId),
-                exerciseRoles.applyGroupIdRestriction(UPLOADS.GROUPID),
-                UPLOADS.DELETE_DATE.isNull()
-            )
-            .forEach(r -> uploads
-                .computeIfAbsent(r.value1(), groupId -> new HashMap<>())
-                .computeIfAbsent(r.value2(), teamId -> new HashMap<>())
-                .computeIfAbsent(r.value3(), assignmentId -> new ArrayList<>())
-                .add(new Tuple2<>(r.value4(), r.value5()))
-            );
-
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()))) {
-            for (Map.Entry<String, Map<String, Map<String, List<Tuple2<LocalDateTime, String>>>>> group : uploads.entrySet()) {
-                String groupId = group.getKey();
-                String groupFolder = groupId + "/";
-                zipOutputStream.putNextEntry(new ZipEntry(groupFolder));
-                for (Map.Entry<String, Map<String, List<Tuple2<LocalDateTime, String>>>> team : group.getValue().entrySet()) {
-                    String teamId = team.getKey();
-                    String teamFolder = groupFolder + teamId + "/";
-                    zipOutputStream.putNextEntry(new ZipEntry(teamFolder));
-                    for (Map.Entry<String, List<Tuple2<LocalDateTime, String>>> assignment : team.getValue().entrySet()) {
-                        String assignmentId = assignment.getKey();
-                        String assignmentFolder = teamFolder + assignmentId + "/";
-                        zipOutputStream.putNextEntry(new ZipEntry(assignmentFolder));
-                        Set<String> existingEntries = new HashSet<>();
-                        for (Tuple2<LocalDateTime, String> file : assignment.getValue()) {
-                            LocalDateTime uploadDate = file.v1;
-                            String filename = file.v2;
-                            if (existingEntries.add(filename)) {
-                                zipOutputStream.putNextEntry(new ZipEntry(assignmentFolder + filename));
-                                Path filePath = uploadManager.getUploadPath(exerciseId, sheetId, assignmentId, groupId, teamId, uploadDate, filename);
-                                try (InputStream fileInputStream = Files.newInputStream(filePath)) {
-                                    IOUtils.copy(fileInputStream, zipOutputStream);
-                                }
-                                zipOutputStream.closeEntry();
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        sheetArchiveService.sendSheetArchive(exerciseId, sheetId, exerciseRoles, response);
     }
 }
@@ -6,7 +6,6 @@ import de.rptu.cs.exclaim.data.AssignmentWithTestInfo;
 import de.rptu.cs.exclaim.data.ExamWithRegistered;
 import de.rptu.cs.exclaim.data.GroupAndTeam;
 import de.rptu.cs.exclaim.data.GroupWithCurrentSizeAndTutors;
-import de.rptu.cs.exclaim.data.NonNullGroupAndTeam;
 import de.rptu.cs.exclaim.data.PreviewFileType;
 import de.rptu.cs.exclaim.data.SheetWithResult;
 import de.rptu.cs.exclaim.data.TeamResultData3;
@@ -26,8 +25,8 @@ import de.rptu.cs.exclaim.data.records.UploadRecord;
 import de.rptu.cs.exclaim.data.records.WarningRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
 import de.rptu.cs.exclaim.jobs.BackgroundJobExecutor;
+import de.rptu.cs.exclaim.jobs.JobPriority;
 import de.rptu.cs.exclaim.jobs.RunTest;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.Keys;
 import de.rptu.cs.exclaim.schema.enums.Attendance;
 import de.rptu.cs.exclaim.schema.enums.GroupJoin;
@@ -52,6 +51,9 @@ import de.rptu.cs.exclaim.security.ExerciseRoles;
 import de.rptu.cs.exclaim.utils.Comparators;
 import de.rptu.cs.exclaim.utils.Markdown;
 import de.rptu.cs.exclaim.utils.RteServices;
+import de.rptu.cs.exclaim.utils.SheetOverviewService;
+import de.rptu.cs.exclaim.utils.TestResultNotifier;
+import de.rptu.cs.exclaim.utils.TextFileWindow;
 import de.rptu.cs.exclaim.utils.UploadManager;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
@@ -65,13 +67,11 @@ import org.jooq.Record2;
 import org.jooq.Record6;
 import org.jooq.Records;
 import org.jooq.impl.DSL;
-import org.jooq.lambda.function.Consumer3;
-import org.jooq.lambda.function.Consumer4;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
@@ -88,16 +88,8 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.util.HtmlUtils;
 
-import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.math.BigDecimal;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CodingErrorAction;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -144,7 +136,6 @@ import static de.rptu.cs.exclaim.utils.UploadManager.INTERNAL_DTF;
 @Slf4j
 public class ExerciseController {
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final DSLContext ctx;
     private final AccessChecker accessChecker;
     private final UploadManager uploadManager;
@@ -152,7 +143,8 @@ public class ExerciseController {
     private final RunTest runTest;
     private final BackgroundJobExecutor backgroundJobExecutor;
     private final RteServices rteServices;
-    private final SimpMessagingTemplate broker;
+    private final SheetOverviewService sheetOverviewService;
+    private final TestResultNotifier testResultNotifier;
 
     @ModelAttribute
     public ExerciseRoles exerciseRoles(@PathVariable String exerciseId) {
@@ -163,7 +155,6 @@ public class ExerciseController {
 
     @GetMapping("")
     public String getExerciseOverviewPage(@PathVariable String exerciseId, ExerciseRoles exerciseRoles, Model model) {
-        metricsService.registerAccess();
         GroupAndTeam groupAndTeam = exerciseRoles.getGroupAndTeam();
         if (groupAndTeam != null) {
             // Retrieve admission information
@@ -276,7 +267,6 @@ public class ExerciseController {
 
     @GetMapping("/groups")
     public String getExerciseGroupsPage(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         model.addAttribute("exercise", ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new));
 
         Groups g = GROUPS.as("g");
@@ -312,7 +302,6 @@ public class ExerciseController {
 
     @PostMapping("/groups/{groupId}/join")
     public String join(@PathVariable String exerciseId, @PathVariable String groupId, ExerciseRoles exerciseRoles, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         GroupAndTeam groupAndTeam = exerciseRoles.getGroupAndTeam();
         if (groupAndTeam != null && groupId != null && groupAndTeam.getGroupId() == null
             && ctx
@@ -341,6 +330,7 @@ public class ExerciseController {
                 .where(STUDENTS.USERID.eq(accessChecker.getUserId()), STUDENTS.EXERCISEID.eq(exerciseId), capacityCondition)
                 .execute() == 1
             ) {
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 addRedirectMessage(MessageType.SUCCESS, msg.getMessage("exercise.group-join-success"), redirectAttributes);
             } else {
                 addRedirectMessage(MessageType.ERROR, msg.getMessage("exercise.group-join-failed"), redirectAttributes);
@@ -353,7 +343,6 @@ public class ExerciseController {
 
     @PostMapping("/groups/{groupId}/leave")
     public String leave(@PathVariable String exerciseId, @PathVariable String groupId, ExerciseRoles exerciseRoles, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         GroupAndTeam groupAndTeam = exerciseRoles.getGroupAndTeam();
         // TODO: Do consistency checks directly in SQL
         if (groupAndTeam != null && groupId != null && groupId.equals(groupAndTeam.getGroupId()) && groupAndTeam.getTeamId() == null
@@ -368,6 +357,7 @@ public class ExerciseController {
             .where(STUDENTS.USERID.eq(accessChecker.getUserId()), STUDENTS.EXERCISEID.eq(exerciseId))
             .execute() == 1
         ) {
+            accessChecker.invalidateExerciseRoles(exerciseId);
             addRedirectMessage(MessageType.SUCCESS, msg.getMessage("exercise.group-leave-success"), redirectAttributes);
         } else {
             addRedirectMessage(MessageType.ERROR, msg.getMessage("exercise.group-leave-failed"), redirectAttributes);
@@ -377,7 +367,6 @@ public class ExerciseController {
 
     @GetMapping("/groups/preferences")
     public String getPreferencesPage(@PathVariable String exerciseId, Model model, ExerciseRoles exerciseRoles, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (!exerciseRoles.isStudent()
             || ctx
             .select(EXERCISES.GROUP_JOIN)
@@ -416,7 +405,6 @@ public class ExerciseController {
 
     @PostMapping("/groups/preferences")
     public String savePreferences(@PathVariable String exerciseId, @RequestBody MultiValueMap<String, String> formData, ExerciseRoles exerciseRoles, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (!exerciseRoles.isStudent()
             || ctx
             .select(EXERCISES.GROUP_JOIN)
@@ -593,17 +581,8 @@ public class ExerciseController {
         @Nullable private TestResultRecord testResult;
     }
 
-    private static class TeamData {
-        private final Map<Integer, TeamResultData3.TeamMember> teamMembers = new HashMap<>();
-        private final Map<String, AssignmentData> assignmentData = new HashMap<>();
-        @Nullable String comment;
-        boolean hideComments;
-        boolean hidePoints;
-    }
-
     @GetMapping("/sheet/{sheetId}/overview")
     public String getSheetOverviewPage(@PathVariable String exerciseId, @PathVariable String sheetId, Model model, ExerciseRoles exerciseRoles) {
-        metricsService.registerAccess();
         model.addAttribute(
             "sheet",
             ctx
@@ -811,206 +790,22 @@ public class ExerciseController {
 
         // Tutor / Assistant
         if (exerciseRoles.canAssess()) {
-            Users u = USERS.as("u");
-            Students s = STUDENTS.as("s");
-            Studentresults sr = STUDENTRESULTS.as("sr");
-            Teamresults tr = TEAMRESULTS.as("tr");
-            TeamresultsAssignment tra = TEAMRESULTS_ASSIGNMENT.as("tra");
-            Testresult test = TESTRESULT.as("test");
-            Testresult test2 = TESTRESULT.as("test2");
-
-            Map<NonNullGroupAndTeam, TeamData> teams = new HashMap<>();
-            Consumer3<String, String, Consumer<TeamData>> withTeamData =
-                (groupId, teamId, consumer) -> consumer.accept(
-                    teams.computeIfAbsent(new NonNullGroupAndTeam(groupId, teamId), ignored -> new TeamData())
-                );
-            Consumer4<String, String, String, Consumer<AssignmentData>> withAssignmentData =
-                (groupId, teamId, assignmentId, consumer) -> withTeamData.accept(
-                    groupId,
-                    teamId,
-                    teamData -> consumer.accept(
-                        teamData.assignmentData.computeIfAbsent(assignmentId, ignored -> new AssignmentData())
-                    )
-                );
-
-            // Collect all teams and their members
-            ctx
-                .select(sr.GROUPID, sr.TEAMID, u.USERID, u.FIRSTNAME, u.LASTNAME, u.STUDENTID, sr.DELTAPOINTS, sr.DELTAPOINTS_REASON)
-                .from(sr)
-                .innerJoin(u).on(u.USERID.eq(sr.USERID))
-                .where(
-                    sr.EXERCISE.eq(exerciseId),
-                    sr.SHEET.eq(sheetId),
-                    sr.TEAMID.isNotNull(),
-                    exerciseRoles.applyGroupIdRestriction(sr.GROUPID)
-                )
-                .unionAll(DSL
-                    .select(s.GROUPID, s.TEAMID, u.USERID, u.FIRSTNAME, u.LASTNAME, u.STUDENTID, DSL.val((BigDecimal) null), DSL.val((String) null))
-                    .from(s)
-                    .innerJoin(u).onKey(Keys.FK__STUDENTS__USERS)
-                    .where(
-                        s.EXERCISEID.eq(exerciseId),
-                        s.TEAMID.isNotNull(),
-                        DSL.notExists(DSL
-                            .selectOne()
-                            .from(sr)
-                            .where(
-                                sr.EXERCISE.eq(exerciseId),
-                                sr.SHEET.eq(sheetId),
-                                sr.USERID.eq(s.USERID)
-                            )
-                        ),
-                        exerciseRoles.applyGroupIdRestriction(s.GROUPID)
-                    )
-                )
-                .forEach(r -> withTeamData.accept(
-                    /* groupId */ r.value1(),
-                    /* teamId */ r.value2(),
-                    teamData -> teamData.teamMembers.put(
-                        /* userId */ r.value3(),
-                        new TeamResultData3.TeamMember(
-                            /* userId */ r.value3(),
-                            /* firstname */ r.value4(),
-                            /* lastname */ r.value5(),
-                            /* studentId */ r.value6(),
-                            /* deltapoints */ r.value7(),
-                            /* deltapointsReason */ r.value8()
-                        )
-                    )
-                ));
-
-            // Teamresults
-            ctx
-                .select(tr.GROUPID, tr.TEAMID, tr.COMMENT, tr.HIDECOMMENTS, tr.HIDEPOINTS)
-                .from(tr)
-                .where(
-                    tr.EXERCISE.eq(exerciseId),
-                    tr.SHEET.eq(sheetId),
-                    exerciseRoles.applyGroupIdRestriction(tr.GROUPID)
-                )
-                .forEach(r -> withTeamData.accept(
-                    /* groupId */ r.value1(),
-                    /* teamId */ r.value2(),
-                    teamData -> {
-                        teamData.comment = r.value3();
-                        teamData.hideComments = r.value4();
-                        teamData.hidePoints = r.value5();
-                    }
-                ));
-
-            // Assignment points
-            ctx
-                .select(tra.GROUPID, tra.TEAMID, tra.ASSIGNMENT, tra.POINTS, tra.COMMENT)
-                .from(tra)
-                .where(
-                    tra.EXERCISE.eq(exerciseId),
-                    tra.SHEET.eq(sheetId),
-                    exerciseRoles.applyGroupIdRestriction(tra.GROUPID)
-                )
-                .forEach(r -> withAssignmentData.accept(
-                    /* groupId */ r.value1(),
-                    /* teamId */ r.value2(),
-                    /* assignmentId */ r.value3(),
-                    assignmentData -> {
-                        assignmentData.points = r.value4();
-                        assignmentData.comment = r.value5();
-                    }
-                ));
-
-            // Uploads
-            ctx
-                .selectFrom(UPLOADS)
-                .where(
-                    UPLOADS.EXERCISE.eq(exerciseId),
-                    UPLOADS.SHEET.eq(sheetId),
-                    exerciseRoles.applyGroupIdRestriction(UPLOADS.GROUPID)
-                )
-                .forEach(upload -> withAssignmentData.accept(
-                    upload.getGroupId(),
-                    upload.getTeamId(),
-                    upload.getAssignmentId(),
-                    assignmentData -> assignmentData.uploads.add(upload)
-                ));
-
-            // Testresults
-            ctx
-                .selectFrom(test)
-                .where(
-                    test.EXERCISE.eq(exerciseId),
-                    test.SHEET.eq(sheetId),
-                    // Limit to most recent test
-                    test.REQUESTNR.eq(DSL
-                        .select(DSL.max(test2.REQUESTNR))
-                        .from(test2)
-                        .where(
-                            test2.EXERCISE.eq(test.EXERCISE),
-                            test2.SHEET.eq(test.SHEET),
-                            test2.ASSIGNMENT.eq(test.ASSIGNMENT),
-                            test2.GROUPID.eq(test.GROUPID),
-                            test2.TEAMID.eq(test.TEAMID)
-                        )
-                    ),
-                    exerciseRoles.applyGroupIdRestriction(test.GROUPID)
-                )
-                .forEach(testResult -> withAssignmentData.accept(
-                    testResult.getGroupId(),
-                    testResult.getTeamId(),
-                    testResult.getAssignmentId(),
-                    assignmentData -> assignmentData.testResult = testResult
-                ));
-
+            model.addAttribute("teamResults", sheetOverviewService.getTeamResults(exerciseId, sheetId, exerciseRoles));
+        }
+        if (exerciseRoles.getIsAssistant()) {
+            // Progress of test runs for all teams
             model.addAttribute(
-                "teamResults",
-                teams.entrySet().stream()
-                    .sorted(Map.Entry.comparingByKey(Comparator
-                        .comparing(GroupAndTeam::getGroupId, Comparators.IDENTIFIER)
-                        .thenComparing(GroupAndTeam::getTeamId, Comparators.IDENTIFIER))
+                "pendingTests",
+                ctx
+                    .select(TESTRESULT.ASSIGNMENT, DSL.count())
+                    .from(TESTRESULT)
+                    .where(
+                        TESTRESULT.EXERCISE.eq(exerciseId),
+                        TESTRESULT.SHEET.eq(sheetId),
+                        TESTRESULT.TIME_DONE.isNull()
                     )
-                    .map(entry -> {
-                        NonNullGroupAndTeam nonNullGroupAndTeam = entry.getKey();
-                        TeamData teamData = entry.getValue();
-                        return new TeamResultData3(
-                            nonNullGroupAndTeam.getGroupId(),
-                            nonNullGroupAndTeam.getTeamId(),
-                            sortedTeamMembers(teamData.teamMembers),
-                            teamData.assignmentData.entrySet().stream().collect(Collectors.toMap(
-                                Map.Entry::getKey,
-                                e -> {
-                                    AssignmentData assignmentData = e.getValue();
-                                    List<TeamResultData3.Upload> currentFiles = new ArrayList<>();
-                                    List<TeamResultData3.Upload> deletedFiles = new ArrayList<>();
-                                    for (UploadRecord upload : assignmentData.uploads) {
-                                        (upload.getDeleteDate() == null ? currentFiles : deletedFiles).add(new TeamResultData3.Upload(
-                                            upload.getFilename(),
-                                            upload.getUploadDate(),
-                                            upload.getDeleteDate(),
-                                            Optional.ofNullable(upload.getUploaderUserId()).map(teamData.teamMembers::get).orElse(null),
-                                            Optional.ofNullable(upload.getDeleterUserId()).map(teamData.teamMembers::get).orElse(null)
-                                        ));
-                                    }
-                                    currentFiles.sort(Comparator.comparing(TeamResultData3.Upload::getFilename));
-                                    deletedFiles.sort(Comparator
-                                        .comparing(TeamResultData3.Upload::getFilename)
-                                        .thenComparing(TeamResultData3.Upload::getUploadDate, Comparator.reverseOrder())
-                                    );
-                                    return new TeamResultData3.AssignmentResult(
-                                        assignmentData.points,
-                                        assignmentData.comment,
-                                        currentFiles,
-                                        deletedFiles,
-                                        assignmentData.uploads.stream()
-                                            .flatMap(upload -> Stream.of(upload.getUploadDate(), upload.getDeleteDate()))
-                                            .filter(Objects::nonNull).max(Comparator.naturalOrder()).orElse(null),
-                                        assignmentData.testResult
-                                    );
-                                }
-                            )),
-                            teamData.comment,
-                            teamData.hideComments,
-                            teamData.hidePoints
-                        );
-                    })
-                    .toList()
+                    .groupBy(TESTRESULT.ASSIGNMENT)
+                    .fetchMap(Record2::value1, Record2::value2)
             );
         }
 
@@ -1027,8 +822,6 @@ public class ExerciseController {
         Model model,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
-
         if (!exerciseRoles.canAssess(groupId)) {
             // Check if student can access
             GroupAndTeam groupAndTeam = exerciseRoles.getGroupAndTeam();
@@ -1108,12 +901,93 @@ public class ExerciseController {
         PreviewFileType previewType;
         @Nullable String langClass;
         @Nullable String fileContent;
+        int firstLine;
+        @Nullable Integer nextLine;
 
         public String getInternalFilename() {
             return INTERNAL_DTF.format(upload.getUploadDate()) + "-" + upload.getFilename();
         }
     }
 
+    @Value
+    private static class TextFileContent {
+        String html;
+        @Nullable Integer nextLine;
+    }
+
+    /**
+     * Render one page of a text file, starting at the given line, with annotations (if requested) and warnings shown
+     * after their lines. The page size is limited by {@link ExclaimProperties.FileView}, only that part of the file is
+     * read and only the annotations and warnings for that part are loaded.
+     */
+    private TextFileContent renderTextFile(UploadRecord upload, int firstLine, boolean withAnnotations) {
+        int fileId = upload.getUploadId();
+        ExclaimProperties.FileView fileView = exclaimProperties.getFileView();
+        int lastLine = (int) Math.min((long) firstLine + fileView.getMaxLines() - 1, Integer.MAX_VALUE);
+        Map<Integer, AnnotationRecord> annotationsByLine = withAnnotations
+            ? ctx
+            .selectFrom(ANNOTATIONS)
+            .where(ANNOTATIONS.FILEID.eq(fileId), ANNOTATIONS.LINE.between(firstLine, lastLine))
+            .fetchMap(AnnotationRecord::getLine)
+            : Collections.emptyMap();
+        Map<Integer, List<WarningRecord>> warningsByLine = new HashMap<>();
+        ctx
+            .selectFrom(WARNINGS)
+            .where(WARNINGS.FILEID.eq(fileId), WARNINGS.LINE.between(firstLine, lastLine))
+            .forEach(warning -> warningsByLine
+                .computeIfAbsent(warning.getLine(), ignored -> new ArrayList<>())
+                .add(warning)
+            );
+
+        StringBuilder builder = new StringBuilder();
+        Integer nextLine;
+        try {
+            nextLine = TextFileWindow.read(
+                uploadManager.getUploadPath(upload),
+                firstLine,
+                fileView.getMaxLines(),
+                fileView.getMaxBytes().toBytes(),
+                (linenum, line, truncated) -> {
+                    builder.append(HtmlUtils.htmlEscape(line.replace("\t", "    ")));
+                    if (truncated) {
+                        builder.append("<span class=\"text-muted nocode\"> [...]</span>");
+                    }
+                    AnnotationRecord annotation = annotationsByLine.get(linenum);
+                    if (annotation != null) {
+                        builder.append("<div class=\"annotationbox commentbox popover right nocode\"><div class=\"arrow\"></div><div class=\"comment popover-content\">");
+                        String html = Markdown.toHtml(annotation.getAnnotationObj());
+                        html = html.replace("\n", " ").replace("\r", " ");
+                        builder.append(html);
+                        builder.append("</div></div>");
+                    }
+                    List<WarningRecord> lineWarnings = warningsByLine.get(linenum);
+                    if (lineWarnings != null) {
+                        for (WarningRecord warning : lineWarnings) {
+                            String message = warning.getMessage();
+                            String infoUrl = warning.getInfoUrl();
+                            String markdown = infoUrl == null
+                                ? message
+                                : Objects.toString(message, "") + "\n [Weitere Infos](" + infoUrl + ")";
+                            if (markdown != null) {
+                                builder.append("<div class=\"warningbox commentbox popover right nocode\"><div class=\"comment popover-content\">");
+                                String html = Markdown.toHtml(markdown);
+                                html = html.replace("\n", " ").replace("\r", " ");
+                                builder.append(html);
+                                builder.append("</div></div>");
+                            }
+                        }
+                    }
+                    builder.append(System.lineSeparator());
+                }
+            );
+        } catch (IOException e) {
+            log.error("Error reading upload {}", upload, e);
+            builder.append("Error loading file ").append(upload.getFilename());
+            nextLine = null;
+        }
+        return new TextFileContent(builder.toString(), nextLine);
+    }
+
     @GetMapping("/sheet/{sheetId}/assignment/{assignmentId}/team/{groupId}/{teamId}/view/{internalFilename:\\d{14}-.+}")
     public String getViewFilePage(
         @PathVariable String exerciseId,
@@ -1122,10 +996,10 @@ public class ExerciseController {
         @PathVariable String groupId,
         @PathVariable String teamId,
         @PathVariable String internalFilename,
+        @RequestParam(defaultValue = "1") int from,
         Model model,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
         int userId = accessChecker.getUserId();
         boolean canAssess = exerciseRoles.canAssess(groupId);
         if (!canAssess) {
@@ -1170,12 +1044,13 @@ public class ExerciseController {
         String extension = dotIndex < 0 ? "" : filename.substring(dotIndex + 1);
 
         PreviewFileType previewFileType = PreviewFileType.byExtension(extension);
+        int firstLine = Math.max(from, 1);
         String langClass = null;
         String fileContent = null;
+        Integer nextLine = null;
         if (previewFileType == PreviewFileType.Text) {
             int fileId = upload.getUploadId();
-            Map<Integer, AnnotationRecord> annotationsByLine;
-            if (canAssess
+            boolean showAnnotations = canAssess
                 || !ctx
                 .select(TEAMRESULTS.HIDECOMMENTS)
                 .from(TEAMRESULTS)
@@ -1186,13 +1061,8 @@ public class ExerciseController {
                     TEAMRESULTS.TEAMID.eq(teamId)
                 )
                 .fetchOptional(Record1::value1)
-                .orElse(false)
-            ) {
-                annotationsByLine = ctx
-                    .selectFrom(ANNOTATIONS)
-                    .where(ANNOTATIONS.FILEID.eq(fileId))
-                    .fetchMap(AnnotationRecord::getLine);
-
+                .orElse(false);
+            if (showAnnotations) {
                 // Mark read
                 ctx
                     .deleteFrom(UNREAD)
@@ -1201,68 +1071,18 @@ public class ExerciseController {
                         UNREAD.USERID.eq(userId)
                     )
                     .execute();
-            } else {
-                annotationsByLine = Collections.emptyMap();
-            }
-            Map<Integer, List<WarningRecord>> warningsByLine = new HashMap<>();
-            ctx
-                .selectFrom(WARNINGS)
-                .where(WARNINGS.FILEID.eq(fileId))
-                .forEach(warning -> warningsByLine
-                    .computeIfAbsent(warning.getLine(), ignored -> new ArrayList<>())
-                    .add(warning)
-                );
-
-            Path file = uploadManager.getUploadPath(upload);
-            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
-            decoder.onMalformedInput(CodingErrorAction.REPLACE);
-
-            StringBuilder builder = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), decoder))) {
-                String line;
-                int linenum = 1;
-                while ((line = reader.readLine()) != null) {
-                    builder.append(HtmlUtils.htmlEscape(line.replaceAll("\t", "    ")));
-                    AnnotationRecord annotation = annotationsByLine.get(linenum);
-                    if (annotation != null) {
-                        builder.append("<div class=\"annotationbox commentbox popover right nocode\"><div class=\"arrow\"></div><div class=\"comment popover-content\">");
-                        String html = Markdown.toHtml(annotation.getAnnotationObj());
-                        html = html.replace("\n", " ").replace("\r", " ");
-                        builder.append(html);
-                        builder.append("</div></div>");
-                    }
-                    List<WarningRecord> lineWarnings = warningsByLine.get(linenum);
-                    if (lineWarnings != null) {
-                        for (WarningRecord warning : lineWarnings) {
-                            String message = warning.getMessage();
-                            String infoUrl = warning.getInfoUrl();
-                            String markdown = infoUrl == null
-                                ? message
-                                : Objects.toString(message, "") + "\n [Weitere Infos](" + infoUrl + ")";
-                            if (markdown != null) {
-                                builder.append("<div class=\"warningbox commentbox popover right nocode\"><div class=\"comment popover-content\">");
-                                String html = Markdown.toHtml(markdown);
-                                html = html.replace("\n", " ").replace("\r", " ");
-                                builder.append(html);
-                                builder.append("</div></div>");
-                            }
-                        }
-                    }
-                    builder.append(System.lineSeparator());
-                    linenum++;
-                }
-            } catch (IOException e) {
-                log.error("Error reading upload {}", upload, e);
-                builder.append("Error loading file ").append(filename);
             }
 
+            TextFileContent content = renderTextFile(upload, firstLine, showAnnotations);
             langClass = PreviewFileType.LANG_CLASS_MAPPING.getOrDefault(extension, "");
-            fileContent = builder.toString();
+            fileContent = content.getHtml();
+            nextLine = content.getNextLine();
         }
 
         model.addAttribute("upload", new UploadModel(
-            upload, previewFileType, langClass, fileContent
+            upload, previewFileType, langClass, fileContent, firstLine, nextLine
         ));
+        model.addAttribute("previousLine", firstLine > 1 ? Math.max(firstLine - exclaimProperties.getFileView().getMaxLines(), 1) : null);
         model.addAttribute("canAssess", canAssess);
 
         return "exercise/file-page";
@@ -1292,7 +1112,6 @@ public class ExerciseController {
         Model model,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
         int userId = accessChecker.getUserId();
         boolean canAssess = exerciseRoles.canAssess(groupId);
         if (!canAssess) {
@@ -1341,10 +1160,10 @@ public class ExerciseController {
                 PreviewFileType previewFileType = PreviewFileType.byExtension(extension);
                 String langClass = null;
                 String fileContent = null;
+                Integer nextLine = null;
                 if (previewFileType == PreviewFileType.Text) {
                     int fileId = upload.getUploadId();
-                    Map<Integer, AnnotationRecord> annotationsByLine;
-                    if (canAssess
+                    boolean showAnnotations = canAssess
                         || !ctx
                         .select(TEAMRESULTS.HIDECOMMENTS)
                         .from(TEAMRESULTS)
@@ -1355,72 +1174,17 @@ public class ExerciseController {
                             TEAMRESULTS.TEAMID.eq(teamId)
                         )
                         .fetchOptional(Record1::value1)
-                        .orElse(false)
-                    ) {
-                        annotationsByLine = ctx
-                            .selectFrom(ANNOTATIONS)
-                            .where(ANNOTATIONS.FILEID.eq(fileId))
-                            .fetchMap(AnnotationRecord::getLine);
+                        .orElse(false);
+                    if (showAnnotations) {
                         markAsRead.add(fileId);
-                    } else {
-                        annotationsByLine = Collections.emptyMap();
-                    }
-                    Map<Integer, List<WarningRecord>> warningsByLine = new HashMap<>();
-                    ctx
-                        .selectFrom(WARNINGS)
-                        .where(WARNINGS.FILEID.eq(fileId))
-                        .forEach(warning -> warningsByLine
-                            .computeIfAbsent(warning.getLine(), ignored -> new ArrayList<>())
-                            .add(warning)
-                        );
-
-                    Path file = uploadManager.getUploadPath(upload);
-                    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
-                    decoder.onMalformedInput(CodingErrorAction.REPLACE);
-
-                    StringBuilder builder = new StringBuilder();
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), decoder))) {
-                        String line;
-                        int linenum = 1;
-                        while ((line = reader.readLine()) != null) {
-                            builder.append(HtmlUtils.htmlEscape(line.replaceAll("\t", "    ")));
-                            AnnotationRecord annotation = annotationsByLine.get(linenum);
-                            if (annotation != null) {
-                                builder.append("<div class=\"annotationbox commentbox popover right nocode\"><div class=\"arrow\"></div><div class=\"comment popover-content\">");
-                                String html = Markdown.toHtml(annotation.getAnnotationObj());
-                                html = html.replace("\n", " ").replace("\r", " ");
-                                builder.append(html);
-                                builder.append("</div></div>");
-                            }
-                            List<WarningRecord> lineWarnings = warningsByLine.get(linenum);
-                            if (lineWarnings != null) {
-                                for (WarningRecord warning : lineWarnings) {
-                                    String message = warning.getMessage();
-                                    String infoUrl = warning.getInfoUrl();
-                                    String markdown = infoUrl == null
-                                        ? message
-                                        : Objects.toString(message, "") + "\n [Weitere Infos](" + infoUrl + ")";
-                                    if (markdown != null) {
-                                        builder.append("<div class=\"warningbox commentbox popover right nocode\"><div class=\"comment popover-content\">");
-                                        String html = Markdown.toHtml(markdown);
-                                        html = html.replace("\n", " ").replace("\r", " ");
-                                        builder.append(html);
-                                        builder.append("</div></div>");
-                                    }
-                                }
-                            }
-                            builder.append(System.lineSeparator());
-                            linenum++;
-                        }
-                    } catch (IOException e) {
-                        log.error("Error reading upload {}", upload, e);
-                        builder.append("Error loading file ").append(filename);
                     }
 
+                    TextFileContent content = renderTextFile(upload, 1, showAnnotations);
                     langClass = PreviewFileType.LANG_CLASS_MAPPING.getOrDefault(extension, "");
-                    fileContent = builder.toString();
+                    fileContent = content.getHtml();
+                    nextLine = content.getNextLine();
                 }
-                uploadModels.add(new UploadModel(upload, previewFileType, langClass, fileContent));
+                uploadModels.add(new UploadModel(upload, previewFileType, langClass, fileContent, 1, nextLine));
             }
 
             if (!markAsRead.isEmpty()) {
@@ -1453,7 +1217,6 @@ public class ExerciseController {
         @RequestParam MultipartFile file,
         ExerciseRoles exerciseRoles
     ) throws IOException {
-        metricsService.registerAccess();
         String filename = file.getOriginalFilename();
         if (StringUtils.isEmpty(filename)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Keine Datei angegeben");
@@ -1518,10 +1281,8 @@ public class ExerciseController {
         record.setUploadDate(uploadDate);
         record.insert();
 
-        Path destination = uploadManager.getUploadPath(record);
-        File destinationDir = Objects.requireNonNull(destination.getParent()).toFile();
-        destinationDir.mkdirs();
-        file.transferTo(destination);
+        uploadManager.storeUpload(record, file);
+        sheetOverviewService.invalidate(exerciseId, sheetId);
 
         return ResponseEntity.ok("Datei hochgeladen");
     }
@@ -1537,8 +1298,6 @@ public class ExerciseController {
         RedirectAttributes redirectAttributes,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
-
         // Check if student can upload for that team
         int userId = accessChecker.getUserId();
         GroupAndTeam groupAndTeam = exerciseRoles.getGroupAndTeam();
@@ -1583,6 +1342,7 @@ public class ExerciseController {
             upload.setDeleteDate(LocalDateTime.now(exclaimProperties.getTimezone()));
             upload.setDeleterUserId(userId);
             upload.update();
+            sheetOverviewService.invalidate(exerciseId, sheetId);
             addRedirectMessage(MessageType.SUCCESS, "Die Datei " + upload.getFilename() + " wurde in den Papierkorb verschoben.", redirectAttributes);
         }
 
@@ -1600,7 +1360,6 @@ public class ExerciseController {
         Model model,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
         int userId = accessChecker.getUserId();
         boolean canAssess = exerciseRoles.canAssess(groupId);
         if (!canAssess) {
@@ -1652,7 +1411,6 @@ public class ExerciseController {
         @RequestParam(required = false, defaultValue = "") String snapshot,
         ExerciseRoles exerciseRoles
     ) {
-        metricsService.registerAccess();
         int userId = accessChecker.getUserId();
         boolean canAssess = exerciseRoles.canAssess(groupId);
         if (!canAssess) {
@@ -1721,14 +1479,105 @@ public class ExerciseController {
         record.setTimeRequest(timeRequest);
         record.setSnapshot(snapshotTime);
         record.insert();
+        sheetOverviewService.invalidate(exerciseId, sheetId);
 
         runTest.submit(exerciseId, sheetId, assignmentId, groupId, teamId, requestNr);
         backgroundJobExecutor.pollNow();
-        broker.convertAndSend(
-            RteServices.testResultsChannel(exerciseId, sheetId, groupId, teamId),
+        testResultNotifier.send(
             new RteServices.TestResultMsg(exerciseId, sheetId, assignmentId, groupId, teamId, requestNr, "started")
         );
 
         return "redirect:/exercise/{exerciseId}/sheet/{sheetId}/overview";
     }
+
+    @PostMapping("/sheet/{sheetId}/assignment/{assignmentId}/test-all")
+    @PreAuthorize("#exerciseRoles.isAssistant")
+    @Transactional
+    public String requestTestsForAllTeams(
+        @PathVariable String exerciseId,
+        @PathVariable String sheetId,
+        @PathVariable String assignmentId,
+        ExerciseRoles exerciseRoles,
+        RedirectAttributes redirectAttributes
+    ) {
+        if (!rteServices.isTestAvailable(exerciseId, sheetId, assignmentId)) {
+            throw new NotFoundException();
+        }
+        // Lock the assignment, such that concurrent requests to test all teams see each other's jobs
+        ctx
+            .selectFrom(ASSIGNMENTS)
+            .where(ASSIGNMENTS.EXERCISE.eq(exerciseId))
+            .and(ASSIGNMENTS.SHEET.eq(sheetId))
+            .and(ASSIGNMENTS.ID.eq(assignmentId))
+            .forUpdate()
+            .fetchOptional()
+            .orElseThrow(NotFoundException::new);
+        LocalDateTime timeRequest = LocalDateTime.now(exclaimProperties.getTimezone());
+        // Teams whose previous test has not finished yet are skipped, their result will be up-to-date anyway
+        Set<GroupAndTeam> pendingTeams = runTest.getTeamsWithPendingTests(exerciseId, sheetId, assignmentId);
+
+        // Snapshot and next request number of all teams with current uploads, as in requestTest
+        Field<Integer> nextRequestNr = DSL.field(
+            DSL
+                .select(DSL.ifnull(DSL.max(TESTRESULT.REQUESTNR).plus(1), 1))
+                .from(TESTRESULT)
+                .where(
+                    TESTRESULT.EXERCISE.eq(exerciseId),
+                    TESTRESULT.SHEET.eq(sheetId),
+                    TESTRESULT.ASSIGNMENT.eq(assignmentId),
+                    TESTRESULT.GROUPID.eq(UPLOADS.GROUPID),
+                    TESTRESULT.TEAMID.eq(UPLOADS.TEAMID)
+                )
+        );
+        List<TestResultRecord> candidates = ctx
+            .select(
+                UPLOADS.GROUPID,
+                UPLOADS.TEAMID,
+                DSL.greatest(DSL.max(UPLOADS.UPLOAD_DATE), DSL.max(UPLOADS.DELETE_DATE)),
+                nextRequestNr
+            )
+            .from(UPLOADS)
+            .where(
+                UPLOADS.EXERCISE.eq(exerciseId),
+                UPLOADS.SHEET.eq(sheetId),
+                UPLOADS.ASSIGNMENT.eq(assignmentId)
+            )
+            .groupBy(UPLOADS.GROUPID, UPLOADS.TEAMID)
+            .having(DSL.count(UPLOADS.DELETE_DATE).lt(DSL.count())) // at least one upload is not deleted
+            .fetch(r -> {
+                TestResultRecord record = ctx.newRecord(TESTRESULT);
+                record.setExerciseId(exerciseId);
+                record.setSheetId(sheetId);
+                record.setAssignmentId(assignmentId);
+                record.setGroupId(r.value1());
+                record.setTeamId(r.value2());
+                record.setRequestNr(r.value4());
+                record.setTimeRequest(timeRequest);
+                record.setSnapshot(r.value3());
+                return record;
+            });
+        List<TestResultRecord> records = candidates.stream()
+            .filter(record -> !pendingTeams.contains(new GroupAndTeam(record.getGroupId(), record.getTeamId())))
+            .toList();
+        int skipped = candidates.size() - records.size();
+
+        if (!records.isEmpty()) {
+            ctx.batchInsert(records).execute();
+            sheetOverviewService.invalidate(exerciseId, sheetId);
+            runTest.submitAll(
+                records.stream()
+                    .map(record -> new RteServices.TestRequest(
+                        exerciseId, sheetId, assignmentId, record.getGroupId(), record.getTeamId(), record.getRequestNr()
+                    ))
+                    .toList(),
+                JobPriority.LOW
+            );
+            backgroundJobExecutor.pollNow();
+        }
+        log.info("Assistant {} requested tests of {} teams for {}/{}/{}, skipped {} teams with pending tests", accessChecker.getUser(), records.size(), exerciseId, sheetId, assignmentId, skipped);
+
+        addRedirectMessage(MessageType.SUCCESS, "Tests für " + records.size() + " Teams gestartet."
+            + (skipped > 0 ? " " + skipped + " Teams mit laufendem Test wurden übersprungen." : ""), redirectAttributes);
+        return "redirect:/exercise/{exerciseId}/sheet/{sheetId}/overview";
+    }
 }
@@ -1,7 +1,6 @@
 package de.rptu.cs.exclaim.controllers;
 
 import de.rptu.cs.exclaim.data.records.ExerciseRecord;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.utils.Comparators;
 import lombok.RequiredArgsConstructor;
@@ -26,13 +25,11 @@ import static de.rptu.cs.exclaim.schema.tables.Tutors.TUTORS;
 @RequiredArgsConstructor
 @Slf4j
 public class HomeController {
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
 
     @GetMapping("/")
     public String getHome(Model model) {
-        metricsService.registerAccess();
         int userId = accessChecker.getUserId();
         List<ExerciseRecord> exercises = ctx.fetch(EXERCISES, EXERCISES.ID.in(DSL
             .select(STUDENTS.EXERCISEID).from(STUDENTS).where(STUDENTS.USERID.eq(userId))
@@ -5,13 +5,13 @@ import de.rptu.cs.exclaim.data.interfaces.IUser;
 import de.rptu.cs.exclaim.data.records.AssistantRecord;
 import de.rptu.cs.exclaim.data.records.ExerciseRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.enums.GroupJoin;
 import de.rptu.cs.exclaim.schema.enums.Term;
 import de.rptu.cs.exclaim.schema.tables.Assistants;
 import de.rptu.cs.exclaim.schema.tables.Users;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.utils.Comparators;
+import de.rptu.cs.exclaim.utils.SheetArchiveService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
@@ -53,9 +53,9 @@ import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
 @RequiredArgsConstructor
 public class LectureAdminController {
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
+    private final SheetArchiveService sheetArchiveService;
 
     @Value
     public static class CreateLectureForm {
@@ -76,7 +76,6 @@ public class LectureAdminController {
 
     @GetMapping("/lectures")
     public String getLectureAdminPage(Model model) {
-        metricsService.registerAccess();
         List<ExerciseRecord> exercises = ctx.fetch(EXERCISES);
         exercises.sort(Comparators.EXERCISE_BY_TERM);
         model.addAttribute("exercises", exercises);
@@ -85,7 +84,6 @@ public class LectureAdminController {
 
     @GetMapping("/lectures/create")
     public String getCreateLecturePage(Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new CreateLectureForm("", "", "", null, ""));
         return "lecture/create";
     }
@@ -93,7 +91,6 @@ public class LectureAdminController {
     @PostMapping("/lectures/create")
     @Transactional
     public String create(@Valid CreateLectureForm createLectureForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         short year = 0;
         if (StringUtils.isNotEmpty(createLectureForm.year)) {
             try {
@@ -124,7 +121,6 @@ public class LectureAdminController {
 
     @GetMapping("/lectures/{exerciseId}/edit")
     public String getEditLecturePage(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         ExerciseRecord exerciseRecord = ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new);
         model.addAttribute("exercise", exerciseRecord);
         short year = exerciseRecord.getYear();
@@ -140,7 +136,6 @@ public class LectureAdminController {
     @PostMapping("/lectures/{exerciseId}/edit")
     @Transactional
     public String edit(@PathVariable String exerciseId, @Valid EditLectureForm editLectureForm, BindingResult bindingResult, Model model, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         ExerciseRecord exerciseRecord = ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new);
         short year = 0;
         if (StringUtils.isNotEmpty(editLectureForm.year)) {
@@ -169,13 +164,14 @@ public class LectureAdminController {
     @PostMapping("/lectures/{exerciseId}/delete")
     @Transactional
     public String delete(@PathVariable String exerciseId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         try {
             if (ctx
                 .deleteFrom(EXERCISES)
                 .where(EXERCISES.ID.eq(exerciseId))
                 .execute() == 1
             ) {
+                accessChecker.invalidateExerciseRoles(exerciseId);
+                sheetArchiveService.removeExerciseArchives(exerciseId);
                 log.info("Lecture {} has been deleted by admin {}", exerciseId, accessChecker.getUser());
                 addRedirectMessage(MessageType.SUCCESS, msg.getMessage("lecture-admin.delete-lecture-success", new Object[]{exerciseId}), redirectAttributes);
             }
@@ -187,7 +183,6 @@ public class LectureAdminController {
 
     @GetMapping("/lectures/{exerciseId}/assistants")
     public String getAssistantsPage(@PathVariable String exerciseId, Model model) {
-        metricsService.registerAccess();
         Assistants a = ASSISTANTS.as("a");
         Users u = a.user().as("u");
         List<IUser> assistants = ctx
@@ -203,7 +198,6 @@ public class LectureAdminController {
     @PostMapping("/lectures/{exerciseId}/assistants")
     @Transactional
     public String addAssistant(@PathVariable String exerciseId, @RequestParam String username, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         ExerciseRecord exerciseRecord = ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new);
         Integer assistantUserId = ctx
             .select(USERS.USERID)
@@ -216,6 +210,7 @@ public class LectureAdminController {
             assistant.setUserId(assistantUserId);
             try {
                 assistant.insert();
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 log.info("Assistant {} has been added by admin {}", assistant, accessChecker.getUser());
                 addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
             } catch (DuplicateKeyException e) {
@@ -230,12 +225,12 @@ public class LectureAdminController {
     @PostMapping("/lectures/{exerciseId}/assistants/{userId}/delete")
     @Transactional
     public String deleteAssistant(@PathVariable String exerciseId, @PathVariable int userId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (ctx
             .deleteFrom(ASSISTANTS)
             .where(ASSISTANTS.USERID.eq(userId), ASSISTANTS.EXERCISEID.eq(exerciseId))
             .execute() == 1
         ) {
+            accessChecker.invalidateExerciseRoles(exerciseId);
             log.info("Assistant user id {} for lecture {} has been deleted by admin {}", userId, exerciseId, accessChecker.getUser());
             addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
         }
@@ -5,7 +5,6 @@ import de.rptu.cs.exclaim.data.ExerciseWithRegistered;
 import de.rptu.cs.exclaim.data.records.ExerciseRecord;
 import de.rptu.cs.exclaim.data.records.StudentRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.Keys;
 import de.rptu.cs.exclaim.schema.tables.Exercises;
 import de.rptu.cs.exclaim.schema.tables.Students;
@@ -36,13 +35,11 @@ import static de.rptu.cs.exclaim.schema.tables.Students.STUDENTS;
 @RequiredArgsConstructor
 public class LectureJoinController {
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
 
     @GetMapping("/join")
     public String getLectureJoinPage(Model model) {
-        metricsService.registerAccess();
         Exercises e = EXERCISES.as("e");
         Students s = STUDENTS.as("s");
         List<ExerciseWithRegistered> exercises = ctx
@@ -62,7 +59,6 @@ public class LectureJoinController {
     @PostMapping("/join/{exerciseId}")
     @Transactional
     public String join(@PathVariable String exerciseId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         ExerciseRecord exercise = ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new);
         if (!exercise.getRegistrationOpen()) {
             addRedirectMessage(MessageType.ERROR, msg.getMessage("lecture-join.cannot-join"), redirectAttributes);
@@ -74,6 +70,7 @@ public class LectureJoinController {
         studentRecord.setUserId(accessChecker.getUserId());
         try {
             studentRecord.insert();
+            accessChecker.invalidateExerciseRoles(exerciseId);
         } catch (DuplicateKeyException e) {
             // already joined, ignore exception
         }
@@ -90,7 +87,6 @@ public class LectureJoinController {
     @PostMapping("/leave/{exerciseId}")
     @Transactional
     public String leave(@PathVariable String exerciseId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         ExerciseRecord exercise = ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(NotFoundException::new);
         if (!exercise.getRegistrationOpen()) {
             addRedirectMessage(MessageType.ERROR, msg.getMessage("lecture-join.cannot-leave"), redirectAttributes);
@@ -100,6 +96,7 @@ public class LectureJoinController {
                     .deleteFrom(STUDENTS)
                     .where(STUDENTS.USERID.eq(accessChecker.getUserId()), STUDENTS.EXERCISEID.eq(exerciseId))
                     .execute();
+                accessChecker.invalidateExerciseRoles(exerciseId);
             } catch (DataIntegrityViolationException e) {
                 addRedirectMessage(MessageType.ERROR, msg.getMessage("lecture-join.cannot-leave"), redirectAttributes);
             }
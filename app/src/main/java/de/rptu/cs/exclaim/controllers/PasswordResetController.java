@@ -6,7 +6,6 @@ import de.rptu.cs.exclaim.data.records.UserRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
 import de.rptu.cs.exclaim.jobs.BackgroundJobExecutor;
 import de.rptu.cs.exclaim.jobs.SendPasswordResetMail;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.tables.PasswordResets;
 import de.rptu.cs.exclaim.schema.tables.Users;
 import de.rptu.cs.exclaim.security.AccessChecker;
@@ -66,7 +65,6 @@ public class PasswordResetController {
 
     private final ExclaimProperties exclaimProperties;
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final ExclaimPasswordEncoder pe;
     private final RandomTokenGenerator randomTokenGenerator;
@@ -91,14 +89,12 @@ public class PasswordResetController {
 
     @GetMapping(REQUEST_PATH)
     public String getRequestPasswordPage() {
-        metricsService.registerAccess();
         return "account/request-password";
     }
 
     @Transactional
     @PostMapping(REQUEST_PATH)
     public String requestPassword(@RequestParam String email, Model model) {
-        metricsService.registerAccess();
         List<UserRecord> users = email.isEmpty()
             ? Collections.emptyList()
             : ctx.fetch(USERS, DSL.lower(USERS.EMAIL).eq(email.toLowerCase(Locale.ROOT)).and(USERS.USERNAME.isNotNull()));
@@ -148,7 +144,6 @@ public class PasswordResetController {
     @Transactional
     @GetMapping(RESET_PATH)
     public String getResetPasswordPage(@RequestParam("user") String username, @RequestParam("reset") String code, Model model) {
-        metricsService.registerAccess();
         PasswordResets p = PASSWORD_RESETS.as("p");
         Users u = p.user().as("u");
         UserRecord userRecord = ctx
@@ -179,7 +174,6 @@ public class PasswordResetController {
     @PostMapping(RESET_PATH)
     @Transactional
     public String resetPassword(@Valid ResetPasswordForm resetPasswordForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (!Objects.equals(resetPasswordForm.password, resetPasswordForm.password2)) {
             bindingResult.rejectValue("password2", "NotMatch");
         }
@@ -203,6 +197,7 @@ public class PasswordResetController {
             PasswordResetRecord passwordResetRecord = result.value2();
             userRecord.setPassword(pe.encode(resetPasswordForm.password));
             userRecord.update();
+            accessChecker.invalidateUserSnapshots(userRecord.getUserId());
             passwordResetRecord.delete();
             log.info("Password for user {} has been changed via password reset", userRecord);
             addRedirectMessage(MessageType.SUCCESS, msg.getMessage("reset-password.success"), redirectAttributes);
@@ -5,7 +5,6 @@ import de.rptu.cs.exclaim.data.records.UserRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
 import de.rptu.cs.exclaim.jobs.BackgroundJobExecutor;
 import de.rptu.cs.exclaim.jobs.SendAccountActivationMail;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.security.ExclaimPasswordEncoder;
 import de.rptu.cs.exclaim.security.SecurityConfig.PublicPath;
@@ -70,7 +69,6 @@ public class RegistrationController {
 
     private final ExclaimProperties exclaimProperties;
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
     private final ExclaimPasswordEncoder exclaimPasswordEncoder;
@@ -97,7 +95,6 @@ public class RegistrationController {
 
     @GetMapping(REGISTER_PATH)
     public String getRegistrationPage(Model model) {
-        metricsService.registerAccess();
         model.addAttribute(new RegistrationForm("", "", "", "", "", "", msg.getBestLanguage(), "", ""));
         model.addAttribute("supportedLanguages", msg.getSupportedLanguages());
         return "account/register";
@@ -105,7 +102,6 @@ public class RegistrationController {
 
     @PostMapping(REGISTER_PATH)
     public String register(@Valid RegistrationForm registrationForm, BindingResult bindingResult, Model model, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         String studentId = StringUtils.defaultIfEmpty(registrationForm.studentId, null);
         if (!Objects.equals(registrationForm.email, registrationForm.email2)) {
             bindingResult.rejectValue("email2", "NotMatch");
@@ -208,7 +204,6 @@ public class RegistrationController {
     @GetMapping(ACTIVATE_PATH)
     @Transactional
     public String activate(@RequestParam("user") String username, @RequestParam("code") String code, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         UserRecord userRecord = ctx
             .selectFrom(USERS)
             .where(USERS.USERNAME.eq(username))
@@ -1,6 +1,5 @@
 package de.rptu.cs.exclaim.controllers;
 
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.utils.JsonUtils;
 import lombok.RequiredArgsConstructor;
@@ -39,7 +38,6 @@ import static de.rptu.cs.exclaim.controllers.ControllerUtils.addMessage;
 @Allow
 @Allow.PlainSQL
 public class SqlController {
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final TransactionTemplate transactionTemplate;
     private final DSLContext ctx;
@@ -50,13 +48,11 @@ public class SqlController {
 
     @GetMapping("/sql")
     public String getSqlPage() {
-        metricsService.registerAccess();
         return "sql";
     }
 
     @PostMapping("/sql/query")
     public String submitQuery(@RequestParam String query, Model model) {
-        metricsService.registerAccess();
         model.addAttribute("query", query);
         if (log.isDebugEnabled()) {
             log.debug("Admin user {} is executing query:\n{}", accessChecker.getUser(), query);
@@ -81,7 +77,6 @@ public class SqlController {
 
     @PostMapping("/sql/update")
     public String submitUpdate(@RequestParam String query, @RequestParam("expected-updates") int expectedUpdates, Model model) {
-        metricsService.registerAccess();
         model.addAttribute("query", query);
         if (log.isDebugEnabled()) {
             log.debug("Admin user {} is executing update:\n{}", accessChecker.getUser(), query);
@@ -91,6 +86,7 @@ public class SqlController {
                 // INSERT
                 transactionTemplate.execute((transactionStatus) -> {
                     int affectedRows = ctx.execute(query);
+                    accessChecker.invalidateExerciseRoles();
                     if (affectedRows == expectedUpdates) {
                         log.info("Admin user {} executed INSERT statement with {} rows affected:\n{}", accessChecker.getUser(), affectedRows, query);
                         addMessage(MessageType.SUCCESS, "Database was updated with " + affectedRows + " rows affected.", model);
@@ -112,6 +108,7 @@ public class SqlController {
                         String[] columns = tuple.v1;
                         List<Object[]> rowsBefore = tuple.v2;
                         int affectedRows = ctx.execute(query);
+                        accessChecker.invalidateExerciseRoles();
                         if (affectedRows == expectedUpdates) {
                             tuple = executeQuery(selectQuery);
                             List<Object[]> rowsAfter = tuple.v2;
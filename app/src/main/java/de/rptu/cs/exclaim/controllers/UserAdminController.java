@@ -4,7 +4,6 @@ import de.rptu.cs.exclaim.ExclaimProperties;
 import de.rptu.cs.exclaim.data.interfaces.IUser;
 import de.rptu.cs.exclaim.data.records.UserRecord;
 import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.tables.Assistants;
 import de.rptu.cs.exclaim.schema.tables.Students;
 import de.rptu.cs.exclaim.schema.tables.Tutors;
@@ -70,7 +69,6 @@ import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
 public class UserAdminController {
     private final ExclaimProperties exclaimProperties;
     private final ICUMessageSourceAccessor msg;
-    private final MetricsService metricsService;
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
     private final ExclaimPasswordEncoder pe;
@@ -108,8 +106,6 @@ public class UserAdminController {
     @GetMapping("/user")
     @PreAuthorize("@accessChecker.isAdmin() || @accessChecker.isAssistantForAnyExercise()")
     public String getUsersPage(Model model) {
-        metricsService.registerAccess();
-
         // The data is passed to the template in JSON format (for table rendering via JavaScript).
         // It is an array of arrays: the outer one for rows, the inner one for columns.
         Object[] data;
@@ -161,8 +157,6 @@ public class UserAdminController {
     @GetMapping("/user/{userId}")
     @PreAuthorize("@accessChecker.isAdmin() || @accessChecker.isAssistantForAnyExercise()")
     public String getUserPage(@PathVariable int userId, Model model) {
-        metricsService.registerAccess();
-
         IUser user = ctx.fetchOptional(USERS, USERS.USERID.eq(userId)).orElseThrow(NotFoundException::new);
         List<String> studentExercises = ctx
             .select(STUDENTS.EXERCISEID)
@@ -220,7 +214,6 @@ public class UserAdminController {
     @PreAuthorize("@accessChecker.isAdmin()")
     @Transactional
     public String editUser(@PathVariable int userId, @Valid EditUserForm editUserForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         UserRecord userRecord = ctx
             .selectFrom(USERS)
             .where(USERS.USERID.eq(userId))
@@ -273,6 +266,7 @@ public class UserAdminController {
 
                 try {
                     userRecord.update();
+                    accessChecker.invalidateUserSnapshots(userId);
                     log.info("User data for user {} has been changed to {} (by admin {})", originalUserRecord, userRecord, accessChecker.getUser());
                     addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
                 } catch (DuplicateKeyException e) {
@@ -304,7 +298,6 @@ public class UserAdminController {
     @PreAuthorize("@accessChecker.isAdmin()")
     @Transactional
     public String changePassword(@PathVariable int userId, @Valid ChangePasswordForm changePasswordForm, BindingResult bindingResult, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         if (!Objects.equals(changePasswordForm.password, changePasswordForm.password2)) {
             bindingResult.rejectValue("password2", "NotMatch");
         }
@@ -321,6 +314,7 @@ public class UserAdminController {
                     .orElseThrow(NotFoundException::new);
             userRecord.setPassword(pe.encode(changePasswordForm.password));
             userRecord.update();
+            accessChecker.invalidateUserSnapshots(userId);
             log.info("Password for user {} has been changed by admin {}", userRecord, accessChecker.getUser());
             addRedirectMessage(MessageType.SUCCESS, msg.getMessage("common.saved"), redirectAttributes);
         }
@@ -331,7 +325,6 @@ public class UserAdminController {
     @PreAuthorize("@accessChecker.isAdmin()")
     @Transactional
     public String deleteUser(@PathVariable int userId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         UserRecord userRecord = ctx
             .selectFrom(USERS)
             .where(USERS.USERID.eq(userId))
@@ -340,6 +333,7 @@ public class UserAdminController {
             .orElseThrow(NotFoundException::new);
         try {
             userRecord.delete();
+            accessChecker.invalidateExerciseRoles(userId);
             log.info("User {} has been deleted by admin {}", userRecord, accessChecker.getUser());
         } catch (DataIntegrityViolationException e) {
             addRedirectMessage(MessageType.ERROR, msg.getMessage("user-administration.delete-account-failed") + "\n" + e, redirectAttributes);
@@ -352,7 +346,6 @@ public class UserAdminController {
     @PostMapping("/user/{userId}/impersonate")
     @PreAuthorize("@accessChecker.isAdmin()")
     public String impersonateUser(@PathVariable int userId, RedirectAttributes redirectAttributes) {
-        metricsService.registerAccess();
         UserRecord userRecord = ctx.fetchOne(USERS, USERS.USERID.eq(userId));
         if (userRecord == null) {
             throw new NotFoundException();
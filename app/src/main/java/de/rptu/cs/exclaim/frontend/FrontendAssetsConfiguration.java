@@ -0,0 +1,45 @@
+package de.rptu.cs.exclaim.frontend;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.time.Duration;
+
+/**
+ * Let browsers cache the files of the frontend build forever. Their names contain a hash of their content, so a new
+ * build changes the names and {@code index.html} (which is not cached, see {@link FrontendController}) references the
+ * new files.
+ * <p>
+ * Only files listed in the {@link FrontendManifest} are affected. Other files in the assets folder are served with the
+ * default headers.
+ */
+@Configuration(proxyBeanMethods = false)
+@RequiredArgsConstructor
+public class FrontendAssetsConfiguration implements WebMvcConfigurer {
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable().getHeaderValue();
+
+    private final FrontendManifest frontendManifest;
+    private final UrlPathHelper urlPathHelper;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                // The manifest lists the files without leading slash
+                if (frontendManifest.getFiles().contains(urlPathHelper.getPathWithinApplication(request).substring(1))) {
+                    response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+                }
+                return true;
+            }
+        }).addPathPatterns("/assets/**");
+    }
+}
@@ -1,6 +1,7 @@
 package de.rptu.cs.exclaim.frontend;
 
 import com.fasterxml.jackson.databind.ObjectWriter;
+import de.rptu.cs.exclaim.api.FEAccountData;
 import de.rptu.cs.exclaim.api.FELoginSuccess;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.security.UserWithPermissions;
@@ -34,10 +35,13 @@ public class FrontendAuthenticationSuccessHandler implements AuthenticationSucce
             csrf = csrfToken.getToken();
         }
 
+        FEAccountData accountData = FrontendData.accountData(userWithPermissions);
+        FrontendController.rememberRole(request, accountData);
+
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
         objectWriter.writeValue(response.getOutputStream(), new FELoginSuccess(
             csrf,
-            FrontendData.accountData(userWithPermissions)
+            accountData
         ));
     }
 }
@@ -1,30 +1,38 @@
 package de.rptu.cs.exclaim.frontend;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import de.rptu.cs.exclaim.api.FEAccountData;
 import de.rptu.cs.exclaim.security.AccessChecker;
-import de.rptu.cs.exclaim.security.UserWithPermissions;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Controller to serve the static {@code index.html} file.
@@ -33,19 +41,39 @@ import java.util.regex.Pattern;
  * <ul>
  * <li>Fix the {@code <base>} tag depending on the configured context path
  * <li>inject {@code <link rel="modulepreload" ...>} tags depending on the highest permission of the requesting user
- * <li>inject {@code <script>} tag to set {@code window.csrfToken} and {@code window.accountData}
+ * <li>inject {@code <script>} tag to set {@code window.frontendConfiguration}
  * </ul>
+ * The result only depends on the role and the configuration, so it is rendered and gzip-compressed once per role and
+ * served without accessing the database. The role is remembered in the session when the frontend fetches the account
+ * data (see {@link #rememberRole}), the account data and csrf token are not part of {@code index.html}.
  */
 @Controller
 @Slf4j
 public class FrontendController {
     static final String INDEX_PATH = "/index.html";
 
+    private static final String ROLE_ATTRIBUTE = FrontendController.class.getName() + ".ROLE";
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+    private static final MediaType TEXT_HTML_UTF8 = new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
     private enum Role {
         // In ascending privilege order
         GUEST, STUDENT, TUTOR, ASSISTANT, ADMIN
     }
 
+    /**
+     * The rendered index.html for one role, uncompressed and gzip-compressed, and the ETag (without quotes) of the
+     * uncompressed variant.
+     */
+    private record Shell(byte[] identity, byte[] gzip, String etag) {
+    }
+
+    /**
+     * The rendered index.html for each role, valid for the given frontend configuration.
+     */
+    private record Shells(String configuration, Map<Role, Shell> shells) {
+    }
+
     private final ObjectWriter objectWriter;
     private final AccessChecker accessChecker;
     private final FrontendConfiguration frontendConfiguration;
@@ -53,11 +81,14 @@ public class FrontendController {
     private final String sourceAfterEndHead;
     private final Map<Role, String> preloads;
 
+    // The SAML registrations (part of the configuration) can change at runtime, we then render the shells again.
+    private volatile Shells shells;
+
     public FrontendController(
         FrontendConfiguration frontendConfiguration,
+        FrontendManifest frontendManifest,
         AccessChecker accessChecker,
         ObjectWriter objectWriter,
-        ObjectReader objectReader,
         ServletContext servletContext
     ) throws IOException {
         this.frontendConfiguration = frontendConfiguration;
@@ -65,28 +96,88 @@ public class FrontendController {
         this.objectWriter = objectWriter;
 
         // Load the preload tags per role
-        this.preloads = collectPreloads(objectReader);
+        this.preloads = collectPreloads(frontendManifest);
 
         // Load the source and split it at </head>
         String source = loadIndexHtml(servletContext);
         int endHeadIndex = source.indexOf("</head>");
         this.sourceBeforeEndHead = source.substring(0, endHeadIndex);
         this.sourceAfterEndHead = source.substring(endHeadIndex);
+
+        this.shells = renderShells(frontendConfiguration());
     }
 
     @GetMapping(INDEX_PATH)
-    @ResponseBody
-    public String getFrontend(HttpServletRequest request) throws JsonProcessingException {
-        Optional<UserWithPermissions> user = accessChecker.getUserWithPermissionsOpt();
-        log.debug("Frontend index.html request by user: {}", user);
-        return sourceBeforeEndHead
-            + preloadsForUser(user)
-            + "<script>"
-            + frontendConfiguration()
-            + csrfToken(request)
-            + accountData(user)
-            + "</script>"
-            + sourceAfterEndHead;
+    public ResponseEntity<byte[]> getFrontend(
+        HttpServletRequest request,
+        @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) @Nullable String acceptEncoding
+    ) throws JsonProcessingException {
+        String configuration = frontendConfiguration();
+        Shells shells = this.shells;
+        if (!shells.configuration.equals(configuration)) {
+            shells = renderShells(configuration);
+            this.shells = shells;
+        }
+
+        Role role = roleForRequest(request);
+        log.debug("Frontend index.html request with role {}", role);
+        Shell shell = Objects.requireNonNull(shells.shells.get(role));
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(TEXT_HTML_UTF8)
+            .header(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+            .eTag(gzip ? shell.etag + "-gzip" : shell.etag);
+        return gzip
+            ? response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(shell.gzip)
+            : response.body(shell.identity);
+    }
+
+    /**
+     * Remember the role of the authenticated user in the session, such that subsequent requests for index.html get
+     * the matching preload tags without loading the user from the database.
+     */
+    public static void rememberRole(HttpServletRequest request, @Nullable FEAccountData accountData) {
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            Role role = accountData == null ? Role.GUEST
+                : accountData.isAdmin() ? Role.ADMIN
+                : accountData.isAssistant() ? Role.ASSISTANT
+                : accountData.isTutor() ? Role.TUTOR
+                : Role.STUDENT;
+            if (session.getAttribute(ROLE_ATTRIBUTE) != role) {
+                session.setAttribute(ROLE_ATTRIBUTE, role);
+            }
+        }
+    }
+
+    private Role roleForRequest(HttpServletRequest request) {
+        // Checking the authentication does not access the database
+        if (accessChecker.getUserIdOptUnchecked().isEmpty()) {
+            return Role.GUEST;
+        }
+        HttpSession session = request.getSession(false);
+        return session != null && session.getAttribute(ROLE_ATTRIBUTE) instanceof Role role && role != Role.GUEST
+            ? role
+            : Role.STUDENT;
+    }
+
+    private static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",", -1)) {
+            String[] parts = coding.split(";", -1);
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (name.equals("gzip") || name.equals("*")) {
+                // Check for an explicit quality value of 0
+                for (int i = 1; i < parts.length; i++) {
+                    if (parts[i].trim().matches("q=0(?:\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
     }
 
     private static String loadIndexHtml(ServletContext servletContext) throws IOException {
@@ -104,7 +195,7 @@ public class FrontendController {
     }
 
     @SuppressWarnings("EnumOrdinal")
-    private static Map<Role, String> collectPreloads(ObjectReader objectReader) throws IOException {
+    private static Map<Role, String> collectPreloads(FrontendManifest frontendManifest) {
         // Collect all module files relevant to each role. The array is indexed with Role's ordinal.
         @SuppressWarnings({"unchecked", "rawtypes"})
         Set<String>[] filesPerRole = new Set[Role.values().length];
@@ -112,17 +203,13 @@ public class FrontendController {
             filesPerRole[i] = new HashSet<>();
         }
         Pattern filenamePattern = Pattern.compile("^assets/(.+)-\\w+\\.js$");
-        try (InputStream inputStream = new ClassPathResource("frontend-manifest.json").getInputStream()) {
-            JsonNode root = objectReader.readTree(inputStream);
-            for (JsonNode node : root) {
-                String file = node.get("file").asText();
-                Matcher matcher = filenamePattern.matcher(file);
-                if (matcher.matches()) {
-                    for (String part : matcher.group(1).split("_", -1)) {
-                        for (Role role : Role.values()) {
-                            if (role.name().equalsIgnoreCase(part)) {
-                                filesPerRole[role.ordinal()].add(file);
-                            }
+        for (String file : frontendManifest.getChunks()) {
+            Matcher matcher = filenamePattern.matcher(file);
+            if (matcher.matches()) {
+                for (String part : matcher.group(1).split("_", -1)) {
+                    for (Role role : Role.values()) {
+                        if (role.name().equalsIgnoreCase(part)) {
+                            filesPerRole[role.ordinal()].add(file);
                         }
                     }
                 }
@@ -150,35 +237,32 @@ public class FrontendController {
         return preloads;
     }
 
-    @SuppressWarnings("NullAway")
-    private String preloadsForUser(Optional<UserWithPermissions> userWithPermissionsOpt) {
-        return preloads.get(
-            userWithPermissionsOpt
-                .map(userWithPermissions ->
-                    userWithPermissions.getUser().getAdmin() ? Role.ADMIN
-                        : userWithPermissions.getIsAssistantForAnyExercise() ? Role.ASSISTANT
-                        : userWithPermissions.getIsTutorForAnyExercise() ? Role.TUTOR
-                        : Role.STUDENT
-                )
-                .orElse(Role.GUEST)
-        );
-    }
-
     private String frontendConfiguration() throws JsonProcessingException {
-        return "window.frontendConfiguration=" + objectWriter.writeValueAsString(
-            frontendConfiguration.getConfiguration()
-        ) + ";";
+        return objectWriter.writeValueAsString(frontendConfiguration.getConfiguration());
     }
 
-    private String csrfToken(HttpServletRequest request) throws JsonProcessingException {
-        return request.getAttribute(CsrfToken.class.getName()) instanceof CsrfToken csrfToken
-            ? "window.csrfToken=" + objectWriter.writeValueAsString(csrfToken.getToken()) + ";"
-            : "";
+    private Shells renderShells(String configuration) {
+        Map<Role, Shell> shells = new EnumMap<>(Role.class);
+        for (Role role : Role.values()) {
+            byte[] identity = (sourceBeforeEndHead
+                + preloads.get(role)
+                // Start fetching the account data before the scripts are loaded
+                + "<link rel=\"preload\" href=\"api/account\" as=\"fetch\" crossorigin=\"anonymous\"/>"
+                + "<script>window.frontendConfiguration=" + configuration + ";</script>"
+                + sourceAfterEndHead
+            ).getBytes(StandardCharsets.UTF_8);
+            shells.put(role, new Shell(identity, gzip(identity), DigestUtils.md5DigestAsHex(identity)));
+        }
+        return new Shells(configuration, shells);
     }
 
-    private String accountData(Optional<UserWithPermissions> userWithPermissionsOpt) throws JsonProcessingException {
-        return "window.accountData=" + objectWriter.writeValueAsString(
-            userWithPermissionsOpt.map(FrontendData::accountData).orElse(null)
-        ) + ";";
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
     }
 }
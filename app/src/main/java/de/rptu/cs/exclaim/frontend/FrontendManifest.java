@@ -0,0 +1,54 @@
+package de.rptu.cs.exclaim.frontend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.Getter;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The files of the frontend build, as listed in {@code frontend-manifest.json} by Vite. Their names contain a hash of
+ * their content, e.g. {@code assets/index-4f8c2a1b.js}.
+ */
+@Component
+public class FrontendManifest {
+    /**
+     * All files (JavaScript chunks, CSS and other assets), relative to the static folder
+     */
+    @Getter
+    private final Set<String> files;
+
+    /**
+     * The JavaScript chunks, relative to the static folder
+     */
+    @Getter
+    private final List<String> chunks;
+
+    public FrontendManifest(ObjectReader objectReader) throws IOException {
+        Set<String> files = new HashSet<>();
+        List<String> chunks = new ArrayList<>();
+        try (InputStream inputStream = new ClassPathResource("frontend-manifest.json").getInputStream()) {
+            JsonNode root = objectReader.readTree(inputStream);
+            for (JsonNode node : root) {
+                String file = node.get("file").asText();
+                if (files.add(file)) {
+                    chunks.add(file);
+                }
+                for (String field : new String[]{"css", "assets"}) {
+                    for (JsonNode asset : node.path(field)) {
+                        files.add(asset.asText());
+                    }
+                }
+            }
+        }
+        this.files = Set.copyOf(files);
+        this.chunks = List.copyOf(chunks);
+    }
+}
@@ -1,16 +1,24 @@
 package de.rptu.cs.exclaim.frontend.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import de.rptu.cs.exclaim.api.FEAccountData;
 import de.rptu.cs.exclaim.api.FEChangePasswordRequest;
 import de.rptu.cs.exclaim.api.FESetLanguageRequest;
+import de.rptu.cs.exclaim.frontend.FrontendController;
 import de.rptu.cs.exclaim.frontend.FrontendData;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.security.ExclaimPasswordEncoder;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.jooq.DSLContext;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -19,7 +27,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import java.util.Objects;
-import java.util.Optional;
 
 import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
 
@@ -29,11 +36,25 @@ public class AccountController {
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
     private final ExclaimPasswordEncoder passwordEncoder;
+    private final ObjectWriter objectWriter;
 
+    /**
+     * The account data of the authenticated user, or null. The response can be cached by the browser, but must be
+     * revalidated using the ETag. It also carries the csrf token in a header, since it is not part of index.html.
+     */
     @GetMapping("/api/account")
-    @ResponseBody
-    public Optional<FEAccountData> getAccount() {
-        return accessChecker.getUserWithPermissionsOpt().map(FrontendData::accountData);
+    public ResponseEntity<byte[]> getAccount(HttpServletRequest request) throws JsonProcessingException {
+        FEAccountData accountData = accessChecker.getUserWithPermissionsOpt().map(FrontendData::accountData).orElse(null);
+        FrontendController.rememberRole(request, accountData);
+        byte[] json = objectWriter.writeValueAsBytes(accountData);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .eTag(DigestUtils.md5DigestAsHex(json));
+        if (request.getAttribute(CsrfToken.class.getName()) instanceof CsrfToken csrfToken) {
+            response.header(csrfToken.getHeaderName(), csrfToken.getToken());
+        }
+        return response.body(json);
     }
 
     @PostMapping("/api/account/language")
@@ -46,6 +67,7 @@ public class AccountController {
             .set(USERS.LANGUAGE, FrontendData.mapLanguage(request.getLanguage()))
             .where(USERS.USERID.eq(userId))
             .execute();
+        accessChecker.invalidateUserSnapshots(userId);
     }
 
     @PostMapping("/api/account/password")
@@ -57,6 +79,7 @@ public class AccountController {
             .select(USERS.PASSWORD)
             .from(USERS)
             .where(USERS.USERID.eq(userId))
+            .forUpdate()
             .fetchOne(USERS.PASSWORD);
 
         if (currentPasswordHash == null || !passwordEncoder.matches(request.getOldPassword(), currentPasswordHash)) {
@@ -69,6 +92,7 @@ public class AccountController {
                 .set(USERS.PASSWORD, newPasswordHash)
                 .where(USERS.USERID.eq(userId))
                 .execute();
+            accessChecker.invalidateUserSnapshots(userId);
             return ResponseEntity.status(HttpStatus.OK).body("Password Changed Successfully!");
         }
 
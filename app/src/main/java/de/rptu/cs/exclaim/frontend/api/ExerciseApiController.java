@@ -29,7 +29,6 @@ import de.rptu.cs.exclaim.data.records.ExerciseRecord;
 import de.rptu.cs.exclaim.data.records.GroupRecord;
 import de.rptu.cs.exclaim.data.records.SheetRecord;
 import de.rptu.cs.exclaim.data.records.TutorRecord;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.Keys;
 import de.rptu.cs.exclaim.schema.enums.Attendance;
 import de.rptu.cs.exclaim.schema.enums.GroupJoin;
@@ -51,7 +50,7 @@ import de.rptu.cs.exclaim.schema.tables.Users;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.security.ExerciseRoles;
 import de.rptu.cs.exclaim.utils.Comparators;
-import de.rptu.cs.exclaim.utils.UploadManager;
+import de.rptu.cs.exclaim.utils.SheetArchiveService;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
@@ -60,7 +59,6 @@ import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.pdfbox.io.IOUtils;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record1;
@@ -68,7 +66,6 @@ import org.jooq.Record13;
 import org.jooq.Records;
 import org.jooq.ResultQuery;
 import org.jooq.impl.DSL;
-import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
@@ -85,26 +82,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigDecimal;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import static de.rptu.cs.exclaim.ExclaimValidationProperties.ASSIGNMENT_ID_LENGTH_MAX;
 import static de.rptu.cs.exclaim.ExclaimValidationProperties.ASSIGNMENT_LABEL_LENGTH_MAX;
@@ -148,8 +137,7 @@ public class ExerciseApiController {
 
     private final AccessChecker accessChecker;
     private final DSLContext ctx;
-    private final MetricsService metricsService;
-    private final UploadManager uploadManager;
+    private final SheetArchiveService sheetArchiveService;
 
 //    @ModelAttribute
 //    public ExerciseRoles exerciseRoles(@PathVariable String exerciseId) {
@@ -328,6 +316,7 @@ public class ExerciseApiController {
                 .columns(STUDENTS.EXERCISEID, STUDENTS.USERID)
                 .values(exerciseId, user.getUserId())
                 .execute();
+            accessChecker.invalidateExerciseRoles(exerciseId);
 
             // Perform join in result
             exercise.getRoles().setStudent(new FEStudentData(null, null));
@@ -408,7 +397,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_SHEET_PATH + "/{exerciseId}/admin/sheets/create")
     @ResponseBody
     public FEProcessResult saveExerciseSheet(@PathVariable String exerciseId, @Valid CreateSheetForm createSheetForm) {
-        metricsService.registerAccess();
         try {
             SheetRecord sheetRecord = ctx.newRecord(SHEETS);
             sheetRecord.setExerciseId(exerciseId);
@@ -427,8 +415,6 @@ public class ExerciseApiController {
     @GetMapping(EXERCISE_PATH + "/{exerciseId}/groups")
     @ResponseBody
     public List<FEExerciseGroupWithDetails> getExerciseGroups(@PathVariable String exerciseId) {
-        metricsService.registerAccess();
-
         Groups g = GROUPS.as("g");
         Students s = STUDENTS.as("s");
         Tutors t = TUTORS.as("t");
@@ -491,7 +477,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/admin/groups/create")
     @ResponseBody
     public FEProcessResult saveNewGroup(@PathVariable String exerciseId, @Valid CreateGroupForm createGroupForm) {
-        metricsService.registerAccess();
         Integer maxSize;
         try {
             maxSize = parseMaxSize(createGroupForm.maxSize);
@@ -520,77 +505,21 @@ public class ExerciseApiController {
 
     @GetMapping(EXERCISE_PATH + "/{exerciseId}/sheet/{sheetId}/zip")
     @ResponseBody
-    public ZipOutputStream downloadSheetFileZip(@PathVariable String exerciseId, @PathVariable String sheetId, ExerciseRoles exerciseRoles,
-                                                HttpServletResponse response) throws IOException {
-        metricsService.registerAccess();
-
-        response.setContentType("application/zip");
-        response.setStatus(HttpServletResponse.SC_OK);
-        String zipFilename = exerciseId + "_" + sheetId + ".zip";
-        response.addHeader("Content-Disposition", "attachment; filename=\"" + zipFilename + "\"");
-
-        // groupId -> teamId -> assignmentId -> [files]
-        Map<String, Map<String, Map<String, List<Tuple2<LocalDateTime, String>>>>> uploads = new HashMap<>();
-        ctx
-            .select(UPLOADS.GROUPID, UPLOADS.TEAMID, UPLOADS.ASSIGNMENT, UPLOADS.UPLOAD_DATE, UPLOADS.FILENAME)
-            .from(UPLOADS)
-            .where(
-                UPLOADS.EXERCISE.eq(exerciseId),
-                UPLOADS.SHEET.eq(sheetId),
-                exerciseRoles.applyGroupIdRestriction(UPLOADS.GROUPID),
-                UPLOADS.DELETE_DATE.isNull()
-            )
-            .forEach(r -> uploads
-                .computeIfAbsent(r.value1(), groupId -> new HashMap<>())
-                .computeIfAbsent(r.value2(), teamId -> new HashMap<>())
-                .computeIfAbsent(r.value3(), assignmentId -> new ArrayList<>())
-                .add(new Tuple2<>(r.value4(), r.value5()))
-            );
-
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()))) {
-            for (Map.Entry<String, Map<String, Map<String, List<Tuple2<LocalDateTime, String>>>>> group : uploads.entrySet()) {
-                String groupId = group.getKey();
-                String groupFolder = groupId + "/";
-                zipOutputStream.putNextEntry(new ZipEntry(groupFolder));
-                for (Map.Entry<String, Map<String, List<Tuple2<LocalDateTime, String>>>> team : group.getValue().entrySet()) {
-                    String teamId = team.getKey();
-                    String teamFolder = groupFolder + teamId + "/";
-                    zipOutputStream.putNextEntry(new ZipEntry(teamFolder));
-                    for (Map.Entry<String, List<Tuple2<LocalDateTime, String>>> assignment : team.getValue().entrySet()) {
-                        String assignmentId = assignment.getKey();
-                        String assignmentFolder = teamFolder + assignmentId + "/";
-                        zipOutputStream.putNextEntry(new ZipEntry(assignmentFolder));
-                        Set<String> existingEntries = new HashSet<>();
-                        for (Tuple2<LocalDateTime, String> file : assignment.getValue()) {
-                            LocalDateTime uploadDate = file.v1;
-                            String filename = file.v2;
-                            if (existingEntries.add(filename)) {
-                                zipOutputStream.putNextEntry(new ZipEntry(assignmentFolder + filename));
-                                Path filePath = uploadManager.getUploadPath(exerciseId, sheetId, assignmentId, groupId, teamId, uploadDate, filename);
-                                try (InputStream fileInputStream = Files.newInputStream(filePath)) {
-                                    IOUtils.copy(fileInputStream, zipOutputStream);
-                                }
-                                zipOutputStream.closeEntry();
-                            }
-                        }
-                        return zipOutputStream;
-                    }
-                }
-            }
-        }
-        return new ZipOutputStream(null);
+    public void downloadSheetFileZip(@PathVariable String exerciseId, @PathVariable String sheetId, ExerciseRoles exerciseRoles,
+                                     HttpServletResponse response) throws IOException {
+        sheetArchiveService.sendSheetArchive(exerciseId, sheetId, exerciseRoles, response);
     }
 
     @GetMapping(EXERCISE_PATH + "/{exerciseId}/sheets/{sheetId}/delete")
     @ResponseBody
     public FEProcessResult deleteSheet(@PathVariable String exerciseId, @PathVariable String sheetId) {
-        metricsService.registerAccess();
         try {
             if (ctx
                 .deleteFrom(SHEETS)
                 .where(SHEETS.EXERCISE.eq(exerciseId), SHEETS.ID.eq(sheetId))
                 .execute() == 1
             ) {
+                sheetArchiveService.removeSheetArchives(exerciseId, sheetId);
                 return new FEProcessResult(ControllerUtils.MessageType.SUCCESS.name(), "OK");
             }
         } catch (DataIntegrityViolationException e) {
@@ -603,7 +532,6 @@ public class ExerciseApiController {
     @GetMapping(EXERCISE_PATH + "/{exerciseId}/sheets/{sheetId}/info")
     @ResponseBody
     public FEExerciseSheetWithDetails getSheetDataWithAssignments(@PathVariable String exerciseId, @PathVariable String sheetId) {
-        metricsService.registerAccess();
         try {
 
             SheetRecord sheetRecord = ctx
@@ -637,7 +565,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/sheets/{sheetId}/edit")
     @ResponseBody
     public FEProcessResult editSheet(@PathVariable String exerciseId, @PathVariable String sheetId, @Valid EditSheetForm editSheetForm) {
-        metricsService.registerAccess();
         SheetRecord sheetRecord = ctx
             .fetchOptional(SHEETS, SHEETS.EXERCISE.eq(exerciseId), SHEETS.ID.eq(sheetId))
             .orElseThrow(NotFoundException::new);
@@ -657,7 +584,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/sheets/{sheetId}/assignments/create")
     @ResponseBody
     public FEProcessResult createAssignment(@PathVariable String exerciseId, @PathVariable String sheetId, @Valid CreateAssignmentForm createAssignmentForm) {
-        metricsService.registerAccess();
         BigDecimal maxPoints = BigDecimal.ZERO;
         try {
             maxPoints = parseMaxPoints(createAssignmentForm.getMaxPoints());
@@ -683,8 +609,6 @@ public class ExerciseApiController {
     @GetMapping(EXERCISE_PATH +"/{exerciseId}/sheets/{sheetId}/assignments/{assignmentId}/info")
     @ResponseBody
     public FEExerciseSheetAssignments getAssignmentInfo(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String assignmentId) {
-        metricsService.registerAccess();
-
         List<AssignmentRecord> assignmentRecordList =
             ctx.fetch(ASSIGNMENTS, ASSIGNMENTS.EXERCISE.eq(exerciseId), ASSIGNMENTS.SHEET.eq(sheetId), ASSIGNMENTS.ID.eq(assignmentId));
 
@@ -700,7 +624,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/sheets/{sheetId}/assignments/{assignmentId}/edit")
     @ResponseBody
     public FEProcessResult editAssignment(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String assignmentId, @Valid EditAssignmentForm editAssignmentForm) {
-        metricsService.registerAccess();
         BigDecimal maxPoints = BigDecimal.ZERO;
         try {
             maxPoints = parseMaxPoints(editAssignmentForm.getMaxPoints());
@@ -727,7 +650,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/sheets/{sheetId}/assignments/{assignmentId}/delete")
     @ResponseBody
     public FEProcessResult deleteAssignment(@PathVariable String exerciseId, @PathVariable String sheetId, @PathVariable String assignmentId) {
-        metricsService.registerAccess();
         try {
             if (ctx
                 .deleteFrom(ASSIGNMENTS)
@@ -746,7 +668,6 @@ public class ExerciseApiController {
     @GetMapping(EXERCISE_PATH + "/{exerciseId}/groups/{groupId}/info")
     @ResponseBody
     public EditGroupForm getEditGroupPage(@PathVariable String exerciseId, @PathVariable String groupId) {
-        metricsService.registerAccess();
         GroupRecord groupRecord = ctx
             .fetchOptional(GROUPS, GROUPS.EXERCISEID.eq(exerciseId), GROUPS.GROUPID.eq(groupId))
             .orElseThrow(de.rptu.cs.exclaim.controllers.NotFoundException::new);
@@ -764,7 +685,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/groups/{groupId}/edit")
     @ResponseBody
     public FEProcessResult editGroup(@PathVariable String exerciseId, @PathVariable String groupId, @Valid EditGroupForm editGroupForm) {
-        metricsService.registerAccess();
         Integer maxSize = 0;
         try {
             maxSize = parseMaxSize(editGroupForm.getMaxSize());
@@ -792,13 +712,13 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/groups/{groupId}/delete")
     @ResponseBody
     public FEProcessResult deleteGroup(@PathVariable String exerciseId, @PathVariable String groupId) {
-        metricsService.registerAccess();
         try {
             if (ctx
                 .deleteFrom(GROUPS)
                 .where(GROUPS.EXERCISEID.eq(exerciseId), GROUPS.GROUPID.eq(groupId))
                 .execute() == 1
             ) {
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 return new FEProcessResult(ControllerUtils.MessageType.SUCCESS.name(), "OK");
             }
         } catch (Exception e) {
@@ -811,7 +731,6 @@ public class ExerciseApiController {
     @PostMapping(EXERCISE_PATH + "/{exerciseId}/groupRegistrationEdit/{registrationOpen}/{groupJoin}")
     @ResponseBody
     public FEProcessResult editGroupRegistration(@PathVariable String exerciseId, @PathVariable boolean registrationOpen, @PathVariable String groupJoin) {
-        metricsService.registerAccess();
         try {
             ExerciseRecord exerciseRecord = ctx.fetchOptional(EXERCISES, EXERCISES.ID.eq(exerciseId)).orElseThrow(de.rptu.cs.exclaim.controllers.NotFoundException::new);
             exerciseRecord.setRegistrationOpenIfChanged(registrationOpen);
@@ -832,7 +751,6 @@ public class ExerciseApiController {
         @PathVariable String exerciseId,
         @PathVariable String groupId) {
 
-        metricsService.registerAccess();
 
         try {
 
@@ -875,6 +793,7 @@ public class ExerciseApiController {
                             .execute();
 
                         if (updatedRows == 1) {
+                            accessChecker.invalidateExerciseRoles(exerciseId);
                             log.info("Successfully joined the group for userId: {}", user.getUserId());
                             return ResponseEntity.ok("Successfully joined the group.");
                         } else {
@@ -901,7 +820,6 @@ public class ExerciseApiController {
     @ResponseBody
     public List<FEUser> getTutorsPage(@PathVariable String exerciseId, @PathVariable String groupId) {
         List<FEUser> tutorList = new ArrayList<>();
-        metricsService.registerAccess();
         Tutors t = TUTORS.as("t");
         Users u = t.user().as("u");
         List<IUser> tutors = ctx
@@ -921,13 +839,13 @@ public class ExerciseApiController {
     @ResponseBody
     @Transactional
     public FEProcessResult deleteTutor(@PathVariable String exerciseId, @PathVariable String groupId, @PathVariable int userId) {
-        metricsService.registerAccess();
         try {
             if (ctx
                 .deleteFrom(TUTORS)
                 .where(TUTORS.USERID.eq(userId), TUTORS.EXERCISEID.eq(exerciseId), TUTORS.GROUPID.eq(groupId))
                 .execute() == 1
             ) {
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 return new FEProcessResult(ControllerUtils.MessageType.SUCCESS.name(), "OK");
             } else {
                 return new FEProcessResult(ControllerUtils.MessageType.ERROR.name(), "ERROR");
@@ -942,7 +860,6 @@ public class ExerciseApiController {
     @ResponseBody
     @Transactional
     public FEProcessResult addTutor(@PathVariable String exerciseId, @PathVariable String groupId, @PathVariable String username) {
-        metricsService.registerAccess();
         GroupRecord groupRecord = ctx
             .fetchOptional(GROUPS, GROUPS.EXERCISEID.eq(exerciseId), GROUPS.GROUPID.eq(groupId))
             .orElseThrow(de.rptu.cs.exclaim.controllers.NotFoundException::new);
@@ -958,6 +875,7 @@ public class ExerciseApiController {
             tutor.setUserId(tutorUserId);
             try {
                 tutor.insert();
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 return new FEProcessResult(ControllerUtils.MessageType.SUCCESS.name(), "OK");
             } catch (Exception e) {
                 System.out.println(e.getMessage());
@@ -998,7 +916,6 @@ public class ExerciseApiController {
             Users u = stud.user().as("u");
             Studentresults sr = STUDENTRESULTS.as("sr");
             Teamresults tr = TEAMRESULTS.as("tr");
-            TeamresultsAssignment tra = TEAMRESULTS_ASSIGNMENT.as("tra");
             List<StudentWithSheetResults> students = ctx
                 .select(
                     stud,
@@ -1008,11 +925,7 @@ public class ExerciseApiController {
                             sr.GROUPID,
                             sr.TEAMID,
                             // teampoints
-                            DSL.field(DSL
-                                .select(DSL.sum(tra.POINTS))
-                                .from(tra)
-                                .where(tra.EXERCISE.eq(tr.EXERCISE), tra.SHEET.eq(tr.SHEET), tra.GROUPID.eq(tr.GROUPID), tra.TEAMID.eq(tr.TEAMID))
-                            ),
+                            tr.POINTS,
                             sr.DELTAPOINTS,
                             tr.HIDEPOINTS,
                             sr.ATTENDED
@@ -23,6 +23,7 @@ import de.rptu.cs.exclaim.schema.tables.Users;
 import de.rptu.cs.exclaim.security.AccessChecker;
 import de.rptu.cs.exclaim.security.UserWithPermissions;
 import de.rptu.cs.exclaim.utils.Comparators;
+import de.rptu.cs.exclaim.utils.SheetArchiveService;
 import jakarta.validation.Valid;
 import de.rptu.cs.exclaim.data.records.AssistantRecord;
 import org.jooq.Record1;
@@ -40,7 +41,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.transaction.annotation.Transactional;
-import de.rptu.cs.exclaim.monitoring.MetricsService;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -60,6 +60,8 @@ public class LectureApiController {
     private DSLContext ctx;
     @Autowired
     private AccessChecker accessChecker;
+    @Autowired
+    private SheetArchiveService sheetArchiveService;
 
 
 
@@ -120,6 +122,8 @@ public class LectureApiController {
                 .where(EXERCISES.ID.eq(exerciseId))
                 .execute() == 1
             ) {
+                accessChecker.invalidateExerciseRoles(exerciseId);
+                sheetArchiveService.removeExerciseArchives(exerciseId);
                 return ResponseEntity.status(HttpStatus.OK).body("Lecture Deleted Successfully!");
             }
          else
@@ -172,8 +176,6 @@ public class LectureApiController {
     @GetMapping("api/lectures/{exerciseId}/assistants")
     @ResponseBody
     public List<FEAssistant> getAssistants(@PathVariable String exerciseId) {
-//        metricsService.registerAccess();
-
         Assistants a = ASSISTANTS.as("a");
         Users u = a.user().as("u");
         List<IUser> assistants = ctx
@@ -203,6 +205,7 @@ public class LectureApiController {
             .deleteFrom(ASSISTANTS)
             .where(ASSISTANTS.USERID.eq(userId), ASSISTANTS.EXERCISEID.eq(exerciseId))
             .execute();
+        accessChecker.invalidateExerciseRoles(exerciseId);
 
         if (deletedRows == 1) {
             return ResponseEntity.status(HttpStatus.OK).body("Assistant Removed Successfully!");
@@ -235,6 +238,7 @@ public class LectureApiController {
             try {
                 // Insert the assistant record
                 assistant.insert();
+                accessChecker.invalidateExerciseRoles(exerciseId);
                 return ResponseEntity.status(HttpStatus.OK).body("Assistant added successfully");
             } catch (DuplicateKeyException e) {
                 // Handle duplicate assistant role
@@ -6,6 +6,7 @@ import de.rptu.cs.exclaim.schema.tables.Assistants;
 import de.rptu.cs.exclaim.schema.tables.Students;
 import de.rptu.cs.exclaim.schema.tables.Tutors;
 import de.rptu.cs.exclaim.schema.tables.Users;
+import de.rptu.cs.exclaim.security.AccessChecker;
 
 import jakarta.validation.Valid;
 import de.rptu.cs.exclaim.api.FEUserAdminDetails;
@@ -46,9 +47,11 @@ import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
 public class UserAdminApiController {
 
     private final DSLContext ctx;
+    private final AccessChecker accessChecker;
 
-    public UserAdminApiController(DSLContext ctx) {
+    public UserAdminApiController(DSLContext ctx, AccessChecker accessChecker) {
         this.ctx = ctx;
+        this.accessChecker = accessChecker;
     }
 
     public static class EditUserForm {
@@ -129,7 +132,6 @@ public class UserAdminApiController {
     @PreAuthorize("@accessChecker.isAdmin()")
     @Transactional
     public String editUser(@PathVariable int userId, @Valid UserAdminApiController.EditUserForm editUserForm) {
-        //metricsService.registerAccess();
         UserRecord userRecord = ctx
             .selectFrom(USERS)
             .where(USERS.USERID.eq(userId))
@@ -170,6 +172,7 @@ public class UserAdminApiController {
 
             if (userRecord.changed()) {
                 userRecord.update();
+                accessChecker.invalidateUserSnapshots(userId);
                 return "true";
             }
             // userRecord.update();
@@ -217,7 +220,6 @@ public class UserAdminApiController {
     @PreAuthorize("@accessChecker.isAdmin()")
     @Transactional
     public String deleteUser(@PathVariable int userId) {
-        //metricsService.registerAccess();
         UserRecord userRecord = ctx
             .selectFrom(USERS)
             .where(USERS.USERID.eq(userId))
@@ -226,6 +228,7 @@ public class UserAdminApiController {
             .orElseThrow(NotFoundException::new);
         try {
             userRecord.delete();
+            accessChecker.invalidateExerciseRoles(userId);
             return "true";
             //log.info("User {} has been deleted by admin {}", userRecord, accessChecker.getUser());
         }catch (DuplicateKeyException e) {
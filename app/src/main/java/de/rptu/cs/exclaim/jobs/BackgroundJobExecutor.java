@@ -1,36 +1,54 @@
 package de.rptu.cs.exclaim.jobs;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.rptu.cs.exclaim.ExclaimProperties;
 import de.rptu.cs.exclaim.data.records.BackgroundJobRecord;
+import de.rptu.cs.exclaim.monitoring.MetricsService;
 import de.rptu.cs.exclaim.schema.enums.BackgroundJobType;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.jooq.Allow;
 import org.jooq.DSLContext;
+import org.jooq.Record1;
+import org.jooq.Require;
+import org.jooq.SQLDialect;
+import org.jooq.SelectForUpdateStep;
+import org.jooq.impl.DSL;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.EventListener;
-import org.springframework.core.task.AsyncTaskExecutor;
-import org.springframework.core.task.TaskRejectedException;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static de.rptu.cs.exclaim.schema.tables.BackgroundJobs.BACKGROUND_JOBS;
 
@@ -41,7 +59,27 @@ import static de.rptu.cs.exclaim.schema.tables.BackgroundJobs.BACKGROUND_JOBS;
  * When the application is ready, {@link #start()} forks a new thread that periodically checks for new jobs in the
  * database. The thread will be stopped gracefully when Spring {@link #destroy() destroys} this {@link DisposableBean}.
  * <p>
- * Background jobs that are due will be submitted to the {@link AsyncTaskExecutor} managed by Spring.
+ * Each job type has its own executor with up to {@code exclaim.background-jobs.threads-per-type} threads, such that a
+ * flood of jobs of one type (e.g. test runs before a deadline) cannot occupy the threads needed by another type (e.g.
+ * password reset mails). At most {@code exclaim.background-jobs.batch-size} jobs are claimed at any time. When that
+ * limit is reached, the scheduler does not query the database until enough claimed jobs have completed. This keeps the
+ * cost of each poll constant, regardless of the number of jobs in the backlog.
+ * <p>
+ * The free capacity of the batch is distributed among the job types by {@link FairShare}, weighted by the
+ * {@link JobService#getPriority() priority} of each type. A quarter of the batch is reserved for the types in
+ * proportion to their weight, such that every type can make progress. Within a type, jobs with a higher
+ * {@link JobPriority} are claimed first and overtake queued jobs of lower priority. Jobs with
+ * {@link JobPriority#LOW low priority} occupy at most half of the batch, such that jobs with normal priority can be
+ * claimed while a large backlog of low priority jobs is being worked on.
+ * <p>
+ * Multiple application instances can share the same database. A claimed job is leased to the claiming instance
+ * (identified by {@code exclaim.background-jobs.node-id}) until the lease expires. The lease is renewed periodically
+ * while the job is executing. Jobs with an expired lease, e.g. from a crashed instance, are claimed again. Completing,
+ * rescheduling or deleting a job only succeeds while this instance still holds the lease.
+ * <p>
+ * Instead of blindly waiting for the poll interval, the scheduler remembers when the next known job becomes due and
+ * wakes up at that time. With PostgreSQL, new jobs additionally trigger a {@code NOTIFY} on the
+ * {@value #NOTIFICATION_CHANNEL} channel and the claim query uses {@code FOR UPDATE SKIP LOCKED}.
  * <p>
  * An external component can invoke {@link #pollNow()} when a new background job has been added to the database. It will
  * be picked up without further delay.
@@ -53,7 +91,13 @@ public class BackgroundJobExecutor implements DisposableBean {
     private final ExclaimProperties exclaimProperties;
     private final ApplicationContext applicationContext;
     private final DSLContext ctx;
-    private final AsyncTaskExecutor applicationTaskExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final MetricsService metricsService;
+
+    /**
+     * The PostgreSQL channel to notify when a new background job has been submitted.
+     */
+    static final String NOTIFICATION_CHANNEL = "exclaim_background_jobs";
 
     /**
      * Thread that periodically checks the database for new jobs.
@@ -81,29 +125,116 @@ public class BackgroundJobExecutor implements DisposableBean {
      */
     private boolean isShuttingDown = false;
 
+    /**
+     * The earliest known next attempt of a job that is not yet due, used to end the waiting period early.
+     * Not volatile, because all accesses occur in synchronized({@link #waitLock}) blocks.
+     */
+    @Nullable
+    private LocalDateTime nextDueAttempt;
+
+    /**
+     * Whether the last check left due jobs in the database because the batch was full. The scheduler gets notified when
+     * enough claimed jobs have completed.
+     */
+    private volatile boolean saturated = false;
+
     /**
      * The currently executing or queued background jobs. The set contains job ids.
      */
     private final Set<Long> executingBackgroundJobs = ConcurrentHashMap.newKeySet();
 
     /**
-     * Mapping from the BackgroundJobType enum to the corresponding Job service instances.
+     * The subset of {@link #executingBackgroundJobs} with {@link JobPriority#LOW low priority}.
+     */
+    private final Set<Long> executingLowPriorityJobs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Order in which queued jobs are executed: higher priority first, then in order of submission.
+     */
+    private static final Comparator<BackgroundJobRecord> QUEUE_ORDER = Comparator
+        .comparing(BackgroundJobRecord::getPriority, Comparator.reverseOrder())
+        .thenComparing(BackgroundJobRecord::getBackgroundJobId);
+
+    /**
+     * Mapping from the BackgroundJobType enum to the corresponding lanes.
      * Not synchronized, because it gets initialized once and then there is synchronization from {@link #start()} to the
      * synchronized(this) block in {@link #schedulerLoop()}.
      */
-    private final Map<BackgroundJobType, JobServiceWithConcurrency> jobServices = new HashMap<>();
+    private final Map<BackgroundJobType, JobLane> lanes = new HashMap<>();
 
     @RequiredArgsConstructor
-    private static class JobServiceWithConcurrency {
+    private static class JobLane {
         /**
          * The job service
          */
         private final JobService jobService;
 
+        /**
+         * The executor dedicated to this job type
+         */
+        private final ExecutorService executor;
+
+        /**
+         * Number of threads of the executor
+         */
+        private final int threads;
+
+        /**
+         * Number of batch slots reserved for this job type, see {@link FairShare.Demand#reserved()}
+         */
+        private final int reserved;
+
         /**
          * Concurrency restriction imposed on parallel jobs for this service. Can be null for unlimited parallel jobs.
          */
         @Nullable private final JobServiceConcurrency concurrency;
+
+        /**
+         * Number of claimed jobs of this type (executing or waiting)
+         */
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        /**
+         * Number of claimed jobs of this type whose execution has not yet started
+         */
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        /**
+         * Number of jobs of this type whose execution has started but not yet completed
+         */
+        private final AtomicInteger executing = new AtomicInteger();
+    }
+
+    /**
+     * The state of a job type on this node.
+     */
+    @Value
+    public static class JobTypeStatus {
+        BackgroundJobType type;
+        /**
+         * The priority declared by the job service
+         */
+        JobPriority priority;
+        /**
+         * Maximum number of parallel executions, or null if unlimited
+         */
+        @Nullable Short maxParallel;
+        /**
+         * Number of threads of the job type's executor
+         */
+        int threads;
+        /**
+         * Number of claimed jobs (executing or waiting)
+         */
+        int claimed;
+        /**
+         * Number of claimed jobs whose execution has not yet started
+         */
+        int waiting;
+        /**
+         * Number of executing jobs
+         */
+        int executing;
     }
 
     @RequiredArgsConstructor
@@ -119,15 +250,16 @@ public class BackgroundJobExecutor implements DisposableBean {
         private short currentWorkers = 0;
 
         /**
-         * Queue of jobs that need to be executed (requires synchronization when accessed!)
+         * Queue of jobs that need to be executed, highest priority first (requires synchronization when accessed!)
          */
-        private final Queue<BackgroundJobRecord> queue = new ArrayDeque<>();
+        private final Queue<BackgroundJobRecord> queue = new PriorityQueue<>(QUEUE_ORDER);
     }
 
     // Called by Spring during application startup, after all beans have been registered, before executing runners.
     @EventListener(ApplicationStartedEvent.class)
     public void detectJobServices() {
         // Collect all registered job services
+        Map<BackgroundJobType, JobService> jobServices = new HashMap<>();
         for (JobService jobService : applicationContext.getBeansOfType(JobService.class).values()) {
             short maxParallel = jobService.getMaxParallel();
             if (maxParallel < 1) {
@@ -136,21 +268,14 @@ public class BackgroundJobExecutor implements DisposableBean {
                     jobService, maxParallel
                 ));
             }
-            jobServices.compute(
-                Objects.requireNonNull(jobService.getType(), "The job type must not be null!"),
-                (jobType, duplicate) -> {
-                    if (duplicate != null) {
-                        throw new IllegalStateException(String.format(
-                            "There are two different services registered for jobs of type %s: %s, %s",
-                            jobType, duplicate.jobService, jobService
-                        ));
-                    }
-                    return new JobServiceWithConcurrency(
-                        jobService,
-                        maxParallel == Short.MAX_VALUE ? null : new JobServiceConcurrency(maxParallel)
-                    );
-                }
-            );
+            BackgroundJobType jobType = Objects.requireNonNull(jobService.getType(), "The job type must not be null!");
+            JobService duplicate = jobServices.putIfAbsent(jobType, jobService);
+            if (duplicate != null) {
+                throw new IllegalStateException(String.format(
+                    "There are two different services registered for jobs of type %s: %s, %s",
+                    jobType, duplicate, jobService
+                ));
+            }
         }
         log.debug("Registered background job services: {}", jobServices);
 
@@ -160,6 +285,27 @@ public class BackgroundJobExecutor implements DisposableBean {
             missing.removeAll(jobServices.keySet());
             throw new IllegalStateException("There is no service registered for the following background job types: " + missing);
         }
+
+        // Create a lane for each job type. A quarter of the batch is reserved, split according to the weights.
+        ExclaimProperties.BackgroundJobs properties = exclaimProperties.getBackgroundJobs();
+        int totalWeight = jobServices.values().stream().mapToInt(jobService -> jobService.getPriority().getWeight()).sum();
+        jobServices.forEach((jobType, jobService) -> {
+            short maxParallel = jobService.getMaxParallel();
+            int threads = Math.min(maxParallel, properties.getThreadsPerType());
+            String threadName = "job-" + jobType.name().toLowerCase(Locale.ROOT).replace('_', '-') + "-%d";
+            lanes.put(jobType, new JobLane(
+                jobService,
+                Executors.newFixedThreadPool(
+                    threads,
+                    new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build()
+                ),
+                threads,
+                properties.getBatchSize() * jobService.getPriority().getWeight() / (4 * totalWeight),
+                maxParallel == Short.MAX_VALUE ? null : new JobServiceConcurrency(maxParallel)
+            ));
+            metricsService.registerBackgroundJobsQueued(jobType.getLiteral(), 0);
+            metricsService.registerBackgroundJobsExecuting(jobType.getLiteral(), 0);
+        });
     }
 
     // Called by Spring when the application is ready, after executing runners.
@@ -199,6 +345,8 @@ public class BackgroundJobExecutor implements DisposableBean {
                 log.error("Scheduler thread did not shutdown in time!");
             }
         }
+        // Jobs that are still executing keep their lease, they are released on the next start of this node
+        lanes.values().forEach(lane -> lane.executor.shutdownNow());
     }
 
     /**
@@ -230,16 +378,110 @@ public class BackgroundJobExecutor implements DisposableBean {
      * @param payload payload for the job
      */
     void submit(BackgroundJobType jobType, byte[] payload) {
-        BackgroundJobRecord record = ctx.newRecord(BACKGROUND_JOBS);
+        submit(jobType, payload, null);
+    }
+
+    /**
+     * Submit a new background job with a key, which allows looking up pending jobs without reading their payloads.
+     *
+     * @param jobType type of the background job
+     * @param payload payload for the job
+     * @param key     key of the job, or null
+     */
+    void submit(BackgroundJobType jobType, byte[] payload, @Nullable String key) {
+        JobLane lane = lanes.get(jobType);
+        JobPriority priority = lane == null ? JobPriority.NORMAL : lane.jobService.getPriority();
+        BackgroundJobRecord record = newJobRecord(jobType, payload, key, priority, LocalDateTime.now(ZoneOffset.UTC));
+        record.insert();
+        if (ctx.family() == SQLDialect.POSTGRES) {
+            notifyChannel();
+        }
+    }
+
+    /**
+     * Submit many background jobs of the same type at once, using a single batch statement.
+     *
+     * @param jobType       type of the background jobs
+     * @param payloadsByKey payloads for the jobs by job key, one job is submitted per payload
+     * @param priority      priority of the jobs
+     */
+    void submitAll(BackgroundJobType jobType, Map<String, byte[]> payloadsByKey, JobPriority priority) {
+        if (payloadsByKey.isEmpty()) return;
         LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        ctx.batchInsert(
+            payloadsByKey.entrySet().stream()
+                .map(entry -> newJobRecord(jobType, entry.getValue(), entry.getKey(), priority, now))
+                .toList()
+        ).execute();
+        if (ctx.family() == SQLDialect.POSTGRES) {
+            notifyChannel();
+        }
+    }
+
+    private BackgroundJobRecord newJobRecord(BackgroundJobType jobType, byte[] payload, @Nullable String key, JobPriority priority, LocalDateTime now) {
+        BackgroundJobRecord record = ctx.newRecord(BACKGROUND_JOBS);
         record.setCreated(now);
         record.setNextAttempt(now);
         record.setType(jobType);
         record.setPayload(payload);
-        record.insert();
+        record.setJobKey(key);
+        record.setPriority(priority.getValue());
+        return record;
     }
 
-    private void notifyScheduler() {
+    /**
+     * Get the state of each job type on this node, ordered by job type.
+     *
+     * @return the state of each job type
+     */
+    public List<JobTypeStatus> getStatus() {
+        return lanes.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .map(entry -> {
+                JobLane lane = entry.getValue();
+                return new JobTypeStatus(
+                    entry.getKey(),
+                    lane.jobService.getPriority(),
+                    lane.concurrency == null ? null : lane.concurrency.maxParallel,
+                    lane.threads,
+                    lane.claimed.get(),
+                    lane.waiting.get(),
+                    lane.executing.get()
+                );
+            })
+            .toList();
+    }
+
+    /**
+     * Get a short human-readable description of a job's payload, see {@link JobService#describePayload(byte[])}.
+     *
+     * @param jobRecord the job
+     * @return the description
+     */
+    public String describePayload(BackgroundJobRecord jobRecord) {
+        JobLane lane = lanes.get(jobRecord.getType());
+        try {
+            return lane == null ? "" : lane.jobService.describePayload(jobRecord.getPayload());
+        } catch (RuntimeException e) {
+            log.debug("Could not describe payload of {}", jobRecord, e);
+            return "(invalid payload)";
+        }
+    }
+
+    /**
+     * Send a notification on the {@value #NOTIFICATION_CHANNEL} channel. PostgreSQL delivers the notification when the
+     * current transaction commits.
+     */
+    @Allow.PlainSQL
+    private void notifyChannel() {
+        ctx.execute("NOTIFY " + NOTIFICATION_CHANNEL);
+    }
+
+    /**
+     * Notify the scheduler that a new background job might be available. Unlike {@link #pollNow()}, this method does
+     * not wait for the current transaction to commit.
+     */
+    void notifyScheduler() {
         synchronized (waitLock) {
             skipNextWait = true;
             waitLock.notify();
@@ -251,12 +493,20 @@ public class BackgroundJobExecutor implements DisposableBean {
      */
     private void schedulerLoop() {
         synchronized (this) {
-            // Empty synchronized block to ensure that jobServices is up-to-date.
+            // Empty synchronized block to ensure that lanes is up-to-date.
         }
-        long interval = exclaimProperties.getBackgroundJobs().getPollInterval().toMillis();
-        log.info("Background job scheduler started, will look for due jobs every {} ms.", interval);
+        ExclaimProperties.BackgroundJobs properties = exclaimProperties.getBackgroundJobs();
+        long leaseRenewalInterval = properties.getLeaseDuration().toMillis() / 3;
+        long interval = Math.min(properties.getPollInterval().toMillis(), leaseRenewalInterval);
+        log.info("Background job scheduler started as node {}, will look for due jobs every {} ms.", properties.getNodeId(), interval);
+        releaseStaleLeases();
+        long lastLeaseRenewal = System.nanoTime();
         while (!isShuttingDown) {
             try {
+                if ((System.nanoTime() - lastLeaseRenewal) / 1_000_000 >= leaseRenewalInterval) {
+                    lastLeaseRenewal = System.nanoTime();
+                    renewLeases();
+                }
                 checkForDueJobs();
             } catch (Throwable e) {
                 log.error("Unhandled exception in scheduler thread, will keep running.", e);
@@ -264,7 +514,7 @@ public class BackgroundJobExecutor implements DisposableBean {
 
             try {
                 synchronized (waitLock) {
-                    if (!skipNextWait) waitLock.wait(interval);
+                    if (!skipNextWait) waitLock.wait(waitTimeout(interval));
                     skipNextWait = false;
                 }
             } catch (InterruptedException e) {
@@ -276,28 +526,115 @@ public class BackgroundJobExecutor implements DisposableBean {
     }
 
     /**
-     * Query the database for background jobs that are due and pass them to {@link #execute(BackgroundJobRecord, JobService, Runnable)}.
+     * Release the leases that this node still holds from a previous run, such that these jobs can be claimed again
+     * without waiting for the leases to expire.
+     */
+    private void releaseStaleLeases() {
+        try {
+            int released = ctx.update(BACKGROUND_JOBS)
+                .setNull(BACKGROUND_JOBS.LEASE_OWNER)
+                .setNull(BACKGROUND_JOBS.LEASE_EXPIRY)
+                .where(BACKGROUND_JOBS.LEASE_OWNER.eq(exclaimProperties.getBackgroundJobs().getNodeId()))
+                .execute();
+            if (released > 0) {
+                log.info("Released {} background job leases from a previous run of this node.", released);
+            }
+        } catch (Throwable e) {
+            log.error("Could not release background job leases from a previous run of this node.", e);
+        }
+    }
+
+    /**
+     * Extend the leases of all jobs that are currently executing or queued on this node.
+     */
+    private void renewLeases() {
+        if (executingBackgroundJobs.isEmpty()) return;
+        ExclaimProperties.BackgroundJobs properties = exclaimProperties.getBackgroundJobs();
+        int renewed = ctx.update(BACKGROUND_JOBS)
+            .set(BACKGROUND_JOBS.LEASE_EXPIRY, LocalDateTime.now(ZoneOffset.UTC).plus(properties.getLeaseDuration()))
+            .where(BACKGROUND_JOBS.LEASE_OWNER.eq(properties.getNodeId()))
+            .and(BACKGROUND_JOBS.ID.in(executingBackgroundJobs))
+            .execute();
+        log.debug("Renewed {} background job leases", renewed);
+    }
+
+    /**
+     * Determine how long the scheduler should wait, given the poll interval and the next known due job.
+     * Must be called in a synchronized({@link #waitLock}) block.
+     *
+     * @param interval the poll interval in milliseconds
+     * @return the time to wait in milliseconds, always positive
+     */
+    private long waitTimeout(long interval) {
+        if (nextDueAttempt == null) return interval;
+        long untilDue = Duration.between(LocalDateTime.now(ZoneOffset.UTC), nextDueAttempt).toMillis() + 1;
+        return Math.max(1, Math.min(interval, untilDue));
+    }
+
+    /**
+     * Remember that a job becomes due at the given time, such that the scheduler wakes up in time.
+     *
+     * @param nextAttempt the time of the job's next attempt
+     */
+    private void registerNextAttempt(LocalDateTime nextAttempt) {
+        synchronized (waitLock) {
+            if (nextDueAttempt == null || nextAttempt.isBefore(nextDueAttempt)) {
+                nextDueAttempt = nextAttempt;
+            }
+        }
+    }
+
+    /**
+     * Query the database for background jobs that are due and pass them to {@link #execute(BackgroundJobRecord, JobLane, Runnable)}.
      */
     private void checkForDueJobs() {
-        log.debug("Scheduler is checking for background jobs");
-        List<BackgroundJobRecord> dueJobs = ctx.fetch(
-            BACKGROUND_JOBS,
-            BACKGROUND_JOBS.NEXT_ATTEMPT.le(LocalDateTime.now(ZoneOffset.UTC)),
-            BACKGROUND_JOBS.ID.notIn(executingBackgroundJobs)
-        );
+        int batchSize = exclaimProperties.getBackgroundJobs().getBatchSize();
+        int capacity = batchSize - executingBackgroundJobs.size();
+        if (capacity <= 0) {
+            log.debug("Scheduler has claimed {} jobs, will check again when jobs have completed", batchSize);
+            saturated = true;
+            return;
+        }
+
+        log.debug("Scheduler is checking for up to {} background jobs", capacity);
+        synchronized (waitLock) {
+            nextDueAttempt = null;
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        int lowPriorityCapacity = Math.max(1, batchSize / 2) - executingLowPriorityJobs.size();
+        ClaimedJobs claimedJobs = claimDueJobs(now, capacity, lowPriorityCapacity);
+        List<BackgroundJobRecord> dueJobs = claimedJobs.jobs;
+        saturated = claimedJobs.more;
+        if (!saturated) {
+            // We have claimed all due jobs, look up when the next job will become due.
+            LocalDateTime nextAttempt = ctx
+                .select(DSL.min(BACKGROUND_JOBS.NEXT_ATTEMPT))
+                .from(BACKGROUND_JOBS)
+                .where(BACKGROUND_JOBS.NEXT_ATTEMPT.gt(now))
+                .and(BACKGROUND_JOBS.LEASE_OWNER.isNull())
+                .fetchOne(Record1::value1);
+            if (nextAttempt != null) {
+                registerNextAttempt(nextAttempt);
+            }
+        }
+
         for (BackgroundJobRecord jobRecord : dueJobs) {
             BackgroundJobType jobType = jobRecord.getType();
-            JobServiceWithConcurrency jobServiceWithConcurrency = jobServices.get(jobType);
-            if (jobServiceWithConcurrency == null) {
+            JobLane lane = lanes.get(jobType);
+            if (lane == null) {
                 log.error("Cannot execute {} because there is no service registered for job type {}!", jobRecord, jobType);
-                jobRecord.delete();
+                deleteJob(jobRecord);
             } else {
-                JobService jobService = jobServiceWithConcurrency.jobService;
-                JobServiceConcurrency concurrency = jobServiceWithConcurrency.concurrency;
+                JobServiceConcurrency concurrency = lane.concurrency;
                 if (executingBackgroundJobs.add(jobRecord.getBackgroundJobId())) {
+                    if (isLowPriority(jobRecord)) {
+                        executingLowPriorityJobs.add(jobRecord.getBackgroundJobId());
+                    }
+                    lane.claimed.incrementAndGet();
+                    metricsService.registerBackgroundJobsQueued(jobType.getLiteral(), lane.waiting.incrementAndGet());
                     if (concurrency == null) {
                         // No concurrency restrictions for this job type, we can execute the job directly.
-                        execute(jobRecord, jobService, null);
+                        execute(jobRecord, lane, null);
                     } else {
                         // Concurrency for this job type is limited. We first queue the job. If the number of queue
                         // workers has not yet reached the maximum, then we start a queue worker that will eventually
@@ -314,7 +651,7 @@ public class BackgroundJobExecutor implements DisposableBean {
                             concurrency.queue.add(jobRecord);
                             if (concurrency.currentWorkers < concurrency.maxParallel) {
                                 concurrency.currentWorkers++;
-                                workQueue(jobService, concurrency);
+                                workQueue(lane, concurrency);
                             } else {
                                 log.info("Delaying job because service reached {} maximum parallel executions: {}", concurrency.maxParallel, jobRecord);
                             }
@@ -326,78 +663,337 @@ public class BackgroundJobExecutor implements DisposableBean {
     }
 
     /**
-     * Work on a queue of jobs for a service with limited parallel executions.
+     * Claim a batch of due jobs that are not leased by any node. For each job type, due jobs are selected ordered by
+     * their priority and next attempt, and {@link FairShare} decides how many of them to claim. The selected rows are
+     * locked and leased to this node in a single transaction, such that no other node claims the same jobs.
+     *
+     * @param now              the current time
+     * @param limit            maximum number of jobs to claim
+     * @param lowPriorityLimit maximum number of jobs with low priority to claim
+     * @return the claimed jobs
+     */
+    private ClaimedJobs claimDueJobs(LocalDateTime now, int limit, int lowPriorityLimit) {
+        ExclaimProperties.BackgroundJobs properties = exclaimProperties.getBackgroundJobs();
+        return Objects.requireNonNull(transactionTemplate.execute(transactionStatus -> {
+            Map<BackgroundJobType, List<BackgroundJobRecord>> candidates = new LinkedHashMap<>();
+            Map<BackgroundJobType, FairShare.Demand> demands = new LinkedHashMap<>();
+            boolean more = false;
+            int lowPriorityJobs = 0;
+            for (Map.Entry<BackgroundJobType, JobLane> entry : lanes.entrySet()) {
+                SelectForUpdateStep<BackgroundJobRecord> query = ctx
+                    .selectFrom(BACKGROUND_JOBS)
+                    .where(BACKGROUND_JOBS.TYPE.eq(entry.getKey()))
+                    .and(BACKGROUND_JOBS.NEXT_ATTEMPT.le(now))
+                    .and(BACKGROUND_JOBS.LEASE_EXPIRY.isNull().or(BACKGROUND_JOBS.LEASE_EXPIRY.lt(now)))
+                    .orderBy(BACKGROUND_JOBS.PRIORITY.desc(), BACKGROUND_JOBS.NEXT_ATTEMPT, BACKGROUND_JOBS.ID)
+                    .limit(limit);
+                List<BackgroundJobRecord> selected = ctx.family() == SQLDialect.POSTGRES
+                    ? fetchSkipLocked(query)
+                    : query.forUpdate().fetch();
+                if (selected.size() >= limit) more = true;
+                List<BackgroundJobRecord> jobs = new ArrayList<>(selected.size());
+                for (BackgroundJobRecord job : selected) {
+                    if (!isLowPriority(job) || lowPriorityJobs++ < lowPriorityLimit) {
+                        jobs.add(job);
+                    }
+                }
+                if (jobs.size() < selected.size()) {
+                    log.debug("Leaving {} low priority jobs of type {} for later", selected.size() - jobs.size(), entry.getKey());
+                    more = true;
+                }
+                JobLane lane = entry.getValue();
+                candidates.put(entry.getKey(), jobs);
+                demands.put(entry.getKey(), new FairShare.Demand(
+                    lane.jobService.getPriority().getWeight(), lane.reserved, lane.claimed.get(), jobs.size()
+                ));
+            }
+
+            Map<BackgroundJobType, Integer> allocation = FairShare.allocate(limit, demands);
+            List<BackgroundJobRecord> jobs = new ArrayList<>();
+            for (Map.Entry<BackgroundJobType, List<BackgroundJobRecord>> entry : candidates.entrySet()) {
+                int count = allocation.getOrDefault(entry.getKey(), 0);
+                if (count < entry.getValue().size()) more = true;
+                jobs.addAll(entry.getValue().subList(0, count));
+            }
+            if (!jobs.isEmpty()) {
+                ctx.update(BACKGROUND_JOBS)
+                    .set(BACKGROUND_JOBS.LEASE_OWNER, properties.getNodeId())
+                    .set(BACKGROUND_JOBS.LEASE_EXPIRY, now.plus(properties.getLeaseDuration()))
+                    .where(BACKGROUND_JOBS.ID.in(jobs.stream().map(BackgroundJobRecord::getBackgroundJobId).toList()))
+                    .execute();
+            }
+            return new ClaimedJobs(jobs, more);
+        }));
+    }
+
+    /**
+     * Result of {@link #claimDueJobs(LocalDateTime, int, int)}.
+     *
+     * @param jobs the claimed jobs
+     * @param more whether due jobs were left unclaimed because of the limits
+     */
+    private record ClaimedJobs(List<BackgroundJobRecord> jobs, boolean more) {
+    }
+
+    private static boolean isLowPriority(BackgroundJobRecord jobRecord) {
+        return jobRecord.getPriority() <= JobPriority.LOW.getValue();
+    }
+
+    /**
+     * Fetch the result of the query with {@code FOR UPDATE SKIP LOCKED}, such that rows being claimed by other nodes
+     * do not block the scheduler.
+     */
+    @Require(SQLDialect.POSTGRES)
+    private List<BackgroundJobRecord> fetchSkipLocked(SelectForUpdateStep<BackgroundJobRecord> query) {
+        return query.forUpdate().skipLocked().fetch();
+    }
+
+    /**
+     * Delete a job, provided that this node still holds its lease.
+     *
+     * @param jobRecord the job to delete
+     */
+    private void deleteJob(BackgroundJobRecord jobRecord) {
+        int deleted = ctx.deleteFrom(BACKGROUND_JOBS)
+            .where(BACKGROUND_JOBS.ID.eq(jobRecord.getBackgroundJobId()))
+            .and(BACKGROUND_JOBS.LEASE_OWNER.eq(exclaimProperties.getBackgroundJobs().getNodeId()))
+            .execute();
+        if (deleted == 0) {
+            log.warn("Lease has been lost before the job could be deleted, it might be executed again: {}", jobRecord);
+        }
+    }
+
+    /**
+     * Save the retry count, next attempt and payload of a job and release its lease, provided that this node still
+     * holds the lease.
+     *
+     * @param jobRecord the job to reschedule
+     */
+    private void rescheduleJob(BackgroundJobRecord jobRecord) {
+        int updated = ctx.update(BACKGROUND_JOBS)
+            .set(BACKGROUND_JOBS.RETRY_COUNT, jobRecord.getRetryCount())
+            .set(BACKGROUND_JOBS.NEXT_ATTEMPT, jobRecord.getNextAttempt())
+            .set(BACKGROUND_JOBS.PAYLOAD, jobRecord.getPayload())
+            .setNull(BACKGROUND_JOBS.LEASE_OWNER)
+            .setNull(BACKGROUND_JOBS.LEASE_EXPIRY)
+            .where(BACKGROUND_JOBS.ID.eq(jobRecord.getBackgroundJobId()))
+            .and(BACKGROUND_JOBS.LEASE_OWNER.eq(exclaimProperties.getBackgroundJobs().getNodeId()))
+            .execute();
+        if (updated == 0) {
+            log.warn("Lease has been lost before the job could be rescheduled: {}", jobRecord);
+        }
+    }
+
+    /**
+     * Work on a queue of jobs for a service with limited parallel executions. Up to {@link JobService#getMaxBatchSize()}
+     * queued jobs are executed at once.
      *
-     * @param jobService  the service to execute the jobs with
+     * @param lane        the lane of the job type
      * @param concurrency the service's concurrency parameters
      */
-    private void workQueue(JobService jobService, JobServiceConcurrency concurrency) {
+    private void workQueue(JobLane lane, JobServiceConcurrency concurrency) {
         synchronized (concurrency) {
-            BackgroundJobRecord jobRecord = concurrency.queue.poll();
-            if (jobRecord != null) {
-                execute(jobRecord, jobService, () -> workQueue(jobService, concurrency));
-            } else {
+            if (concurrency.queue.isEmpty()) {
                 // No more queued jobs, the worker is done. Release its lock.
                 concurrency.currentWorkers--;
+            } else {
+                int maxBatchSize = Math.max(1, lane.jobService.getMaxBatchSize());
+                List<BackgroundJobRecord> jobRecords = new ArrayList<>(Math.min(maxBatchSize, concurrency.queue.size()));
+                while (jobRecords.size() < maxBatchSize && !concurrency.queue.isEmpty()) {
+                    jobRecords.add(concurrency.queue.remove());
+                }
+                executeBatch(jobRecords, lane, () -> workQueue(lane, concurrency));
             }
         }
     }
 
     /**
-     * Execute the background job using the provided service.
+     * Execute the background job on the executor of its lane.
      *
-     * @param jobRecord  the record of the job to execute
-     * @param jobService the service to execute the job with
-     * @param callback   a callback to be run when the job completed (successfully or failed)
+     * @param jobRecord the record of the job to execute
+     * @param lane      the lane of the job type
+     * @param callback  a callback to be run when the job completed (successfully or failed)
      */
     @SuppressWarnings("FutureReturnValueIgnored")
-    private void execute(BackgroundJobRecord jobRecord, JobService jobService, @Nullable Runnable callback) {
-        log.debug("Submitting task to execute {} with {}", jobRecord, jobService);
-        long jobId = jobRecord.getBackgroundJobId();
+    private void execute(BackgroundJobRecord jobRecord, JobLane lane, @Nullable Runnable callback) {
+        log.debug("Submitting task to execute {} with {}", jobRecord, lane.jobService);
         JobContext context = new JobContext(jobRecord.getRetryCount(), jobRecord.getCreated());
         try {
-            applicationTaskExecutor.<Void>submitCompletable(() -> {
+            CompletableFuture.runAsync(() -> {
                 log.debug("Executing {}", jobRecord);
-                jobService.execute(jobRecord.getPayload(), context);
-                return null; // such that the lambda is a callable instead of a runnable (required for throwing Exception)
-            }).whenComplete((ignored, ex) -> {
+                long started = startExecution(jobRecord, lane);
                 try {
-                    if (ex == null) {
-                        log.debug("Job completed successfully: {}", jobRecord);
-                        jobRecord.delete();
-                    } else {
-                        if (ex instanceof JobFailedPermanentlyException) {
-                            log.error("Job failed permanently: {}", jobRecord, ex);
-                            jobRecord.delete();
-                        } else {
-                            short retryCount = jobRecord.getRetryCount();
-                            if (retryCount < jobService.getMaxRetryCount()) {
-                                retryCount++;
-                                Duration delay = jobService.getRetryDelay(retryCount);
-                                jobRecord.setRetryCount(retryCount);
-                                jobRecord.setNextAttempt(LocalDateTime.now(ZoneOffset.UTC).plus(delay));
-                                context.getUpdatedPayload().ifPresent(jobRecord::setPayload);
-                                log.warn("Job failed, will be retried: {}", jobRecord, ex);
-                                jobRecord.update();
-                            } else {
-                                log.error("Job failed and exceeded max retry count: {}", jobRecord, ex);
-                                jobRecord.delete();
-                            }
-                        }
-                    }
+                    lane.jobService.execute(jobRecord.getPayload(), context);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    endExecution(jobRecord, lane, started);
+                }
+            }, lane.executor).whenComplete((ignored, ex) -> {
+                try {
+                    completeJob(jobRecord, lane, context, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
                 } finally {
-                    executingBackgroundJobs.remove(jobId);
                     if (callback != null) {
                         callback.run();
                     }
+                    notifySchedulerIfCapacityAvailable();
                 }
             });
-        } catch (TaskRejectedException e) {
+        } catch (RejectedExecutionException e) {
             log.error("Executor rejected task to execute background job, will try again on next polling: {}", jobRecord, e);
-            executingBackgroundJobs.remove(jobId);
+            lane.waiting.decrementAndGet();
+            rejectJob(jobRecord, lane);
             if (callback != null) {
                 callback.run();
             }
         }
     }
+
+    /**
+     * Execute multiple background jobs at once using {@link JobService#executeBatchAsync(List, java.util.concurrent.Executor)}.
+     *
+     * @param jobRecords the records of the jobs to execute
+     * @param lane       the lane of the job type
+     * @param callback   a callback to be run when all jobs completed (successfully or failed)
+     */
+    @SuppressWarnings("FutureReturnValueIgnored")
+    private void executeBatch(List<BackgroundJobRecord> jobRecords, JobLane lane, Runnable callback) {
+        log.debug("Submitting task to execute {} jobs with {}", jobRecords.size(), lane.jobService);
+        List<BatchedJob> batch = jobRecords.stream()
+            .map(jobRecord -> new BatchedJob(
+                jobRecord.getPayload(),
+                new JobContext(jobRecord.getRetryCount(), jobRecord.getCreated())
+            ))
+            .toList();
+        long started = System.nanoTime();
+        jobRecords.forEach(jobRecord -> startExecution(jobRecord, lane));
+        try {
+            lane.jobService.executeBatchAsync(batch, lane.executor).whenComplete((ignored, ex) -> {
+                jobRecords.forEach(jobRecord -> endExecution(jobRecord, lane, started));
+                Throwable batchFailure = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                try {
+                    for (int i = 0; i < jobRecords.size(); i++) {
+                        BatchedJob job = batch.get(i);
+                        try {
+                            completeJob(jobRecords.get(i), lane, job.getContext(), batchFailure != null ? batchFailure : job.getFailure());
+                        } catch (Throwable e) {
+                            log.error("Could not complete job {}", jobRecords.get(i), e);
+                        }
+                    }
+                } finally {
+                    callback.run();
+                    notifySchedulerIfCapacityAvailable();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.error("Executor rejected task to execute background jobs, will try again on next polling: {}", jobRecords, e);
+            jobRecords.forEach(jobRecord -> {
+                endExecution(jobRecord, lane, started);
+                rejectJob(jobRecord, lane);
+            });
+            callback.run();
+        }
+    }
+
+    /**
+     * Update the metrics when the execution of a claimed job starts.
+     *
+     * @param jobRecord the record of the job
+     * @param lane      the lane of the job type
+     * @return the start time in nanoseconds, see {@link System#nanoTime()}
+     */
+    private long startExecution(BackgroundJobRecord jobRecord, JobLane lane) {
+        String type = jobRecord.getType().getLiteral();
+        metricsService.registerBackgroundJobsQueued(type, lane.waiting.decrementAndGet());
+        metricsService.registerBackgroundJobsExecuting(type, lane.executing.incrementAndGet());
+        Duration wait = Duration.between(jobRecord.getNextAttempt(), LocalDateTime.now(ZoneOffset.UTC));
+        metricsService.registerBackgroundJobWait(type, Math.max(0, wait.toMillis()) / 1000.0);
+        return System.nanoTime();
+    }
+
+    /**
+     * Update the metrics when the execution of a job has ended.
+     *
+     * @param jobRecord the record of the job
+     * @param lane      the lane of the job type
+     * @param started   the start time returned by {@link #startExecution(BackgroundJobRecord, JobLane)}
+     */
+    private void endExecution(BackgroundJobRecord jobRecord, JobLane lane, long started) {
+        String type = jobRecord.getType().getLiteral();
+        metricsService.registerBackgroundJobsExecuting(type, lane.executing.decrementAndGet());
+        metricsService.registerBackgroundJobDuration(type, System.nanoTime() - started);
+    }
+
+    /**
+     * Update the database after a job has been executed: Delete the job when it completed or failed permanently,
+     * otherwise schedule a retry.
+     *
+     * @param jobRecord the record of the executed job
+     * @param lane      the lane of the job type
+     * @param context   the context of the job execution
+     * @param ex        the failure, or null if the job completed successfully
+     */
+    private void completeJob(BackgroundJobRecord jobRecord, JobLane lane, JobContext context, @Nullable Throwable ex) {
+        String type = jobRecord.getType().getLiteral();
+        try {
+            if (ex == null) {
+                log.debug("Job completed successfully: {}", jobRecord);
+                deleteJob(jobRecord);
+            } else {
+                if (ex instanceof JobFailedPermanentlyException) {
+                    log.error("Job failed permanently: {}", jobRecord, ex);
+                    metricsService.registerBackgroundJobFailure(type);
+                    deleteJob(jobRecord);
+                } else {
+                    short retryCount = jobRecord.getRetryCount();
+                    if (retryCount < lane.jobService.getMaxRetryCount()) {
+                        retryCount++;
+                        Duration delay = lane.jobService.getRetryDelay(retryCount);
+                        jobRecord.setRetryCount(retryCount);
+                        jobRecord.setNextAttempt(LocalDateTime.now(ZoneOffset.UTC).plus(delay));
+                        context.getUpdatedPayload().ifPresent(jobRecord::setPayload);
+                        log.warn("Job failed, will be retried: {}", jobRecord, ex);
+                        metricsService.registerBackgroundJobRetry(type);
+                        rescheduleJob(jobRecord);
+                        registerNextAttempt(jobRecord.getNextAttempt());
+                    } else {
+                        log.error("Job failed and exceeded max retry count: {}", jobRecord, ex);
+                        metricsService.registerBackgroundJobFailure(type);
+                        deleteJob(jobRecord);
+                    }
+                }
+            }
+        } finally {
+            executingBackgroundJobs.remove(jobRecord.getBackgroundJobId());
+            executingLowPriorityJobs.remove(jobRecord.getBackgroundJobId());
+            lane.claimed.decrementAndGet();
+        }
+    }
+
+    /**
+     * Release a job that could not be submitted to the executor, such that it will be claimed again.
+     *
+     * @param jobRecord the record of the rejected job
+     * @param lane      the lane of the job type
+     */
+    private void rejectJob(BackgroundJobRecord jobRecord, JobLane lane) {
+        try {
+            rescheduleJob(jobRecord);
+        } finally {
+            executingBackgroundJobs.remove(jobRecord.getBackgroundJobId());
+            executingLowPriorityJobs.remove(jobRecord.getBackgroundJobId());
+            lane.claimed.decrementAndGet();
+        }
+    }
+
+    /**
+     * If the last check claimed a full batch, notify the scheduler once half of the batch has completed such that it
+     * claims the next batch.
+     */
+    private void notifySchedulerIfCapacityAvailable() {
+        if (saturated && executingBackgroundJobs.size() <= exclaimProperties.getBackgroundJobs().getBatchSize() / 2) {
+            saturated = false;
+            notifyScheduler();
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package de.rptu.cs.exclaim.jobs;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.Nullable;
+
+/**
+ * A single job within a batch passed to {@link JobService#executeBatch(java.util.List)}.
+ * <p>
+ * The job is considered successful unless {@link #fail(Throwable)} has been called.
+ */
+@RequiredArgsConstructor
+public class BatchedJob {
+    /**
+     * The payload of the job.
+     */
+    @Getter
+    @Nullable
+    private final byte[] payload;
+
+    /**
+     * The context of the job execution.
+     */
+    @Getter
+    private final JobContext context;
+
+    /**
+     * The failure that has been reported for this job, if any.
+     */
+    @Getter
+    @Nullable
+    private volatile Throwable failure = null;
+
+    /**
+     * Report that the execution of this job failed. Use {@link JobFailedPermanentlyException} to avoid retries.
+     *
+     * @param failure the cause of the failure
+     */
+    public void fail(Throwable failure) {
+        this.failure = failure;
+    }
+}
@@ -0,0 +1,214 @@
+package de.rptu.cs.exclaim.jobs;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import de.rptu.cs.exclaim.data.records.ComputedGroupAssignmentRecord;
+import de.rptu.cs.exclaim.optimus.Optimus;
+import de.rptu.cs.exclaim.schema.enums.BackgroundJobType;
+import de.rptu.cs.exclaim.utils.JsonUtils;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+
+import static de.rptu.cs.exclaim.jobs.PayloadHelpers.payloadToString;
+import static de.rptu.cs.exclaim.jobs.PayloadHelpers.stringToPayload;
+import static de.rptu.cs.exclaim.schema.tables.ComputedGroupAssignments.COMPUTED_GROUP_ASSIGNMENTS;
+
+/**
+ * Calculates the Optimus group assignment of an exercise outside the HTTP request.
+ * <p>
+ * The result is stored per exercise together with the fingerprint of the groups and preferences it has been calculated
+ * for (see {@link Optimus.Input#fingerprint()}), and reused until the preferences change. When the calculation has
+ * finished, a {@link StatusMsg} is sent to {@link #channel(String)}.
+ */
+@Service
+@Slf4j
+public class CalculateGroupAssignment implements JobService {
+    private static final BackgroundJobType TYPE = BackgroundJobType.CALCULATE_GROUP_ASSIGNMENT;
+
+    private final BackgroundJobExecutor backgroundJobExecutor;
+    private final DSLContext ctx;
+    private final Optimus optimus;
+    private final SimpMessagingTemplate broker;
+    private final ObjectReader assignmentReader;
+
+    public CalculateGroupAssignment(
+        BackgroundJobExecutor backgroundJobExecutor,
+        DSLContext ctx,
+        Optimus optimus,
+        SimpMessagingTemplate broker,
+        ObjectReader objectReader
+    ) {
+        this.backgroundJobExecutor = backgroundJobExecutor;
+        this.ctx = ctx;
+        this.optimus = optimus;
+        this.broker = broker;
+        this.assignmentReader = objectReader.forType(new TypeReference<Map<Integer, String>>() {
+        });
+    }
+
+    @Value
+    public static class StatusMsg {
+        String exercise;
+        String status; // "done" or "failed"
+    }
+
+    public static String channel(String exerciseId) {
+        return "/topic/optimus/" + exerciseId;
+    }
+
+    @Override
+    public BackgroundJobType getType() {
+        return TYPE;
+    }
+
+    @Override
+    public String describePayload(@Nullable byte[] payload) {
+        return "exercise " + payloadToString(payload);
+    }
+
+    /**
+     * A failed calculation is not retried automatically, the next view of the Optimus page submits a new job.
+     */
+    @Override
+    public short getMaxRetryCount() {
+        return 0;
+    }
+
+    /**
+     * The solver already uses multiple threads, so calculate one assignment at a time.
+     */
+    @Override
+    public short getMaxParallel() {
+        return 1;
+    }
+
+    @Override
+    public void execute(@Nullable byte[] payload, JobContext context) throws Exception {
+        String exerciseId = payloadToString(payload);
+        log.debug("Executing job for exercise {}", exerciseId);
+        String pendingFingerprint = ctx
+            .select(COMPUTED_GROUP_ASSIGNMENTS.FINGERPRINT)
+            .from(COMPUTED_GROUP_ASSIGNMENTS)
+            .where(COMPUTED_GROUP_ASSIGNMENTS.EXERCISEID.eq(exerciseId))
+            .and(COMPUTED_GROUP_ASSIGNMENTS.ASSIGNMENT.isNull())
+            .fetchOne(COMPUTED_GROUP_ASSIGNMENTS.FINGERPRINT);
+        if (pendingFingerprint == null) {
+            log.debug("No pending group assignment for exercise {}", exerciseId);
+            return;
+        }
+        try {
+            // Not in a transaction, the solver might take a while
+            Optimus.Input input = optimus.loadInput(exerciseId);
+            if (!input.fingerprint().equals(pendingFingerprint)) {
+                // The groups or preferences have changed since the job was submitted. Leave the row to the job for the
+                // current fingerprint, which the next page view submits if there is none yet.
+                log.debug("Group assignment for exercise {} is outdated, skipping", exerciseId);
+            } else {
+                Map<Integer, String> assignment = optimus.calculateAssignment(input);
+                // Only store the result if no newer calculation has been requested in the meantime
+                int stored = ctx
+                    .update(COMPUTED_GROUP_ASSIGNMENTS)
+                    .set(COMPUTED_GROUP_ASSIGNMENTS.ASSIGNMENT, JsonUtils.toJson(assignment))
+                    .set(COMPUTED_GROUP_ASSIGNMENTS.COST, Optimus.cost(input, assignment))
+                    .set(COMPUTED_GROUP_ASSIGNMENTS.CALCULATED, LocalDateTime.now(ZoneOffset.UTC))
+                    .where(COMPUTED_GROUP_ASSIGNMENTS.EXERCISEID.eq(exerciseId))
+                    .and(COMPUTED_GROUP_ASSIGNMENTS.FINGERPRINT.eq(pendingFingerprint))
+                    .and(COMPUTED_GROUP_ASSIGNMENTS.ASSIGNMENT.isNull())
+                    .execute();
+                if (stored == 0) {
+                    log.debug("Group assignment for exercise {} has been superseded, discarding the result", exerciseId);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // Remove the pending calculation, such that the next page view starts a new one, unless a newer calculation
+            // has been requested in the meantime
+            ctx
+                .deleteFrom(COMPUTED_GROUP_ASSIGNMENTS)
+                .where(COMPUTED_GROUP_ASSIGNMENTS.EXERCISEID.eq(exerciseId))
+                .and(COMPUTED_GROUP_ASSIGNMENTS.FINGERPRINT.eq(pendingFingerprint))
+                .and(COMPUTED_GROUP_ASSIGNMENTS.ASSIGNMENT.isNull())
+                .execute();
+            sendStatus(exerciseId, "failed");
+            throw e;
+        }
+        // Also sent for an outdated calculation, such that waiting pages reload and request the current one
+        sendStatus(exerciseId, "done");
+    }
+
+    private void sendStatus(String exerciseId, String status) {
+        try {
+            broker.convertAndSend(channel(exerciseId), new StatusMsg(exerciseId, status));
+        } catch (MessagingException e) {
+            // The page shows the result when it is reloaded
+            log.warn("Could not send group assignment status for exercise {}", exerciseId, e);
+        }
+    }
+
+    /**
+     * Get the stored group assignment for the given input, or start calculating it in the background. Repeated calls
+     * for the same input submit at most one job, until its calculation has failed.
+     *
+     * @param exerciseId the exercise
+     * @param input      the groups and preferences of the exercise
+     * @return the stored assignment (map userId -> groupId), or empty if it is being calculated
+     */
+    public Optional<Map<Integer, String>> getOrSubmit(String exerciseId, Optimus.Input input) {
+        String fingerprint = input.fingerprint();
+        ComputedGroupAssignmentRecord record = ctx.fetchOne(
+            COMPUTED_GROUP_ASSIGNMENTS,
+            COMPUTED_GROUP_ASSIGNMENTS.EXERCISEID.eq(exerciseId)
+        );
+        if (record != null && record.getFingerprint().equals(fingerprint)) {
+            String assignment = record.getAssignment();
+            if (assignment == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(assignmentReader.readValue(assignment));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Mark the calculation for this fingerprint as pending. Concurrent page views wait for the row lock (or the
+        // primary key) of the first one and then do not change anything, such that only one job is submitted.
+        int changed;
+        if (record == null) {
+            changed = ctx
+                .insertInto(COMPUTED_GROUP_ASSIGNMENTS)
+                .set(COMPUTED_GROUP_ASSIGNMENTS.EXERCISEID, exerciseId)
+                .set(COMPUTED_GROUP_ASSIGNMENTS.FINGERPRINT, fingerprint)
+                .onDuplicateKeyIgnore()
+                .execute();
+        } else {
+            changed = ctx
+                .update(COMPUTED_GROUP_ASSIGNMENTS)
+                .set(COMPUTED_GROUP_ASSIGNMENTS.FINGERPRINT, fingerprint)
+                .setNull(COMPUTED_GROUP_ASSIGNMENTS.ASSIGNMENT)
+                .setNull(COMPUTED_GROUP_ASSIGNMENTS.COST)
+                .setNull(COMPUTED_GROUP_ASSIGNMENTS.CALCULATED)
+                .where(COMPUTED_GROUP_ASSIGNMENTS.EXERCISEID.eq(exerciseId))
+                .and(COMPUTED_GROUP_ASSIGNMENTS.FINGERPRINT.ne(fingerprint))
+                .execute();
+        }
+        if (changed == 1) {
+            log.info("Calculating group assignment for exercise {} in the background", exerciseId);
+            backgroundJobExecutor.submit(TYPE, stringToPayload(exerciseId));
+            backgroundJobExecutor.pollNow();
+        }
+        return Optional.empty();
+    }
+}
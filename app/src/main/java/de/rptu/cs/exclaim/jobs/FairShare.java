@@ -0,0 +1,73 @@
+package de.rptu.cs.exclaim.jobs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Distributes the free capacity of the {@link BackgroundJobExecutor} among the job types.
+ * <p>
+ * Slots are handed out one at a time to the type with the smallest number of claimed jobs relative to its weight
+ * (weighted fair queueing), as long as that type has due jobs left. Free capacity is never left unused while there are
+ * due jobs, unless it is reserved: each type has a number of reserved slots that other types must not take, such that
+ * latency-sensitive jobs can always be claimed, even during a flood of jobs of another type.
+ */
+final class FairShare {
+    private FairShare() {
+    }
+
+    /**
+     * The state of a job type.
+     *
+     * @param weight   weight of the type, at least 1
+     * @param reserved number of slots reserved for this type
+     * @param claimed  number of jobs of this type that are currently claimed (executing or queued)
+     * @param due      number of due jobs of this type that could be claimed
+     */
+    record Demand(int weight, int reserved, int claimed, int due) {
+    }
+
+    /**
+     * Decide how many due jobs of each type to claim.
+     *
+     * @param capacity number of jobs that can be claimed in total
+     * @param demands  state of each job type
+     * @return number of jobs to claim per type, only types with at least one job are contained
+     */
+    static <K> Map<K, Integer> allocate(int capacity, Map<K, Demand> demands) {
+        Map<K, Integer> allocation = new LinkedHashMap<>();
+        for (int remaining = capacity; remaining > 0; remaining--) {
+            // Slots still reserved for each type
+            int totalUnmetReserve = 0;
+            for (Map.Entry<K, Demand> entry : demands.entrySet()) {
+                totalUnmetReserve += unmetReserve(entry.getValue(), allocation.getOrDefault(entry.getKey(), 0));
+            }
+
+            K next = null;
+            long nextClaimed = 0;
+            int nextWeight = 1;
+            for (Map.Entry<K, Demand> entry : demands.entrySet()) {
+                Demand demand = entry.getValue();
+                int allocated = allocation.getOrDefault(entry.getKey(), 0);
+                if (allocated >= demand.due) continue;
+                // Do not take slots reserved for other types
+                int reservedForOthers = totalUnmetReserve - unmetReserve(demand, allocated);
+                if (remaining - 1 < reservedForOthers) continue;
+                // Compare (claimed + 1) / weight without division
+                long claimed = demand.claimed + allocated + 1;
+                int weight = Math.max(1, demand.weight);
+                if (next == null || claimed * nextWeight < nextClaimed * weight) {
+                    next = entry.getKey();
+                    nextClaimed = claimed;
+                    nextWeight = weight;
+                }
+            }
+            if (next == null) break;
+            allocation.merge(next, 1, Integer::sum);
+        }
+        return allocation;
+    }
+
+    private static int unmetReserve(Demand demand, int allocated) {
+        return Math.max(0, demand.reserved - demand.claimed - allocated);
+    }
+}
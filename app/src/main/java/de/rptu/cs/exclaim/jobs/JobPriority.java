@@ -0,0 +1,40 @@
+package de.rptu.cs.exclaim.jobs;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Priority of a background job. Due jobs with a higher priority are claimed and executed first.
+ * <p>
+ * Each {@link JobService} declares the priority of its job type (see {@link JobService#getPriority()}). The weight of
+ * that priority determines the type's share of the jobs claimed by the {@link BackgroundJobExecutor}.
+ */
+@RequiredArgsConstructor
+@Getter
+public enum JobPriority {
+    /**
+     * Jobs that nobody is actively waiting for, e.g. tests of all teams requested by an assistant. They may only
+     * occupy half of the jobs claimed by a node, such that there is always room for jobs with normal priority.
+     */
+    LOW((short) -1, 1),
+
+    /**
+     * Jobs triggered by an interaction of a user.
+     */
+    NORMAL((short) 0, 2),
+
+    /**
+     * Jobs that users are waiting for before they can continue, e.g. mails with an activation link.
+     */
+    HIGH((short) 1, 4);
+
+    /**
+     * The value stored in the database
+     */
+    private final short value;
+
+    /**
+     * Weight of job types with this priority for sharing the executor's capacity
+     */
+    private final int weight;
+}
@@ -4,6 +4,9 @@ import de.rptu.cs.exclaim.schema.enums.BackgroundJobType;
 import org.springframework.lang.Nullable;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * A Job Service is responsible for executing background jobs of a specific type.
@@ -27,6 +30,19 @@ public interface JobService {
      */
     void execute(@Nullable byte[] payload, JobContext context) throws Exception;
 
+    /**
+     * Describe the payload of a job in a few words for the administration page, e.g. the user a mail is sent to.
+     * Must not reveal secrets contained in the payload.
+     * <p>
+     * The default implementation only shows the size of the payload.
+     *
+     * @param payload the payload of the job
+     * @return the description
+     */
+    default String describePayload(@Nullable byte[] payload) {
+        return payload == null ? "" : payload.length + " bytes";
+    }
+
     /**
      * How often should a job for this service be tried again if an error occurs?
      * The total number of attempts will be one plus the maximum retries.
@@ -56,11 +72,61 @@ public interface JobService {
         };
     }
 
+    /**
+     * Priority of the jobs of this service. Jobs with higher priority are claimed first, and job types with higher
+     * priority get a larger share of the jobs claimed at once.
+     */
+    default JobPriority getPriority() {
+        return JobPriority.NORMAL;
+    }
+
     /**
      * How many jobs does this service want to execute in parallel?
-     * Default is Short.MAX_VALUE which means unlimited parallel execution.
+     * Default is Short.MAX_VALUE which means no limit apart from the threads of the service's executor
+     * ({@code exclaim.background-jobs.threads-per-type}).
      */
     default short getMaxParallel() {
         return Short.MAX_VALUE;
     }
+
+    /**
+     * How many queued jobs may be passed to {@link #executeBatch(List)} at once?
+     * Batching only applies to services with limited parallel execution (see {@link #getMaxParallel()}), where jobs are
+     * queued. Default is 1 which means that jobs are always executed individually.
+     */
+    default int getMaxBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Execute multiple jobs at once. Failures must be reported per job using {@link BatchedJob#fail(Throwable)}. If this
+     * method throws an exception, all jobs of the batch are considered failed with that exception.
+     * <p>
+     * The default implementation executes each job individually using {@link #execute(byte[], JobContext)}.
+     *
+     * @param jobs the jobs to execute
+     */
+    default void executeBatch(List<BatchedJob> jobs) {
+        for (BatchedJob job : jobs) {
+            try {
+                execute(job.getPayload(), job.getContext());
+            } catch (Exception e) {
+                job.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Execute multiple jobs asynchronously. Services that mostly wait for remote systems can override this method to
+     * release the executor's thread while waiting. Failures must be reported as for {@link #executeBatch(List)}.
+     * <p>
+     * The default implementation runs {@link #executeBatch(List)} using the given executor.
+     *
+     * @param jobs     the jobs to execute
+     * @param executor the executor to run blocking work on
+     * @return a future that completes when all jobs have completed
+     */
+    default CompletableFuture<Void> executeBatchAsync(List<BatchedJob> jobs, Executor executor) {
+        return CompletableFuture.runAsync(() -> executeBatch(jobs), executor);
+    }
 }
@@ -2,6 +2,7 @@ package de.rptu.cs.exclaim.jobs;
 
 import com.fasterxml.jackson.databind.ObjectReader;
 import de.rptu.cs.exclaim.ExclaimProperties;
+import de.rptu.cs.exclaim.data.GroupAndTeam;
 import de.rptu.cs.exclaim.schema.enums.BackgroundJobType;
 import de.rptu.cs.exclaim.utils.JsonUtils;
 import de.rptu.cs.exclaim.utils.RteServices;
@@ -12,13 +13,27 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.jooq.Record1;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static de.rptu.cs.exclaim.jobs.PayloadHelpers.payloadToString;
 import static de.rptu.cs.exclaim.jobs.PayloadHelpers.stringToPayload;
+import static de.rptu.cs.exclaim.schema.tables.BackgroundJobs.BACKGROUND_JOBS;
 
 @Service
 @Slf4j
@@ -26,6 +41,7 @@ public class RunTest implements JobService {
     private static final BackgroundJobType TYPE = BackgroundJobType.RUN_TEST;
 
     private final BackgroundJobExecutor backgroundJobExecutor;
+    private final DSLContext ctx;
     private final RteServices rteServices;
     private final ObjectReader objectReader;
 
@@ -37,17 +53,23 @@ public class RunTest implements JobService {
     @Getter(onMethod_ = {@Override})
     private final short maxParallel;
 
-    public RunTest(ExclaimProperties exclaimProperties, BackgroundJobExecutor backgroundJobExecutor, RteServices rteServices, ObjectReader objectReader) {
+    @Getter(onMethod_ = {@Override})
+    private final int maxBatchSize;
+
+    public RunTest(ExclaimProperties exclaimProperties, BackgroundJobExecutor backgroundJobExecutor, DSLContext ctx, RteServices rteServices, ObjectReader objectReader) {
         this.backgroundJobExecutor = backgroundJobExecutor;
+        this.ctx = ctx;
         this.rteServices = rteServices;
         this.objectReader = objectReader;
         ExclaimProperties.Rte rte = exclaimProperties.getRte();
         this.enabled = rte.getEnabled();
         if (enabled) {
             maxParallel = rte.getMaxParallel();
-            log.info("Allowing up to {} parallel RTE jobs", maxParallel);
+            maxBatchSize = rte.getBatchSize();
+            log.info("Sending up to {} tests to the RTE at the same time, in batches of up to {} tests", maxParallel, maxBatchSize);
         } else {
             maxParallel = Short.MAX_VALUE;
+            maxBatchSize = 1;
             log.info("RTE is disabled, will mark any RTE jobs as failed permanently.");
         }
     }
@@ -71,6 +93,17 @@ public class RunTest implements JobService {
         return TYPE;
     }
 
+    @Override
+    public String describePayload(@Nullable byte[] payload) {
+        try {
+            Key key = objectReader.readValue(payloadToString(payload), Key.class);
+            return String.format("%s/%s/%s, group %s, team %s, request %d",
+                key.exerciseId, key.sheetId, key.assignmentId, key.groupId, key.teamId, key.requestNr);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public void execute(@Nullable byte[] payload, JobContext context) throws IOException {
         if (!enabled) {
@@ -82,9 +115,124 @@ public class RunTest implements JobService {
         rteServices.runTest(key.exerciseId, key.sheetId, key.assignmentId, key.groupId, key.teamId, key.requestNr);
     }
 
+    @Override
+    public void executeBatch(List<BatchedJob> jobs) {
+        executeBatchAsync(jobs, Runnable::run).join();
+    }
+
+    @Override
+    public CompletableFuture<Void> executeBatchAsync(List<BatchedJob> jobs, Executor executor) {
+        // Preparing the requests queries the database and thus runs on the executor. Waiting for the RTE does not
+        // occupy any thread.
+        return CompletableFuture
+            .supplyAsync(() -> startBatch(jobs), executor)
+            .thenCompose(results -> CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])));
+    }
+
+    /**
+     * Send the tests of a batch to the RTE, grouped by assignment.
+     *
+     * @param jobs the jobs of the batch
+     * @return futures that complete when the individual tests are done, failures have already been reported to the jobs
+     */
+    private List<CompletableFuture<Void>> startBatch(List<BatchedJob> jobs) {
+        if (!enabled) {
+            jobs.forEach(job -> job.fail(new JobFailedPermanentlyException("RTE is disabled")));
+            return List.of();
+        }
+
+        // Group the tests by assignment
+        Map<String, List<BatchedJob>> jobsByAssignment = new LinkedHashMap<>();
+        Map<BatchedJob, RteServices.TestRequest> requests = new HashMap<>();
+        for (BatchedJob job : jobs) {
+            try {
+                Key key = objectReader.readValue(payloadToString(job.getPayload()), Key.class);
+                requests.put(job, new RteServices.TestRequest(key.exerciseId, key.sheetId, key.assignmentId, key.groupId, key.teamId, key.requestNr));
+                jobsByAssignment
+                    .computeIfAbsent(key.exerciseId + "/" + key.sheetId + "/" + key.assignmentId, k -> new ArrayList<>())
+                    .add(job);
+            } catch (IOException | RuntimeException e) {
+                job.fail(e);
+            }
+        }
+
+        List<CompletableFuture<Void>> pending = new ArrayList<>(jobs.size());
+        jobsByAssignment.forEach((assignment, assignmentJobs) -> {
+            log.debug("Executing {} jobs for {}", assignmentJobs.size(), assignment);
+            List<CompletableFuture<Void>> results;
+            try {
+                results = rteServices.runTests(assignmentJobs.stream().map(requests::get).toList());
+            } catch (RuntimeException e) {
+                assignmentJobs.forEach(job -> job.fail(e));
+                return;
+            }
+            for (int i = 0; i < assignmentJobs.size(); i++) {
+                BatchedJob job = assignmentJobs.get(i);
+                pending.add(results.get(i).handle((ignored, ex) -> {
+                    if (ex != null) {
+                        Throwable cause = ex.getCause();
+                        job.fail(ex instanceof CompletionException && cause != null ? cause : ex);
+                    }
+                    return null;
+                }));
+            }
+        });
+        return pending;
+    }
+
     public void submit(String exerciseId, String sheetId, String assignmentId, String groupId, String teamId, int requestNr) {
-        backgroundJobExecutor.submit(TYPE, stringToPayload(JsonUtils.toJson(
-            new Key(exerciseId, sheetId, assignmentId, groupId, teamId, requestNr)
-        )));
+        backgroundJobExecutor.submit(
+            TYPE,
+            stringToPayload(JsonUtils.toJson(new Key(exerciseId, sheetId, assignmentId, groupId, teamId, requestNr))),
+            jobKey(exerciseId, sheetId, assignmentId, groupId, teamId)
+        );
+    }
+
+    /**
+     * Get the job key of a test, which is the assignment followed by the team. Ids cannot contain slashes.
+     */
+    private static String jobKey(String exerciseId, String sheetId, String assignmentId, String groupId, String teamId) {
+        return assignmentKeyPrefix(exerciseId, sheetId, assignmentId) + groupId + "/" + teamId;
+    }
+
+    private static String assignmentKeyPrefix(String exerciseId, String sheetId, String assignmentId) {
+        return exerciseId + "/" + sheetId + "/" + assignmentId + "/";
+    }
+
+    /**
+     * Get the teams with a test of the given assignment that is waiting for execution or running. Jobs are deleted
+     * when the test is done or has failed permanently.
+     */
+    public Set<GroupAndTeam> getTeamsWithPendingTests(String exerciseId, String sheetId, String assignmentId) {
+        String prefix = assignmentKeyPrefix(exerciseId, sheetId, assignmentId);
+        Set<GroupAndTeam> teams = new HashSet<>();
+        for (String key : ctx
+            .select(BACKGROUND_JOBS.JOB_KEY)
+            .from(BACKGROUND_JOBS)
+            .where(BACKGROUND_JOBS.TYPE.eq(TYPE))
+            .and(BACKGROUND_JOBS.JOB_KEY.startsWith(prefix))
+            .fetch(Record1::value1)
+        ) {
+            String[] groupAndTeam = key.substring(prefix.length()).split("/", 2);
+            teams.add(new GroupAndTeam(groupAndTeam[0], groupAndTeam[1]));
+        }
+        return teams;
+    }
+
+    /**
+     * Submit jobs for many tests at once, e.g. to test all teams of an assignment.
+     */
+    public void submitAll(List<RteServices.TestRequest> requests, JobPriority priority) {
+        Map<String, byte[]> payloadsByKey = new LinkedHashMap<>();
+        for (RteServices.TestRequest request : requests) {
+            payloadsByKey.put(
+                jobKey(request.getExerciseId(), request.getSheetId(), request.getAssignmentId(), request.getGroupId(), request.getTeamId()),
+                stringToPayload(JsonUtils.toJson(new Key(
+                    request.getExerciseId(), request.getSheetId(), request.getAssignmentId(),
+                    request.getGroupId(), request.getTeamId(), request.getRequestNr()
+                )))
+            );
+        }
+        backgroundJobExecutor.submitAll(TYPE, payloadsByKey, priority);
     }
 }
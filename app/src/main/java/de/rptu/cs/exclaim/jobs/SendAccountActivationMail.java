@@ -39,6 +39,16 @@ public class SendAccountActivationMail implements JobService {
         return TYPE;
     }
 
+    @Override
+    public JobPriority getPriority() {
+        return JobPriority.HIGH;
+    }
+
+    @Override
+    public String describePayload(@Nullable byte[] payload) {
+        return "userId " + payloadToInt(payload);
+    }
+
     @Override
     public void execute(@Nullable byte[] payload, JobContext context) {
         int userId = payloadToInt(payload);
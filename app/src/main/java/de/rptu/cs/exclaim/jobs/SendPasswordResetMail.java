@@ -43,6 +43,16 @@ public class SendPasswordResetMail implements JobService {
         return TYPE;
     }
 
+    @Override
+    public JobPriority getPriority() {
+        return JobPriority.HIGH;
+    }
+
+    @Override
+    public String describePayload(@Nullable byte[] payload) {
+        return "userId " + payloadToInt(payload);
+    }
+
     @Override
     public void execute(@Nullable byte[] payload, JobContext context) {
         int userId = payloadToInt(payload);
@@ -20,6 +20,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 
 import static de.rptu.cs.exclaim.jobs.PayloadHelpers.payloadToString;
@@ -56,6 +57,20 @@ public class SendSamlAssociationMail implements JobService {
         return TYPE;
     }
 
+    @Override
+    public JobPriority getPriority() {
+        return JobPriority.HIGH;
+    }
+
+    @Override
+    public String describePayload(@Nullable byte[] payload) {
+        try {
+            return objectReader.readValue(payloadToString(payload), Payload.class).username;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public void execute(@Nullable byte[] payload, JobContext context) throws IOException {
         Payload data = objectReader.readValue(payloadToString(payload), Payload.class);
@@ -0,0 +1,77 @@
+package de.rptu.cs.exclaim.monitoring;
+
+import de.rptu.cs.exclaim.ExclaimProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the execution time of SQL statements, from sending the statement until the database has executed it:
+ * <ul>
+ *     <li>The {@code exclaim_statement_seconds} histogram is labeled with the {@link StatementShapes shape} of the
+ *     statement. The time to fetch the results afterwards (e.g. while iterating a lazy cursor) is recorded separately
+ *     in {@code exclaim_statement_fetch_seconds}.</li>
+ *     <li>Statements taking longer than {@code exclaim.metrics.slow-query-threshold} are logged, without bind
+ *     values.</li>
+ *     <li>The time and shape of each statement is attributed to the current request, see {@link RequestMetrics}.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DatabaseMetricsListener implements ExecuteListener {
+    private static final String START_KEY = DatabaseMetricsListener.class.getName() + ".start";
+    private static final String EXECUTE_END_KEY = DatabaseMetricsListener.class.getName() + ".executeEnd";
+
+    /**
+     * Maximum number of statement shapes used as metrics label, further shapes are labeled {@value #OTHER_SHAPE}.
+     * Statements written by hand (e.g. on the SQL admin page) could otherwise create arbitrarily many labels.
+     */
+    private static final int MAX_SHAPES = 1000;
+    private static final String OTHER_SHAPE = "(other)";
+
+    private final MetricsService metricsService;
+    private final ExclaimProperties exclaimProperties;
+    private final Set<String> shapes = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        ctx.data(START_KEY, System.nanoTime());
+    }
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        ctx.data(EXECUTE_END_KEY, System.nanoTime());
+    }
+
+    @Override
+    public void end(ExecuteContext ctx) {
+        if (!(ctx.data(START_KEY) instanceof Long start)) return;
+        long now = System.nanoTime();
+        // Without executeEnd, the statement has failed and there is nothing to fetch
+        boolean executed = ctx.data(EXECUTE_END_KEY) instanceof Long;
+        long executeEnd = ctx.data(EXECUTE_END_KEY) instanceof Long end ? end : now;
+        long nanos = executeEnd - start;
+
+        String sql = ctx.sql();
+        if (sql == null && ctx.batchSQL().length > 0) {
+            sql = ctx.batchSQL()[0];
+        }
+        String shape = sql == null ? "(unknown)" : StatementShapes.normalize(sql);
+        String label = shapes.contains(shape) || (shapes.size() < MAX_SHAPES && shapes.add(shape)) ? shape : OTHER_SHAPE;
+        metricsService.registerStatement(label, nanos);
+        if (executed) {
+            metricsService.registerStatementFetch(label, now - executeEnd);
+        }
+        RequestMetrics.addStatement(shape, nanos);
+
+        if (nanos >= exclaimProperties.getMetrics().getSlowQueryThreshold().toNanos()) {
+            log.warn("Slow SQL statement took {} ms: {}", nanos / 1_000_000, shape);
+        }
+    }
+}
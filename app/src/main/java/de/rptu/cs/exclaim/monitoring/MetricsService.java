@@ -2,22 +2,33 @@ package de.rptu.cs.exclaim.monitoring;
 
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 @Service
-@Slf4j
 public class MetricsService {
     @Getter private final CollectorRegistry registry;
     private final Counter pageAccessCounter;
-    private final Counter exerciseAccessCounter;
+    private final Histogram requestDuration;
+    private final Histogram requestDatabaseDuration;
+    private final Histogram requestRenderDuration;
+    private final Histogram requestStatements;
+    private final Counter requestRepeatedStatements;
+    private final Histogram statementDuration;
+    private final Histogram statementFetchDuration;
     private final Histogram uploadSize;
     private final Counter errorCounter;
+    private final Gauge webSocketSubscriptions;
+    private final Histogram webSocketSendDuration;
+    private final Counter webSocketCoalescedCounter;
+    private final Gauge backgroundJobsQueued;
+    private final Histogram backgroundJobsWait;
+    private final Gauge backgroundJobsExecuting;
+    private final Histogram backgroundJobsDuration;
+    private final Counter backgroundJobsRetries;
+    private final Counter backgroundJobsFailures;
 
     public MetricsService(CollectorRegistry registry) {
         this.registry = registry;
@@ -27,10 +38,46 @@ public class MetricsService {
             .help("Total number of accesses")
             .labelNames("page")
             .register(registry);
-        exerciseAccessCounter = Counter.build()
-            .name("exclaim_exercise_access")
-            .help("Accesses per exercise")
-            .labelNames("exercise")
+        requestDuration = Histogram.build()
+            .name("exclaim_request_seconds")
+            .help("Time to handle a request, including rendering the view")
+            .labelNames("page")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 5) // 10ms 50ms 100ms 500ms 1s 5s
+            .register(registry);
+        requestDatabaseDuration = Histogram.build()
+            .name("exclaim_request_database_seconds")
+            .help("Time spent executing SQL statements while handling a request")
+            .labelNames("page")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 5) // 10ms 50ms 100ms 500ms 1s 5s
+            .register(registry);
+        requestRenderDuration = Histogram.build()
+            .name("exclaim_request_render_seconds")
+            .help("Time to render the view of a request")
+            .labelNames("page")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 5) // 10ms 50ms 100ms 500ms 1s 5s
+            .register(registry);
+        requestStatements = Histogram.build()
+            .name("exclaim_request_statements")
+            .help("Number of SQL statements executed while handling a request")
+            .labelNames("page")
+            .buckets(1, 5, 10, 20, 50, 100, 500)
+            .register(registry);
+        requestRepeatedStatements = Counter.build()
+            .name("exclaim_request_repeated_statements_total")
+            .help("Number of requests that executed the same statement shape repeatedly (potential N+1 problem)")
+            .labelNames("page")
+            .register(registry);
+        statementDuration = Histogram.build()
+            .name("exclaim_statement_seconds")
+            .help("Execution time of SQL statements per statement shape")
+            .labelNames("statement")
+            .buckets(0.001, 0.01, 0.1, 1) // 1ms 10ms 100ms 1s
+            .register(registry);
+        statementFetchDuration = Histogram.build()
+            .name("exclaim_statement_fetch_seconds")
+            .help("Time to fetch the results of SQL statements per statement shape")
+            .labelNames("statement")
+            .buckets(0.001, 0.01, 0.1, 1) // 1ms 10ms 100ms 1s
             .register(registry);
         uploadSize = Histogram.build()
             .name("exclaim_upload_size")
@@ -41,37 +88,82 @@ public class MetricsService {
             .name("exclaim_errors_total")
             .help("Total number of errors")
             .register(registry);
+        webSocketSubscriptions = Gauge.build()
+            .name("exclaim_websocket_subscriptions")
+            .help("Number of active WebSocket subscriptions on this instance")
+            .register(registry);
+        webSocketSendDuration = Histogram.build()
+            .name("exclaim_websocket_send_seconds")
+            .help("Time to hand a WebSocket message to the broker")
+            .buckets(0.0001, 0.001, 0.01, 0.1, 1) // 0.1ms 1ms 10ms 100ms 1s
+            .register(registry);
+        webSocketCoalescedCounter = Counter.build()
+            .name("exclaim_websocket_coalesced_total")
+            .help("Number of WebSocket messages replaced by a newer message before being sent")
+            .register(registry);
+        backgroundJobsQueued = Gauge.build()
+            .name("exclaim_background_jobs_queued")
+            .help("Number of claimed background jobs waiting for execution")
+            .labelNames("type")
+            .register(registry);
+        backgroundJobsWait = Histogram.build()
+            .name("exclaim_background_jobs_wait_seconds")
+            .help("Time from a background job becoming due until its execution starts")
+            .labelNames("type")
+            .buckets(0.1, 1, 10, 60, 600) // 100ms 1s 10s 1min 10min
+            .register(registry);
+        backgroundJobsExecuting = Gauge.build()
+            .name("exclaim_background_jobs_executing")
+            .help("Number of background jobs currently executing")
+            .labelNames("type")
+            .register(registry);
+        backgroundJobsDuration = Histogram.build()
+            .name("exclaim_background_jobs_duration_seconds")
+            .help("Execution time of background jobs, for batches the time of the whole batch")
+            .labelNames("type")
+            .buckets(0.1, 1, 10, 60, 600) // 100ms 1s 10s 1min 10min
+            .register(registry);
+        backgroundJobsRetries = Counter.build()
+            .name("exclaim_background_jobs_retries_total")
+            .help("Number of background job attempts that failed and were rescheduled")
+            .labelNames("type")
+            .register(registry);
+        backgroundJobsFailures = Counter.build()
+            .name("exclaim_background_jobs_failures_total")
+            .help("Number of background jobs that failed permanently or exceeded the maximum retry count")
+            .labelNames("type")
+            .register(registry);
     }
 
-    private static final Pattern CLASS_NAME_PATTERN = Pattern.compile(".*\\.(.*)");
+    /**
+     * Register a handled request.
+     *
+     * @param page          the handler method, see {@link RequestMetrics}
+     * @param nanos         total time to handle the request
+     * @param databaseNanos time spent executing SQL statements
+     * @param statements    number of executed SQL statements
+     */
+    public void registerRequest(String page, long nanos, long databaseNanos, int statements) {
+        pageAccessCounter.labels(page).inc();
+        requestDuration.labels(page).observe(nanos / 1e9);
+        requestDatabaseDuration.labels(page).observe(databaseNanos / 1e9);
+        requestStatements.labels(page).observe(statements);
+    }
+
+    public void registerRepeatedStatements(String page) {
+        requestRepeatedStatements.labels(page).inc();
+    }
 
-    private void lookupAndRegisterNameOfCaller() {
-        StackWalker.getInstance().walk(
-            // Skip 2 stack frames:
-            // 1. this private method
-            // 2. caller from this class
-            s -> s.skip(2).findFirst()
-        ).ifPresentOrElse(
-            stackFrame -> {
-                // Extract the class name (basename only, without package) and method name
-                String className = stackFrame.getClassName();
-                Matcher matcher = CLASS_NAME_PATTERN.matcher(className);
-                if (matcher.matches()) {
-                    className = matcher.group(1);
-                }
-                String key = className + "::" + stackFrame.getMethodName();
-                pageAccessCounter.labels(key).inc();
-            }, () -> log.error("Could not detect caller of MetricsService.", new Exception(""))
-        );
+    public void registerStatement(String statement, long nanos) {
+        statementDuration.labels(statement).observe(nanos / 1e9);
     }
 
-    public void registerAccess() {
-        lookupAndRegisterNameOfCaller();
+    public void registerStatementFetch(String statement, long nanos) {
+        statementFetchDuration.labels(statement).observe(nanos / 1e9);
     }
 
-    public void registerAccessExercise(String exercise) {
-        lookupAndRegisterNameOfCaller();
-        exerciseAccessCounter.labels(exercise).inc();
+    public void registerRender(String page, long nanos) {
+        requestRenderDuration.labels(page).observe(nanos / 1e9);
     }
 
     public void registerUploadSize(double size) {
@@ -81,4 +173,40 @@ public class MetricsService {
     public void registerException() {
         errorCounter.inc();
     }
+
+    public void registerWebSocketSubscriptions(int delta) {
+        webSocketSubscriptions.inc(delta);
+    }
+
+    public void registerWebSocketSend(long nanos) {
+        webSocketSendDuration.observe(nanos / 1e9);
+    }
+
+    public void registerWebSocketCoalesced() {
+        webSocketCoalescedCounter.inc();
+    }
+
+    public void registerBackgroundJobsQueued(String type, int queued) {
+        backgroundJobsQueued.labels(type).set(queued);
+    }
+
+    public void registerBackgroundJobWait(String type, double seconds) {
+        backgroundJobsWait.labels(type).observe(seconds);
+    }
+
+    public void registerBackgroundJobsExecuting(String type, int executing) {
+        backgroundJobsExecuting.labels(type).set(executing);
+    }
+
+    public void registerBackgroundJobDuration(String type, long nanos) {
+        backgroundJobsDuration.labels(type).observe(nanos / 1e9);
+    }
+
+    public void registerBackgroundJobRetry(String type) {
+        backgroundJobsRetries.labels(type).inc();
+    }
+
+    public void registerBackgroundJobFailure(String type) {
+        backgroundJobsFailures.labels(type).inc();
+    }
 }
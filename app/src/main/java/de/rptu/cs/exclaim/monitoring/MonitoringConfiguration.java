@@ -0,0 +1,35 @@
+package de.rptu.cs.exclaim.monitoring;
+
+import de.rptu.cs.exclaim.ExclaimProperties;
+import lombok.RequiredArgsConstructor;
+import org.jooq.ExecuteListenerProvider;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration(proxyBeanMethods = false)
+@RequiredArgsConstructor
+public class MonitoringConfiguration implements WebMvcConfigurer {
+    private final ExclaimProperties exclaimProperties;
+    private final RequestMetrics requestMetrics;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (exclaimProperties.getMetrics().isEnabled()) {
+            registry.addInterceptor(requestMetrics);
+        }
+    }
+
+    /**
+     * Picked up by {@link org.springframework.boot.autoconfigure.jooq.JooqAutoConfiguration}. Like the request metrics,
+     * statements are only measured if metrics are enabled.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "exclaim.metrics.enabled", havingValue = "true", matchIfMissing = true)
+    public ExecuteListenerProvider databaseMetricsListenerProvider(DatabaseMetricsListener databaseMetricsListener) {
+        return new DefaultExecuteListenerProvider(databaseMetricsListener);
+    }
+}
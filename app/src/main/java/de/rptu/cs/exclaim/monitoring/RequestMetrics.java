@@ -0,0 +1,152 @@
+package de.rptu.cs.exclaim.monitoring;
+
+import de.rptu.cs.exclaim.ExclaimProperties;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the number of requests and their latency per handler method, split into the time spent executing SQL
+ * statements (reported by {@link DatabaseMetricsListener}) and rendering the view.
+ * <p>
+ * Requests executing the same statement shape at least {@code exclaim.metrics.repeated-statement-threshold} times are
+ * counted in {@code exclaim_request_repeated_statements_total}, they usually indicate an N+1 query problem (e.g. a query
+ * in a loop instead of a join). Each handler method and statement shape is logged once.
+ * <p>
+ * Requests are labeled with the controller's simple class name and the method name, e.g.
+ * {@code ExerciseController::getSheetOverviewPage}, such that the number of label values is bounded by the number of handler
+ * methods.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RequestMetrics implements HandlerInterceptor {
+    private static final String TIMINGS_ATTRIBUTE = RequestMetrics.class.getName() + ".timings";
+
+    /**
+     * Maximum number of repeated statements to log, such that the log is not flooded
+     */
+    private static final int MAX_LOGGED_REPEATED_STATEMENTS = 1000;
+
+    private final MetricsService metricsService;
+    private final ExclaimProperties exclaimProperties;
+
+    // Cache for the label of each handler method
+    private final ConcurrentMap<Method, String> pages = new ConcurrentHashMap<>();
+
+    // Handler method and statement shape of the repeated statements that have already been logged
+    private final Set<String> loggedRepeatedStatements = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Timings of a request, stored as request attribute.
+     */
+    private static final class Timings {
+        private final String page;
+        private final long start = System.nanoTime();
+        private long handled;
+        private long databaseNanos;
+        private int statements;
+        private final Map<String, Integer> statementShapes = new HashMap<>();
+
+        private Timings(String page) {
+            this.page = page;
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod handlerMethod && request.getAttribute(TIMINGS_ATTRIBUTE) == null) {
+            String page = pages.computeIfAbsent(
+                handlerMethod.getMethod(),
+                method -> handlerMethod.getBeanType().getSimpleName() + "::" + method.getName()
+            );
+            request.setAttribute(TIMINGS_ATTRIBUTE, new Timings(page));
+        }
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, @Nullable ModelAndView modelAndView) {
+        Timings timings = (Timings) request.getAttribute(TIMINGS_ATTRIBUTE);
+        if (timings != null && modelAndView != null && !modelAndView.wasCleared()) {
+            // The view is rendered after this method
+            timings.handled = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, @Nullable Exception ex) {
+        Timings timings = (Timings) request.getAttribute(TIMINGS_ATTRIBUTE);
+        if (timings != null) {
+            request.removeAttribute(TIMINGS_ATTRIBUTE);
+            long end = System.nanoTime();
+            metricsService.registerRequest(timings.page, end - timings.start, timings.databaseNanos, timings.statements);
+            if (timings.handled != 0) {
+                metricsService.registerRender(timings.page, end - timings.handled);
+            }
+            checkRepeatedStatements(timings);
+        }
+    }
+
+    private void checkRepeatedStatements(Timings timings) {
+        int threshold = exclaimProperties.getMetrics().getRepeatedStatementThreshold();
+        if (timings.statements < threshold) return;
+        boolean repeated = false;
+        for (Map.Entry<String, Integer> entry : timings.statementShapes.entrySet()) {
+            if (entry.getValue() >= threshold) {
+                repeated = true;
+                String key = timings.page + " " + entry.getKey();
+                if (loggedRepeatedStatements.size() < MAX_LOGGED_REPEATED_STATEMENTS && loggedRepeatedStatements.add(key)) {
+                    log.warn("{} executed the same SQL statement {} times (potential N+1 problem): {}",
+                        timings.page, entry.getValue(), entry.getKey());
+                }
+            }
+        }
+        if (repeated) {
+            metricsService.registerRepeatedStatements(timings.page);
+        }
+    }
+
+    /**
+     * Get the timings of the request bound to the current thread.
+     *
+     * @return the timings, or null if the current thread is not handling a request
+     */
+    @Nullable
+    private static Timings currentTimings() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes == null
+            ? null
+            : (Timings) attributes.getAttribute(TIMINGS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * Attribute an executed SQL statement to the request bound to the current thread, if any.
+     *
+     * @param shape the statement's shape, see {@link StatementShapes}
+     * @param nanos the elapsed time
+     */
+    static void addStatement(String shape, long nanos) {
+        Timings timings = currentTimings();
+        if (timings != null) {
+            timings.databaseNanos += nanos;
+            timings.statements++;
+            timings.statementShapes.merge(shape, 1, Integer::sum);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package de.rptu.cs.exclaim.monitoring;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces SQL statements to their shape: literals are replaced by {@code ?} and lists of parameters or rows are
+ * collapsed, such that statements differing only in their values (e.g. the length of an {@code IN} list) have the same
+ * shape. The shape contains no bind values and can thus be logged and used as metrics label.
+ */
+final class StatementShapes {
+    private StatementShapes() {
+    }
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern ROW_LIST = Pattern.compile("(\\(\\?(?:, \\.\\.\\.)?\\))(?:\\s*,\\s*\\(\\?(?:, \\.\\.\\.)?\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Maximum length of a shape. Longer statements keep their beginning and end (usually the predicates), the middle is
+     * replaced by a hash of the whole shape, such that different statements never share a truncated shape.
+     */
+    static final int MAX_LENGTH = 300;
+    private static final int HASH_LENGTH = 8;
+
+    /**
+     * Get the shape of an SQL statement.
+     *
+     * @param sql the SQL statement
+     * @return the shape
+     */
+    static String normalize(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = WHITESPACE.matcher(shape).replaceAll(" ").trim();
+        shape = PARAMETER_LIST.matcher(shape).replaceAll("?, ...");
+        shape = ROW_LIST.matcher(shape).replaceAll("$1, ...");
+        return shape.length() > MAX_LENGTH ? truncate(shape) : shape;
+    }
+
+    private static String truncate(String shape) {
+        String hash = Hashing.murmur3_32_fixed().hashString(shape, StandardCharsets.UTF_8).toString();
+        String middle = " ..." + hash.substring(0, HASH_LENGTH) + "... ";
+        int head = (MAX_LENGTH - middle.length()) / 2;
+        int tail = MAX_LENGTH - middle.length() - head;
+        return shape.substring(0, head) + middle + shape.substring(shape.length() - tail);
+    }
+}
@@ -0,0 +1,58 @@
+package de.rptu.cs.exclaim.monitoring;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the STOMP subscriptions of the clients connected to this instance, for the
+ * {@code exclaim_websocket_subscriptions} metric.
+ */
+@Component
+@RequiredArgsConstructor
+public class WebSocketSubscriptionCounter {
+    private final MetricsService metricsService;
+
+    // Session id -> subscription ids
+    private final ConcurrentMap<String, Set<String>> subscriptions = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId != null && subscriptionId != null
+            && subscriptions.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(subscriptionId)) {
+            metricsService.registerWebSocketSubscriptions(1);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId != null && subscriptionId != null) {
+            Set<String> sessionSubscriptions = subscriptions.get(sessionId);
+            if (sessionSubscriptions != null && sessionSubscriptions.remove(subscriptionId)) {
+                metricsService.registerWebSocketSubscriptions(-1);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Set<String> sessionSubscriptions = subscriptions.remove(event.getSessionId());
+        if (sessionSubscriptions != null && !sessionSubscriptions.isEmpty()) {
+            metricsService.registerWebSocketSubscriptions(-sessionSubscriptions.size());
+        }
+    }
+}
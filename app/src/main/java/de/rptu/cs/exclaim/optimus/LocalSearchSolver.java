@@ -0,0 +1,450 @@
+package de.rptu.cs.exclaim.optimus;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solver calculating a group assignment with simulated annealing, implemented in Java without native dependencies.
+ * <p>
+ * Each thread starts from its own greedy assignment and searches with a different random seed until the time limit,
+ * using three kinds of moves: move a user to another group, swap the groups of two users, and move a user together
+ * with the friends in the same group. Afterwards, the best assignment is improved by a descent to a local optimum
+ * regarding moves and swaps. The best assignment of all threads is returned.
+ * <p>
+ * The result is not guaranteed to be optimal, but in contrast to {@link LpSolveSolver} the run time is bounded.
+ */
+@Slf4j
+public class LocalSearchSolver implements OptimusSolver {
+    private static final double START_TEMPERATURE = 50;
+    private static final double END_TEMPERATURE = 0.5;
+    // Check the time (and update the temperature) every 2^TIME_CHECK_BITS iterations
+    private static final int TIME_CHECK_BITS = 8;
+
+    private final Duration timeLimit;
+    private final int threads;
+
+    public LocalSearchSolver(Duration timeLimit, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1");
+        }
+        this.timeLimit = timeLimit;
+        this.threads = threads;
+    }
+
+    @Override
+    public Map<Integer, String> solve(
+        List<String> groupIds,
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences,
+        Map<Integer, List<Integer>> teamPreferences
+    ) throws InterruptedException {
+        Instance instance = new Instance(groupIds, groupPreferences, teamPreferences);
+        if (instance.numberOfUsers == 0) {
+            return Map.of();
+        }
+        long start = System.nanoTime();
+        long deadline = start + timeLimit.toNanos();
+        long seed = new SplittableRandom().nextLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            threads, new ThreadFactoryBuilder().setNameFormat("optimus-%d").setDaemon(true).build()
+        );
+        try {
+            List<Future<Search>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                SplittableRandom random = new SplittableRandom(seed + i);
+                futures.add(executor.submit(() -> {
+                    Search search = new Search(instance, random);
+                    search.run(start, deadline);
+                    return search;
+                }));
+            }
+            Search best = null;
+            for (Future<Search> future : futures) {
+                Search search = future.get();
+                log.debug(
+                    "Optimus search finished with cost {} after {} iterations", search.bestCost, search.iterations
+                );
+                if (best == null || search.bestCost < best.bestCost) {
+                    best = search;
+                }
+            }
+            return instance.toAssignment(Objects.requireNonNull(best).best);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Optimus search failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The problem with users and groups mapped to indices, and the costs in arrays for fast access.
+     */
+    private static final class Instance {
+        final int numberOfUsers;
+        final int numberOfGroups;
+        final int minSize;
+        final int maxSize;
+        final int[] userIds;
+        final String[] groupIds;
+
+        // [user][group] -> cost of assigning the user to the group
+        final int[][] preferenceCosts;
+
+        // [user] -> other users with a friendship in any direction, and the cost if their groups differ
+        final int[][] neighbors;
+        final int[][] neighborCosts;
+
+        Instance(
+            List<String> groupIds,
+            Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences,
+            Map<Integer, List<Integer>> teamPreferences
+        ) {
+            numberOfUsers = groupPreferences.size();
+            numberOfGroups = groupIds.size();
+            minSize = OptimusCosts.minGroupSize(numberOfUsers, numberOfGroups);
+            maxSize = OptimusCosts.maxGroupSize(numberOfUsers, numberOfGroups);
+            this.groupIds = groupIds.toArray(String[]::new);
+
+            userIds = new int[numberOfUsers];
+            preferenceCosts = new int[numberOfUsers][numberOfGroups];
+            Map<Integer, Integer> userIndices = new HashMap<>();
+            int u = 0;
+            for (Map.Entry<Integer, Map<String, GroupPreferenceOption>> entry : groupPreferences.entrySet()) {
+                userIds[u] = entry.getKey();
+                userIndices.put(entry.getKey(), u);
+                for (int g = 0; g < numberOfGroups; g++) {
+                    preferenceCosts[u][g] = OptimusCosts.preferenceCost(entry.getValue().get(this.groupIds[g]));
+                }
+                u++;
+            }
+
+            // Merge both directions of a friendship, the costs add up if both users listed each other
+            List<Map<Integer, Integer>> friendships = new ArrayList<>(numberOfUsers);
+            for (int i = 0; i < numberOfUsers; i++) {
+                friendships.add(new LinkedHashMap<>());
+            }
+            for (Map.Entry<Integer, List<Integer>> entry : teamPreferences.entrySet()) {
+                Integer user = userIndices.get(entry.getKey());
+                if (user == null || entry.getValue().isEmpty()) {
+                    continue;
+                }
+                int cost = OptimusCosts.brokenFriendshipCost(entry.getValue().size());
+                for (Integer friendUserId : entry.getValue()) {
+                    Integer friend = userIndices.get(friendUserId);
+                    if (friend != null && !friend.equals(user)) {
+                        friendships.get(user).merge(friend, cost, Integer::sum);
+                        friendships.get(friend).merge(user, cost, Integer::sum);
+                    }
+                }
+            }
+            neighbors = new int[numberOfUsers][];
+            neighborCosts = new int[numberOfUsers][];
+            for (int i = 0; i < numberOfUsers; i++) {
+                Map<Integer, Integer> friends = friendships.get(i);
+                neighbors[i] = friends.keySet().stream().mapToInt(Integer::intValue).toArray();
+                neighborCosts[i] = friends.values().stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        Map<Integer, String> toAssignment(int[] groups) {
+            Map<Integer, String> assignment = new HashMap<>();
+            for (int u = 0; u < numberOfUsers; u++) {
+                assignment.put(userIds[u], groupIds[groups[u]]);
+            }
+            return assignment;
+        }
+    }
+
+    /**
+     * The state of the search of one thread.
+     */
+    private static final class Search {
+        final Instance instance;
+        final SplittableRandom random;
+
+        // The current assignment [user] -> group, the resulting group sizes and cost
+        final int[] groups;
+        final int[] sizes;
+        long cost;
+
+        // The best assignment found so far
+        final int[] best;
+        long bestCost;
+
+        long iterations;
+
+        Search(Instance instance, SplittableRandom random) {
+            this.instance = instance;
+            this.random = random;
+            groups = new int[instance.numberOfUsers];
+            sizes = new int[instance.numberOfGroups];
+            best = new int[instance.numberOfUsers];
+            initialize();
+            System.arraycopy(groups, 0, best, 0, groups.length);
+            bestCost = cost;
+        }
+
+        /**
+         * Greedy initial assignment: users in random order are assigned to the cheapest group with free capacity,
+         * then users are moved to groups below the minimum size.
+         */
+        private void initialize() {
+            int n = instance.numberOfUsers;
+            Arrays.fill(groups, -1);
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                int j = random.nextInt(i + 1);
+                order[i] = order[j];
+                order[j] = i;
+            }
+            for (int u : order) {
+                int bestGroup = -1;
+                int bestGroupCost = Integer.MAX_VALUE;
+                for (int g = 0; g < instance.numberOfGroups; g++) {
+                    if (sizes[g] < instance.maxSize) {
+                        int c = instance.preferenceCosts[u][g];
+                        int[] neighbors = instance.neighbors[u];
+                        for (int k = 0; k < neighbors.length; k++) {
+                            int neighborGroup = groups[neighbors[k]];
+                            if (neighborGroup >= 0 && neighborGroup != g) {
+                                c += instance.neighborCosts[u][k];
+                            }
+                        }
+                        if (c < bestGroupCost) {
+                            bestGroupCost = c;
+                            bestGroup = g;
+                        }
+                    }
+                }
+                groups[u] = bestGroup;
+                sizes[bestGroup]++;
+            }
+            cost = totalCost();
+
+            for (int g = 0; g < instance.numberOfGroups; g++) {
+                while (sizes[g] < instance.minSize) {
+                    int bestUser = -1;
+                    long bestDelta = Long.MAX_VALUE;
+                    for (int u = 0; u < n; u++) {
+                        if (sizes[groups[u]] > instance.minSize) {
+                            long delta = delta(u, g);
+                            if (delta < bestDelta) {
+                                bestDelta = delta;
+                                bestUser = u;
+                            }
+                        }
+                    }
+                    move(bestUser, g);
+                    cost += bestDelta;
+                }
+            }
+        }
+
+        void run(long start, long deadline) {
+            int n = instance.numberOfUsers;
+            int numberOfGroups = instance.numberOfGroups;
+            double temperature = START_TEMPERATURE;
+            double duration = Math.max(1, deadline - start);
+            int[] moved = new int[n];
+            int[] from = new int[n];
+
+            while (true) {
+                if ((++iterations & ((1 << TIME_CHECK_BITS) - 1)) == 0) {
+                    long now = System.nanoTime();
+                    if (now >= deadline || Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    double progress = (now - start) / duration;
+                    temperature = START_TEMPERATURE * Math.pow(END_TEMPERATURE / START_TEMPERATURE, progress);
+                }
+
+                // Perform a random move, remembering the moved users for reverting it
+                int count = 0;
+                long delta = 0;
+                int u = random.nextInt(n);
+                int a = groups[u];
+                int kind = random.nextInt(20);
+                if (kind < 10) {
+                    // Move a user to another group
+                    int b = random.nextInt(numberOfGroups);
+                    if (b == a || sizes[a] <= instance.minSize || sizes[b] >= instance.maxSize) {
+                        continue;
+                    }
+                    delta += delta(u, b);
+                    from[count] = a;
+                    moved[count++] = u;
+                    move(u, b);
+                } else if (kind < 17) {
+                    // Swap the groups of two users
+                    int v = random.nextInt(n);
+                    int b = groups[v];
+                    if (b == a) {
+                        continue;
+                    }
+                    delta += delta(u, b);
+                    from[count] = a;
+                    moved[count++] = u;
+                    move(u, b);
+                    delta += delta(v, a);
+                    from[count] = b;
+                    moved[count++] = v;
+                    move(v, a);
+                } else {
+                    // Move a user together with the friends in the same group
+                    int[] neighbors = instance.neighbors[u];
+                    if (neighbors.length == 0) {
+                        continue;
+                    }
+                    int b = random.nextInt(numberOfGroups);
+                    if (b == a) {
+                        continue;
+                    }
+                    delta += delta(u, b);
+                    from[count] = a;
+                    moved[count++] = u;
+                    move(u, b);
+                    for (int v : neighbors) {
+                        if (groups[v] == a) {
+                            delta += delta(v, b);
+                            from[count] = a;
+                            moved[count++] = v;
+                            move(v, b);
+                        }
+                    }
+                    if (sizes[a] < instance.minSize || sizes[b] > instance.maxSize) {
+                        revert(moved, from, count);
+                        continue;
+                    }
+                }
+
+                if (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature)) {
+                    cost += delta;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        System.arraycopy(groups, 0, best, 0, n);
+                    }
+                } else {
+                    revert(moved, from, count);
+                }
+            }
+
+            // Continue with the best assignment and descend to a local optimum
+            System.arraycopy(best, 0, groups, 0, n);
+            Arrays.fill(sizes, 0);
+            for (int g : groups) {
+                sizes[g]++;
+            }
+            cost = bestCost;
+            descend(deadline);
+            System.arraycopy(groups, 0, best, 0, n);
+            bestCost = cost;
+        }
+
+        /**
+         * Apply improving moves and swaps until there are none, or until shortly after the deadline.
+         */
+        private void descend(long deadline) {
+            int n = instance.numberOfUsers;
+            // The descent usually takes only a few milliseconds, stop it if it exceeds the deadline by 100ms
+            long hardDeadline = deadline + 100_000_000L;
+            boolean improved = true;
+            while (improved && System.nanoTime() < hardDeadline && !Thread.currentThread().isInterrupted()) {
+                improved = false;
+                for (int u = 0; u < n; u++) {
+                    int a = groups[u];
+                    for (int b = 0; b < instance.numberOfGroups; b++) {
+                        if (b != a && sizes[a] > instance.minSize && sizes[b] < instance.maxSize) {
+                            long delta = delta(u, b);
+                            if (delta < 0) {
+                                move(u, b);
+                                cost += delta;
+                                a = b;
+                                improved = true;
+                            }
+                        }
+                    }
+                }
+                for (int u = 0; u < n; u++) {
+                    for (int v = u + 1; v < n; v++) {
+                        int a = groups[u];
+                        int b = groups[v];
+                        if (a != b) {
+                            long delta = delta(u, b);
+                            move(u, b);
+                            delta += delta(v, a);
+                            if (delta < 0) {
+                                move(v, a);
+                                cost += delta;
+                                improved = true;
+                            } else {
+                                move(u, a);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * The change of the cost when moving user u to group b.
+         */
+        private long delta(int u, int b) {
+            int a = groups[u];
+            long delta = instance.preferenceCosts[u][b] - instance.preferenceCosts[u][a];
+            int[] neighbors = instance.neighbors[u];
+            int[] neighborCosts = instance.neighborCosts[u];
+            for (int k = 0; k < neighbors.length; k++) {
+                int neighborGroup = groups[neighbors[k]];
+                if (neighborGroup == a) {
+                    delta += neighborCosts[k];
+                } else if (neighborGroup == b) {
+                    delta -= neighborCosts[k];
+                }
+            }
+            return delta;
+        }
+
+        private void move(int u, int b) {
+            sizes[groups[u]]--;
+            sizes[b]++;
+            groups[u] = b;
+        }
+
+        private void revert(int[] moved, int[] from, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                move(moved[i], from[i]);
+            }
+        }
+
+        private long totalCost() {
+            long total = 0;
+            for (int u = 0; u < instance.numberOfUsers; u++) {
+                total += instance.preferenceCosts[u][groups[u]];
+                int[] neighbors = instance.neighbors[u];
+                for (int k = 0; k < neighbors.length; k++) {
+                    // Each friendship is contained in the neighbors of both users, count it once
+                    int v = neighbors[k];
+                    if (v > u && groups[v] != groups[u]) {
+                        total += instance.neighborCosts[u][k];
+                    }
+                }
+            }
+            return total;
+        }
+    }
+}
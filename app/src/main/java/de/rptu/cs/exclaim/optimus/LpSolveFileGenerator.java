@@ -60,13 +60,7 @@ class LpSolveFileGenerator {
                 int userId = entry.getKey();
                 Map<String, GroupPreferenceOption> gp = entry.getValue();
                 return " " + groupIds.stream().map(stringGroupId -> {
-                        GroupPreferenceOption preference = gp.get(stringGroupId);
-                        int weight = preference == null ? 50 : switch (preference) {
-                            case PREFERRED -> 1;
-                            case POSSIBLE -> 3;
-                            case DISLIKE -> 10;
-                            case IMPOSSIBLE -> 200;
-                        };
+                        int weight = OptimusCosts.preferenceCost(gp.get(stringGroupId));
                         return " + " + weight + " * " + userInGroupVariableName(userId, variables.numericGroupId(stringGroupId));
                     })
                     .collect(Collectors.joining());
@@ -85,8 +79,7 @@ class LpSolveFileGenerator {
                     return Stream.empty();
                 }
 
-                // The more friends a user has, the less is the penalty for breaking a friendship.
-                int weight = 100 / friendUserIds.size();
+                int weight = OptimusCosts.brokenFriendshipCost(friendUserIds.size());
                 return Stream.of(
                     " " + friendUserIds.stream().map(friendUserId ->
                         " + " + weight + " * " + brokenFriendshipVariableName(userId, friendUserId)
@@ -120,8 +113,8 @@ class LpSolveFileGenerator {
     }
 
     private Stream<String> constraintGroupSizes() {
-        int minSize = Math.max(0, groupPreferences.size() / groupIds.size() - 1);
-        int maxSize = minSize + 2;
+        int minSize = OptimusCosts.minGroupSize(groupPreferences.size(), groupIds.size());
+        int maxSize = OptimusCosts.maxGroupSize(groupPreferences.size(), groupIds.size());
         return addCommentAndEmptyLine(
             "// enforce group size limits",
             variables.streamNumericGroupIds().mapToObj(numericGroupId -> {
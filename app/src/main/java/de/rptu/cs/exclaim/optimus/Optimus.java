@@ -1,134 +1,165 @@
 package de.rptu.cs.exclaim.optimus;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import de.rptu.cs.exclaim.ExclaimProperties;
 import de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption;
+import de.rptu.cs.exclaim.utils.Comparators;
 import lombok.extern.slf4j.Slf4j;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record1;
+import org.jooq.Record2;
+import org.jooq.Record3;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.TreeMap;
 
+import static de.rptu.cs.exclaim.schema.tables.Grouppreferences.GROUPPREFERENCES;
+import static de.rptu.cs.exclaim.schema.tables.Groups.GROUPS;
+import static de.rptu.cs.exclaim.schema.tables.Teampreferences.TEAMPREFERENCES;
+
+/**
+ * Calculates group assignments using the {@link OptimusSolver} configured by {@code exclaim.optimus.solver}.
+ */
 @Service
 @Slf4j
 public class Optimus {
+    private final DSLContext ctx;
+    private final OptimusSolver solver;
+
+    public Optimus(ExclaimProperties exclaimProperties, DSLContext ctx) {
+        this.ctx = ctx;
+        ExclaimProperties.Optimus properties = exclaimProperties.getOptimus();
+        this.solver = switch (properties.getSolver()) {
+            case LOCAL_SEARCH -> new LocalSearchSolver(properties.getTimeLimit(), properties.getThreads());
+            case LP_SOLVE -> new LpSolveSolver(properties.getLpSolveExecutable());
+        };
+    }
+
     /**
-     * Calculate an optimal group assignment
+     * The input of a group assignment calculation.
      *
-     * @param groupIds         available groupIds
+     * @param groupIds         available groupIds (sorted)
      * @param groupPreferences map userId -> (groupId -> preference)
-     * @param teamPreferences  map userId -> friend userIds
-     * @return the calculated assignment (map userId -> groupId)
+     * @param teamPreferences  map userId -> friend userIds (sorted), only for users with group preferences
      */
-    public Map<Integer, String> calculateAssignment(
+    public record Input(
         List<String> groupIds,
         Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences,
         Map<Integer, List<Integer>> teamPreferences
-    ) throws IOException, InterruptedException {
-        // Implementation note:
-        // We use lp_solve, a Linear Programming solver, to do the actual optimization computation.
-        // See: https://lpsolve.sourceforge.net/5.5/
-        // We do not use lp_solve's native Java API, because deployment and compilation is difficult (native code which
-        // needs additional .so/.dll files). Instead, we use the lp_solve binary tool and communicate via stdin/stdout
-        // with the process. This approach also avoids issues with lp_solve's LGPL license, because our final jar file
-        // does not contain any lp_solve code. The lp_solve binary needs to be installed by the system administrator.
-
-        // Set up our lp_solve model
-        LpSolveVariables variables = new LpSolveVariables(groupPreferences.keySet(), groupIds);
-        Stream<String> lpSolveLines = new LpSolveFileGenerator(groupIds, groupPreferences, teamPreferences, variables).generateLines();
-
-        // Start the lp_solve process
-        // TODO: Make path to executable configurable
-        Process process = new ProcessBuilder("lp_solve")
-            .redirectErrorStream(true) // merge stderr to stdout
-            .start();
-
-        try {
-            // Reading and parsing the output from the lp_solve process happens in separate thread
-            // such that the main thread does not get blocked when process buffers are full.
-            LpSolveResultParser parser = new LpSolveResultParser(variables);
-            Throwable[] readerExceptionContainer = new Throwable[1];
-            Thread readerThread = configureReaderThread(process.getInputStream(), parser, readerExceptionContainer);
-            try {
-                readerThread.start();
-
-                // Write the model file to the lp_solve process (in the main thread)
-                writeToProcess(lpSolveLines, process.getOutputStream());
-
-                // Wait for the reader thread to terminate
-                awaitReaderThread(readerThread, readerExceptionContainer);
-
-                // Wait for the lp_solve process to terminate
-                int exitCode = process.waitFor();
-                if (exitCode != 0) {
-                    throw new IllegalStateException("lp_solve terminated with non-zero exit code " + exitCode);
-                }
-
-                // We now have the calculated assignment
-                Map<Integer, String> assignment = parser.getAssignment();
-                log.debug("Calculated assignment: {}", assignment);
-                return assignment;
-            } finally {
-                // Cleanup readerThread
-                try {
-                    if (readerThread.isAlive()) {
-                        readerThread.interrupt();
-                    }
-                } catch (Throwable ignored) {
-                    // keep original exception
-                }
-            }
-        } finally {
-            // Cleanup lp_solve process
-            try {
-                process.destroyForcibly();
-            } catch (Throwable ignored) {
-                // keep original exception
+    ) {
+        /**
+         * Get a hash of the input. It changes whenever the groups or the preferences change, and thus identifies the
+         * calculated assignment.
+         *
+         * @return the SHA-256 hash in hex format
+         */
+        public String fingerprint() {
+            Hasher hasher = Hashing.sha256().newHasher();
+            hasher.putInt(groupIds.size());
+            for (String groupId : groupIds) {
+                hasher.putString(groupId, StandardCharsets.UTF_8).putByte((byte) 0);
             }
+            new TreeMap<>(groupPreferences).forEach((userId, preferences) -> {
+                hasher.putInt(userId);
+                for (String groupId : groupIds) {
+                    GroupPreferenceOption preference = preferences.get(groupId);
+                    hasher.putInt(preference == null ? -1 : preference.ordinal());
+                }
+            });
+            hasher.putByte((byte) 0);
+            new TreeMap<>(teamPreferences).forEach((userId, friendUserIds) -> {
+                hasher.putInt(userId).putInt(friendUserIds.size());
+                friendUserIds.forEach(hasher::putInt);
+            });
+            return hasher.hash().toString();
         }
     }
 
-    @SuppressWarnings("DefaultCharset")
-    private Thread configureReaderThread(InputStream inputStream, LpSolveResultParser parser, Throwable[] readerExceptionContainer) {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        Thread readerThread = new Thread(() -> {
-            try {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    parser.parseLine(line);
+    /**
+     * Load the groups and preferences of an exercise.
+     *
+     * @param exerciseId the exercise
+     * @return the input for {@link #calculateAssignment(Input)}
+     */
+    public Input loadInput(String exerciseId) {
+        // Load groupIds
+        List<String> groupIds = ctx
+            .select(GROUPS.GROUPID)
+            .from(GROUPS)
+            .where(GROUPS.EXERCISEID.eq(exerciseId))
+            .fetch(Record1::value1);
+        groupIds.sort(Comparators.IDENTIFIER);
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = new TreeMap<>();
+        try (Cursor<Record3<Integer, String, GroupPreferenceOption>> cursor =
+                 ctx
+                     .select(GROUPPREFERENCES.USERID, GROUPPREFERENCES.GROUPID, GROUPPREFERENCES.PREFERENCE)
+                     .from(GROUPPREFERENCES)
+                     .where(GROUPPREFERENCES.EXERCISEID.eq(exerciseId))
+                     .fetchLazy()
+        ) {
+            for (Record3<Integer, String, GroupPreferenceOption> r : cursor) {
+                groupPreferences
+                    .computeIfAbsent(r.value1(), userId -> new HashMap<>())
+                    .put(r.value2(), r.value3());
+            }
+        }
+        Map<Integer, List<Integer>> teamPreferences = new TreeMap<>();
+        try (Cursor<Record2<Integer, Integer>> cursor =
+                 ctx
+                     .select(TEAMPREFERENCES.USERID, TEAMPREFERENCES.FRIEND_USERID)
+                     .from(TEAMPREFERENCES)
+                     .where(TEAMPREFERENCES.EXERCISEID.eq(exerciseId))
+                     .fetchLazy()
+        ) {
+            for (Record2<Integer, Integer> r : cursor) {
+                int userId = r.value1();
+                int friendUserId = r.value2();
+                if (groupPreferences.keySet().containsAll(Set.of(userId, friendUserId))) {
+                    teamPreferences
+                        .computeIfAbsent(userId, ignored -> new ArrayList<>())
+                        .add(friendUserId);
                 }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
             }
-        });
-        readerThread.setUncaughtExceptionHandler((t, e) -> readerExceptionContainer[0] = e);
-        return readerThread;
+        }
+        teamPreferences.forEach((userId, friendUserIds) -> friendUserIds.sort(null));
+        return new Input(groupIds, groupPreferences, teamPreferences);
     }
 
-    private void awaitReaderThread(Thread readerThread, Throwable[] readerExceptionContainer) throws InterruptedException {
-        readerThread.join(); // also establishes memory synchronization from readerThread to main thread
-        Throwable t = readerExceptionContainer[0];
-        if (t != null) {
-            throw new RuntimeException("Exception in reader thread", t);
+    /**
+     * Calculate an optimal group assignment
+     *
+     * @param input the groups and preferences
+     * @return the calculated assignment (map userId -> groupId)
+     */
+    public Map<Integer, String> calculateAssignment(Input input) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Map<Integer, String> assignment = solver.solve(input.groupIds, input.groupPreferences, input.teamPreferences);
+        if (log.isDebugEnabled()) {
+            log.debug(
+                "Calculated assignment with cost {} for {} users and {} groups in {}ms: {}",
+                cost(input, assignment),
+                input.groupPreferences.size(),
+                input.groupIds.size(),
+                (System.nanoTime() - start) / 1_000_000,
+                assignment
+            );
         }
+        return assignment;
     }
 
-    @SuppressWarnings("DefaultCharset")
-    private void writeToProcess(Stream<String> lines, OutputStream outputStream) {
-        try (PrintWriter writer = new PrintWriter(outputStream)) {
-            if (log.isDebugEnabled()) {
-                String content = lines.collect(Collectors.joining(System.lineSeparator()));
-                log.debug("Generated lp_solve input:\n{}", content);
-                writer.println(content);
-            } else {
-                lines.forEach(writer::println);
-            }
-        }
+    /**
+     * Calculate the total cost of an assignment, see {@link OptimusCosts#cost}.
+     */
+    public static long cost(Input input, Map<Integer, String> assignment) {
+        return OptimusCosts.cost(input.groupIds, input.groupPreferences, input.teamPreferences, assignment);
     }
 }
@@ -0,0 +1,88 @@
+package de.rptu.cs.exclaim.optimus;
+
+import de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The objective of the group assignment, shared by all {@link OptimusSolver}s: each user causes a cost depending on
+ * the preference for the assigned group, and each broken friendship (team preference of users assigned to different
+ * groups) causes a cost depending on the number of friends. The group sizes must stay within
+ * [{@link #minGroupSize}, {@link #maxGroupSize}].
+ */
+public final class OptimusCosts {
+    private OptimusCosts() {
+    }
+
+    /**
+     * The cost of assigning a user to a group with the given preference. Higher cost is worse assignment.
+     */
+    public static int preferenceCost(@Nullable GroupPreferenceOption preference) {
+        return preference == null ? 50 : switch (preference) {
+            case PREFERRED -> 1;
+            case POSSIBLE -> 3;
+            case DISLIKE -> 10;
+            case IMPOSSIBLE -> 200;
+        };
+    }
+
+    /**
+     * The cost of a broken friendship of a user with the given number of friends. The more friends a user has, the
+     * less is the penalty for breaking a friendship.
+     */
+    public static int brokenFriendshipCost(int numberOfFriends) {
+        return 100 / numberOfFriends;
+    }
+
+    public static int minGroupSize(int numberOfUsers, int numberOfGroups) {
+        return Math.max(0, numberOfUsers / numberOfGroups - 1);
+    }
+
+    public static int maxGroupSize(int numberOfUsers, int numberOfGroups) {
+        return minGroupSize(numberOfUsers, numberOfGroups) + 2;
+    }
+
+    /**
+     * Calculate the total cost of an assignment.
+     *
+     * @param groupPreferences map userId -> (groupId -> preference)
+     * @param teamPreferences  map userId -> friend userIds
+     * @param assignment       map userId -> groupId
+     * @return the total cost, or {@link Long#MAX_VALUE} if the assignment is incomplete or violates the group sizes
+     */
+    public static long cost(
+        List<String> groupIds,
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences,
+        Map<Integer, List<Integer>> teamPreferences,
+        Map<Integer, String> assignment
+    ) {
+        int minSize = minGroupSize(groupPreferences.size(), groupIds.size());
+        int maxSize = maxGroupSize(groupPreferences.size(), groupIds.size());
+        for (String groupId : groupIds) {
+            long size = assignment.values().stream().filter(groupId::equals).count();
+            if (size < minSize || size > maxSize) {
+                return Long.MAX_VALUE;
+            }
+        }
+
+        long cost = 0;
+        for (Map.Entry<Integer, Map<String, GroupPreferenceOption>> entry : groupPreferences.entrySet()) {
+            String groupId = assignment.get(entry.getKey());
+            if (groupId == null) {
+                return Long.MAX_VALUE;
+            }
+            cost += preferenceCost(entry.getValue().get(groupId));
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : teamPreferences.entrySet()) {
+            String groupId = assignment.get(entry.getKey());
+            for (Integer friendUserId : entry.getValue()) {
+                if (groupId != null && !groupId.equals(assignment.get(friendUserId))) {
+                    cost += brokenFriendshipCost(entry.getValue().size());
+                }
+            }
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,26 @@
+package de.rptu.cs.exclaim.optimus;
+
+import de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A solver calculating a group assignment with low {@link OptimusCosts}.
+ */
+public interface OptimusSolver {
+    /**
+     * Calculate a group assignment
+     *
+     * @param groupIds         available groupIds
+     * @param groupPreferences map userId -> (groupId -> preference)
+     * @param teamPreferences  map userId -> friend userIds, all of them must be contained in groupPreferences
+     * @return the calculated assignment (map userId -> groupId)
+     */
+    Map<Integer, String> solve(
+        List<String> groupIds,
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences,
+        Map<Integer, List<Integer>> teamPreferences
+    ) throws IOException, InterruptedException;
+}
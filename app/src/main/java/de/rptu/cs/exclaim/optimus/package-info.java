@@ -0,0 +1,14 @@
+/**
+ * Automatic group assignment based on the group and team preferences of the students.
+ */
+@Allow
+@Require({SQLDialect.H2, SQLDialect.POSTGRES})
+@NonNullApi
+@NonNullFields
+package de.rptu.cs.exclaim.optimus;
+
+import org.jooq.Allow;
+import org.jooq.Require;
+import org.jooq.SQLDialect;
+import org.springframework.lang.NonNullApi;
+import org.springframework.lang.NonNullFields;
@@ -0,0 +1,106 @@
+package de.rptu.cs.exclaim.runners;
+
+import de.rptu.cs.exclaim.Main;
+import de.rptu.cs.exclaim.data.records.UploadRecord;
+import de.rptu.cs.exclaim.utils.UploadManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static de.rptu.cs.exclaim.schema.tables.Uploads.UPLOADS;
+
+@Component
+@Order(3)
+@Slf4j
+@RequiredArgsConstructor
+public class UploadStoreRunner implements ApplicationRunner {
+    private final UploadManager uploadManager;
+    private final DSLContext ctx;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        for (Main.Uploads options : Main.uploads) {
+            if (options.isDeduplicate()) {
+                deduplicate();
+            }
+            if (options.isVerify()) {
+                verify(options.isPrune());
+            }
+        }
+    }
+
+    private void deduplicate() throws IOException {
+        log.info("Moving existing uploads into the blob store...");
+        long[] counts = new long[2]; // files, bytes freed
+        Path dataPath = Path.of(UploadManager.DATA_PATH);
+        if (Files.isDirectory(dataPath)) {
+            Files.walkFileTree(dataPath, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    // Skip the blob store, feedback files (which can be replaced) and other internal directories
+                    return dir.getFileName().toString().startsWith("__")
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    // Upload files are located at data/<exercise>/<sheet>/<group|team>/<assignment>/<file>
+                    if (attrs.isRegularFile() && file.getNameCount() == dataPath.getNameCount() + 5) {
+                        counts[1] += uploadManager.deduplicate(file);
+                        counts[0]++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        log.info("Moved {} uploads into the blob store, freed {} bytes", counts[0], counts[1]);
+    }
+
+    private void verify(boolean prune) throws IOException {
+        log.info("Verifying the blob store...");
+        int blobs = 0;
+        int corrupt = 0;
+        int orphans = 0;
+        for (Path blob : uploadManager.getBlobs()) {
+            blobs++;
+            if (!uploadManager.verifyBlob(blob)) {
+                log.error("Data does not match its hash: {}", blob);
+                corrupt++;
+            } else if (uploadManager.isOrphanBlob(blob)) {
+                orphans++;
+                if (prune) {
+                    Files.delete(blob);
+                }
+            }
+        }
+
+        int uploads = 0;
+        int missing = 0;
+        try (Cursor<UploadRecord> cursor = ctx.selectFrom(UPLOADS).fetchLazy()) {
+            for (UploadRecord upload : cursor) {
+                uploads++;
+                Path path = uploadManager.getUploadPath(upload);
+                if (!Files.isRegularFile(path)) {
+                    log.warn("Missing file for upload {}: {}", upload.getUploadId(), path);
+                    missing++;
+                }
+            }
+        }
+
+        log.info("Checked {} blobs ({} corrupt, {} unreferenced{}) and {} uploads ({} missing)",
+            blobs, corrupt, orphans, prune ? " and deleted" : "", uploads, missing);
+    }
+}
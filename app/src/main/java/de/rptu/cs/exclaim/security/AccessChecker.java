@@ -1,5 +1,8 @@
 package de.rptu.cs.exclaim.security;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import de.rptu.cs.exclaim.ExclaimProperties;
 import de.rptu.cs.exclaim.data.GroupAndTeam;
 import de.rptu.cs.exclaim.data.interfaces.IUser;
 import de.rptu.cs.exclaim.data.records.UserRecord;
@@ -8,8 +11,9 @@ import de.rptu.cs.exclaim.schema.tables.Assistants;
 import de.rptu.cs.exclaim.schema.tables.Students;
 import de.rptu.cs.exclaim.schema.tables.Tutors;
 import de.rptu.cs.exclaim.schema.tables.Users;
+import de.rptu.cs.exclaim.utils.SheetOverviewService;
 import jakarta.servlet.http.HttpServletRequest;
-import lombok.RequiredArgsConstructor;
+import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.jooq.DSLContext;
 import org.jooq.Field;
@@ -19,14 +23,19 @@ import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static de.rptu.cs.exclaim.schema.tables.Assistants.ASSISTANTS;
 import static de.rptu.cs.exclaim.schema.tables.Students.STUDENTS;
@@ -42,15 +51,57 @@ import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
  * terminates all other sessions for the same user.
  * <p>
  * When executing a database query to load user data, we let {@link AutomaticDatabaseTransaction} start a transaction.
+ * The user is loaded without locking its row. To avoid a query on every request, the loaded data is also kept as a
+ * short-lived snapshot per session (see {@code exclaim.user-snapshot-cache.time-to-live} and {@code max-size}). Code that
+ * changes users must call {@link #invalidateUserSnapshots}. Changing the password locks the row via
+ * {@link #getUserForUpdate()}.
+ * <p>
+ * {@link ExerciseRoles} are cached per request and, bounded in size and time, across requests. Code that changes
+ * students, tutors or assistants must call one of the {@code invalidateExerciseRoles} methods. This also discards the
+ * cached sheet overviews of {@link SheetOverviewService}, which list the students of each group.
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class AccessChecker {
     private static final String REQUEST_ATTRIBUTE_NAME = AccessChecker.class.getName();
+    private static final String REQUEST_ATTRIBUTE_NAME_EXERCISE_ROLES = AccessChecker.class.getName() + ".EXERCISE_ROLES";
 
     private final DSLContext ctx;
     private final AutomaticDatabaseTransaction automaticDatabaseTransaction;
+    private final SheetOverviewService sheetOverviewService;
+    // Empty if the user is not allowed to access the exercise
+    private final Cache<ExerciseRolesKey, Optional<ExerciseRoles>> exerciseRolesCache;
+    private final Object exerciseRolesLock = new Object();
+    private long exerciseRolesGeneration;
+    // Session id -> snapshot of the UserRecord or UserWithPermissions loaded for that session
+    private final Cache<String, UserSnapshot> userSnapshots;
+
+    private record ExerciseRolesKey(int userId, String exerciseId) {
+    }
+
+    private record UserSnapshot(int userId, Object data) {
+    }
+
+    public AccessChecker(
+        DSLContext ctx,
+        AutomaticDatabaseTransaction automaticDatabaseTransaction,
+        SheetOverviewService sheetOverviewService,
+        ExclaimProperties exclaimProperties
+    ) {
+        this.ctx = ctx;
+        this.automaticDatabaseTransaction = automaticDatabaseTransaction;
+        this.sheetOverviewService = sheetOverviewService;
+        ExclaimProperties.RolesCache rolesCache = exclaimProperties.getRolesCache();
+        this.exerciseRolesCache = CacheBuilder.newBuilder()
+            .maximumSize(rolesCache.getMaxSize())
+            .expireAfterWrite(rolesCache.getTimeToLive())
+            .build();
+        ExclaimProperties.UserSnapshotCache userSnapshotCache = exclaimProperties.getUserSnapshotCache();
+        this.userSnapshots = CacheBuilder.newBuilder()
+            .maximumSize(userSnapshotCache.getMaxSize())
+            .expireAfterWrite(userSnapshotCache.getTimeToLive())
+            .build();
+    }
 
     /**
      * The currently authenticated user, with permissions (tutor/assistant for any exercise)
@@ -72,10 +123,10 @@ public class AccessChecker {
                     )
                     .from(u)
                     .where(u.USERID.eq(userId))
-                    .forUpdate()
                     .fetchOne(Records.mapping(UserWithPermissions::new));
             },
-            UserWithPermissions::getUser
+            UserWithPermissions::getUser,
+            true
         );
     }
 
@@ -90,25 +141,46 @@ public class AccessChecker {
             (userId) -> ctx
                 .selectFrom(USERS)
                 .where(USERS.USERID.eq(userId))
-                .forUpdate()
                 .fetchOne(),
-            userRecord -> userRecord
+            userRecord -> userRecord,
+            true
         );
     }
 
+    /**
+     * The currently authenticated user, loaded from the database with a row lock. Use this instead of
+     * {@link #getUser()} when changing the password, such that concurrent changes are serialized.
+     *
+     * @throws NotAuthenticatedException if there is no authenticated user
+     */
+    public UserRecord getUserForUpdate() {
+        return getUserHelper(
+            (cacheAttribute) -> null,
+            (userId) -> ctx
+                .selectFrom(USERS)
+                .where(USERS.USERID.eq(userId))
+                .forUpdate()
+                .fetchOne(),
+            userRecord -> userRecord,
+            false
+        ).orElseThrow(NotAuthenticatedException::new);
+    }
+
     /**
      * Helper method that extracts common logic out of {@link #getUserWithPermissionsOpt} and {@link #getUserOpt()}.
      *
      * @param fromCache   function that extracts the result from the cached request attribute (can return null)
      * @param fromUserId  function that given the userId loads the result from database (can return null)
      * @param extractUser function that extracts the user interface from the database result
+     * @param useSnapshot whether a recent snapshot of the session may be used instead of loading from database
      * @return the cached result, if any, otherwise the result from database (after checking that the password hash has
      * not changed)
      */
     private <T> Optional<T> getUserHelper(
         Function<Object, T> fromCache,
         Function<Integer, T> fromUserId,
-        Function<T, IUser> extractUser
+        Function<T, IUser> extractUser,
+        boolean useSnapshot
     ) {
         SecurityContext securityContext = SecurityContextHolder.getContext();
         if (securityContext.getAuthentication() instanceof ExclaimAuthentication exclaimAuthentication) {
@@ -120,16 +192,37 @@ public class AccessChecker {
                 return Optional.of(resultFromCache);
             }
 
-            // Load user data for currently authenticated userId from database
             ExclaimUserPrincipal principal = exclaimAuthentication.getPrincipal();
             int userId = principal.userId;
-            log.debug("Loading currently authenticated user id {}", userId);
+            // Controllers rely on the automatic transaction, even if we do not need to query the database
             automaticDatabaseTransaction.startTransaction(request);
+
+            // Check for a recent snapshot from a previous request in the same session
+            HttpSession session = request.getSession(false);
+            if (useSnapshot && session != null) {
+                UserSnapshot snapshot = userSnapshots.getIfPresent(session.getId());
+                T resultFromSnapshot = snapshot != null && snapshot.userId == userId
+                    ? fromCache.apply(copyUserData(snapshot.data))
+                    : null;
+                if (resultFromSnapshot != null
+                    && Objects.equals(extractUser.apply(resultFromSnapshot).getPassword(), principal.password)) {
+                    log.debug("Loaded currently authenticated user from session snapshot: {}", resultFromSnapshot);
+                    request.setAttribute(REQUEST_ATTRIBUTE_NAME, resultFromSnapshot);
+                    return Optional.of(resultFromSnapshot);
+                }
+            }
+
+            // Load user data for currently authenticated userId from database
+            log.debug("Loading currently authenticated user id {}", userId);
             T resultFromUserId = fromUserId.apply(userId);
             if (resultFromUserId != null) {
                 log.debug("Found currently authenticated user in database: {}", resultFromUserId);
                 if (Objects.equals(extractUser.apply(resultFromUserId).getPassword(), principal.password)) {
                     request.setAttribute(REQUEST_ATTRIBUTE_NAME, resultFromUserId);
+                    if (session != null) {
+                        // Keep a copy, the request may modify the record
+                        userSnapshots.put(session.getId(), new UserSnapshot(userId, copyUserData(resultFromUserId)));
+                    }
                     return Optional.of(resultFromUserId);
                 } else {
                     log.info("Terminating session for user {} because the password has changed", resultFromUserId);
@@ -147,6 +240,35 @@ public class AccessChecker {
     void updateCachedUser(UserWithPermissions userWithPermissions) {
         log.debug("Updating cached user data: {}", userWithPermissions);
         getRequest().setAttribute(REQUEST_ATTRIBUTE_NAME, userWithPermissions);
+        invalidateUserSnapshots(userWithPermissions.getUser().getUserId());
+    }
+
+    /**
+     * Copy a {@link UserRecord} or {@link UserWithPermissions}, such that changes to the copy do not affect the
+     * original. The copied record is attached and can be updated.
+     */
+    private Object copyUserData(Object data) {
+        if (data instanceof UserWithPermissions userWithPermissions) {
+            return new UserWithPermissions(
+                copyUserRecord(userWithPermissions.getUser()),
+                userWithPermissions.getIsAssistantForAnyExercise(),
+                userWithPermissions.getIsTutorForAnyExercise()
+            );
+        }
+        return copyUserRecord((UserRecord) data);
+    }
+
+    private UserRecord copyUserRecord(UserRecord userRecord) {
+        UserRecord copy = ctx.newRecord(USERS, userRecord);
+        copy.changed(false);
+        return copy;
+    }
+
+    /**
+     * Discard the session snapshots of the given user. Must be called after changing a user.
+     */
+    public void invalidateUserSnapshots(int userId) {
+        userSnapshots.asMap().values().removeIf(snapshot -> snapshot.userId == userId);
     }
 
     /**
@@ -162,6 +284,7 @@ public class AccessChecker {
                 throw new IllegalArgumentException("Provided user is not the currently authenticated user!");
             }
             principal.password = user.getPassword();
+            invalidateUserSnapshots(user.getUserId());
         } else {
             throw new IllegalStateException("Cannot set new password if not authenticated");
         }
@@ -236,7 +359,14 @@ public class AccessChecker {
      * Whether the current request is authenticated and the user has assistant permissions for the given exercise
      */
     public boolean isAssistantFor(String exerciseId) {
-        int userId = getUserId();
+        return isAssistantFor(getUserId(), exerciseId);
+    }
+
+    /**
+     * Whether the given user has assistant permissions for the given exercise. Unlike {@link #isAssistantFor(String)},
+     * this does not need a request, e.g. to authorize WebSocket subscriptions.
+     */
+    public boolean isAssistantFor(int userId, String exerciseId) {
         log.debug("Checking that user {} has assistant permissions for exercise {}", userId, exerciseId);
         return ctx
             .selectOne()
@@ -263,6 +393,41 @@ public class AccessChecker {
      */
     public ExerciseRoles getExerciseRoles(String exerciseId) {
         int userId = getUserId();
+        HttpServletRequest request = getRequest();
+        @SuppressWarnings("unchecked")
+        Map<String, Optional<ExerciseRoles>> requestCache =
+            (Map<String, Optional<ExerciseRoles>>) request.getAttribute(REQUEST_ATTRIBUTE_NAME_EXERCISE_ROLES);
+        if (requestCache == null) {
+            requestCache = new HashMap<>();
+            request.setAttribute(REQUEST_ATTRIBUTE_NAME_EXERCISE_ROLES, requestCache);
+        }
+
+        Optional<ExerciseRoles> exerciseRoles = requestCache.get(exerciseId);
+        if (exerciseRoles == null) {
+            ExerciseRolesKey key = new ExerciseRolesKey(userId, exerciseId);
+            exerciseRoles = exerciseRolesCache.getIfPresent(key);
+            if (exerciseRoles == null) {
+                long loadGeneration;
+                synchronized (exerciseRolesLock) {
+                    loadGeneration = exerciseRolesGeneration;
+                }
+                exerciseRoles = fetchExerciseRoles(userId, exerciseId);
+                synchronized (exerciseRolesLock) {
+                    // Do not cache roles that might have been loaded before a concurrent change was committed
+                    if (exerciseRolesGeneration == loadGeneration) {
+                        exerciseRolesCache.put(key, exerciseRoles);
+                    }
+                }
+            } else {
+                log.debug("Loaded exercise roles for user {} in exercise {} from cache: {}", userId, exerciseId, exerciseRoles);
+            }
+            requestCache.put(exerciseId, exerciseRoles);
+        }
+        return exerciseRoles
+            .orElseThrow(() -> new AccessDeniedException("User " + userId + " is not allowed to access exercise " + exerciseId));
+    }
+
+    private Optional<ExerciseRoles> fetchExerciseRoles(int userId, String exerciseId) {
         log.debug("Fetching exercise roles for user {} in exercise {}", userId, exerciseId);
 
         Users u = USERS.as("u");
@@ -296,8 +461,60 @@ public class AccessChecker {
                     )
                     // empty result if no permissions
                     : null
-            )
-            .orElseThrow(() -> new AccessDeniedException("User " + userId + " is not allowed to access exercise " + exerciseId));
+            );
+    }
+
+    /**
+     * Discard cached {@link ExerciseRoles} of all users in the given exercise. Must be called after changing students,
+     * tutors, assistants or groups of that exercise.
+     */
+    public void invalidateExerciseRoles(String exerciseId) {
+        log.debug("Invalidating cached exercise roles in exercise {}", exerciseId);
+        invalidateExerciseRoles(key -> key.exerciseId.equals(exerciseId));
+        sheetOverviewService.invalidate(exerciseId);
+    }
+
+    /**
+     * Discard cached {@link ExerciseRoles} of the given user in all exercises. Must be called after deleting a user.
+     */
+    public void invalidateExerciseRoles(int userId) {
+        log.debug("Invalidating cached exercise roles of user {}", userId);
+        invalidateExerciseRoles(key -> key.userId == userId);
+        sheetOverviewService.invalidate();
+    }
+
+    /**
+     * Discard all cached {@link ExerciseRoles}.
+     */
+    public void invalidateExerciseRoles() {
+        log.debug("Invalidating all cached exercise roles");
+        invalidateExerciseRoles(key -> true);
+        sheetOverviewService.invalidate();
+    }
+
+    private void invalidateExerciseRoles(Predicate<ExerciseRolesKey> predicate) {
+        invalidateExerciseRolesNow(predicate);
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes servletRequestAttributes) {
+            servletRequestAttributes.getRequest().removeAttribute(REQUEST_ATTRIBUTE_NAME_EXERCISE_ROLES);
+        }
+        // Concurrent requests might load the old roles until the transaction is committed, so invalidate again
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateExerciseRolesNow(predicate);
+                }
+            });
+        }
+    }
+
+    private void invalidateExerciseRolesNow(Predicate<ExerciseRolesKey> predicate) {
+        synchronized (exerciseRolesLock) {
+            exerciseRolesGeneration++;
+            exerciseRolesCache.asMap().keySet().removeIf(predicate);
+        }
+        // Snapshots contain whether the user is tutor or assistant for any exercise
+        userSnapshots.invalidateAll();
     }
 
     private static HttpServletRequest getRequest() {
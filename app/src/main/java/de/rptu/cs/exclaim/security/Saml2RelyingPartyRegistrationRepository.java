@@ -1,5 +1,7 @@
 package de.rptu.cs.exclaim.security;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.rptu.cs.exclaim.utils.UploadManager;
 import lombok.extern.slf4j.Slf4j;
 import net.shibboleth.utilities.java.support.xml.ParserPool;
 import org.apache.commons.lang3.StringUtils;
@@ -19,6 +21,7 @@ import org.opensaml.saml.saml2.metadata.SingleLogoutService;
 import org.opensaml.saml.saml2.metadata.SingleSignOnService;
 import org.opensaml.security.credential.UsageType;
 import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.autoconfigure.security.saml2.Saml2RelyingPartyProperties;
 import org.springframework.boot.autoconfigure.security.saml2.Saml2RelyingPartyProperties.AssertingParty;
 import org.springframework.boot.autoconfigure.security.saml2.Saml2RelyingPartyProperties.AssertingParty.Singlesignon;
@@ -28,8 +31,9 @@ import org.springframework.boot.context.properties.PropertyMapper;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.lang.Nullable;
-import org.springframework.scheduling.TaskScheduler;
 import org.springframework.security.converter.RsaKeyConverters;
 import org.springframework.security.saml2.Saml2Exception;
 import org.springframework.security.saml2.core.OpenSamlInitializationService;
@@ -41,20 +45,37 @@ import org.springframework.security.saml2.provider.service.registration.Saml2Mes
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Element;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 /**
  * A {@link RelyingPartyRegistrationRepository} with additional features required for federated Shibboleth deployments:
@@ -65,38 +86,109 @@ import java.util.function.Consumer;
  * <li>automatically enable SAML single logout for this relying party if the asserting party supports it
  * </ul>
  * <p>
+ * Federation metadata files are large (several MB), so loading them must not delay the startup or any request:
+ * <ul>
+ * <li>The wanted {@code EntityDescriptor} is extracted while streaming through the file (see
+ *     {@link SamlMetadataFilter}), only that part is parsed into a DOM tree and unmarshalled by OpenSAML.
+ * <li>The extracted metadata is cached in {@code data/__saml-metadata}. On startup, the registrations are built from
+ *     that cache and the metadata-uri is fetched in the background.
+ * <li>HTTP(S) metadata-uris are fetched with conditional requests ({@code If-None-Match} and
+ *     {@code If-Modified-Since}), an unchanged file is neither transferred nor parsed again.
+ * <li>The refresh runs on a dedicated thread and replaces all registrations at once. If the refresh of a registration
+ *     fails, its previous version stays in use.
+ * </ul>
+ * <p>
  * This bean replaces the default one configured by
  * {@link org.springframework.boot.autoconfigure.security.saml2.Saml2RelyingPartyRegistrationConfiguration}. Parts of
  * our implementation is copied from / inspired by that class.
  */
 @Component
 @Slf4j
-public class Saml2RelyingPartyRegistrationRepository implements RelyingPartyRegistrationRepository {
+public class Saml2RelyingPartyRegistrationRepository implements RelyingPartyRegistrationRepository, DisposableBean {
     static {
         OpenSamlInitializationService.initialize();
     }
 
     private static final Duration REFRESH_INTERVAL = Duration.ofHours(1);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
     private static final String LOGOUT_URL = "{baseUrl}/logout/saml2/slo";
+    private static final Path CACHE_PATH = Path.of(UploadManager.DATA_PATH, "__saml-metadata");
 
     private final ResourceLoader resourceLoader = new DefaultResourceLoader();
     private final ParserPool parserPool;
     private final UnmarshallerFactory unmarshallerFactory;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .build();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("saml-metadata").setDaemon(true).build()
+    );
 
     private final Saml2RelyingPartyProperties relyingPartyProperties;
-    private final TaskScheduler taskScheduler;
 
-    private final Map<String, RelyingPartyRegistration> relyingPartyRegistrations = new ConcurrentHashMap<>();
+    // Replaced as a whole after each refresh, readers always see a consistent set of registrations
+    private volatile Map<String, RelyingPartyRegistration> relyingPartyRegistrations;
+
+    // The metadata the current registrations have been built from, only accessed by the executor thread
+    private final Map<String, Metadata> loadedMetadata = new HashMap<>();
     private byte retryCounter = 0;
 
-    public Saml2RelyingPartyRegistrationRepository(Saml2RelyingPartyProperties relyingPartyProperties, TaskScheduler taskScheduler) {
+    /**
+     * The (extracted) metadata of a registration, with the validators of the HTTP response it has been fetched with.
+     */
+    private record Metadata(
+        String location,
+        @Nullable String entityId,
+        byte[] xml,
+        @Nullable String etag,
+        @Nullable String lastModified
+    ) {
+    }
+
+    public Saml2RelyingPartyRegistrationRepository(Saml2RelyingPartyProperties relyingPartyProperties) {
         XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
         parserPool = registry.getParserPool();
         unmarshallerFactory = registry.getUnmarshallerFactory();
 
         this.relyingPartyProperties = relyingPartyProperties;
-        this.taskScheduler = taskScheduler;
-        loadMetadata();
+
+        // Build the registrations from the configuration and the cached metadata, without network access
+        Map<String, RelyingPartyRegistration> registrations = new HashMap<>();
+        boolean requireRefresh = false;
+        for (Map.Entry<String, Registration> entry : relyingPartyProperties.getRegistration().entrySet()) {
+            String id = entry.getKey();
+            Registration properties = entry.getValue();
+            AssertingParty assertingParty = properties.getAssertingparty();
+            String metadataUri = assertingParty.getMetadataUri();
+            try {
+                if (StringUtils.isNotEmpty(metadataUri)) {
+                    requireRefresh = true;
+                    Metadata cached = readCache(id, metadataUri, assertingParty.getEntityId());
+                    if (cached == null) {
+                        continue;
+                    }
+                    registrations.put(id, buildRegistration(id, properties, cached));
+                    loadedMetadata.put(id, cached);
+                    log.info("Loaded cached SAML 2.0 metadata for registration id {}", id);
+                } else {
+                    registrations.put(id, buildRegistration(id, properties, null));
+                }
+            } catch (Exception e) {
+                log.error("Failed to load SAML 2.0 registration id {}", id, e);
+            }
+        }
+        relyingPartyRegistrations = Map.copyOf(registrations);
+
+        if (requireRefresh) {
+            executor.execute(this::refreshMetadata);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
     }
 
     @Override
@@ -106,49 +198,55 @@ public class Saml2RelyingPartyRegistrationRepository implements RelyingPartyRegi
     }
 
     public Set<String> getRegistrationIds() {
-        return Collections.unmodifiableSet(relyingPartyRegistrations.keySet());
+        return relyingPartyRegistrations.keySet();
     }
 
     @SuppressWarnings("FutureReturnValueIgnored")
-    private synchronized void loadMetadata() {
+    private void refreshMetadata() {
         boolean hasException = false;
-        boolean requireRefresh = false;
+        boolean hasChanges = false;
+        Map<String, RelyingPartyRegistration> registrations = new HashMap<>(relyingPartyRegistrations);
         for (Map.Entry<String, Registration> entry : relyingPartyProperties.getRegistration().entrySet()) {
+            String id = entry.getKey();
+            Registration properties = entry.getValue();
+            AssertingParty assertingParty = properties.getAssertingparty();
+            String metadataUri = assertingParty.getMetadataUri();
+            if (StringUtils.isEmpty(metadataUri)) {
+                continue;
+            }
             try {
-                String id = entry.getKey();
-                Registration properties = entry.getValue();
-                AssertingParty assertingParty = properties.getAssertingparty();
-                String metadataUri = assertingParty.getMetadataUri();
-
-                RelyingPartyRegistration.Builder builder;
-                if (StringUtils.isNotEmpty(metadataUri)) {
-                    builder = fromMetadataLocation(metadataUri, assertingParty.getEntityId()).registrationId(id);
-                    requireRefresh = true;
-                } else {
-                    builder = RelyingPartyRegistration.withRegistrationId(id);
+                Metadata current = loadedMetadata.get(id);
+                Metadata fetched = fetchMetadata(metadataUri, assertingParty.getEntityId(), current);
+                if (fetched == current && registrations.containsKey(id)) {
+                    log.debug("SAML 2.0 metadata for registration id {} is unchanged", id);
+                    continue;
                 }
-                applyProperties(properties, id).accept(builder);
-                RelyingPartyRegistration registration = builder.build();
-
-                if (registration.getAssertingPartyDetails().getWantAuthnRequestsSigned() && registration.getSigningX509Credentials().isEmpty()) {
-                    throw new IllegalStateException("Registration id " + id + " wants requests signed, but no signing credentials have been provided!");
+                if (current != null && fetched.xml == current.xml && registrations.containsKey(id)) {
+                    // Only the validators have changed, the registration does not need to be rebuilt
+                    log.debug("SAML 2.0 metadata for registration id {} is unchanged, updating validators", id);
+                    loadedMetadata.put(id, fetched);
+                    writeCache(id, fetched);
+                    continue;
                 }
-
-                relyingPartyRegistrations.put(id, registration);
+                registrations.put(id, buildRegistration(id, properties, fetched));
+                loadedMetadata.put(id, fetched);
+                hasChanges = true;
+                writeCache(id, fetched);
                 log.info("Successfully loaded SAML 2.0 metadata for registration id {}", id);
             } catch (Exception e) {
-                log.error("Failed to refresh SAML 2.0 metadata", e);
+                log.error("Failed to refresh SAML 2.0 metadata for registration id {}", id, e);
                 hasException = true;
             }
         }
+        if (hasChanges) {
+            relyingPartyRegistrations = Map.copyOf(registrations);
+        }
 
         if (hasException) {
-            taskScheduler.schedule(this::loadMetadata, Instant.now().plus(nextRetryDelay()));
+            executor.schedule(this::refreshMetadata, nextRetryDelay().toMillis(), TimeUnit.MILLISECONDS);
         } else {
             retryCounter = 0;
-            if (requireRefresh) {
-                taskScheduler.schedule(this::loadMetadata, Instant.now().plus(REFRESH_INTERVAL));
-            }
+            executor.schedule(this::refreshMetadata, REFRESH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
         }
     }
 
@@ -163,6 +261,19 @@ public class Saml2RelyingPartyRegistrationRepository implements RelyingPartyRegi
             };
     }
 
+    private RelyingPartyRegistration buildRegistration(String id, Registration properties, @Nullable Metadata metadata) throws Exception {
+        RelyingPartyRegistration.Builder builder = metadata != null
+            ? fromMetadata(metadata).registrationId(id)
+            : RelyingPartyRegistration.withRegistrationId(id);
+        applyProperties(properties, id).accept(builder);
+        RelyingPartyRegistration registration = builder.build();
+
+        if (registration.getAssertingPartyDetails().getWantAuthnRequestsSigned() && registration.getSigningX509Credentials().isEmpty()) {
+            throw new IllegalStateException("Registration id " + id + " wants requests signed, but no signing credentials have been provided!");
+        }
+        return registration;
+    }
+
     private Consumer<RelyingPartyRegistration.Builder> applyProperties(Registration properties, String id) {
         AssertingParty assertingParty = properties.getAssertingparty();
         return builder -> builder
@@ -234,12 +345,142 @@ public class Saml2RelyingPartyRegistrationRepository implements RelyingPartyRegi
             });
     }
 
+    /**
+     * Fetch the metadata from the given location and extract the {@code EntityDescriptor} for the given entityId.
+     *
+     * @return the given current metadata if it is unchanged, the new metadata otherwise (possibly with the same xml and
+     * only new validators)
+     */
+    private Metadata fetchMetadata(String location, @Nullable String entityId, @Nullable Metadata current) throws Exception {
+        if (!location.startsWith("http://") && !location.startsWith("https://")) {
+            byte[] xml;
+            try (InputStream inputStream = resourceLoader.getResource(location).getInputStream()) {
+                xml = extractEntityDescriptor(inputStream, entityId);
+            }
+            return current != null && Arrays.equals(current.xml, xml)
+                ? current
+                : new Metadata(location, entityId, xml, null, null);
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(location))
+            .timeout(REQUEST_TIMEOUT)
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        if (current != null && current.etag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, current.etag);
+        }
+        if (current != null && current.lastModified != null) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, current.lastModified);
+        }
+        HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == HttpStatus.NOT_MODIFIED.value() && current != null) {
+                return current;
+            }
+            if (response.statusCode() != HttpStatus.OK.value()) {
+                throw new Saml2Exception("Unexpected HTTP status " + response.statusCode() + " for " + location);
+            }
+            boolean gzip = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING)
+                .filter(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .isPresent();
+            byte[] xml;
+            try (InputStream inputStream = gzip ? new GZIPInputStream(body) : body) {
+                xml = extractEntityDescriptor(inputStream, entityId);
+            }
+            String etag = response.headers().firstValue(HttpHeaders.ETAG).orElse(null);
+            String lastModified = response.headers().firstValue(HttpHeaders.LAST_MODIFIED).orElse(null);
+            if (current != null && Arrays.equals(current.xml, xml)) {
+                // Aggregates are re-signed regularly, keep the new validators even if our EntityDescriptor is unchanged
+                return Objects.equals(current.etag, etag) && Objects.equals(current.lastModified, lastModified)
+                    ? current
+                    : new Metadata(location, entityId, current.xml, etag, lastModified);
+            }
+            return new Metadata(location, entityId, xml, etag, lastModified);
+        }
+    }
+
+    private static byte[] extractEntityDescriptor(InputStream inputStream, @Nullable String entityId) throws Exception {
+        if (StringUtils.isEmpty(entityId)) {
+            // We need the whole document to find the unique EntityDescriptor
+            return inputStream.readAllBytes();
+        }
+        byte[] xml = SamlMetadataFilter.extractEntityDescriptor(inputStream, entityId);
+        if (xml == null) {
+            throw new Saml2Exception("No EntityDescriptor found for entityId " + entityId);
+        }
+        return xml;
+    }
+
+    /**
+     * Read the cached metadata of the given registration, if it has been fetched from the same location for the same
+     * entityId.
+     */
+    @Nullable
+    private static Metadata readCache(String id, String location, @Nullable String entityId) {
+        Path propertiesFile = cacheFile(id, ".properties");
+        Path xmlFile = cacheFile(id, ".xml");
+        if (!Files.isRegularFile(propertiesFile) || !Files.isRegularFile(xmlFile)) {
+            return null;
+        }
+        try {
+            Properties cacheProperties = new Properties();
+            try (Reader reader = Files.newBufferedReader(propertiesFile, StandardCharsets.UTF_8)) {
+                cacheProperties.load(reader);
+            }
+            if (!location.equals(cacheProperties.getProperty("location"))
+                || !Objects.equals(Objects.toString(entityId, ""), cacheProperties.getProperty("entity-id"))) {
+                log.info("Ignoring cached SAML 2.0 metadata for registration id {}, the configuration has changed", id);
+                return null;
+            }
+            return new Metadata(
+                location,
+                entityId,
+                Files.readAllBytes(xmlFile),
+                cacheProperties.getProperty("etag"),
+                cacheProperties.getProperty("last-modified")
+            );
+        } catch (IOException e) {
+            log.warn("Failed to read cached SAML 2.0 metadata for registration id {}", id, e);
+            return null;
+        }
+    }
+
+    private static void writeCache(String id, Metadata metadata) {
+        Properties cacheProperties = new Properties();
+        cacheProperties.setProperty("location", metadata.location);
+        cacheProperties.setProperty("entity-id", Objects.toString(metadata.entityId, ""));
+        if (metadata.etag != null) {
+            cacheProperties.setProperty("etag", metadata.etag);
+        }
+        if (metadata.lastModified != null) {
+            cacheProperties.setProperty("last-modified", metadata.lastModified);
+        }
+        try {
+            Files.createDirectories(CACHE_PATH);
+            // Write the xml first, such that the validators never belong to a newer file than the cached one
+            Path xmlTemp = Files.createTempFile(CACHE_PATH, "metadata", ".tmp");
+            Files.write(xmlTemp, metadata.xml);
+            Files.move(xmlTemp, cacheFile(id, ".xml"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Path propertiesTemp = Files.createTempFile(CACHE_PATH, "metadata", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(propertiesTemp, StandardCharsets.UTF_8)) {
+                cacheProperties.store(writer, null);
+            }
+            Files.move(propertiesTemp, cacheFile(id, ".properties"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to cache SAML 2.0 metadata for registration id {}", id, e);
+        }
+    }
+
+    private static Path cacheFile(String id, String extension) {
+        return CACHE_PATH.resolve(id.replaceAll("[^\\w.-]", "_") + extension);
+    }
+
     /**
      * Like {@link org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrations#fromMetadataLocation},
-     * but allow to filter for a specific entityId.
+     * but for the (extracted) metadata and allow to filter for a specific entityId.
      */
-    private RelyingPartyRegistration.Builder fromMetadataLocation(String metadataLocation, @Nullable String entityId) throws Exception {
-        try (InputStream inputStream = resourceLoader.getResource(metadataLocation).getInputStream()) {
+    private RelyingPartyRegistration.Builder fromMetadata(Metadata metadata) throws Exception {
+        String entityId = metadata.entityId;
+        try (InputStream inputStream = new ByteArrayInputStream(metadata.xml)) {
             Element element = parserPool.parse(inputStream).getDocumentElement();
             Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(element);
             if (unmarshaller == null) {
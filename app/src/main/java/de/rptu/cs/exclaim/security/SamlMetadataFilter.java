@@ -0,0 +1,144 @@
+package de.rptu.cs.exclaim.security;
+
+import org.springframework.lang.Nullable;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts a single {@code EntityDescriptor} from SAML metadata while streaming through the document, such that the
+ * metadata of a whole federation (thousands of {@code EntityDescriptor}s) is never held in memory as DOM tree.
+ * <p>
+ * Namespaces declared on ancestor elements (e.g. on the {@code EntitiesDescriptor}) are declared on the extracted
+ * element, so the result is a standalone document.
+ */
+final class SamlMetadataFilter {
+    static final String METADATA_NS = "urn:oasis:names:tc:SAML:2.0:metadata";
+    static final QName ENTITY_DESCRIPTOR = new QName(METADATA_NS, "EntityDescriptor");
+    private static final QName ENTITY_ID = new QName("entityID");
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+    static {
+        // Metadata may come from remote servers, do not resolve DTDs or external entities
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    private SamlMetadataFilter() {
+    }
+
+    /**
+     * Extract the {@code EntityDescriptor} with the given {@code entityID}.
+     *
+     * @param inputStream the metadata, either an {@code EntitiesDescriptor} or an {@code EntityDescriptor}
+     * @param entityId    the {@code entityID} to look for
+     * @return the {@code EntityDescriptor} as UTF-8 encoded XML document, or null if there is none with that
+     * {@code entityID}
+     * @throws XMLStreamException if the metadata is not well-formed
+     */
+    @Nullable
+    static byte[] extractEntityDescriptor(InputStream inputStream, String entityId) throws XMLStreamException {
+        XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+        try {
+            // The namespace declarations of the open elements
+            Deque<List<Namespace>> namespaces = new ArrayDeque<>();
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement startElement = event.asStartElement();
+                    if (startElement.getName().equals(ENTITY_DESCRIPTOR)) {
+                        Attribute attribute = startElement.getAttributeByName(ENTITY_ID);
+                        if (attribute != null && entityId.equals(attribute.getValue())) {
+                            return copyElement(reader, startElement, namespaces);
+                        }
+                        skipElement(reader);
+                        continue;
+                    }
+                    List<Namespace> declared = new ArrayList<>();
+                    startElement.getNamespaces().forEachRemaining(declared::add);
+                    namespaces.push(declared);
+                } else if (event.isEndElement()) {
+                    namespaces.pop();
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        }
+    }
+
+    private static byte[] copyElement(XMLEventReader reader, StartElement startElement, Deque<List<Namespace>> ancestorNamespaces) throws XMLStreamException {
+        // Collect the namespaces in scope, inner declarations take precedence
+        Map<String, Namespace> inScope = new LinkedHashMap<>();
+        Iterator<List<Namespace>> outermostFirst = ancestorNamespaces.descendingIterator();
+        while (outermostFirst.hasNext()) {
+            for (Namespace namespace : outermostFirst.next()) {
+                inScope.put(namespace.getPrefix(), namespace);
+            }
+        }
+        startElement.getNamespaces().forEachRemaining(namespace -> inScope.put(namespace.getPrefix(), namespace));
+        inScope.remove(XMLConstants.XML_NS_PREFIX);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(out, StandardCharsets.UTF_8.name());
+        try {
+            writer.add(EVENT_FACTORY.createStartDocument(StandardCharsets.UTF_8.name()));
+            writer.add(EVENT_FACTORY.createStartElement(
+                startElement.getName(),
+                startElement.getAttributes(),
+                inScope.values().iterator()
+            ));
+            int depth = 1;
+            while (depth > 0) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+                writer.add(event);
+            }
+            writer.add(EVENT_FACTORY.createEndDocument());
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
+}
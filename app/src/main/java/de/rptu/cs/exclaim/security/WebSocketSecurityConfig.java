@@ -1,23 +1,61 @@
 package de.rptu.cs.exclaim.security;
 
+import de.rptu.cs.exclaim.ExclaimProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.config.annotation.web.socket.EnableWebSocketSecurity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.messaging.access.intercept.MessageAuthorizationContext;
 import org.springframework.security.messaging.access.intercept.MessageMatcherDelegatingAuthorizationManager;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.util.function.Supplier;
+
+/**
+ * Configures the STOMP endpoint for test result and group assignment notifications.
+ * <p>
+ * By default, messages are delivered by an in-memory broker to the clients connected to this instance. If
+ * {@code exclaim.websocket.relay-host} is set, all messages are relayed through that external STOMP broker instead, such
+ * that they reach clients connected to any instance.
+ */
 @Configuration
 @EnableWebSocketSecurity
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
+@Slf4j
 public class WebSocketSecurityConfig implements WebSocketMessageBrokerConfigurer {
+    private final ExclaimProperties exclaimProperties;
+    private final AccessChecker accessChecker;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        ExclaimProperties.WebSocket websocket = exclaimProperties.getWebsocket();
+        String relayHost = websocket.getRelayHost();
+        if (relayHost == null || relayHost.isBlank()) {
+            registry.enableSimpleBroker("/topic");
+        } else {
+            log.info("Relaying WebSocket messages via STOMP broker {}:{}", relayHost, websocket.getRelayPort());
+            StompBrokerRelayRegistration relay = registry.enableStompBrokerRelay("/topic")
+                .setRelayHost(relayHost)
+                .setRelayPort(websocket.getRelayPort())
+                .setClientLogin(websocket.getRelayLogin())
+                .setClientPasscode(websocket.getRelayPasscode())
+                .setSystemLogin(websocket.getRelayLogin())
+                .setSystemPasscode(websocket.getRelayPasscode());
+            String virtualHost = websocket.getRelayVirtualHost();
+            if (virtualHost != null) {
+                relay.setVirtualHost(virtualHost);
+            }
+        }
     }
 
     @Override
@@ -30,7 +68,22 @@ public class WebSocketSecurityConfig implements WebSocketMessageBrokerConfigurer
         return messages
             .nullDestMatcher().authenticated()
             .simpSubscribeDestMatchers("/topic/testresults/*/*/*/*").authenticated()
+            .simpSubscribeDestMatchers("/topic/optimus/{exerciseId}").access(this::isAssistantForExercise)
             .anyMessage().denyAll()
             .build();
     }
+
+    /**
+     * Group assignments are only sent to the assistants of the exercise in the destination.
+     */
+    private AuthorizationDecision isAssistantForExercise(
+        Supplier<Authentication> authentication, MessageAuthorizationContext<?> context
+    ) {
+        String exerciseId = context.getVariables().get("exerciseId");
+        return new AuthorizationDecision(
+            authentication.get() instanceof ExclaimAuthentication exclaimAuthentication
+                && exerciseId != null
+                && accessChecker.isAssistantFor(exclaimAuthentication.getPrincipal().userId, exerciseId)
+        );
+    }
 }
@@ -1,23 +1,52 @@
 package de.rptu.cs.exclaim.utils;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.parser.ParserEmulationProfile;
 import com.vladsch.flexmark.util.options.MutableDataSet;
 
+import java.util.regex.Pattern;
+
+/**
+ * Renders Markdown (annotations, comments, warnings) to HTML.
+ * <p>
+ * The parser and renderer are immutable and shared between threads. Since the same texts are rendered over and over
+ * again (e.g. RTE warnings with identical messages), results are kept in a cache bounded by the number of characters.
+ */
 public class Markdown {
-    public static String toHtml(String markdownString) {
-        markdownString = markdownString.replaceAll("<br[ /]*>", " \n");
-        markdownString = markdownString.replaceAll("<[ /]*code>", "`");
+    private static final Pattern LINE_BREAK = Pattern.compile("<br[ /]*>");
+    private static final Pattern CODE_TAG = Pattern.compile("<[ /]*code>");
+    private static final long CACHE_MAX_CHARS = 8 * 1024 * 1024;
+
+    private static final Parser PARSER;
+    private static final HtmlRenderer RENDERER = HtmlRenderer.builder()
+        .escapeHtml(true)
+        .build();
+
+    static {
         MutableDataSet options = new MutableDataSet();
         options.setFrom(ParserEmulationProfile.COMMONMARK_0_28);
         options.set(Parser.HEADING_NO_ATX_SPACE, true);
-        Parser parser = Parser.builder(options).build();
-        Node document = parser.parse(markdownString);
-        HtmlRenderer renderer = HtmlRenderer.builder()
-            .escapeHtml(true)
-            .build();
-        return renderer.render(document);
+        PARSER = Parser.builder(options).build();
+    }
+
+    private static final LoadingCache<String, String> CACHE = CacheBuilder.newBuilder()
+        .maximumWeight(CACHE_MAX_CHARS)
+        .<String, String>weigher((markdown, html) -> markdown.length() + html.length())
+        .build(CacheLoader.from(Markdown::render));
+
+    public static String toHtml(String markdownString) {
+        return CACHE.getUnchecked(markdownString);
+    }
+
+    private static String render(String markdownString) {
+        markdownString = LINE_BREAK.matcher(markdownString).replaceAll(" \n");
+        markdownString = CODE_TAG.matcher(markdownString).replaceAll("`");
+        Node document = PARSER.parse(markdownString);
+        return RENDERER.render(document);
     }
 }
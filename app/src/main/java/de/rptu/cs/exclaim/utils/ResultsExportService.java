@@ -0,0 +1,295 @@
+package de.rptu.cs.exclaim.utils;
+
+import com.opencsv.CSVWriter;
+import de.rptu.cs.exclaim.data.StudentWithSheetResults.SheetResult;
+import de.rptu.cs.exclaim.data.interfaces.IExam;
+import de.rptu.cs.exclaim.data.interfaces.IExamGrade;
+import de.rptu.cs.exclaim.data.interfaces.ISheet;
+import de.rptu.cs.exclaim.data.interfaces.IStudent;
+import de.rptu.cs.exclaim.data.interfaces.IUser;
+import de.rptu.cs.exclaim.data.records.StudentRecord;
+import de.rptu.cs.exclaim.data.records.UserRecord;
+import de.rptu.cs.exclaim.i18n.ICUMessageSourceAccessor;
+import de.rptu.cs.exclaim.schema.Keys;
+import de.rptu.cs.exclaim.schema.enums.Attendance;
+import de.rptu.cs.exclaim.schema.tables.Sheets;
+import de.rptu.cs.exclaim.schema.tables.Studentresults;
+import de.rptu.cs.exclaim.schema.tables.Students;
+import de.rptu.cs.exclaim.schema.tables.Teamresults;
+import de.rptu.cs.exclaim.schema.tables.Users;
+import de.rptu.cs.exclaim.security.ExerciseRoles;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record2;
+import org.jooq.Record4;
+import org.jooq.Record7;
+import org.jooq.impl.DSL;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static de.rptu.cs.exclaim.schema.tables.Examgrades.EXAMGRADES;
+import static de.rptu.cs.exclaim.schema.tables.Examresults.EXAMRESULTS;
+import static de.rptu.cs.exclaim.schema.tables.Exams.EXAMS;
+import static de.rptu.cs.exclaim.schema.tables.Sheets.SHEETS;
+import static de.rptu.cs.exclaim.schema.tables.Studentresults.STUDENTRESULTS;
+import static de.rptu.cs.exclaim.schema.tables.Students.STUDENTS;
+import static de.rptu.cs.exclaim.schema.tables.Teamresults.TEAMRESULTS;
+
+/**
+ * Exports the results of all students of an exercise as CSV or XLSX file, e.g. for the grade submission.
+ * <p>
+ * The file contains one row per student with the points and attendance for each sheet and, for assistants, the
+ * student id and the points and grade of each exam. The rows are read from a lazy cursor and written to the response
+ * one by one, so the memory usage does not depend on the number of students. The response has no content length and
+ * is sent with chunked transfer encoding.
+ */
+@Service
+@RequiredArgsConstructor
+public class ResultsExportService {
+    private static final int FETCH_SIZE = 200;
+
+    private final DSLContext ctx;
+    private final ICUMessageSourceAccessor msg;
+
+    public enum Format {
+        CSV("text/csv; charset=UTF-8", "csv"),
+        XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * Destination for the rows of the export.
+     */
+    private interface RowWriter {
+        void writeRow(Object... cells) throws IOException;
+    }
+
+    private record ExamColumns(IExam exam, List<IExamGrade> grades) {
+    }
+
+    /**
+     * Send the results of the students visible to the user in the given format.
+     */
+    public void sendResults(
+        String exerciseId, ExerciseRoles exerciseRoles, Format format, HttpServletResponse response
+    ) throws IOException {
+        response.setContentType(format.contentType);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.addHeader("Content-Disposition", "attachment; filename=\"" + exerciseId + "_results." + format.extension + "\"");
+        try (OutputStream outputStream = response.getOutputStream()) {
+            switch (format) {
+                case CSV -> {
+                    try (Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+                         CSVWriter csvWriter = new CSVWriter(writer)) {
+                        // Byte order mark, such that Excel detects the encoding
+                        writer.write('\uFEFF');
+                        writeResults(exerciseId, exerciseRoles, cells -> {
+                            String[] line = new String[cells.length];
+                            for (int i = 0; i < cells.length; i++) {
+                                Object cell = cells[i];
+                                line[i] = cell == null ? ""
+                                    : cell instanceof BigDecimal bigDecimal ? bigDecimal.toPlainString()
+                                    : cell instanceof Number ? cell.toString()
+                                    : neutralizeFormula(cell.toString());
+                            }
+                            csvWriter.writeNext(line);
+                        });
+                    }
+                }
+                case XLSX -> {
+                    try (XlsxWriter xlsxWriter = new XlsxWriter(outputStream, exerciseId)) {
+                        writeResults(exerciseId, exerciseRoles, xlsxWriter::writeRow);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prevent spreadsheet applications from evaluating a text cell of a CSV file as formula (CSV injection), by
+     * prefixing a value that starts with a formula character with an apostrophe. Numbers are written unchanged.
+     */
+    static String neutralizeFormula(String value) {
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            return "'" + value;
+        }
+        return value;
+    }
+
+    private void writeResults(String exerciseId, ExerciseRoles exerciseRoles, RowWriter rowWriter) throws IOException {
+        boolean isAssistant = exerciseRoles.getIsAssistant();
+
+        List<? extends ISheet> sheets = ctx.fetch(SHEETS, SHEETS.EXERCISE.eq(exerciseId));
+        sheets.sort(Comparator.comparing(ISheet::getSheetId, Comparators.IDENTIFIER));
+
+        List<ExamColumns> exams = new ArrayList<>();
+        if (isAssistant) {
+            Map<String, List<IExamGrade>> gradesPerExam = new LinkedHashMap<>();
+            for (IExamGrade grade : ctx.fetch(EXAMGRADES, EXAMGRADES.EXERCISE.eq(exerciseId))) {
+                gradesPerExam.computeIfAbsent(grade.getExamId(), k -> new ArrayList<>()).add(grade);
+            }
+            List<? extends IExam> examList = ctx.fetch(EXAMS, EXAMS.EXERCISE.eq(exerciseId));
+            examList.sort(Comparator.comparing(IExam::getExamId, Comparators.IDENTIFIER));
+            for (IExam exam : examList) {
+                List<IExamGrade> grades = gradesPerExam.getOrDefault(exam.getExamId(), new ArrayList<>());
+                grades.sort(Comparator.comparing(IExamGrade::getMinPoints).reversed());
+                exams.add(new ExamColumns(exam, grades));
+            }
+        }
+
+        // Header
+        List<String> header = new ArrayList<>();
+        header.add(msg.getMessage("common.group"));
+        header.add(msg.getMessage("common.team"));
+        header.add(msg.getMessage("common.userId"));
+        if (isAssistant) {
+            header.add(msg.getMessage("common.studentId"));
+        }
+        header.add(msg.getMessage("common.firstname"));
+        header.add(msg.getMessage("common.lastname"));
+        header.add(msg.getMessage("common.email"));
+        String points = msg.getMessage("common.points");
+        String attendance = msg.getMessage("common.attendance");
+        for (ISheet sheet : sheets) {
+            header.add(sheet.getSheetId() + " (" + points + ")");
+        }
+        header.add(msg.getMessage("common.total-points"));
+        for (ISheet sheet : sheets) {
+            header.add(sheet.getSheetId() + " (" + attendance + ")");
+        }
+        String grade = msg.getMessage("common.grade");
+        for (ExamColumns exam : exams) {
+            header.add(exam.exam().getExamId() + " (" + points + ")");
+            header.add(exam.exam().getExamId() + " (" + grade + ")");
+        }
+        rowWriter.writeRow(header.toArray());
+
+        // Rows
+        Students stud = STUDENTS.as("stud");
+        Users u = stud.user().as("u");
+        Sheets s = SHEETS.as("s");
+        Studentresults sr = STUDENTRESULTS.as("sr");
+        Teamresults tr = TEAMRESULTS.as("tr");
+        Field<Map<String, SheetResult>> sheetResults = DSL.multisetAgg(
+                s.ID,
+                sr.GROUPID,
+                sr.TEAMID,
+                // teampoints
+                tr.POINTS,
+                sr.DELTAPOINTS,
+                tr.HIDEPOINTS,
+                sr.ATTENDED
+            )
+            .convertFrom(r -> r.intoMap(Record7::value1, r2 -> new SheetResult(
+                /* groupId */ r2.value2(),
+                /* teamId */ r2.value3(),
+                /* teampoints */ r2.value4(),
+                /* deltapoints */ r2.value5(),
+                /* hidePoints */ Boolean.TRUE.equals(r2.value6()),
+                /* attended */ r2.value7()
+            ))).as("sheetResults");
+        Field<Map<String, BigDecimal>> examPoints = DSL.multiset(
+                DSL.select(EXAMRESULTS.EXAMID, DSL.sum(EXAMRESULTS.POINTS))
+                    .from(EXAMRESULTS)
+                    .where(
+                        EXAMRESULTS.EXERCISE.eq(exerciseId),
+                        EXAMRESULTS.USERID.eq(u.USERID),
+                        // Skip the subquery if there are no exam columns (no exams or not an assistant)
+                        DSL.condition(!exams.isEmpty())
+                    )
+                    .groupBy(EXAMRESULTS.EXAMID)
+            )
+            .convertFrom(r -> r.intoMap(Record2::value1, Record2::value2)).as("examPoints");
+
+        int numColumns = header.size();
+        try (Cursor<Record4<StudentRecord, UserRecord, Map<String, SheetResult>, Map<String, BigDecimal>>> cursor = ctx
+            .select(stud, u, sheetResults, examPoints)
+            .from(stud)
+            .leftJoin(s).on(s.EXERCISE.eq(exerciseId))
+            .leftJoin(sr).onKey(Keys.FK__STUDENTRESULTS__SHEETS).and(sr.USERID.eq(u.USERID))
+            .leftJoin(tr).onKey(Keys.FK__TEAMRESULTS__SHEETS).and(tr.GROUPID.eq(sr.GROUPID)).and(tr.TEAMID.eq(sr.TEAMID))
+            .where(
+                stud.EXERCISEID.eq(exerciseId),
+                exerciseRoles.applyGroupIdRestriction(stud.GROUPID)
+            )
+            .groupBy(stud, u)
+            .orderBy(stud.GROUPID, stud.TEAMID, u.LASTNAME, u.FIRSTNAME, u.USERID)
+            .fetchSize(FETCH_SIZE)
+            .fetchLazy()
+        ) {
+            Object[] row = new Object[numColumns];
+            for (Record4<StudentRecord, UserRecord, Map<String, SheetResult>, Map<String, BigDecimal>> r : cursor) {
+                IStudent student = r.value1();
+                IUser user = r.value2();
+                Map<String, SheetResult> results = r.value3();
+
+                int i = 0;
+                row[i++] = student.getGroupId();
+                row[i++] = student.getTeamId();
+                row[i++] = user.getUserId();
+                if (isAssistant) {
+                    row[i++] = user.getStudentId();
+                }
+                row[i++] = user.getFirstname();
+                row[i++] = user.getLastname();
+                row[i++] = user.getEmail();
+                BigDecimal total = null;
+                for (ISheet sheet : sheets) {
+                    SheetResult result = results.get(sheet.getSheetId());
+                    BigDecimal sheetPoints = result != null ? result.getPoints() : null;
+                    if (sheetPoints != null) {
+                        total = total == null ? sheetPoints : total.add(sheetPoints);
+                    }
+                    row[i++] = sheetPoints;
+                }
+                row[i++] = total;
+                for (ISheet sheet : sheets) {
+                    SheetResult result = results.get(sheet.getSheetId());
+                    Attendance attended = result != null ? result.getAttended() : null;
+                    row[i++] = attended != null ? attended.name() : null;
+                }
+                for (ExamColumns exam : exams) {
+                    BigDecimal sumPoints = r.value4().get(exam.exam().getExamId());
+                    row[i++] = sumPoints;
+                    row[i++] = sumPoints != null ? gradeFor(exam.grades(), sumPoints) : null;
+                }
+                rowWriter.writeRow(row);
+            }
+        }
+    }
+
+    /**
+     * The grade for the given points, the grades must be sorted by descending minimum points.
+     */
+    @Nullable
+    private static String gradeFor(List<IExamGrade> grades, BigDecimal points) {
+        for (IExamGrade grade : grades) {
+            if (grade.getMinPoints().compareTo(points) <= 0) {
+                return grade.getGrade();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,213 @@
+package de.rptu.cs.exclaim.utils;
+
+import de.rptu.cs.exclaim.ExclaimProperties;
+import de.rptu.cs.exclaim.jobs.JobFailedPermanentlyException;
+import de.rptu.cs.exclaim.jobs.JobFailedTemporarilyException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * HTTP client for the RTE (Remote Test Executor).
+ * <p>
+ * All requests share a single {@link HttpClient}, such that connections to the RTE are kept alive and reused instead of
+ * opening a new connection for each test. If the RTE supports HTTP/2, concurrent requests are multiplexed over a single
+ * connection.
+ * <p>
+ * Requests are non-blocking: The returned futures complete on the client's own threads once the response has arrived,
+ * such that no thread is occupied while the RTE is running the tests. The timeouts are configured by
+ * {@code exclaim.rte.connect-timeout} and {@code exclaim.rte.read-timeout}.
+ * <p>
+ * At most {@code exclaim.rte.max-parallel} tests are sent to the RTE at the same time. Further tests wait in a queue
+ * (without occupying a thread) and are sent when a response has arrived.
+ */
+@Service
+@Slf4j
+public class RteClient {
+    private final ExclaimProperties.Rte rte;
+    private final HttpClient httpClient;
+
+    // Tests in flight and tests waiting to be sent, guarded by waitingTests
+    private int testsInFlight = 0;
+    private final Deque<Runnable> waitingTests = new ArrayDeque<>();
+
+    /**
+     * A file to be sent to the RTE.
+     *
+     * @param filename the original name of the file
+     * @param path     the path to the file's content
+     */
+    public record TestFile(String filename, Path path) {
+    }
+
+    @Autowired
+    public RteClient(ExclaimProperties exclaimProperties) {
+        this(exclaimProperties.getRte());
+    }
+
+    RteClient(ExclaimProperties.Rte rte) {
+        this.rte = rte;
+        this.httpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(rte.getConnectTimeout())
+            .build();
+    }
+
+    /**
+     * Send files to the RTE to be tested.
+     *
+     * @param test  the name of the test, i.e. exerciseId/sheetId/assignmentId
+     * @param files the files to test
+     * @return the response body of the RTE, completes exceptionally with {@link JobFailedTemporarilyException} if the
+     * RTE does not respond with success
+     */
+    @SuppressWarnings("FutureReturnValueIgnored")
+    public CompletableFuture<String> test(String test, List<TestFile> files) {
+        String boundary = UUID.randomUUID().toString();
+        BodyPublisher body;
+        try {
+            body = multipartBody(boundary, test, files);
+        } catch (FileNotFoundException e) {
+            return CompletableFuture.failedFuture(new JobFailedPermanentlyException("File not found: " + e.getMessage()));
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri("/test"))
+            .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+            .timeout(rte.getReadTimeout())
+            .POST(body)
+            .build();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Runnable send = () -> {
+            try {
+                httpClient.sendAsync(request, BodyHandlers.ofString())
+                    .thenApply(response -> {
+                        if (response.statusCode() / 100 != 2) {
+                            log.warn("RTE responded to test {} with status {}", test, response.statusCode());
+                            throw new JobFailedTemporarilyException("Communication problem with RTE");
+                        }
+                        return response.body();
+                    })
+                    .whenComplete((responseBody, ex) -> {
+                        sendNextTest();
+                        if (ex == null) {
+                            result.complete(responseBody);
+                        } else {
+                            result.completeExceptionally(ex);
+                        }
+                    });
+            } catch (RuntimeException e) {
+                // The request has not been sent, so release its slot right away
+                sendNextTest();
+                result.completeExceptionally(e);
+            }
+        };
+        boolean sendNow;
+        synchronized (waitingTests) {
+            sendNow = testsInFlight < rte.getMaxParallel();
+            if (sendNow) {
+                testsInFlight++;
+            } else {
+                waitingTests.add(send);
+            }
+        }
+        if (sendNow) {
+            send.run();
+        }
+        return result;
+    }
+
+    /**
+     * A test request has completed: Pass its slot to the next waiting test, if any.
+     */
+    private void sendNextTest() {
+        Runnable next;
+        synchronized (waitingTests) {
+            next = waitingTests.poll();
+            if (next == null) {
+                testsInFlight--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * Query the tests that are available in the RTE.
+     *
+     * @return the response body of the RTE, completes exceptionally with {@link IOException} if the request failed or
+     * the RTE does not respond with success
+     */
+    public CompletableFuture<String> listTests() {
+        HttpRequest request = HttpRequest.newBuilder(uri("/listtests"))
+            .timeout(rte.getReadTimeout())
+            .GET()
+            .build();
+        return httpClient.sendAsync(request, BodyHandlers.ofString()).thenApply(response -> {
+            if (response.statusCode() / 100 != 2) {
+                throw new CompletionException(new IOException("RTE responded with status " + response.statusCode()));
+            }
+            return response.body();
+        });
+    }
+
+    private URI uri(String path) {
+        String rteUrl = rte.getUrl();
+        String apiKey = rte.getApiKey();
+        if (StringUtils.isEmpty(rteUrl) || StringUtils.isEmpty(apiKey)) {
+            throw new JobFailedPermanentlyException("Invalid RTE configuration");
+        }
+        return UriComponentsBuilder.fromHttpUrl(rteUrl + path).queryParam("apiKey", apiKey).build().toUri();
+    }
+
+    private static BodyPublisher multipartBody(String boundary, String test, List<TestFile> files) throws FileNotFoundException {
+        List<BodyPublisher> parts = new ArrayList<>(2 * files.size() + 3);
+        parts.add(formField(boundary, "test", test));
+        parts.add(formField(boundary, "numfiles", Integer.toString(files.size())));
+        int i = 0;
+        for (TestFile file : files) {
+            parts.add(BodyPublishers.ofString(
+                "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file" + i++ + "\"; filename=\"" + escapeQuotes(file.filename()) + "\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n",
+                StandardCharsets.UTF_8
+            ));
+            parts.add(BodyPublishers.ofFile(file.path()));
+            parts.add(BodyPublishers.ofString("\r\n"));
+        }
+        parts.add(BodyPublishers.ofString("--" + boundary + "--\r\n"));
+        return BodyPublishers.concat(parts.toArray(BodyPublisher[]::new));
+    }
+
+    private static BodyPublisher formField(String boundary, String name, String value) {
+        return BodyPublishers.ofString(
+            "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n",
+            StandardCharsets.UTF_8
+        );
+    }
+
+    private static String escapeQuotes(String filename) {
+        return filename.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+}
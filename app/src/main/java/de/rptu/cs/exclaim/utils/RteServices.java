@@ -9,25 +9,16 @@ import de.rptu.cs.exclaim.data.records.TestResultRecord;
 import de.rptu.cs.exclaim.data.records.UploadRecord;
 import de.rptu.cs.exclaim.data.records.WarningRecord;
 import de.rptu.cs.exclaim.jobs.JobFailedPermanentlyException;
-import de.rptu.cs.exclaim.jobs.JobFailedTemporarilyException;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.jooq.DSLContext;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.UriComponentsBuilder;
 
-import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
@@ -37,6 +28,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static de.rptu.cs.exclaim.schema.tables.Testresult.TESTRESULT;
@@ -49,9 +43,12 @@ import static de.rptu.cs.exclaim.schema.tables.Warnings.WARNINGS;
 public class RteServices {
     private final ExclaimProperties exclaimProperties;
     private final UploadManager uploadManager;
-    private final SimpMessagingTemplate broker;
+    private final RteClient rteClient;
+    private final TestResultNotifier testResultNotifier;
     private final DSLContext ctx;
+    private final SheetOverviewService sheetOverviewService;
     @Nullable private volatile TestCache availableTestsCache;
+    private final AtomicReference<CompletableFuture<Set<TestName>>> availableTestsRefresh = new AtomicReference<>();
 
     @Value
     public static class TestName {
@@ -60,6 +57,16 @@ public class RteServices {
         String assignmentId;
     }
 
+    @Value
+    public static class TestRequest {
+        String exerciseId;
+        String sheetId;
+        String assignmentId;
+        String groupId;
+        String teamId;
+        int requestNr;
+    }
+
     @Value
     public static class TestResultMsg {
         String exercise;
@@ -78,126 +85,144 @@ public class RteServices {
     }
 
 
+    /**
+     * Run a single test and wait for its completion.
+     *
+     * @see #runTests(List)
+     */
     public void runTest(String exerciseId, String sheetId, String assignmentId, String groupId, String teamId, int requestNr) {
+        CompletableFuture<Void> result = runTests(List.of(new TestRequest(exerciseId, sheetId, assignmentId, groupId, teamId, requestNr))).get(0);
+        try {
+            result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
+    }
+
+    /**
+     * Send multiple tests to the RTE. The requests share the connections of the {@link RteClient} and are sent
+     * concurrently. Each result is stored in the corresponding TESTRESULT record and WARNINGS as soon as it arrives.
+     *
+     * @param requests the tests to run
+     * @return for each request (in the same order), a future that completes when its result has been stored
+     */
+    public List<CompletableFuture<Void>> runTests(List<TestRequest> requests) {
         ExclaimProperties.Rte rte = exclaimProperties.getRte();
-        String rteUrl = rte.getUrl();
-        String apiKey = rte.getApiKey();
-        if (StringUtils.isEmpty(rteUrl) || StringUtils.isEmpty(apiKey)) {
+        if (StringUtils.isEmpty(rte.getUrl()) || StringUtils.isEmpty(rte.getApiKey())) {
             throw new JobFailedPermanentlyException("Invalid RTE configuration");
         }
 
+        List<CompletableFuture<Void>> results = new ArrayList<>(requests.size());
+        for (TestRequest request : requests) {
+            CompletableFuture<Void> result;
+            try {
+                result = startTest(request);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private CompletableFuture<Void> startTest(TestRequest request) {
         TestResultRecord record = ctx
             .fetchOptional(TESTRESULT,
-                TESTRESULT.EXERCISE.eq(exerciseId),
-                TESTRESULT.SHEET.eq(sheetId),
-                TESTRESULT.ASSIGNMENT.eq(assignmentId),
-                TESTRESULT.GROUPID.eq(groupId),
-                TESTRESULT.TEAMID.eq(teamId),
-                TESTRESULT.REQUESTNR.eq(requestNr)
+                TESTRESULT.EXERCISE.eq(request.exerciseId),
+                TESTRESULT.SHEET.eq(request.sheetId),
+                TESTRESULT.ASSIGNMENT.eq(request.assignmentId),
+                TESTRESULT.GROUPID.eq(request.groupId),
+                TESTRESULT.TEAMID.eq(request.teamId),
+                TESTRESULT.REQUESTNR.eq(request.requestNr)
             )
             .orElseThrow(() -> new JobFailedPermanentlyException("Database record not found"));
         log.debug("Processing RTE job for {}", record);
         if (record.getTimeDone() != null) {
             log.warn("Test is marked as done, ignoring it: {}", record);
-        } else {
-            LocalDateTime snapshot = record.getSnapshot();
-            List<UploadRecord> uploads = ctx.fetch(
-                UPLOADS,
-                UPLOADS.EXERCISE.eq(exerciseId),
-                UPLOADS.SHEET.eq(sheetId),
-                UPLOADS.ASSIGNMENT.eq(assignmentId),
-                UPLOADS.GROUPID.eq(groupId),
-                UPLOADS.TEAMID.eq(teamId),
-                UPLOADS.UPLOAD_DATE.le(snapshot),
-                UPLOADS.DELETE_DATE.isNull().or(UPLOADS.DELETE_DATE.gt(snapshot))
-            );
-            LinkedMultiValueMap<String, Object> params = new LinkedMultiValueMap<>();
-            params.add("test", exerciseId + "/" + sheetId + "/" + assignmentId);
-            params.add("numfiles", uploads.size());
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-            int i = 0;
-            for (UploadRecord upload : uploads) {
-                File file = uploadManager.getUploadPath(upload).toFile();
-                if (!file.isFile()) {
-                    throw new JobFailedPermanentlyException("File not found: " + file.getAbsolutePath());
-                }
-                params.add("file" + i++, new FileSystemResource(file) {
-                    @Override
-                    public String getFilename() {
-                        return upload.getFilename();
-                    }
-                });
-            }
+            sendStatus(request, "done");
+            return CompletableFuture.completedFuture(null);
+        }
 
-            // If it had been started previously, then this is a retry
-            if (record.getTimeStarted() != null) {
-                record.setRetries(record.getRetries() + 1);
+        LocalDateTime snapshot = record.getSnapshot();
+        List<UploadRecord> uploads = ctx.fetch(
+            UPLOADS,
+            UPLOADS.EXERCISE.eq(request.exerciseId),
+            UPLOADS.SHEET.eq(request.sheetId),
+            UPLOADS.ASSIGNMENT.eq(request.assignmentId),
+            UPLOADS.GROUPID.eq(request.groupId),
+            UPLOADS.TEAMID.eq(request.teamId),
+            UPLOADS.UPLOAD_DATE.le(snapshot),
+            UPLOADS.DELETE_DATE.isNull().or(UPLOADS.DELETE_DATE.gt(snapshot))
+        );
+        List<RteClient.TestFile> files = new ArrayList<>(uploads.size());
+        for (UploadRecord upload : uploads) {
+            Path path = uploadManager.getUploadPath(upload);
+            if (!Files.isRegularFile(path)) {
+                throw new JobFailedPermanentlyException("File not found: " + path.toAbsolutePath());
             }
+            files.add(new RteClient.TestFile(upload.getFilename(), path));
+        }
 
+        // If it had been started previously, then this is a retry
+        if (record.getTimeStarted() != null) {
+            record.setRetries(record.getRetries() + 1);
+        }
+
+        record.setTimeStarted(LocalDateTime.now(exclaimProperties.getTimezone()));
+        return rteClient
+            .test(request.exerciseId + "/" + request.sheetId + "/" + request.assignmentId, files)
+            .thenAccept(body -> storeResult(record, uploads, RteResult.fromJson(body)))
+            .whenComplete((ignored, ex) -> sendStatus(request, ex == null ? "done" : "failed"));
+    }
 
-            record.setTimeStarted(LocalDateTime.now(exclaimProperties.getTimezone()));
-            ResponseEntity<String> response = new RestTemplate().postForEntity(
-                UriComponentsBuilder.fromHttpUrl(rteUrl + "/test").queryParam("apiKey", apiKey).build().toUri(),
-                new HttpEntity<>(params, headers),
-                String.class
-            );
-            String body;
-            if (response.getStatusCode().is2xxSuccessful() && (body = response.getBody()) != null) {
-                RteResult result = RteResult.fromJson(body);
-                record.setTimeDone(LocalDateTime.now(exclaimProperties.getTimezone()));
-                TestResultDetails details = result.getTest_result();
-                record.setCompiled(details.isCompiled());
-                record.setInternalError(details.getInternal_error() != null);
-                record.setTestsTotal(details.getTests_executed());
-                record.setTestsPassed(details.getTests_executed() - details.getTests_failed());
-                record.setMissingFiles(details.hasMissing_files());
-                record.setIllegalFiles(details.hasIllegal_files());
-                record.setResult(JsonUtils.toJson(details));
-                record.update();
+    private void storeResult(TestResultRecord record, List<UploadRecord> uploads, RteResult result) {
+        record.setTimeDone(LocalDateTime.now(exclaimProperties.getTimezone()));
+        TestResultDetails details = result.getTest_result();
+        record.setCompiled(details.isCompiled());
+        record.setInternalError(details.getInternal_error() != null);
+        record.setTestsTotal(details.getTests_executed());
+        record.setTestsPassed(details.getTests_executed() - details.getTests_failed());
+        record.setMissingFiles(details.hasMissing_files());
+        record.setIllegalFiles(details.hasIllegal_files());
+        record.setResult(JsonUtils.toJson(details));
+        record.update();
+        sheetOverviewService.invalidate(record.getExerciseId(), record.getSheetId());
 
-                ctx
-                    .deleteFrom(WARNINGS)
-                    .where(WARNINGS.FILEID.in(uploads.stream().map(UploadRecord::getUploadId).toList()))
-                    .execute();
-                List<FileWarnings> fileWarnings = result.getFile_warnings();
-                if (fileWarnings != null && !fileWarnings.isEmpty()) {
-                    Map<String, Integer> uploadIdByFilename = uploads.stream().collect(Collectors.toMap(UploadRecord::getFilename, UploadRecord::getUploadId));
-                    List<WarningRecord> warningRecords = new ArrayList<>();
-                    for (FileWarnings file : fileWarnings) {
-                        String filename = file.getFilename();
-                        Integer fileId = uploadIdByFilename.get(filename);
-                        if (fileId == null) {
-                            log.warn("Could not find upload for file {}", filename);
-                        } else {
-                            for (FileWarnings.Warning warning : file.getWarnings()) {
-                                WarningRecord warningRecord = ctx.newRecord(WARNINGS);
-                                warningRecord.setFileId(fileId);
-                                warningRecord.setLine(warning.getBegin_line());
-                                warningRecord.setRule(warning.getRule());
-                                warningRecord.setRuleset(warning.getRule_set());
-                                warningRecord.setInfoUrl(warning.getInfo_url());
-                                warningRecord.setPriority(warning.getPriority());
-                                warningRecord.setMessage(warning.getMessage());
-                                warningRecords.add(warningRecord);
-                            }
-                        }
+        ctx
+            .deleteFrom(WARNINGS)
+            .where(WARNINGS.FILEID.in(uploads.stream().map(UploadRecord::getUploadId).toList()))
+            .execute();
+        List<FileWarnings> fileWarnings = result.getFile_warnings();
+        if (fileWarnings != null && !fileWarnings.isEmpty()) {
+            Map<String, Integer> uploadIdByFilename = uploads.stream().collect(Collectors.toMap(UploadRecord::getFilename, UploadRecord::getUploadId));
+            List<WarningRecord> warningRecords = new ArrayList<>();
+            for (FileWarnings file : fileWarnings) {
+                String filename = file.getFilename();
+                Integer fileId = uploadIdByFilename.get(filename);
+                if (fileId == null) {
+                    log.warn("Could not find upload for file {}", filename);
+                } else {
+                    for (FileWarnings.Warning warning : file.getWarnings()) {
+                        WarningRecord warningRecord = ctx.newRecord(WARNINGS);
+                        warningRecord.setFileId(fileId);
+                        warningRecord.setLine(warning.getBegin_line());
+                        warningRecord.setRule(warning.getRule());
+                        warningRecord.setRuleset(warning.getRule_set());
+                        warningRecord.setInfoUrl(warning.getInfo_url());
+                        warningRecord.setPriority(warning.getPriority());
+                        warningRecord.setMessage(warning.getMessage());
+                        warningRecords.add(warningRecord);
                     }
-                    ctx.batchUpdate(warningRecords).execute();
                 }
-            } else {
-                broker.convertAndSend(
-                    testResultsChannel(exerciseId, sheetId, groupId, teamId),
-                    new TestResultMsg(exerciseId, sheetId, assignmentId, groupId, teamId, requestNr, "failed")
-                );
-
-                throw new JobFailedTemporarilyException("Communication problem with RTE");
             }
+            ctx.batchUpdate(warningRecords).execute();
         }
+    }
 
-        broker.convertAndSend(
-            testResultsChannel(exerciseId, sheetId, groupId, teamId),
-            new TestResultMsg(exerciseId, sheetId, assignmentId, groupId, teamId, requestNr, "done")
+    private void sendStatus(TestRequest request, String status) {
+        testResultNotifier.send(
+            new TestResultMsg(request.exerciseId, request.sheetId, request.assignmentId, request.groupId, request.teamId, request.requestNr, status)
         );
     }
 
@@ -210,50 +235,66 @@ public class RteServices {
         return "/topic/testresults/" + exerciseId + "/" + sheetId + "/" + groupId + "/" + teamId;
     }
 
+    /**
+     * Get the tests available in the RTE. The result is cached for 20 seconds. When the cached result is outdated, it is
+     * still returned while a refresh runs in the background. Only the very first call waits for the RTE.
+     */
     private Set<TestName> availableTests() {
         TestCache cached = availableTestsCache;
-        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
-        if (cached == null || cached.time.isBefore(now.minus(20, ChronoUnit.SECONDS))) {
-            cached = new TestCache(now, loadAvailableTests());
-            availableTestsCache = cached;
+        if (cached == null) {
+            return refreshAvailableTests().join();
+        }
+        if (cached.time.isBefore(LocalDateTime.now(ZoneOffset.UTC).minus(20, ChronoUnit.SECONDS))) {
+            refreshAvailableTests();
         }
         return cached.tests;
     }
 
+    private CompletableFuture<Set<TestName>> refreshAvailableTests() {
+        CompletableFuture<Set<TestName>> refresh = new CompletableFuture<>();
+        CompletableFuture<Set<TestName>> running = availableTestsRefresh.compareAndExchange(null, refresh);
+        if (running != null) {
+            return running;
+        }
+        CompletableFuture<Set<TestName>> load;
+        try {
+            load = loadAvailableTests();
+        } catch (RuntimeException e) {
+            availableTestsRefresh.set(null);
+            throw e;
+        }
+        load.thenAccept(tests -> {
+            availableTestsCache = new TestCache(LocalDateTime.now(ZoneOffset.UTC), tests);
+            availableTestsRefresh.set(null);
+            refresh.complete(tests);
+        });
+        return refresh;
+    }
+
     @SuppressWarnings("StringSplitter")
-    private Set<TestName> loadAvailableTests() {
+    private CompletableFuture<Set<TestName>> loadAvailableTests() {
         ExclaimProperties.Rte rte = exclaimProperties.getRte();
         if (!rte.getEnabled()) {
-            return Collections.emptySet();
+            return CompletableFuture.completedFuture(Collections.emptySet());
         }
-        String rteUrl = rte.getUrl();
-        String apiKey = rte.getApiKey();
-        if (StringUtils.isEmpty(rteUrl) || StringUtils.isEmpty(apiKey)) {
+        if (StringUtils.isEmpty(rte.getUrl()) || StringUtils.isEmpty(rte.getApiKey())) {
             throw new IllegalStateException("Invalid RTE configuration");
         }
 
-        ResponseEntity<String> response = new RestTemplate().getForEntity(
-            UriComponentsBuilder.fromHttpUrl(rteUrl + "/listtests").queryParam("apiKey", apiKey).build().toUri(),
-            String.class
-        );
-        String body;
-        try {
-            if (response.getStatusCode().is2xxSuccessful() && (body = response.getBody()) != null) {
-                return RteListTestsResponse.fromJson(body).getTests().stream()
-                    .map(path -> {
-                        String[] parts = path.split("[/\\\\]");
-                        return parts.length == 3
-                            ? new TestName(parts[0], parts[1], parts[2])
-                            : null;
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toSet());
-            } else {
-                log.error("Could not update available tests from RTE");
-            }
-        } catch (Exception e) {
-            log.error("Could not update available tests from RTE", e);
-        }
-        return Collections.emptySet();
+        return rteClient.listTests()
+            .thenApply(body -> RteListTestsResponse.fromJson(body).getTests().stream()
+                .map(path -> {
+                    String[] parts = path.split("[/\\\\]");
+                    return parts.length == 3
+                        ? new TestName(parts[0], parts[1], parts[2])
+                        : null;
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet())
+            )
+            .exceptionally(e -> {
+                log.error("Could not update available tests from RTE", e);
+                return Collections.emptySet();
+            });
     }
 }
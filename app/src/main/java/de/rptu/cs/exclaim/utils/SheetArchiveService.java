@@ -0,0 +1,412 @@
+package de.rptu.cs.exclaim.utils;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.rptu.cs.exclaim.security.ExerciseRoles;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.jooq.Records;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import static de.rptu.cs.exclaim.schema.tables.Uploads.UPLOADS;
+
+/**
+ * Builds the ZIP archive with all uploads for a sheet.
+ * <p>
+ * Archives are cached on disk per exercise, sheet, group restriction and upload snapshot. The snapshot is a hash over
+ * all uploads included in the archive, so a new or deleted upload results in a new archive, while repeated downloads
+ * of an unchanged sheet are served from the cache. Already-compressed files and large files are stored and copied
+ * directly from the upload, all other files are deflated in parallel. The cached archives of a sheet are removed when
+ * the sheet or its exercise is deleted.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SheetArchiveService implements DisposableBean {
+    private static final Path CACHE_PATH = Path.of(UploadManager.DATA_PATH, "__archives");
+    private static final Set<String> STORED_EXTENSIONS = Set.of(
+        "7z", "bz2", "docx", "gif", "gz", "jar", "jpeg", "jpg", "mp3", "mp4", "odp", "ods", "odt", "pdf", "png", "pptx",
+        "rar", "tgz", "webp", "xlsx", "xz", "zip"
+    );
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    // Files of at least this size are stored without compression, such that they are never held in memory
+    private static final long MAX_DEFLATED_FILE_SIZE = 8L * 1024 * 1024;
+    // Upper bound for the compressed data held in memory while waiting to be written
+    private static final long MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+
+    private final DSLContext ctx;
+    private final UploadManager uploadManager;
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+        PARALLELISM, new ThreadFactoryBuilder().setNameFormat("sheet-archive-%d").setDaemon(true).build()
+    );
+    private final ConcurrentMap<Path, CompletableFuture<Path>> pendingArchives = new ConcurrentHashMap<>();
+
+    private record ArchiveFile(String groupId, String teamId, String assignmentId, LocalDateTime uploadDate, String filename) {
+    }
+
+    private record PreparedFile(int method, long crc, long size, byte[] data) {
+    }
+
+    private record PendingFile(Future<PreparedFile> future, long bufferedBytes) {
+    }
+
+    /**
+     * Send the archive with all uploads for the given sheet which are visible to the user.
+     */
+    public void sendSheetArchive(
+        String exerciseId, String sheetId, ExerciseRoles exerciseRoles, HttpServletResponse response
+    ) throws IOException {
+        // Open the channel before anything else, a concurrent rebuild might replace the archive
+        try (FileChannel channel = openSheetArchive(exerciseId, sheetId, exerciseRoles)) {
+            long size = channel.size();
+            response.setContentType("application/zip");
+            response.setStatus(HttpServletResponse.SC_OK);
+            String zipFilename = exerciseId + "_" + sheetId + ".zip";
+            response.addHeader("Content-Disposition", "attachment; filename=\"" + zipFilename + "\"");
+            response.setContentLengthLong(size);
+            try (OutputStream outputStream = response.getOutputStream();
+                 WritableByteChannel target = Channels.newChannel(outputStream)) {
+                long position = 0;
+                while (position < size) {
+                    long transferred = channel.transferTo(position, size - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of archive at position " + position);
+                    }
+                    position += transferred;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the cached archive for the current upload snapshot of the given sheet, building it if necessary. The archive
+     * may be removed by a concurrent rebuild for a newer snapshot before it is opened, then it is built once again.
+     */
+    private FileChannel openSheetArchive(
+        String exerciseId, String sheetId, ExerciseRoles exerciseRoles
+    ) throws IOException {
+        try {
+            return FileChannel.open(getSheetArchive(exerciseId, sheetId, exerciseRoles), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            log.debug("Archive {} has been removed concurrently, building it again", e.getFile());
+            return FileChannel.open(getSheetArchive(exerciseId, sheetId, exerciseRoles), StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Get the cached archive for the current upload snapshot of the given sheet, building it if necessary.
+     */
+    public Path getSheetArchive(String exerciseId, String sheetId, ExerciseRoles exerciseRoles) throws IOException {
+        // Ordered by path, the newest upload of a filename comes first
+        List<ArchiveFile> files = ctx
+            .select(UPLOADS.GROUPID, UPLOADS.TEAMID, UPLOADS.ASSIGNMENT, UPLOADS.UPLOAD_DATE, UPLOADS.FILENAME)
+            .from(UPLOADS)
+            .where(
+                UPLOADS.EXERCISE.eq(exerciseId),
+                UPLOADS.SHEET.eq(sheetId),
+                exerciseRoles.applyGroupIdRestriction(UPLOADS.GROUPID),
+                UPLOADS.DELETE_DATE.isNull()
+            )
+            .orderBy(UPLOADS.GROUPID, UPLOADS.TEAMID, UPLOADS.ASSIGNMENT, UPLOADS.FILENAME, UPLOADS.UPLOAD_DATE.desc())
+            .fetch(Records.mapping(ArchiveFile::new));
+
+        Hasher keyHasher = Hashing.sha256().newHasher()
+            .putString(exerciseId, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(sheetId, StandardCharsets.UTF_8).putByte((byte) 0);
+        if (exerciseRoles.isAssistant()) {
+            keyHasher.putByte((byte) 1);
+        } else {
+            for (String groupId : new TreeSet<>(Objects.requireNonNullElse(exerciseRoles.getTutorGroups(), Set.<String>of()))) {
+                keyHasher.putString(groupId, StandardCharsets.UTF_8).putByte((byte) 0);
+            }
+        }
+        String key = keyHasher.hash().toString().substring(0, 32);
+
+        Hasher snapshotHasher = Hashing.sha256().newHasher();
+        for (ArchiveFile file : files) {
+            snapshotHasher
+                .putString(file.groupId, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(file.teamId, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(file.assignmentId, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(UploadManager.INTERNAL_DTF.format(file.uploadDate), StandardCharsets.UTF_8)
+                .putString(file.filename, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        Path archive = archiveDirectory(exerciseId, sheetId)
+            .resolve(key + "-" + snapshotHasher.hash().toString().substring(0, 32) + ".zip");
+        if (Files.isRegularFile(archive)) {
+            return archive;
+        }
+
+        // Only one request builds a given archive, concurrent requests wait for it
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> pending = pendingArchives.putIfAbsent(archive, future);
+        if (pending != null) {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw e;
+            }
+        }
+        try {
+            if (!Files.isRegularFile(archive)) {
+                buildArchive(exerciseId, sheetId, files, archive);
+                removeOutdatedArchives(archive.getParent(), key, archive);
+            }
+            future.complete(archive);
+            return archive;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingArchives.remove(archive, future);
+        }
+    }
+
+    private void buildArchive(String exerciseId, String sheetId, List<ArchiveFile> uploads, Path archive) throws IOException {
+        long start = System.nanoTime();
+
+        // Skip older uploads with the same filename
+        List<ArchiveFile> files = new ArrayList<>(uploads.size());
+        ArchiveFile previous = null;
+        for (ArchiveFile file : uploads) {
+            if (previous == null
+                || !previous.groupId.equals(file.groupId)
+                || !previous.teamId.equals(file.teamId)
+                || !previous.assignmentId.equals(file.assignmentId)
+                || !previous.filename.equals(file.filename)
+            ) {
+                files.add(file);
+            }
+            previous = file;
+        }
+
+        Path directory = archive.getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, "build-", ".tmp");
+        // Files are prepared by the executor ahead of the writer, but only within a bounded window: at most 2 files per
+        // thread, and at most MAX_BUFFERED_BYTES of deflated data (estimated by the file sizes) held in memory.
+        int window = 2 * PARALLELISM;
+        Deque<PendingFile> prepared = new ArrayDeque<>(window);
+        long bufferedBytes = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 ZipArchiveWriter zip = new ZipArchiveWriter(channel)) {
+                int submitted = 0;
+                ArchiveFile last = null;
+                for (ArchiveFile file : files) {
+                    while (submitted < files.size() && prepared.size() < window) {
+                        ArchiveFile next = files.get(submitted);
+                        Path path = uploadPath(exerciseId, sheetId, next);
+                        long fileSize = Files.size(path);
+                        boolean stored = isStored(next.filename) || fileSize >= MAX_DEFLATED_FILE_SIZE;
+                        // Stored files are not held in memory, deflated data is at most slightly larger than the file
+                        long estimate = stored ? 0 : fileSize + 1024;
+                        if (!prepared.isEmpty() && bufferedBytes + estimate > MAX_BUFFERED_BYTES) {
+                            break;
+                        }
+                        submitted++;
+                        bufferedBytes += estimate;
+                        prepared.add(new PendingFile(executor.submit(() -> prepareFile(path, stored)), estimate));
+                    }
+
+                    String groupFolder = file.groupId + "/";
+                    String teamFolder = groupFolder + file.teamId + "/";
+                    String assignmentFolder = teamFolder + file.assignmentId + "/";
+                    if (last == null || !last.groupId.equals(file.groupId)) {
+                        zip.addDirectory(groupFolder, file.uploadDate);
+                    }
+                    if (last == null || !last.groupId.equals(file.groupId) || !last.teamId.equals(file.teamId)) {
+                        zip.addDirectory(teamFolder, file.uploadDate);
+                    }
+                    if (last == null || !last.groupId.equals(file.groupId) || !last.teamId.equals(file.teamId)
+                        || !last.assignmentId.equals(file.assignmentId)) {
+                        zip.addDirectory(assignmentFolder, file.uploadDate);
+                    }
+                    last = file;
+
+                    PendingFile pendingFile = Objects.requireNonNull(prepared.poll());
+                    bufferedBytes -= pendingFile.bufferedBytes;
+                    PreparedFile preparedFile = await(pendingFile.future);
+                    String name = assignmentFolder + file.filename;
+                    if (preparedFile.method == ZipEntry.STORED) {
+                        zip.addStoredEntry(name, file.uploadDate, preparedFile.crc, uploadPath(exerciseId, sheetId, file));
+                    } else {
+                        zip.addEntry(name, preparedFile.method, file.uploadDate, preparedFile.crc, preparedFile.size, preparedFile.data);
+                    }
+                }
+            }
+            Files.move(tempFile, archive, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            prepared.forEach(pendingFile -> pendingFile.future.cancel(true));
+            Files.deleteIfExists(tempFile);
+        }
+        log.info("Built archive for exercise {} sheet {} with {} files in {} ms",
+            exerciseId, sheetId, files.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private Path uploadPath(String exerciseId, String sheetId, ArchiveFile file) {
+        return uploadManager.getUploadPath(
+            exerciseId, sheetId, file.assignmentId, file.groupId, file.teamId, file.uploadDate, file.filename
+        );
+    }
+
+    private static boolean isStored(String filename) {
+        int index = filename.lastIndexOf('.');
+        return index >= 0 && STORED_EXTENSIONS.contains(filename.substring(index + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Compute the CRC of a file and, unless it is to be stored, its deflated data.
+     */
+    private static PreparedFile prepareFile(Path path, boolean stored) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            if (stored) {
+                int read;
+                while ((read = inputStream.read(buffer)) >= 0) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                }
+                return new PreparedFile(ZipEntry.STORED, crc.getValue(), size, new byte[0]);
+            }
+
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(data, deflater, buffer.length)) {
+                    int read;
+                    while ((read = inputStream.read(buffer)) >= 0) {
+                        crc.update(buffer, 0, read);
+                        size += read;
+                        deflaterOutputStream.write(buffer, 0, read);
+                    }
+                }
+                return new PreparedFile(ZipEntry.DEFLATED, crc.getValue(), size, data.toByteArray());
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private static PreparedFile await(Future<PreparedFile> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building archive", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to prepare archive entry", cause);
+        }
+    }
+
+    private static void removeOutdatedArchives(Path directory, String key, Path current) {
+        try (DirectoryStream<Path> archives = Files.newDirectoryStream(directory, key + "-*.zip")) {
+            for (Path archive : archives) {
+                if (!archive.equals(current)) {
+                    Files.deleteIfExists(archive);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove outdated archives", e);
+        }
+    }
+
+    private static Path archiveDirectory(String exerciseId, String sheetId) {
+        return CACHE_PATH.resolve(exerciseId).resolve(sheetId);
+    }
+
+    /**
+     * Remove the cached archives of a deleted sheet. If a transaction is active, they are removed after it has been
+     * committed, such that the archives are kept if deleting the sheet fails.
+     */
+    public void removeSheetArchives(String exerciseId, String sheetId) {
+        removeAfterCommit(archiveDirectory(exerciseId, sheetId));
+    }
+
+    /**
+     * Remove the cached archives of all sheets of a deleted exercise, see {@link #removeSheetArchives}.
+     */
+    public void removeExerciseArchives(String exerciseId) {
+        removeAfterCommit(CACHE_PATH.resolve(exerciseId));
+    }
+
+    private static void removeAfterCommit(Path directory) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeDirectory(directory);
+                }
+            });
+        } else {
+            removeDirectory(directory);
+        }
+    }
+
+    private static void removeDirectory(Path directory) {
+        try {
+            if (FileSystemUtils.deleteRecursively(directory)) {
+                log.info("Removed cached archives in {}", directory);
+            }
+        } catch (IOException e) {
+            log.warn("Could not remove cached archives in {}", directory, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
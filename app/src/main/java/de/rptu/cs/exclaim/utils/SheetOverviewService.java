@@ -0,0 +1,363 @@
+package de.rptu.cs.exclaim.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import de.rptu.cs.exclaim.ExclaimProperties;
+import de.rptu.cs.exclaim.data.GroupAndTeam;
+import de.rptu.cs.exclaim.data.NonNullGroupAndTeam;
+import de.rptu.cs.exclaim.data.TeamResultData3;
+import de.rptu.cs.exclaim.data.TestResult;
+import de.rptu.cs.exclaim.data.records.UploadRecord;
+import de.rptu.cs.exclaim.schema.Keys;
+import de.rptu.cs.exclaim.schema.tables.Students;
+import de.rptu.cs.exclaim.schema.tables.Studentresults;
+import de.rptu.cs.exclaim.schema.tables.Teamresults;
+import de.rptu.cs.exclaim.schema.tables.TeamresultsAssignment;
+import de.rptu.cs.exclaim.schema.tables.Testresult;
+import de.rptu.cs.exclaim.schema.tables.Users;
+import de.rptu.cs.exclaim.security.ExerciseRoles;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.jooq.lambda.function.Consumer3;
+import org.jooq.lambda.function.Consumer4;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static de.rptu.cs.exclaim.schema.tables.Studentresults.STUDENTRESULTS;
+import static de.rptu.cs.exclaim.schema.tables.Students.STUDENTS;
+import static de.rptu.cs.exclaim.schema.tables.Teamresults.TEAMRESULTS;
+import static de.rptu.cs.exclaim.schema.tables.TeamresultsAssignment.TEAMRESULTS_ASSIGNMENT;
+import static de.rptu.cs.exclaim.schema.tables.Testresult.TESTRESULT;
+import static de.rptu.cs.exclaim.schema.tables.Uploads.UPLOADS;
+import static de.rptu.cs.exclaim.schema.tables.Users.USERS;
+
+/**
+ * Provides the data of all teams for the sheet overview of tutors and assistants: team members, points and comments,
+ * uploads and the most recent test per assignment.
+ * <p>
+ * Assembling this data needs several queries over all uploads and test results of a sheet, so the result is kept in
+ * memory per sheet and shared by all assessors (each one only sees the groups they can assess). Code that changes any
+ * of this data must call {@link #invalidate(String, String)}. Changes to students or groups are covered by
+ * {@link de.rptu.cs.exclaim.security.AccessChecker#invalidateExerciseRoles(String)}.
+ */
+@Service
+@Slf4j
+public class SheetOverviewService {
+    private final DSLContext ctx;
+    private final Cache<SheetKey, List<TeamResultData3>> cache;
+    private final Object lock = new Object();
+    private long generation;
+
+    @Value
+    private static class SheetKey {
+        String exerciseId;
+        String sheetId;
+    }
+
+    private static class AssignmentData {
+        @Nullable private BigDecimal points;
+        @Nullable private String comment;
+        private final List<UploadRecord> uploads = new ArrayList<>();
+        @Nullable private TestResult testResult;
+    }
+
+    private static class TeamData {
+        private final Map<Integer, TeamResultData3.TeamMember> teamMembers = new HashMap<>();
+        private final Map<String, AssignmentData> assignmentData = new HashMap<>();
+        @Nullable String comment;
+        boolean hideComments;
+        boolean hidePoints;
+    }
+
+    public SheetOverviewService(DSLContext ctx, ExclaimProperties exclaimProperties) {
+        this.ctx = ctx;
+        ExclaimProperties.SheetOverviewCache cacheProperties = exclaimProperties.getSheetOverviewCache();
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(cacheProperties.getMaxSize())
+            .expireAfterWrite(cacheProperties.getTimeToLive())
+            .build();
+    }
+
+    /**
+     * Get the data of all teams of the given sheet that can be assessed with the given roles, sorted by group and team.
+     */
+    public List<TeamResultData3> getTeamResults(String exerciseId, String sheetId, ExerciseRoles exerciseRoles) {
+        SheetKey key = new SheetKey(exerciseId, sheetId);
+        List<TeamResultData3> teamResults = cache.getIfPresent(key);
+        if (teamResults == null) {
+            long loadGeneration;
+            synchronized (lock) {
+                loadGeneration = generation;
+            }
+            teamResults = load(exerciseId, sheetId);
+            synchronized (lock) {
+                // Do not cache data that might have been loaded before a concurrent change was committed
+                if (generation == loadGeneration) {
+                    cache.put(key, teamResults);
+                }
+            }
+        }
+        return exerciseRoles.getIsAssistant()
+            ? teamResults
+            : teamResults.stream().filter(teamResult -> exerciseRoles.canAssess(teamResult.getGroupId())).toList();
+    }
+
+    /**
+     * Discard the cached data of the given sheet.
+     */
+    public void invalidate(String exerciseId, String sheetId) {
+        invalidate(key -> key.exerciseId.equals(exerciseId) && key.sheetId.equals(sheetId));
+    }
+
+    /**
+     * Discard the cached data of all sheets of the given exercise (e.g. after changing team memberships).
+     */
+    public void invalidate(String exerciseId) {
+        invalidate(key -> key.exerciseId.equals(exerciseId));
+    }
+
+    /**
+     * Discard all cached data.
+     */
+    public void invalidate() {
+        invalidate(key -> true);
+    }
+
+    private void invalidate(Predicate<SheetKey> predicate) {
+        log.debug("Invalidating cached sheet overviews");
+        invalidateNow(predicate);
+        // Concurrent requests might load the old data until the transaction is committed, so invalidate again
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateNow(predicate);
+                }
+            });
+        }
+    }
+
+    private void invalidateNow(Predicate<SheetKey> predicate) {
+        synchronized (lock) {
+            generation++;
+            cache.asMap().keySet().removeIf(predicate);
+        }
+    }
+
+    private List<TeamResultData3> load(String exerciseId, String sheetId) {
+        Users u = USERS.as("u");
+        Students s = STUDENTS.as("s");
+        Studentresults sr = STUDENTRESULTS.as("sr");
+        Teamresults tr = TEAMRESULTS.as("tr");
+        TeamresultsAssignment tra = TEAMRESULTS_ASSIGNMENT.as("tra");
+        Testresult test = TESTRESULT.as("test");
+        Testresult test2 = TESTRESULT.as("test2");
+
+        Map<NonNullGroupAndTeam, TeamData> teams = new HashMap<>();
+        Consumer3<String, String, Consumer<TeamData>> withTeamData =
+            (groupId, teamId, consumer) -> consumer.accept(
+                teams.computeIfAbsent(new NonNullGroupAndTeam(groupId, teamId), ignored -> new TeamData())
+            );
+        Consumer4<String, String, String, Consumer<AssignmentData>> withAssignmentData =
+            (groupId, teamId, assignmentId, consumer) -> withTeamData.accept(
+                groupId,
+                teamId,
+                teamData -> consumer.accept(
+                    teamData.assignmentData.computeIfAbsent(assignmentId, ignored -> new AssignmentData())
+                )
+            );
+
+        // Collect all teams and their members
+        ctx
+            .select(sr.GROUPID, sr.TEAMID, u.USERID, u.FIRSTNAME, u.LASTNAME, u.STUDENTID, sr.DELTAPOINTS, sr.DELTAPOINTS_REASON)
+            .from(sr)
+            .innerJoin(u).on(u.USERID.eq(sr.USERID))
+            .where(
+                sr.EXERCISE.eq(exerciseId),
+                sr.SHEET.eq(sheetId),
+                sr.TEAMID.isNotNull()
+            )
+            .unionAll(DSL
+                .select(s.GROUPID, s.TEAMID, u.USERID, u.FIRSTNAME, u.LASTNAME, u.STUDENTID, DSL.val((BigDecimal) null), DSL.val((String) null))
+                .from(s)
+                .innerJoin(u).onKey(Keys.FK__STUDENTS__USERS)
+                .where(
+                    s.EXERCISEID.eq(exerciseId),
+                    s.TEAMID.isNotNull(),
+                    DSL.notExists(DSL
+                        .selectOne()
+                        .from(sr)
+                        .where(
+                            sr.EXERCISE.eq(exerciseId),
+                            sr.SHEET.eq(sheetId),
+                            sr.USERID.eq(s.USERID)
+                        )
+                    )
+                )
+            )
+            .forEach(r -> withTeamData.accept(
+                /* groupId */ r.value1(),
+                /* teamId */ r.value2(),
+                teamData -> teamData.teamMembers.put(
+                    /* userId */ r.value3(),
+                    new TeamResultData3.TeamMember(
+                        /* userId */ r.value3(),
+                        /* firstname */ r.value4(),
+                        /* lastname */ r.value5(),
+                        /* studentId */ r.value6(),
+                        /* deltapoints */ r.value7(),
+                        /* deltapointsReason */ r.value8()
+                    )
+                )
+            ));
+
+        // Teamresults
+        ctx
+            .select(tr.GROUPID, tr.TEAMID, tr.COMMENT, tr.HIDECOMMENTS, tr.HIDEPOINTS)
+            .from(tr)
+            .where(
+                tr.EXERCISE.eq(exerciseId),
+                tr.SHEET.eq(sheetId)
+            )
+            .forEach(r -> withTeamData.accept(
+                /* groupId */ r.value1(),
+                /* teamId */ r.value2(),
+                teamData -> {
+                    teamData.comment = r.value3();
+                    teamData.hideComments = r.value4();
+                    teamData.hidePoints = r.value5();
+                }
+            ));
+
+        // Assignment points
+        ctx
+            .select(tra.GROUPID, tra.TEAMID, tra.ASSIGNMENT, tra.POINTS, tra.COMMENT)
+            .from(tra)
+            .where(
+                tra.EXERCISE.eq(exerciseId),
+                tra.SHEET.eq(sheetId)
+            )
+            .forEach(r -> withAssignmentData.accept(
+                /* groupId */ r.value1(),
+                /* teamId */ r.value2(),
+                /* assignmentId */ r.value3(),
+                assignmentData -> {
+                    assignmentData.points = r.value4();
+                    assignmentData.comment = r.value5();
+                }
+            ));
+
+        // Uploads
+        ctx
+            .selectFrom(UPLOADS)
+            .where(
+                UPLOADS.EXERCISE.eq(exerciseId),
+                UPLOADS.SHEET.eq(sheetId)
+            )
+            .forEach(upload -> withAssignmentData.accept(
+                upload.getGroupId(),
+                upload.getTeamId(),
+                upload.getAssignmentId(),
+                assignmentData -> assignmentData.uploads.add(upload)
+            ));
+
+        // Testresults (immutable copies, since the data is shared between requests)
+        ctx
+            .selectFrom(test)
+            .where(
+                test.EXERCISE.eq(exerciseId),
+                test.SHEET.eq(sheetId),
+                // Limit to most recent test
+                test.REQUESTNR.eq(DSL
+                    .select(DSL.max(test2.REQUESTNR))
+                    .from(test2)
+                    .where(
+                        test2.EXERCISE.eq(test.EXERCISE),
+                        test2.SHEET.eq(test.SHEET),
+                        test2.ASSIGNMENT.eq(test.ASSIGNMENT),
+                        test2.GROUPID.eq(test.GROUPID),
+                        test2.TEAMID.eq(test.TEAMID)
+                    )
+                )
+            )
+            .forEach(testResult -> withAssignmentData.accept(
+                testResult.getGroupId(),
+                testResult.getTeamId(),
+                testResult.getAssignmentId(),
+                assignmentData -> assignmentData.testResult = testResult.into(TestResult.class)
+            ));
+
+        return teams.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey(Comparator
+                .comparing(GroupAndTeam::getGroupId, Comparators.IDENTIFIER)
+                .thenComparing(GroupAndTeam::getTeamId, Comparators.IDENTIFIER))
+            )
+            .map(entry -> {
+                NonNullGroupAndTeam nonNullGroupAndTeam = entry.getKey();
+                TeamData teamData = entry.getValue();
+                return new TeamResultData3(
+                    nonNullGroupAndTeam.getGroupId(),
+                    nonNullGroupAndTeam.getTeamId(),
+                    teamData.teamMembers.values().stream()
+                        .sorted(Comparator
+                            .comparing(TeamResultData3.TeamMember::getLastname)
+                            .thenComparing(TeamResultData3.TeamMember::getFirstname)
+                            .thenComparing(TeamResultData3.TeamMember::getUserId))
+                        .toList(),
+                    teamData.assignmentData.entrySet().stream().collect(Collectors.toUnmodifiableMap(
+                        Map.Entry::getKey,
+                        e -> {
+                            AssignmentData assignmentData = e.getValue();
+                            List<TeamResultData3.Upload> currentFiles = new ArrayList<>();
+                            List<TeamResultData3.Upload> deletedFiles = new ArrayList<>();
+                            for (UploadRecord upload : assignmentData.uploads) {
+                                (upload.getDeleteDate() == null ? currentFiles : deletedFiles).add(new TeamResultData3.Upload(
+                                    upload.getFilename(),
+                                    upload.getUploadDate(),
+                                    upload.getDeleteDate(),
+                                    Optional.ofNullable(upload.getUploaderUserId()).map(teamData.teamMembers::get).orElse(null),
+                                    Optional.ofNullable(upload.getDeleterUserId()).map(teamData.teamMembers::get).orElse(null)
+                                ));
+                            }
+                            currentFiles.sort(Comparator.comparing(TeamResultData3.Upload::getFilename));
+                            deletedFiles.sort(Comparator
+                                .comparing(TeamResultData3.Upload::getFilename)
+                                .thenComparing(TeamResultData3.Upload::getUploadDate, Comparator.reverseOrder())
+                            );
+                            return new TeamResultData3.AssignmentResult(
+                                assignmentData.points,
+                                assignmentData.comment,
+                                List.copyOf(currentFiles),
+                                List.copyOf(deletedFiles),
+                                assignmentData.uploads.stream()
+                                    .flatMap(upload -> Stream.of(upload.getUploadDate(), upload.getDeleteDate()))
+                                    .filter(Objects::nonNull).max(Comparator.naturalOrder()).orElse(null),
+                                assignmentData.testResult
+                            );
+                        }
+                    )),
+                    teamData.comment,
+                    teamData.hideComments,
+                    teamData.hidePoints
+                );
+            })
+            .toList();
+    }
+}
@@ -0,0 +1,96 @@
+package de.rptu.cs.exclaim.utils;
+
+import de.rptu.cs.exclaim.ExclaimProperties;
+import de.rptu.cs.exclaim.monitoring.MetricsService;
+import de.rptu.cs.exclaim.utils.RteServices.TestResultMsg;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends test status changes to the clients subscribed to the team's channel (see
+ * {@link RteServices#testResultsChannel}).
+ * <p>
+ * During deadline peaks, a test is often started and finished within a short time. Messages are therefore held back
+ * for {@code exclaim.websocket.coalesce-delay}; if the status of the same assignment changes again in the meantime, only
+ * the newest message is sent.
+ */
+@Service
+@Slf4j
+public class TestResultNotifier {
+    private final BiConsumer<String, TestResultMsg> sender;
+    private final TaskScheduler taskScheduler;
+    private final MetricsService metricsService;
+    private final Duration coalesceDelay;
+
+    // Messages waiting to be sent, at most one per channel and assignment
+    private final ConcurrentMap<PendingKey, TestResultMsg> pending = new ConcurrentHashMap<>();
+
+    private record PendingKey(String channel, String assignmentId) {
+    }
+
+    @Autowired
+    public TestResultNotifier(
+        SimpMessagingTemplate broker,
+        TaskScheduler taskScheduler,
+        MetricsService metricsService,
+        ExclaimProperties exclaimProperties
+    ) {
+        this(broker::convertAndSend, taskScheduler, metricsService, exclaimProperties.getWebsocket().getCoalesceDelay());
+    }
+
+    TestResultNotifier(
+        BiConsumer<String, TestResultMsg> sender,
+        TaskScheduler taskScheduler,
+        MetricsService metricsService,
+        Duration coalesceDelay
+    ) {
+        this.sender = sender;
+        this.taskScheduler = taskScheduler;
+        this.metricsService = metricsService;
+        this.coalesceDelay = coalesceDelay;
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored")
+    public void send(TestResultMsg msg) {
+        String channel = RteServices.testResultsChannel(msg.getExercise(), msg.getSheet(), msg.getGroup(), msg.getTeam());
+        if (coalesceDelay.isZero() || coalesceDelay.isNegative()) {
+            sendNow(channel, msg);
+            return;
+        }
+        PendingKey key = new PendingKey(channel, msg.getAssignment());
+        if (pending.put(key, msg) == null) {
+            taskScheduler.schedule(() -> flush(key), Instant.now().plus(coalesceDelay));
+        } else {
+            metricsService.registerWebSocketCoalesced();
+        }
+    }
+
+    private void flush(PendingKey key) {
+        TestResultMsg msg = pending.remove(key);
+        if (msg != null) {
+            sendNow(key.channel, msg);
+        }
+    }
+
+    private void sendNow(String channel, TestResultMsg msg) {
+        long start = System.nanoTime();
+        try {
+            sender.accept(channel, msg);
+        } catch (MessagingException e) {
+            // A lost notification only delays the update until the page is reloaded
+            log.warn("Could not send test status to {}", channel, e);
+        } finally {
+            metricsService.registerWebSocketSend(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.rptu.cs.exclaim.utils;
+
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a window of lines from a UTF-8 text file, without loading the whole file into memory.
+ * <p>
+ * Lines before the window are skipped by scanning the raw bytes for line feeds (which never occur inside a multibyte
+ * UTF-8 sequence), only the lines within the window are decoded. Lines are terminated by {@code \n} or {@code \r\n}.
+ * <p>
+ * A window ends before a line that does not fit into it completely, such that the next window starts with that line.
+ * Only a single line that exceeds the byte limit on its own is truncated.
+ */
+public class TextFileWindow {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @FunctionalInterface
+    public interface LineConsumer {
+        void accept(int lineNumber, String line, boolean truncated);
+    }
+
+    /**
+     * Pass the lines of the given window to the consumer.
+     *
+     * @param file      the file to read
+     * @param firstLine number of the first line to read (starting at 1)
+     * @param maxLines  maximum number of lines to read
+     * @param maxBytes  maximum number of bytes to read; a line that exceeds this limit on its own is truncated
+     * @param consumer  receives the line number and content of each line in the window, and whether it is truncated
+     * @return the number of the first line after the window, or null if the window reaches the end of the file
+     */
+    @Nullable
+    public static Integer read(Path file, int firstLine, int maxLines, long maxBytes, LineConsumer consumer) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int maxLineBytes = (int) Math.min(Math.max(maxBytes, 1), Integer.MAX_VALUE - 8);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] line = new byte[Math.min(maxLineBytes, 1024)];
+        int lineLength = 0;
+        boolean truncated = false;
+        int lineNumber = 1;
+        int linesRead = 0;
+        long bytesRead = 0;
+        boolean windowFull = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer.clear()) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    if (windowFull) {
+                        // There is more data after the window
+                        return lineNumber;
+                    }
+                    byte b = buffer.get();
+                    if (lineNumber < firstLine) {
+                        if (b == '\n') {
+                            lineNumber++;
+                        }
+                        continue;
+                    }
+                    bytesRead++;
+                    if (b == '\n') {
+                        consumer.accept(lineNumber, decode(decoder, line, lineLength), truncated);
+                        lineNumber++;
+                        linesRead++;
+                        lineLength = 0;
+                        truncated = false;
+                        windowFull = linesRead == maxLines || bytesRead >= maxBytes;
+                    } else if (bytesRead > maxBytes && linesRead > 0) {
+                        // The current line does not fit into the window, the next window starts with it
+                        return lineNumber;
+                    } else if (lineLength < maxLineBytes) {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, (int) Math.min(2L * line.length, maxLineBytes));
+                        }
+                        line[lineLength++] = b;
+                    } else {
+                        truncated = true;
+                    }
+                }
+            }
+        }
+        if (lineLength > 0) {
+            // Last line without terminating line feed
+            consumer.accept(lineNumber, decode(decoder, line, lineLength), truncated);
+        }
+        return null;
+    }
+
+    private static String decode(CharsetDecoder decoder, byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        try {
+            return decoder.decode(ByteBuffer.wrap(line, 0, length)).toString();
+        } catch (CharacterCodingException e) {
+            // Cannot happen with CodingErrorAction.REPLACE
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,26 +1,52 @@
 package de.rptu.cs.exclaim.utils;
 
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import de.rptu.cs.exclaim.ExclaimProperties;
 import de.rptu.cs.exclaim.data.interfaces.IUpload;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Maps uploads to their location in the data directory.
+ * <p>
+ * With <code>exclaim.uploads.deduplicate</code> enabled, the data of new uploads is stored in a content-addressed blob
+ * store at <code>data/__blobs/&lt;first two hex digits&gt;/&lt;SHA-256&gt;</code>, and the upload path is a hard link
+ * to the blob. Callers keep reading uploads from {@link #getUploadPath}. The file system keeps track of the number of
+ * links, a blob with a single link is no longer referenced by any upload.
+ */
 @Service
+@Slf4j
+@RequiredArgsConstructor
 public class UploadManager {
     public static final DateTimeFormatter INTERNAL_DTF = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
     public static final String DATA_PATH = "data/";
     public static final String FEEDBACK_SUB = "__feedback";
+    public static final String BLOBS_SUB = "__blobs";
     public static final char PATH_SEPARATOR = System.getProperty("os.name").toUpperCase(Locale.ROOT).contains("WINDOWS") ? '-' : '|';
 
+    private static final Path BLOBS_PATH = Path.of(DATA_PATH, BLOBS_SUB);
+
+    private final ExclaimProperties exclaimProperties;
+
     public Path getUploadPath(String exerciseId, String sheetId, String assignmentId, String groupId, String teamId, String internalFilename) {
         return teamUploadFolder(exerciseId, sheetId, assignmentId, groupId, teamId).resolve(internalFilename);
     }
@@ -62,4 +88,120 @@ public class UploadManager {
     private Path teamUploadFolder(String exerciseId, String sheetId, String assignmentId, String groupId, String teamId) {
         return Path.of(DATA_PATH, exerciseId, sheetId, groupId + PATH_SEPARATOR + teamId, assignmentId);
     }
+
+    /**
+     * Store the data for a new upload at its upload path.
+     */
+    public void storeUpload(IUpload upload, InputStreamSource source) throws IOException {
+        Path destination = getUploadPath(upload);
+        Files.createDirectories(Objects.requireNonNull(destination.getParent()));
+        if (!exclaimProperties.getUploads().isDeduplicate()) {
+            try (InputStream inputStream = source.getInputStream()) {
+                Files.copy(inputStream, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return;
+        }
+
+        Files.createDirectories(BLOBS_PATH);
+        Path tempFile = Files.createTempFile(BLOBS_PATH, "upload-", ".tmp");
+        try {
+            String hash;
+            try (HashingInputStream inputStream = new HashingInputStream(Hashing.sha256(), source.getInputStream())) {
+                Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                hash = inputStream.hash().toString();
+            }
+            Path blob = getBlobPath(hash);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(Objects.requireNonNull(blob.getParent()));
+                try {
+                    Files.move(tempFile, blob, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // Stored concurrently, the content is the same
+                }
+            }
+            link(blob, destination);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Move an existing upload file into the blob store.
+     *
+     * @return the number of bytes freed, which is non-zero if the blob store already contained the same data
+     */
+    public long deduplicate(Path file) throws IOException {
+        Path blob = getBlobPath(hash(file));
+        if (!Files.exists(blob)) {
+            Files.createDirectories(Objects.requireNonNull(blob.getParent()));
+            link(file, blob);
+            return 0;
+        } else if (Files.isSameFile(file, blob)) {
+            return 0;
+        } else {
+            long size = Files.size(file);
+            link(blob, file);
+            return size;
+        }
+    }
+
+    /**
+     * Get all files in the blob store.
+     */
+    public List<Path> getBlobs() throws IOException {
+        if (!Files.isDirectory(BLOBS_PATH)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.walk(BLOBS_PATH, 2)) {
+            return files
+                .filter(path -> path.getNameCount() == BLOBS_PATH.getNameCount() + 2 && Files.isRegularFile(path))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Check whether the data of a blob still matches its hash.
+     */
+    public boolean verifyBlob(Path blob) throws IOException {
+        return hash(blob).equals(blob.getFileName().toString());
+    }
+
+    /**
+     * Check whether a blob is no longer referenced by any upload, i.e. whether it has only a single link.
+     * Returns false if the file system does not provide the number of links.
+     */
+    public boolean isOrphanBlob(Path blob) throws IOException {
+        try {
+            return ((Number) Files.getAttribute(blob, "unix:nlink")).intValue() <= 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static Path getBlobPath(String hash) {
+        return BLOBS_PATH.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static String hash(Path file) throws IOException {
+        return com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * Atomically replace the target with a hard link to the source, or a copy if hard links are not supported.
+     */
+    private static void link(Path source, Path target) throws IOException {
+        Path tempFile = target.resolveSibling(target.getFileName() + ".link.tmp");
+        Files.deleteIfExists(tempFile);
+        try {
+            try {
+                Files.createLink(tempFile, source);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                log.warn("Could not create hard link to {}, copying instead: {}", source, e.toString());
+                Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
 }
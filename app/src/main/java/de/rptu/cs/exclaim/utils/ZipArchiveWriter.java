@@ -0,0 +1,195 @@
+package de.rptu.cs.exclaim.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal ZIP writer for entries whose CRC and sizes are known before the entry is written.
+ * <p>
+ * In contrast to {@link java.util.zip.ZipOutputStream}, this allows compressing entries elsewhere (e.g. in parallel)
+ * and copying stored entries from their source file using {@link FileChannel#transferTo}, without the data passing
+ * through the Java heap. ZIP64 records are written when the archive exceeds the limits of the classic format;
+ * individual entries must be smaller than 4 GiB.
+ */
+class ZipArchiveWriter implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int DOS_DIRECTORY_ATTRIBUTE = 0x10;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private record CentralEntry(
+        byte[] name, int method, int dosTime, int dosDate, long crc, long compressedSize, long size, long offset,
+        boolean directory
+    ) {
+    }
+
+    private final FileChannel channel;
+    private final List<CentralEntry> entries = new ArrayList<>();
+
+    ZipArchiveWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    void addDirectory(String name, LocalDateTime time) throws IOException {
+        writeLocalHeader(name.endsWith("/") ? name : name + "/", ZipEntry.STORED, time, 0, 0, 0, true);
+    }
+
+    /**
+     * Add an entry whose (possibly compressed) data is given in memory.
+     */
+    void addEntry(String name, int method, LocalDateTime time, long crc, long size, byte[] data) throws IOException {
+        writeLocalHeader(name, method, time, crc, data.length, size, false);
+        writeFully(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Add an uncompressed entry whose data is transferred directly from the given file.
+     */
+    void addStoredEntry(String name, LocalDateTime time, long crc, Path source) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = sourceChannel.size();
+            writeLocalHeader(name, ZipEntry.STORED, time, crc, size, size, false);
+            long position = 0;
+            while (position < size) {
+                long transferred = sourceChannel.transferTo(position, size - position, channel);
+                if (transferred <= 0) {
+                    throw new IOException("File " + source + " ended early at position " + position);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private void writeLocalHeader(
+        String name, int method, LocalDateTime time, long crc, long compressedSize, long size, boolean directory
+    ) throws IOException {
+        if (compressedSize >= MAX_32 || size >= MAX_32) {
+            throw new IOException("ZIP entry too large: " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_16) {
+            throw new IOException("ZIP entry name too long: " + name);
+        }
+        int dosTime = dosTime(time);
+        int dosDate = dosDate(time);
+        entries.add(new CentralEntry(
+            nameBytes, method, dosTime, dosDate, crc, compressedSize, size, channel.position(), directory
+        ));
+
+        ByteBuffer buffer = allocate(30 + nameBytes.length);
+        buffer.putInt(LOCAL_HEADER_SIGNATURE);
+        buffer.putShort((short) VERSION_DEFAULT);
+        buffer.putShort((short) FLAG_UTF8);
+        buffer.putShort((short) method);
+        buffer.putShort((short) dosTime);
+        buffer.putShort((short) dosDate);
+        buffer.putInt((int) crc);
+        buffer.putInt((int) compressedSize);
+        buffer.putInt((int) size);
+        buffer.putShort((short) nameBytes.length);
+        buffer.putShort((short) 0); // extra field length
+        buffer.put(nameBytes);
+        writeFully(buffer.flip());
+    }
+
+    @Override
+    public void close() throws IOException {
+        long centralDirectoryOffset = channel.position();
+        for (CentralEntry entry : entries) {
+            boolean zip64 = entry.offset >= MAX_32;
+            ByteBuffer buffer = allocate(46 + entry.name.length + (zip64 ? 12 : 0));
+            buffer.putInt(CENTRAL_HEADER_SIGNATURE);
+            buffer.putShort((short) VERSION_ZIP64); // version made by
+            buffer.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT)); // version needed to extract
+            buffer.putShort((short) FLAG_UTF8);
+            buffer.putShort((short) entry.method);
+            buffer.putShort((short) entry.dosTime);
+            buffer.putShort((short) entry.dosDate);
+            buffer.putInt((int) entry.crc);
+            buffer.putInt((int) entry.compressedSize);
+            buffer.putInt((int) entry.size);
+            buffer.putShort((short) entry.name.length);
+            buffer.putShort((short) (zip64 ? 12 : 0)); // extra field length
+            buffer.putShort((short) 0); // comment length
+            buffer.putShort((short) 0); // disk number start
+            buffer.putShort((short) 0); // internal attributes
+            buffer.putInt(entry.directory ? DOS_DIRECTORY_ATTRIBUTE : 0); // external attributes
+            buffer.putInt(zip64 ? (int) MAX_32 : (int) entry.offset);
+            buffer.put(entry.name);
+            if (zip64) {
+                buffer.putShort((short) 0x0001); // ZIP64 extended information
+                buffer.putShort((short) 8);
+                buffer.putLong(entry.offset);
+            }
+            writeFully(buffer.flip());
+        }
+        long centralDirectoryEnd = channel.position();
+        long centralDirectorySize = centralDirectoryEnd - centralDirectoryOffset;
+
+        boolean zip64 = entries.size() >= MAX_16 || centralDirectoryOffset >= MAX_32 || centralDirectorySize >= MAX_32;
+        ByteBuffer buffer = allocate((zip64 ? 56 + 20 : 0) + 22);
+        if (zip64) {
+            buffer.putInt(ZIP64_END_SIGNATURE);
+            buffer.putLong(44); // size of remaining record
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putInt(0); // number of this disk
+            buffer.putInt(0); // disk with central directory
+            buffer.putLong(entries.size());
+            buffer.putLong(entries.size());
+            buffer.putLong(centralDirectorySize);
+            buffer.putLong(centralDirectoryOffset);
+
+            buffer.putInt(ZIP64_LOCATOR_SIGNATURE);
+            buffer.putInt(0); // disk with ZIP64 end of central directory
+            buffer.putLong(centralDirectoryEnd);
+            buffer.putInt(1); // total number of disks
+        }
+        buffer.putInt(END_SIGNATURE);
+        buffer.putShort((short) 0); // number of this disk
+        buffer.putShort((short) 0); // disk with central directory
+        buffer.putShort((short) Math.min(entries.size(), MAX_16));
+        buffer.putShort((short) Math.min(entries.size(), MAX_16));
+        buffer.putInt((int) Math.min(centralDirectorySize, MAX_32));
+        buffer.putInt((int) Math.min(centralDirectoryOffset, MAX_32));
+        buffer.putShort((short) 0); // comment length
+        writeFully(buffer.flip());
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int dosTime(LocalDateTime time) {
+        return time.getYear() < 1980 ? 0 : (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+    }
+
+    private static int dosDate(LocalDateTime time) {
+        return time.getYear() < 1980
+            ? (1 << 5) | 1
+            : ((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+    }
+}
@@ -16,6 +16,8 @@ window.exports.afterPrettify = function () {
     var groupId = passedData.attr('data-groupId');
     var teamId = passedData.attr('data-teamId');
     var fileid = passedData.attr('data-fileid');
+    // number of the first shown line, large files are shown in several pages
+    var firstLine = parseInt(passedData.attr('data-firstLine'), 10) || 1;
 
 
     var codeTable = $am.find(".code-snippet");
@@ -24,11 +26,19 @@ window.exports.afterPrettify = function () {
     var warningsExtended = false;
 
     lines.each(function (i, line) {
-        var lineNr = i + 1;
+        var lineNr = i + firstLine;
         addCommentBtn(lineNr, line);
     });
     loadComments();
 
+    function lineAt(lineNr) {
+        // annotations for lines on other pages are not shown
+        if (lineNr < firstLine || lineNr >= firstLine + lines.length) {
+            return $();
+        }
+        return lines.eq(lineNr - firstLine);
+    }
+
     function addCommentBtn(lineNr, line) {
         if (!hasEditRight) {
             return;
@@ -125,14 +135,14 @@ window.exports.afterPrettify = function () {
 
     function clearWarnings() {
         lines.each(function (i, line) {
-            var lineNr = i + 1;
+            var lineNr = i + firstLine;
             var codePart = $(line);
             codePart.find(".warningbox").remove();
         });
     }
 
     function addAnnotationBox(lineNr, annotation) {
-        var line = lines.eq(lineNr-1);
+        var line = lineAt(lineNr);
         var codePart = $(line);
 
         codePart.find(".annotationbox").remove();
@@ -167,7 +177,7 @@ window.exports.afterPrettify = function () {
     }
 
       function addWarningBox(lineNr, comment) {
-          var line = lines.eq(lineNr-1);
+          var line = lineAt(lineNr);
           var codePart = $(line);
 
           removeWarningBtn(codePart);
@@ -189,7 +199,7 @@ window.exports.afterPrettify = function () {
     function addEditBox(lineNr, comment) {
         if (comment === undefined) comment = {text: ""};
 
-        var line = lines.eq(lineNr-1);
+        var line = lineAt(lineNr);
         var codePart = $(line);
         codePart.find(".annotationbox").remove();
         removeCommentBtn(codePart);
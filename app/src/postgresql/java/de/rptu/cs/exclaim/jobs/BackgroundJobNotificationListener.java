@@ -0,0 +1,86 @@
+package de.rptu.cs.exclaim.jobs;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Listens on the PostgreSQL channel {@value BackgroundJobExecutor#NOTIFICATION_CHANNEL} and wakes up the
+ * {@link BackgroundJobExecutor} whenever a new background job has been committed to the database.
+ * <p>
+ * The listener permanently holds one connection of the pool, because notifications are bound to the session that
+ * executed {@code LISTEN}. If the connection breaks, it is re-established after a short delay. In the
+ * meantime, the executor falls back to polling.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class BackgroundJobNotificationListener implements DisposableBean {
+    private static final int RECEIVE_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 10000;
+
+    private final DataSource dataSource;
+    private final BackgroundJobExecutor backgroundJobExecutor;
+
+    @Nullable
+    private Thread listenerThread;
+
+    private volatile boolean isShuttingDown = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!isShuttingDown) {
+            listenerThread = new Thread(this::listenerLoop, "jobNotificationListener");
+            listenerThread.setDaemon(true);
+            listenerThread.start();
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        isShuttingDown = true;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void listenerLoop() {
+        while (!isShuttingDown) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + BackgroundJobExecutor.NOTIFICATION_CHANNEL);
+                }
+                log.info("Listening for background job notifications on channel {}", BackgroundJobExecutor.NOTIFICATION_CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (!isShuttingDown) {
+                    PGNotification[] notifications = pgConnection.getNotifications(RECEIVE_TIMEOUT_MILLIS);
+                    if (notifications != null && notifications.length > 0) {
+                        log.debug("Received {} background job notifications", notifications.length);
+                        backgroundJobExecutor.notifyScheduler();
+                    }
+                }
+            } catch (SQLException e) {
+                if (isShuttingDown) break;
+                log.warn("Background job notification listener failed, will reconnect in {} ms.", RECONNECT_DELAY_MILLIS, e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException ignored) {
+                    // loop condition checks for shutdown
+                }
+            }
+        }
+        log.info("Background job notification listener stopped.");
+    }
+}
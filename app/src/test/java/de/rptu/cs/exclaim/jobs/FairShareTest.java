@@ -0,0 +1,52 @@
+package de.rptu.cs.exclaim.jobs;
+
+import de.rptu.cs.exclaim.jobs.FairShare.Demand;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FairShareTest {
+    @Test
+    void testWeights() {
+        Map<String, Demand> demands = new LinkedHashMap<>();
+        demands.put("mail", new Demand(4, 0, 0, 100));
+        demands.put("test", new Demand(2, 0, 0, 100));
+        assertEquals(Map.of("mail", 20, "test", 10), FairShare.allocate(30, demands));
+    }
+
+    @Test
+    void testWorkConserving() {
+        Map<String, Demand> demands = new LinkedHashMap<>();
+        demands.put("mail", new Demand(4, 0, 0, 3));
+        demands.put("test", new Demand(2, 0, 0, 100));
+        assertEquals(Map.of("mail", 3, "test", 27), FairShare.allocate(30, demands));
+    }
+
+    @Test
+    void testClaimedJobsCount() {
+        Map<String, Demand> demands = new LinkedHashMap<>();
+        demands.put("mail", new Demand(1, 0, 0, 100));
+        demands.put("test", new Demand(1, 0, 10, 100));
+        assertEquals(Map.of("mail", 15, "test", 5), FairShare.allocate(20, demands));
+    }
+
+    @Test
+    void testReserve() {
+        Map<String, Demand> demands = new LinkedHashMap<>();
+        demands.put("mail", new Demand(4, 5, 0, 0));
+        demands.put("test", new Demand(2, 0, 80, 1000));
+        // Five slots are kept free for mails
+        assertEquals(Map.of("test", 15), FairShare.allocate(20, demands));
+
+        // Mails may use their reserved slots
+        demands.put("mail", new Demand(4, 5, 0, 2));
+        assertEquals(Map.of("mail", 2, "test", 15), FairShare.allocate(20, demands));
+
+        // No more slots reserved if enough mails are already claimed
+        demands.put("mail", new Demand(4, 5, 5, 0));
+        assertEquals(Map.of("test", 15), FairShare.allocate(15, demands));
+    }
+}
@@ -0,0 +1,53 @@
+package de.rptu.cs.exclaim.monitoring;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementShapesTest {
+    @Test
+    void testLiteralsAreRedacted() {
+        assertEquals(
+            "SELECT v1 FROM users WHERE name = ? AND id = ? AND points > ?",
+            StatementShapes.normalize("SELECT v1 FROM users WHERE name = 'O''Brien' AND id = 42 AND points > 1.5")
+        );
+    }
+
+    @Test
+    void testListsAreCollapsed() {
+        assertEquals(
+            "SELECT * FROM users WHERE userid IN (?, ...) LIMIT ?",
+            StatementShapes.normalize("SELECT *\n  FROM users\n  WHERE userid IN (?, ?, ?) LIMIT ?")
+        );
+        assertEquals(
+            StatementShapes.normalize("SELECT * FROM users WHERE userid IN (?, ?)"),
+            StatementShapes.normalize("SELECT * FROM users WHERE userid IN (?, ?, ?, ?, ?)")
+        );
+        assertEquals(
+            "INSERT INTO t (a, b) VALUES (?, ...), ...",
+            StatementShapes.normalize("INSERT INTO t (a, b) VALUES (?, ?), (?, ?), (?, ?)")
+        );
+    }
+
+    @Test
+    void testTruncate() {
+        String shape = StatementShapes.normalize("SELECT " + "a, ".repeat(200) + "b FROM t");
+        assertTrue(shape.length() <= StatementShapes.MAX_LENGTH, shape);
+        assertTrue(shape.endsWith("b FROM t"), shape);
+    }
+
+    @Test
+    void testTruncateKeepsDifferences() {
+        String columns = "a, ".repeat(200);
+        String byId = StatementShapes.normalize("SELECT " + columns + "b FROM t WHERE id = 1");
+        String byName = StatementShapes.normalize("SELECT " + columns + "b FROM t WHERE name = 'x'");
+        assertNotEquals(byId, byName);
+        // The difference is hidden in the middle, only the hash tells them apart
+        assertNotEquals(
+            StatementShapes.normalize("SELECT " + columns + "b, c FROM t" + columns + "b"),
+            StatementShapes.normalize("SELECT " + columns + "b, d FROM t" + columns + "b")
+        );
+    }
+}
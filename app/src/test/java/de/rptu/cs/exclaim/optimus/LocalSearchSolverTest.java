@@ -0,0 +1,89 @@
+package de.rptu.cs.exclaim.optimus;
+
+import de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption.DISLIKE;
+import static de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption.IMPOSSIBLE;
+import static de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption.POSSIBLE;
+import static de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption.PREFERRED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class LocalSearchSolverTest {
+    private static final List<String> GROUPS = List.of("A", "B", "C");
+    private final LocalSearchSolver solver = new LocalSearchSolver(Duration.ofMillis(200), 2);
+
+    @Test
+    void testPreferences() throws Exception {
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = Map.of(
+            1, Map.of("A", PREFERRED, "B", DISLIKE, "C", IMPOSSIBLE),
+            2, Map.of("A", IMPOSSIBLE, "B", PREFERRED, "C", DISLIKE),
+            3, Map.of("A", DISLIKE, "B", IMPOSSIBLE, "C", PREFERRED),
+            4, Map.of("A", POSSIBLE, "B", PREFERRED)
+        );
+        Map<Integer, String> assignment = solver.solve(GROUPS, groupPreferences, Map.of());
+        assertEquals(Map.of(1, "A", 2, "B", 3, "C", 4, "B"), assignment);
+        assertEquals(4, OptimusCosts.cost(GROUPS, groupPreferences, Map.of(), assignment));
+    }
+
+    @Test
+    void testFriendsStayTogether() throws Exception {
+        // Friends 1 and 2 stay together in their second choice instead of splitting up
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = Map.of(
+            1, Map.of("A", PREFERRED, "B", POSSIBLE),
+            2, Map.of("A", POSSIBLE, "B", PREFERRED),
+            3, Map.of("C", PREFERRED)
+        );
+        Map<Integer, List<Integer>> teamPreferences = Map.of(1, List.of(2), 2, List.of(1));
+        Map<Integer, String> assignment = solver.solve(GROUPS, groupPreferences, teamPreferences);
+        assertEquals(assignment.get(1), assignment.get(2));
+        assertEquals("C", assignment.get(3));
+        assertEquals(5, OptimusCosts.cost(GROUPS, groupPreferences, teamPreferences, assignment));
+    }
+
+    @Test
+    void testGroupSizes() throws Exception {
+        // All users prefer A, but at most 4 users fit into a group (min size 2, max size 4)
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = new TreeMap<>();
+        for (int userId = 1; userId <= 9; userId++) {
+            groupPreferences.put(userId, Map.of("A", PREFERRED, "B", POSSIBLE, "C", DISLIKE));
+        }
+        Map<Integer, String> assignment = solver.solve(GROUPS, groupPreferences, Map.of());
+        assertEquals(4, assignment.values().stream().filter("A"::equals).count());
+        assertEquals(3, assignment.values().stream().filter("B"::equals).count());
+        assertEquals(2, assignment.values().stream().filter("C"::equals).count());
+    }
+
+    @Test
+    void testRandomInstance() throws Exception {
+        Random random = new Random(42);
+        List<String> groupIds = List.of("1", "2", "3", "4", "5", "6", "7", "8");
+        GroupPreferenceOption[] options = GroupPreferenceOption.values();
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = new TreeMap<>();
+        Map<Integer, List<Integer>> teamPreferences = new TreeMap<>();
+        for (int userId = 0; userId < 200; userId++) {
+            Map<String, GroupPreferenceOption> preferences = new HashMap<>();
+            for (String groupId : groupIds) {
+                if (random.nextInt(10) > 0) {
+                    preferences.put(groupId, options[random.nextInt(options.length)]);
+                }
+            }
+            groupPreferences.put(userId, preferences);
+            if (userId > 0 && random.nextBoolean()) {
+                teamPreferences.computeIfAbsent(userId, ignored -> new ArrayList<>()).add(random.nextInt(userId));
+            }
+        }
+        Map<Integer, String> assignment = solver.solve(groupIds, groupPreferences, teamPreferences);
+        assertEquals(groupPreferences.keySet(), assignment.keySet());
+        assertNotEquals(Long.MAX_VALUE, OptimusCosts.cost(groupIds, groupPreferences, teamPreferences, assignment));
+    }
+}
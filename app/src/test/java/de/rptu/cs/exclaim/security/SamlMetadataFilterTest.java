@@ -0,0 +1,74 @@
+package de.rptu.cs.exclaim.security;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SamlMetadataFilterTest {
+    private static final String DS_NS = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String METADATA = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <md:EntitiesDescriptor xmlns:md="urn:oasis:names:tc:SAML:2.0:metadata" xmlns:ds="http://www.w3.org/2000/09/xmldsig#" Name="federation">
+          <md:EntityDescriptor entityID="https://idp.example.org/a">
+            <md:IDPSSODescriptor protocolSupportEnumeration="urn:oasis:names:tc:SAML:2.0:protocol"/>
+          </md:EntityDescriptor>
+          <md:EntityDescriptor entityID="https://idp.example.org/b">
+            <md:IDPSSODescriptor protocolSupportEnumeration="urn:oasis:names:tc:SAML:2.0:protocol">
+              <md:KeyDescriptor use="signing"><ds:KeyInfo><ds:X509Data><ds:X509Certificate>AAAA</ds:X509Certificate></ds:X509Data></ds:KeyInfo></md:KeyDescriptor>
+            </md:IDPSSODescriptor>
+          </md:EntityDescriptor>
+        </md:EntitiesDescriptor>
+        """;
+
+    @Test
+    void testExtract() throws Exception {
+        byte[] xml = SamlMetadataFilter.extractEntityDescriptor(stream(METADATA), "https://idp.example.org/b");
+        assertNotNull(xml);
+
+        Document document = parse(xml);
+        Element root = document.getDocumentElement();
+        assertEquals(SamlMetadataFilter.METADATA_NS, root.getNamespaceURI());
+        assertEquals("EntityDescriptor", root.getLocalName());
+        assertEquals("https://idp.example.org/b", root.getAttribute("entityID"));
+        // The ds prefix is declared on the EntitiesDescriptor only, it must still resolve in the extracted document
+        assertEquals("AAAA", document.getElementsByTagNameNS(DS_NS, "X509Certificate").item(0).getTextContent());
+    }
+
+    @Test
+    void testSingleEntityDescriptor() throws Exception {
+        String metadata = """
+            <EntityDescriptor xmlns="urn:oasis:names:tc:SAML:2.0:metadata" entityID="https://idp.example.org/a">
+              <IDPSSODescriptor protocolSupportEnumeration="urn:oasis:names:tc:SAML:2.0:protocol"/>
+            </EntityDescriptor>
+            """;
+        byte[] xml = SamlMetadataFilter.extractEntityDescriptor(stream(metadata), "https://idp.example.org/a");
+        assertNotNull(xml);
+        Element root = parse(xml).getDocumentElement();
+        assertEquals(SamlMetadataFilter.METADATA_NS, root.getNamespaceURI());
+        assertEquals(1, root.getElementsByTagNameNS(SamlMetadataFilter.METADATA_NS, "IDPSSODescriptor").getLength());
+    }
+
+    @Test
+    void testNotFound() throws Exception {
+        assertNull(SamlMetadataFilter.extractEntityDescriptor(stream(METADATA), "https://idp.example.org/c"));
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Document parse(byte[] xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+    }
+}
@@ -0,0 +1,36 @@
+package de.rptu.cs.exclaim.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarkdownTest {
+    @Test
+    void testCodeTags() {
+        assertEquals("<p>Use <code>foo()</code> here</p>\n", Markdown.toHtml("Use <code>foo()</code> here"));
+    }
+
+    @Test
+    void testLineBreaks() {
+        String html = Markdown.toHtml("first<br/>second");
+        assertTrue(html.contains("first"), html);
+        assertTrue(html.contains("second"), html);
+        assertFalse(html.contains("br/"), html);
+    }
+
+    @Test
+    void testEscapesHtml() {
+        String html = Markdown.toHtml("<script>alert(1)</script>");
+        assertFalse(html.contains("<script>"), html);
+        assertTrue(html.contains("&lt;script&gt;"), html);
+    }
+
+    @Test
+    void testCached() {
+        String markdown = "Avoid **unused** imports";
+        assertSame(Markdown.toHtml(markdown), Markdown.toHtml(new String(markdown)));
+    }
+}
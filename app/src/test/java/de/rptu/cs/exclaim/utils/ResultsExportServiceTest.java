@@ -0,0 +1,24 @@
+package de.rptu.cs.exclaim.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResultsExportServiceTest {
+    @Test
+    void testNeutralizeFormula() {
+        assertEquals("'=HYPERLINK(\"x\")", ResultsExportService.neutralizeFormula("=HYPERLINK(\"x\")"));
+        assertEquals("'+1", ResultsExportService.neutralizeFormula("+1"));
+        assertEquals("'-1", ResultsExportService.neutralizeFormula("-1"));
+        assertEquals("'@SUM(A1)", ResultsExportService.neutralizeFormula("@SUM(A1)"));
+        assertEquals("'\tx", ResultsExportService.neutralizeFormula("\tx"));
+        assertEquals("'\rx", ResultsExportService.neutralizeFormula("\rx"));
+    }
+
+    @Test
+    void testKeepsPlainText() {
+        assertEquals("", ResultsExportService.neutralizeFormula(""));
+        assertEquals("Jane", ResultsExportService.neutralizeFormula("Jane"));
+        assertEquals("a=b", ResultsExportService.neutralizeFormula("a=b"));
+    }
+}
@@ -0,0 +1,161 @@
+package de.rptu.cs.exclaim.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.rptu.cs.exclaim.ExclaimProperties;
+import de.rptu.cs.exclaim.jobs.JobFailedTemporarilyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@link RteClient} against a local stub RTE server that echoes the test name and the uploaded file names.
+ */
+class RteClientTest {
+    private HttpServer server;
+    private RteClient client;
+    private final Set<InetSocketAddress> remoteAddresses = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requestsInProgress = new AtomicInteger();
+    private final AtomicInteger maxRequestsInProgress = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/test", exchange -> {
+            remoteAddresses.add(exchange.getRemoteAddress());
+            maxRequestsInProgress.accumulateAndGet(requestsInProgress.incrementAndGet(), Math::max);
+            try {
+                handleTest(exchange);
+            } finally {
+                requestsInProgress.decrementAndGet();
+            }
+        });
+        server.createContext("/listtests", exchange -> respond(exchange, 200, "{\"Tests\":[\"ex/1/a\"],\"Success\":true}"));
+        server.start();
+        client = new RteClient(new ExclaimProperties.Rte(true, url(), "secret", (short) 5, 10, Duration.ofSeconds(5), Duration.ofSeconds(5)));
+    }
+
+    private static void handleTest(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (!exchange.getRequestURI().getQuery().equals("apiKey=secret")) {
+            respond(exchange, 403, "");
+        } else if (body.contains("name=\"test\"\r\n\r\nfail/fail/fail\r\n")) {
+            respond(exchange, 500, "");
+        } else if (body.contains("name=\"test\"\r\n\r\nslow/slow/slow\r\n")) {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, body);
+        } else if (body.contains("name=\"test\"\r\n\r\nwait/wait/wait\r\n")) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, body);
+        } else {
+            respond(exchange, 200, body);
+        }
+    }
+
+    private String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    @Test
+    void testMultipartRequest(@TempDir Path dir) throws IOException {
+        Path file = Files.writeString(dir.resolve("stored-name"), "public class Main {}");
+        String body = client.test("ex/1/a", List.of(new RteClient.TestFile("Main.java", file))).join();
+        assertTrue(body.contains("name=\"test\"\r\n\r\nex/1/a\r\n"), body);
+        assertTrue(body.contains("name=\"numfiles\"\r\n\r\n1\r\n"), body);
+        assertTrue(body.contains("name=\"file0\"; filename=\"Main.java\""), body);
+        assertTrue(body.contains("\r\n\r\npublic class Main {}\r\n"), body);
+    }
+
+    @Test
+    void testConcurrentRequests() {
+        List<CompletableFuture<String>> results = IntStream.range(0, 20)
+            .mapToObj(i -> client.test("ex/1/a" + i, List.of()))
+            .toList();
+        for (int i = 0; i < results.size(); i++) {
+            assertTrue(results.get(i).join().contains("\r\n\r\nex/1/a" + i + "\r\n"));
+        }
+    }
+
+    @Test
+    void testMaxParallel() {
+        ExclaimProperties.Rte rte = new ExclaimProperties.Rte(true, url(), "secret", (short) 2, 10, Duration.ofSeconds(5), Duration.ofSeconds(5));
+        RteClient limitedClient = new RteClient(rte);
+        List<CompletableFuture<String>> results = IntStream.range(0, 10)
+            .mapToObj(i -> limitedClient.test("wait/wait/wait", List.of()))
+            .toList();
+        results.forEach(CompletableFuture::join);
+        assertEquals(2, maxRequestsInProgress.get(), "At most max-parallel tests should be sent at the same time");
+    }
+
+    @Test
+    void testConnectionReuse() {
+        for (int i = 0; i < 5; i++) {
+            client.test("ex/1/a", List.of()).join();
+        }
+        assertEquals(1, remoteAddresses.size(), "Sequential requests should reuse the same connection");
+    }
+
+    @Test
+    void testFailure() {
+        CompletionException e = assertThrows(CompletionException.class, () -> client.test("fail/fail/fail", List.of()).join());
+        assertInstanceOf(JobFailedTemporarilyException.class, e.getCause());
+    }
+
+    @Test
+    void testReadTimeout() {
+        ExclaimProperties.Rte rte = new ExclaimProperties.Rte(true, url(), "secret", (short) 5, 10, Duration.ofSeconds(5), Duration.ofMillis(200));
+        CompletionException e = assertThrows(CompletionException.class, () -> new RteClient(rte).test("slow/slow/slow", List.of()).join());
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+    }
+
+    @Test
+    void testListTests() {
+        assertTrue(client.listTests().join().contains("ex/1/a"));
+    }
+}
@@ -0,0 +1,76 @@
+package de.rptu.cs.exclaim.utils;
+
+import de.rptu.cs.exclaim.monitoring.MetricsService;
+import de.rptu.cs.exclaim.utils.RteServices.TestResultMsg;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestResultNotifierTest {
+    private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @BeforeEach
+    void startScheduler() {
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+    }
+
+    @AfterEach
+    void stopScheduler() {
+        taskScheduler.shutdown();
+    }
+
+    private TestResultNotifier notifier(Duration coalesceDelay) {
+        return new TestResultNotifier(
+            (channel, msg) -> sent.add(channel + " " + msg.getAssignment() + " " + msg.getRequest() + " " + msg.getStatus()),
+            taskScheduler,
+            new MetricsService(new CollectorRegistry()),
+            coalesceDelay
+        );
+    }
+
+    private static TestResultMsg msg(String assignment, int request, String status) {
+        return new TestResultMsg("ex", "01", assignment, "1", "2", request, status);
+    }
+
+    @Test
+    void testCoalesce() throws InterruptedException {
+        TestResultNotifier notifier = notifier(Duration.ofMillis(200));
+        notifier.send(msg("a", 1, "started"));
+        notifier.send(msg("b", 1, "started"));
+        notifier.send(msg("a", 1, "done"));
+
+        List<String> messages = List.of(
+            sent.poll(5, TimeUnit.SECONDS),
+            sent.poll(5, TimeUnit.SECONDS)
+        );
+        assertTrue(messages.contains("/topic/testresults/ex/01/1/2 a 1 done"), messages::toString);
+        assertTrue(messages.contains("/topic/testresults/ex/01/1/2 b 1 started"), messages::toString);
+        assertNull(sent.poll(500, TimeUnit.MILLISECONDS));
+
+        // After the pending message has been sent, the next one is scheduled again
+        notifier.send(msg("a", 2, "started"));
+        assertEquals("/topic/testresults/ex/01/1/2 a 2 started", sent.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testWithoutDelay() {
+        TestResultNotifier notifier = notifier(Duration.ZERO);
+        notifier.send(msg("a", 1, "started"));
+        notifier.send(msg("a", 1, "done"));
+        assertEquals(List.of("/topic/testresults/ex/01/1/2 a 1 started", "/topic/testresults/ex/01/1/2 a 1 done"), List.copyOf(sent));
+    }
+}
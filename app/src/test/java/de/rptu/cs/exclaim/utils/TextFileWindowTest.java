@@ -0,0 +1,74 @@
+package de.rptu.cs.exclaim.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TextFileWindowTest {
+    @Test
+    void testWholeFile(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("a.txt"), "eins\r\nzwei\n\ndrei");
+        List<String> lines = new ArrayList<>();
+        assertNull(TextFileWindow.read(file, 1, 100, 1000, (n, line, truncated) -> lines.add(n + ":" + line + (truncated ? "..." : ""))));
+        assertEquals(List.of("1:eins", "2:zwei", "3:", "4:drei"), lines);
+    }
+
+    @Test
+    void testLineLimit(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("a.txt"), "1\n2\n3\n4\n5\n");
+        List<String> lines = new ArrayList<>();
+        assertEquals(Integer.valueOf(4), TextFileWindow.read(file, 2, 2, 1000, (n, line, truncated) -> lines.add(n + ":" + line + (truncated ? "..." : ""))));
+        assertEquals(List.of("2:2", "3:3"), lines);
+
+        lines.clear();
+        assertNull(TextFileWindow.read(file, 4, 2, 1000, (n, line, truncated) -> lines.add(n + ":" + line + (truncated ? "..." : ""))));
+        assertEquals(List.of("4:4", "5:5"), lines);
+    }
+
+    @Test
+    void testByteLimit(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("a.txt"), "abcdefghij\nklm\nnop\n");
+        List<String> lines = new ArrayList<>();
+        assertEquals(Integer.valueOf(2), TextFileWindow.read(file, 1, 100, 4, (n, line, truncated) -> lines.add(n + ":" + line + (truncated ? "..." : ""))));
+        assertEquals(List.of("1:abcd..."), lines);
+
+        lines.clear();
+        assertNull(TextFileWindow.read(file, 2, 100, 8, (n, line, truncated) -> lines.add(n + ":" + line + (truncated ? "..." : ""))));
+        assertEquals(List.of("2:klm", "3:nop"), lines);
+    }
+
+    @Test
+    void testByteLimitWithinLine(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("a.txt"), "ab\ncdef\ngh");
+        List<String> lines = new ArrayList<>();
+        TextFileWindow.LineConsumer consumer = (n, line, truncated) -> lines.add(n + ":" + line + (truncated ? "..." : ""));
+        // The second line does not fit, the next page starts with it
+        assertEquals(Integer.valueOf(2), TextFileWindow.read(file, 1, 100, 5, consumer));
+        assertEquals(List.of("1:ab"), lines);
+
+        lines.clear();
+        assertEquals(Integer.valueOf(3), TextFileWindow.read(file, 2, 100, 5, consumer));
+        assertEquals(List.of("2:cdef"), lines);
+
+        lines.clear();
+        assertNull(TextFileWindow.read(file, 3, 100, 5, consumer));
+        assertEquals(List.of("3:gh"), lines);
+    }
+
+    @Test
+    void testUtf8(@TempDir Path tempDir) throws IOException {
+        Path file = Files.write(tempDir.resolve("a.txt"), "Übung\nä€\n".getBytes(StandardCharsets.UTF_8));
+        List<String> lines = new ArrayList<>();
+        assertNull(TextFileWindow.read(file, 2, 100, 1000, (n, line, truncated) -> lines.add(line)));
+        assertEquals(List.of("ä€"), lines);
+    }
+}
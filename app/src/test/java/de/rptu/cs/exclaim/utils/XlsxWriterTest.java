@@ -0,0 +1,84 @@
+package de.rptu.cs.exclaim.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the package structure and the cells written by {@link XlsxWriter}.
+ */
+class XlsxWriterTest {
+    @Test
+    void testWorkbook() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XlsxWriter writer = new XlsxWriter(out, "results")) {
+            writer.writeRow("Gruppe", "Team", "Punkte");
+            writer.writeRow("A <1>", null, new BigDecimal("7.50"));
+        }
+
+        Map<String, String> entries = readEntries(out.toByteArray());
+        assertEquals(
+            List.of(
+                "[Content_Types].xml",
+                "_rels/.rels",
+                "xl/_rels/workbook.xml.rels",
+                "xl/styles.xml",
+                "xl/workbook.xml",
+                "xl/worksheets/sheet1.xml"
+            ),
+            List.copyOf(entries.keySet())
+        );
+        assertTrue(entries.get("xl/workbook.xml").contains("<sheet name=\"results\""));
+        assertTrue(entries.get("xl/worksheets/sheet1.xml").endsWith(
+            "<sheetData>"
+                + "<row>"
+                + "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">Gruppe</t></is></c>"
+                + "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">Team</t></is></c>"
+                + "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">Punkte</t></is></c>"
+                + "</row>"
+                + "<row>"
+                + "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">A &lt;1&gt;</t></is></c>"
+                + "<c/>"
+                + "<c><v>7.50</v></c>"
+                + "</row>"
+                + "</sheetData></worksheet>"
+        ));
+    }
+
+    @Test
+    void testEscape() {
+        assertEquals("plain text", XlsxWriter.escape("plain text"));
+        assertEquals("&quot;a&quot; &amp; b", XlsxWriter.escape("\"a\" & b"));
+        assertEquals("tab\tnewline\n", XlsxWriter.escape("tab\tnewline\n"));
+        assertEquals("control", XlsxWriter.escape("con\u0001trol\u0000"));
+    }
+
+    @Test
+    void testSheetName() {
+        assertEquals("a_b_c", XlsxWriter.sanitizeSheetName("a/b:c"));
+        assertEquals("0123456789012345678901234567890", XlsxWriter.sanitizeSheetName("0123456789012345678901234567890123"));
+    }
+
+    private static Map<String, String> readEntries(byte[] data) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(data), StandardCharsets.UTF_8)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,97 @@
+package de.rptu.cs.exclaim.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that archives written by {@link ZipArchiveWriter} can be read by {@link ZipFile}.
+ */
+class ZipArchiveWriterTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 4, 1, 12, 30, 10);
+
+    @Test
+    void testStoredDeflatedAndDirectoryEntries(@TempDir Path tempDir) throws IOException {
+        byte[] text = "Hallo Welt, ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] binary = new byte[4096];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) (i * 31);
+        }
+        Path source = Files.write(tempDir.resolve("source.pdf"), binary);
+
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (DeflaterOutputStream outputStream = new DeflaterOutputStream(deflated, deflater)) {
+            outputStream.write(text);
+        } finally {
+            deflater.end();
+        }
+
+        Path archive = tempDir.resolve("archive.zip");
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             ZipArchiveWriter zip = new ZipArchiveWriter(channel)) {
+            zip.addDirectory("1/", TIME);
+            zip.addDirectory("1/A", TIME);
+            zip.addEntry("1/A/Übung.txt", ZipEntry.DEFLATED, TIME, crc(text), text.length, deflated.toByteArray());
+            zip.addStoredEntry("1/A/Lösung.pdf", TIME, crc(binary), source);
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+            List<String> names = zipFile.stream().map(ZipEntry::getName).toList();
+            assertEquals(List.of("1/", "1/A/", "1/A/Übung.txt", "1/A/Lösung.pdf"), names);
+            assertTrue(zipFile.getEntry("1/A/").isDirectory());
+
+            ZipEntry textEntry = zipFile.getEntry("1/A/Übung.txt");
+            assertEquals(ZipEntry.DEFLATED, textEntry.getMethod());
+            assertEquals(TIME, textEntry.getTimeLocal());
+            assertArrayEquals(text, read(zipFile, textEntry));
+
+            ZipEntry binaryEntry = zipFile.getEntry("1/A/Lösung.pdf");
+            assertEquals(ZipEntry.STORED, binaryEntry.getMethod());
+            assertArrayEquals(binary, read(zipFile, binaryEntry));
+        }
+    }
+
+    @Test
+    void testEmptyArchive(@TempDir Path tempDir) throws IOException {
+        Path archive = tempDir.resolve("empty.zip");
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             ZipArchiveWriter ignored = new ZipArchiveWriter(channel)) {
+            // no entries
+        }
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(0, zipFile.size());
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static byte[] read(ZipFile zipFile, ZipEntry entry) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Subproject: Benchmarks
+ *
+ * This subproject contains JMH micro benchmarks for hot code paths of the app subproject (H2 variant). The benchmarks
+ * are not executed as part of the regular build, run them with the jmh task:
+ *
+ *   ./gradlew :benchmarks:jmh
+ *   ./gradlew :benchmarks:jmh -Pjmh.include=Comparators
+ *
+ * The results are written to build/reports/jmh/results.json. Use the jmhCompare task to compare them against the
+ * results of a previous run, e.g. before and after a performance change.
+ *
+ * The optimusQuality task compares the group assignments calculated by the Optimus solvers:
+ *
+ *   ./gradlew :benchmarks:optimusQuality
+ */
+
+import de.rptu.cs.exclaim.gradle.ErrorPronePlugin.ErrorProneExtension
+import de.rptu.cs.exclaim.gradle.SqlDialect
+import de.rptu.cs.exclaim.gradle.SqlDialectPlugin.SQL_DIALECT_ATTRIBUTE
+
+plugins {
+    id("exclaim.base")
+    id("exclaim.error-prone")
+    id("exclaim.sql-dialect")
+}
+
+evaluationDependsOn(":app")
+
+dependencies {
+    implementation(project(":app"))
+    implementation("org.openjdk.jmh:jmh-core")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess")
+}
+
+// Benchmark the H2 variant of the app subproject
+configurations.compileClasspath {
+    attributes.attribute(SQL_DIALECT_ATTRIBUTE, SqlDialect.H2)
+}
+configurations.runtimeClasspath {
+    attributes.attribute(SQL_DIALECT_ATTRIBUTE, SqlDialect.H2)
+}
+
+// Error Prone: Ignore the code generated by JMH, let NullAway know that @Setup methods initialize the state fields.
+sourceSets.main {
+    extensions.getByType<ErrorProneExtension>().jooqChecker.set(false)
+    extensions.getByType<ErrorProneExtension>().options.addAll(
+        "-XepExcludedPaths:.*/build/generated/.*",
+        "-XepOpt:NullAway:CustomInitializerAnnotations=org.openjdk.jmh.annotations.Setup",
+    )
+}
+
+val jmhResults = layout.buildDirectory.file("reports/jmh/results.json")
+val jmhBaseline = layout.buildDirectory.file("reports/jmh/baseline.json")
+
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks (filter with -Pjmh.include=<regex>) and writes the results as JSON."
+    group = "benchmark"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val include = providers.gradleProperty("jmh.include")
+    val resultsFile = jmhResults
+    argumentProviders.add {
+        listOfNotNull(
+            include.orNull,
+            "-rf", "json",
+            "-rff", resultsFile.get().asFile.absolutePath,
+        )
+    }
+    doFirst { resultsFile.get().asFile.parentFile.mkdirs() }
+    outputs.file(resultsFile)
+    outputs.upToDateWhen { false } // measurements are never up-to-date
+}
+
+tasks.register<JavaExec>("jmhCompare") {
+    description = "Compares the latest JMH results with the baseline (copy results.json to baseline.json to create it)."
+    group = "benchmark"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("de.rptu.cs.exclaim.benchmarks.CompareResults")
+    mustRunAfter("jmh")
+    val baselineFile = jmhBaseline
+    val resultsFile = jmhResults
+    argumentProviders.add {
+        listOf(baselineFile.get().asFile.absolutePath, resultsFile.get().asFile.absolutePath)
+    }
+}
+
+tasks.register<JavaExec>("optimusQuality") {
+    description = "Compares the cost of the Optimus group assignments of the local search and lp_solve solvers."
+    group = "benchmark"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("de.rptu.cs.exclaim.benchmarks.OptimusQuality")
+    val lpSolveExecutable = providers.gradleProperty("lpSolve.executable")
+    argumentProviders.add { listOfNotNull(lpSolveExecutable.orNull) }
+}
@@ -0,0 +1,109 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates realistic inputs for the benchmarks. A fixed seed is used such that all runs measure the same data.
+ */
+final class BenchmarkData {
+    private static final long SEED = 42;
+
+    private static final String[] FIRSTNAMES = {
+        "Anna", "Jörg", "Zoë", "Björn", "Sébastien", "Ælfred", "François", "Søren", "Jürgen", "Maximilian", "Lea",
+        "Ingrid", "Dāvis", "Małgorzata", "Ömer", "Chloé", "Jan", "D'Angelo", "Núria", "Paul",
+    };
+    private static final String[] LASTNAMES = {
+        "Müller", "Schäfer", "Weiß", "Groß", "Ørsted", "Hoffmann", "Dvořák", "Çelik", "O'Connor", "Zimmermann",
+        "Kovačević", "Schmidt (geb. Wagner)", "Ängström", "Nguyễn", "Becker", "Fischer", "Łukasiewicz", "Meyer",
+    };
+    private static final String[] MARKDOWN_SNIPPETS = {
+        "Gut gemacht!",
+        "Die Funktion `fib` terminiert nicht für negative Eingaben.",
+        "**Achtung:** Hier fehlt der Basisfall.<br>Siehe Aufgabe 2b.",
+        "Teilweise richtig:\n\n* Fall 1 ist korrekt\n* Fall 2 fehlt\n* Die Laufzeit ist `O(n^2)` statt `O(n)`",
+        "```\nlet rec f x = if x = 0 then 1 else x * f (x - 1)\n```\n-1 Punkt für fehlende Typannotation",
+        "# Hinweis\nBitte die Abgabe als *PDF* hochladen, siehe [Forum](https://example.org/forum).",
+        "Warning: unused variable <code>tmp</code> in line 12",
+    };
+
+    private BenchmarkData() {
+    }
+
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    /**
+     * Identifiers as used for groups, teams and sheets, e.g. "G7", "12", "7b", "Blatt 10", in random order.
+     */
+    static List<String> identifiers(int count) {
+        Random random = random();
+        List<String> identifiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int n = 1 + i / 4;
+            identifiers.add(switch (i % 4) {
+                case 0 -> "G" + n;
+                case 1 -> Integer.toString(n);
+                case 2 -> n + String.valueOf((char) ('a' + random.nextInt(3)));
+                default -> "Blatt " + n + (random.nextBoolean() ? "" : " (Teil " + (1 + random.nextInt(2)) + ")");
+            });
+        }
+        Collections.shuffle(identifiers, random);
+        return identifiers;
+    }
+
+    /**
+     * Person names, about half of them with umlauts, accents or other characters handled by the normalization.
+     */
+    static String[] names(int count) {
+        Random random = random();
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = FIRSTNAMES[random.nextInt(FIRSTNAMES.length)] + " " + LASTNAMES[random.nextInt(LASTNAMES.length)];
+        }
+        return names;
+    }
+
+    /**
+     * Assessment comments and RTE warnings consisting of one to three Markdown snippets.
+     */
+    static String[] markdownTexts(int count) {
+        Random random = random();
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            int snippets = 1 + random.nextInt(3);
+            for (int j = 0; j < snippets; j++) {
+                if (j > 0) text.append("\n\n");
+                text.append(MARKDOWN_SNIPPETS[random.nextInt(MARKDOWN_SNIPPETS.length)]);
+            }
+            texts[i] = text.toString();
+        }
+        return texts;
+    }
+
+    /**
+     * A results matrix as passed to the assessment overview page: one row per team with group id, team id, the points
+     * for each assignment (null if not yet assessed) and the hideComments and hidePoints flags.
+     */
+    static Object[] resultsMatrix(int teams, int assignments) {
+        Random random = random();
+        Object[] data = new Object[teams];
+        for (int t = 0; t < teams; t++) {
+            Object[] row = new Object[4 + assignments];
+            row[0] = Integer.toString(1 + t / 20);
+            row[1] = Integer.toString(1 + t % 20);
+            for (int a = 0; a < assignments; a++) {
+                row[2 + a] = random.nextInt(10) == 0 ? null : BigDecimal.valueOf(random.nextInt(21), 1);
+            }
+            row[2 + assignments] = random.nextBoolean();
+            row[3 + assignments] = random.nextBoolean();
+            data[t] = row;
+        }
+        return data;
+    }
+}
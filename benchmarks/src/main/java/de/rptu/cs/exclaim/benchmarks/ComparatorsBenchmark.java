@@ -0,0 +1,46 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import de.rptu.cs.exclaim.utils.Comparators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Comparators#IDENTIFIER} is used for sorting sheets, groups and teams on almost every page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparatorsBenchmark {
+    @Param({"20", "200", "2000"})
+    public int size;
+
+    List<String> identifiers;
+
+    @Setup
+    public void setup() {
+        identifiers = BenchmarkData.identifiers(size);
+    }
+
+    @Benchmark
+    public List<String> sortIdentifiers() {
+        List<String> list = new ArrayList<>(identifiers);
+        list.sort(Comparators.IDENTIFIER);
+        return list;
+    }
+}
@@ -0,0 +1,79 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files (JSON format) and prints the change of the score for each benchmark and parameter
+ * combination. For the average time mode, negative changes are improvements.
+ */
+public final class CompareResults {
+    private CompareResults() {
+    }
+
+    private record Score(double value, double error, String unit) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <results.json>");
+            System.exit(1);
+        }
+        File baselineFile = new File(args[0]);
+        if (!baselineFile.isFile()) {
+            System.err.println("Baseline " + baselineFile + " does not exist. Copy a results.json file to create it.");
+            System.exit(1);
+        }
+        Map<String, Score> baseline = readScores(baselineFile);
+        Map<String, Score> results = readScores(new File(args[1]));
+
+        int width = results.keySet().stream().mapToInt(String::length).max().orElse(0);
+        String format = "%-" + width + "s  %14s  %14s  %8s  %s%n";
+        System.out.printf(Locale.ROOT, format, "Benchmark", "Baseline", "Current", "Change", "Unit");
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+            Score current = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            String change = before == null || !before.unit.equals(current.unit)
+                ? "-"
+                : String.format(Locale.ROOT, "%+.1f%%", 100 * (current.value - before.value) / before.value);
+            System.out.printf(Locale.ROOT, format,
+                entry.getKey(),
+                before == null ? "-" : formatScore(before),
+                formatScore(current),
+                change,
+                current.unit
+            );
+        }
+    }
+
+    private static String formatScore(Score score) {
+        return String.format(Locale.ROOT, "%.3f ± %.3f", score.value, score.error);
+    }
+
+    private static Map<String, Score> readScores(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText()
+                .replace("de.rptu.cs.exclaim.benchmarks.", ""));
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            JsonNode metric = result.path("primaryMetric");
+            scores.put(key.toString(), new Score(
+                metric.path("score").asDouble(),
+                metric.path("scoreError").asDouble(),
+                metric.path("scoreUnit").asText()
+            ));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,45 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import de.rptu.cs.exclaim.utils.JsonUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JsonUtils#toJson} serializes the results matrices embedded in the assessment and admin pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUtilsBenchmark {
+    @Param({"50", "500"})
+    public int teams;
+
+    @Param({"4", "40"})
+    public int assignments;
+
+    Object[] resultsMatrix;
+
+    @Setup
+    public void setup() {
+        resultsMatrix = BenchmarkData.resultsMatrix(teams, assignments);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JsonUtils.toJson(resultsMatrix);
+    }
+}
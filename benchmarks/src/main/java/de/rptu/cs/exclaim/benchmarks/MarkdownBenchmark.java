@@ -0,0 +1,54 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import de.rptu.cs.exclaim.utils.Markdown;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Markdown#toHtml} renders comments and warnings. It caches the results, so we measure both the cached case
+ * (the same few texts over and over again) and rendering texts that have not been seen before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarkdownBenchmark {
+    private static final int TEXTS = 100;
+
+    String[] texts;
+    int index;
+    long counter;
+
+    @Setup
+    public void setup() {
+        texts = BenchmarkData.markdownTexts(TEXTS);
+    }
+
+    private String nextText() {
+        index = (index + 1) % TEXTS;
+        return texts[index];
+    }
+
+    @Benchmark
+    public String toHtmlCached() {
+        return Markdown.toHtml(nextText());
+    }
+
+    @Benchmark
+    public String toHtmlUncached() {
+        // A unique suffix defeats the cache
+        return Markdown.toHtml(nextText() + "\n\n" + counter++);
+    }
+}
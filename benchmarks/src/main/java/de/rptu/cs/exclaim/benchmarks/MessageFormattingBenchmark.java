@@ -0,0 +1,79 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import de.rptu.cs.exclaim.i18n.CookieLocalesResolver;
+import de.rptu.cs.exclaim.i18n.ICUMessageSourceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseCookie;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ICUMessageSourceImpl} resolves and formats the messages for every translated text on a page. We measure a
+ * message without arguments, one with positional arguments, and the password reset mail with named arguments and a
+ * date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFormattingBenchmark {
+    @Param({"en", "de"})
+    public String language;
+
+    ICUMessageSourceImpl messageSource;
+    Locale locale;
+    Object[] positionalArgs;
+    Map<String, Object> namedArgs;
+
+    @Setup
+    public void setup() {
+        messageSource = new ICUMessageSourceImpl(
+            "messages",
+            ZoneId.of("Europe/Berlin"),
+            new CookieLocalesResolver(List.of(Locale.ENGLISH), ResponseCookie.from("locale").build())
+        );
+        messageSource.setBeanClassLoader(MessageFormattingBenchmark.class.getClassLoader());
+        locale = Locale.forLanguageTag(language);
+        positionalArgs = new Object[]{"G7", "12"};
+        namedArgs = Map.of(
+            "firstname", "Jörg",
+            "lastname", "Müller",
+            "username", "jmueller",
+            "resetURL", "https://exclaim.example.org/reset-password?user=jmueller&reset=0123456789abcdef",
+            "expirationTime", 1_700_000_000_000L,
+            "publicURL", "https://exclaim.example.org/",
+            "adminContact", "exclaim@example.org"
+        );
+    }
+
+    @Benchmark
+    public String withoutArguments() {
+        return messageSource.getMessage("jobs.title", (Object[]) null, locale);
+    }
+
+    @Benchmark
+    public String positionalArguments() {
+        return messageSource.getMessage("exercise.your-group-and-team", positionalArgs, locale);
+    }
+
+    @Benchmark
+    public String namedArguments() {
+        return messageSource.getMessage("request-password.mail.body", namedArgs, locale);
+    }
+}
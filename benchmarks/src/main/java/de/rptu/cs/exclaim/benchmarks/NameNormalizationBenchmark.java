@@ -0,0 +1,46 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import de.rptu.cs.exclaim.utils.NameNormalization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NameNormalization#normalizeName} is applied to every user, e.g. when importing or searching users.
+ * The score is the time per name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameNormalizationBenchmark {
+    private static final int NAMES = 1000;
+
+    String[] names;
+
+    @Setup
+    public void setup() {
+        names = BenchmarkData.names(NAMES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NAMES)
+    public void normalizeName(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(NameNormalization.normalizeName(name));
+        }
+    }
+}
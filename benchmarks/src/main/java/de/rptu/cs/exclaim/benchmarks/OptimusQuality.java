@@ -0,0 +1,122 @@
+package de.rptu.cs.exclaim.benchmarks;
+
+import de.rptu.cs.exclaim.optimus.LocalSearchSolver;
+import de.rptu.cs.exclaim.optimus.LpSolveSolver;
+import de.rptu.cs.exclaim.optimus.OptimusCosts;
+import de.rptu.cs.exclaim.optimus.OptimusSolver;
+import de.rptu.cs.exclaim.schema.enums.GroupPreferenceOption;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares the quality (total cost) and running time of the Optimus solvers on generated group assignment instances.
+ * This is not a JMH benchmark, because the interesting measure is the cost of the result rather than the time. The
+ * lp_solve result (the optimum) is skipped if the lp_solve executable is not available.
+ */
+public final class OptimusQuality {
+    private static final int[][] INSTANCES = {
+        // users, groups
+        {60, 4},
+        {200, 10},
+        {800, 20},
+    };
+    private static final Duration[] TIME_LIMITS = {
+        Duration.ofMillis(500),
+        Duration.ofSeconds(2),
+        Duration.ofSeconds(10),
+    };
+
+    private OptimusQuality() {
+    }
+
+    private record Instance(
+        List<String> groupIds,
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences,
+        Map<Integer, List<Integer>> teamPreferences
+    ) {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String lpSolveExecutable = args.length > 0 ? args[0] : "lp_solve";
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format = "%-14s  %-22s  %10s  %10s%n";
+        System.out.printf(Locale.ROOT, format, "Instance", "Solver", "Cost", "Time [ms]");
+        for (int[] size : INSTANCES) {
+            Instance instance = generate(size[0], size[1]);
+            String name = size[0] + "x" + size[1];
+            run(format, name, "lp_solve", new LpSolveSolver(lpSolveExecutable), instance);
+            for (Duration timeLimit : TIME_LIMITS) {
+                String solverName = "local-search " + timeLimit.toMillis() + "ms";
+                run(format, name, solverName, new LocalSearchSolver(timeLimit, 1), instance);
+                run(format, name, solverName + " x" + threads, new LocalSearchSolver(timeLimit, threads), instance);
+            }
+        }
+    }
+
+    private static void run(String format, String name, String solverName, OptimusSolver solver, Instance instance)
+        throws InterruptedException {
+        long start = System.nanoTime();
+        String cost;
+        try {
+            Map<Integer, String> assignment = solver.solve(
+                instance.groupIds, instance.groupPreferences, instance.teamPreferences
+            );
+            long value = OptimusCosts.cost(
+                instance.groupIds, instance.groupPreferences, instance.teamPreferences, assignment
+            );
+            cost = value == Long.MAX_VALUE ? "infeasible" : Long.toString(value);
+        } catch (IOException e) {
+            System.out.printf(Locale.ROOT, format, name, solverName, "skipped", "-");
+            return;
+        }
+        System.out.printf(Locale.ROOT, format, name, solverName, cost, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Generate an instance where some groups are more popular than others (like the time slots of real exercises)
+     * and most users have one or two friends.
+     */
+    private static Instance generate(int numberOfUsers, int numberOfGroups) {
+        Random random = BenchmarkData.random();
+        List<String> groupIds = new ArrayList<>(numberOfGroups);
+        double[] popularity = new double[numberOfGroups];
+        for (int i = 0; i < numberOfGroups; i++) {
+            groupIds.add(String.format(Locale.ROOT, "%02d", i + 1));
+            popularity[i] = random.nextDouble();
+        }
+        GroupPreferenceOption[] options = {
+            GroupPreferenceOption.PREFERRED,
+            GroupPreferenceOption.POSSIBLE,
+            GroupPreferenceOption.DISLIKE,
+            GroupPreferenceOption.IMPOSSIBLE,
+        };
+        Map<Integer, Map<String, GroupPreferenceOption>> groupPreferences = new TreeMap<>();
+        Map<Integer, List<Integer>> teamPreferences = new TreeMap<>();
+        for (int userId = 0; userId < numberOfUsers; userId++) {
+            Map<String, GroupPreferenceOption> preferences = new HashMap<>();
+            for (int i = 0; i < numberOfGroups; i++) {
+                if (random.nextInt(20) > 0) {
+                    double value = (random.nextDouble() + popularity[i]) / 2;
+                    int option = Math.min(options.length - 1, (int) ((1 - value) * options.length));
+                    preferences.put(groupIds.get(i), options[option]);
+                }
+            }
+            groupPreferences.put(userId, preferences);
+            int friends = random.nextInt(3);
+            for (int i = 0; i < friends && userId > 0; i++) {
+                int friendUserId = random.nextInt(userId);
+                teamPreferences.computeIfAbsent(userId, ignored -> new ArrayList<>()).add(friendUserId);
+                teamPreferences.computeIfAbsent(friendUserId, ignored -> new ArrayList<>()).add(userId);
+            }
+        }
+        return new Instance(groupIds, groupPreferences, teamPreferences);
+    }
+}
@@ -41,6 +41,8 @@ public class PlatformPlugin implements Plugin<Project> {
         new PlatformDependency("com.google.code.findbugs", "jsr305", "jsr305_version"),
         new PlatformDependency("org.jetbrains", "annotations", "jetbrains_annotations_version"),
         new PlatformDependency("cz.habarta.typescript-generator", "typescript-generator-core", "typescript_generator_version"),
+        new PlatformDependency("org.openjdk.jmh", "jmh-core", "jmh_version"),
+        new PlatformDependency("org.openjdk.jmh", "jmh-generator-annprocess", "jmh_version"),
     };
 
     @Override
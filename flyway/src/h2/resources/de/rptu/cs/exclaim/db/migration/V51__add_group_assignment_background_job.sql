@@ -0,0 +1,2 @@
+ALTER TABLE background_jobs
+ALTER COLUMN type SET DATA TYPE ENUM ('SEND_ACCOUNT_ACTIVATION_MAIL', 'SEND_PASSWORD_RESET_MAIL', 'RUN_TEST', 'SEND_SAML_ASSOCIATION_MAIL', 'CALCULATE_GROUP_ASSIGNMENT');
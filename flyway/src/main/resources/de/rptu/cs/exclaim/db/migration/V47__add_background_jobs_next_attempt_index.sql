@@ -0,0 +1 @@
+CREATE INDEX idx__background_jobs__next_attempt ON background_jobs(next_attempt, id);
@@ -0,0 +1,2 @@
+ALTER TABLE background_jobs ADD COLUMN lease_owner VARCHAR(255);
+ALTER TABLE background_jobs ADD COLUMN lease_expiry TIMESTAMP;
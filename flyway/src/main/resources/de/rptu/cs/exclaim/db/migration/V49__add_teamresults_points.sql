@@ -0,0 +1,12 @@
+-- Sum of the assignment points in teamresults_assignment, maintained by the application when points are saved
+ALTER TABLE teamresults ADD COLUMN points DECIMAL(20,1) NULL;
+
+UPDATE teamresults
+SET points = (
+    SELECT SUM(tra.points)
+    FROM teamresults_assignment AS tra
+    WHERE tra.exercise = teamresults.exercise
+      AND tra.sheet = teamresults.sheet
+      AND tra.groupid = teamresults.groupid
+      AND tra.teamid = teamresults.teamid
+);
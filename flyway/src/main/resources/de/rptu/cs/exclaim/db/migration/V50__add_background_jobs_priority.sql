@@ -0,0 +1,5 @@
+-- Due jobs are claimed per job type, and jobs with a higher priority are claimed first, e.g. tests requested by
+-- students before bulk test runs. The new index supersedes the one on (next_attempt, id).
+ALTER TABLE background_jobs ADD COLUMN priority SMALLINT DEFAULT 0 NOT NULL;
+DROP INDEX idx__background_jobs__next_attempt;
+CREATE INDEX idx__background_jobs__type_priority ON background_jobs(type, priority DESC, next_attempt, id);
@@ -0,0 +1,13 @@
+-- Group assignment calculated by Optimus for the preferences with the given fingerprint, assignment is NULL while the
+-- calculation is running. This is only a cache, so it is deleted together with the exercise.
+CREATE TABLE computed_group_assignments
+(
+    exerciseid   VARCHAR(50)  NOT NULL,
+    fingerprint  VARCHAR(64)  NOT NULL,
+    assignment   CLOB         NULL,
+    cost         BIGINT       NULL,
+    calculated   TIMESTAMP    NULL,
+
+    CONSTRAINT pk__computed_group_assignments PRIMARY KEY (exerciseid),
+    CONSTRAINT fk__computed_group_assignments__exercises FOREIGN KEY (exerciseid) REFERENCES exercises(id) ON DELETE CASCADE
+);
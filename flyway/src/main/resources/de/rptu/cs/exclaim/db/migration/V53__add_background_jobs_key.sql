@@ -0,0 +1,4 @@
+-- An optional key identifies what a job works on, e.g. the team and assignment of a test, such that pending jobs can be
+-- looked up without reading their payloads.
+ALTER TABLE background_jobs ADD COLUMN job_key VARCHAR(255);
+CREATE INDEX idx__background_jobs__type_job_key ON background_jobs(type, job_key);
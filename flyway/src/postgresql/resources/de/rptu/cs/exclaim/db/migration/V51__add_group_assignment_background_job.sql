@@ -0,0 +1 @@
+ALTER TYPE t_background_job_type ADD VALUE 'CALCULATE_GROUP_ASSIGNMENT';
@@ -14,6 +14,5 @@ declare module '*.svg' {
 // Extend the `Window` interface with properties that are defined in the html file delivered by the backend
 interface Window {
   frontendConfiguration?: import('./src/api/types').Configuration;
-  accountData?: import('./src/api/types').AccountData | null;
   csrfToken?: string | null;
 }
@@ -1,9 +1,20 @@
 import { expectStatus, extractJson, get, postJson } from './fetch';
 import type { AccountData, Language, SetLanguageRequest } from './types';
 
+/**
+ * Fetch the account data of the authenticated user. The response also carries the csrf token.
+ * @returns the account data, or null if not authenticated
+ */
 export function getAccountData(): Promise<AccountData | null> {
   return get('api/account')
     .then(expectStatus(200))
+    .then((response) => {
+      const csrf = response.headers.get('X-CSRF-TOKEN');
+      if (csrf) {
+        window.csrfToken = csrf;
+      }
+      return response;
+    })
     .then(extractJson<AccountData | null>);
 }
 
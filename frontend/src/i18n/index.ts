@@ -37,11 +37,10 @@ export const language = createDomBackedRef<Language>(
   // Determine the initial language to be used
   (() => {
     // We try the following choices until one of them succeeds:
-    // - language of the authenticated user from database (provided in `window.accountData.language` by the backend)
-    // - last used language in local storage (for guest users)
+    // - last used language in local storage
     // - language preferences of the user's browser
+    // The language of the authenticated user from database is applied once the account data has been fetched.
     for (let candidate of [
-      window.accountData?.language,
       localStorage.getItem(localStorageKey),
       ...navigator.languages,
     ]) {
@@ -1,6 +1,7 @@
 import { computed, ref } from 'vue';
 
 import { type AccountData, getAccountData } from '../api';
+import { language } from '../i18n';
 
 export const accountData = ref<AccountData | null>(null);
 
@@ -10,14 +11,11 @@ export const authenticated = computed(() => accountData.value !== null);
  * Initialize the account data store
  */
 export async function initialize(): Promise<void> {
-  if (window.accountData !== undefined) {
-    // Account data has been provided on the window object (by the backend patching index.html):
-    // Move data to reactive reference exported above.
-    accountData.value = window.accountData;
-    delete window.accountData;
-  } else {
-    // Account data has not been provided, we need to request it
-    await refresh();
+  // The backend does not include the account data in index.html, such that index.html can be cached.
+  // Its response to this request can be revalidated by the browser using an ETag.
+  await refresh();
+  if (accountData.value?.language) {
+    language.value = accountData.value.language;
   }
 }
 
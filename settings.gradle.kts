@@ -2,6 +2,7 @@ rootProject.name = "exclaim"
 include(
     "api",
     "app",
+    "benchmarks",
     "docs",
     "emp",
     "errorprone",